@@ -0,0 +1,25 @@
+package com.klakar.artivio.ai;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+
+import java.util.List;
+
+/**
+ * A user message together with the conversation turns selected as its context, kept as separate
+ * turns so providers with a multi-turn format can send them that way.
+ *
+ * @param conversationId the conversation the message belongs to, or {@code null} for one-off prompts
+ * @param history        earlier turns in chronological order
+ * @param message        the message to answer
+ */
+public record AIPrompt(String conversationId, List<ContextSnippet> history, String message) {
+
+    public AIPrompt {
+        history = List.copyOf(history);
+    }
+
+    /** The history as one flat context block, for providers that take a single prompt. */
+    public String context() {
+        return ContextSnippet.formatAll(history);
+    }
+}
@@ -0,0 +1,292 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.entity.Message;
+import com.klakar.artivio.repository.MessageRepository;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves conversation turns into the {@link AIContextService} off the request thread.
+ * <p>
+ * {@link #submit} only queues the turn. A single worker takes turns off the queue in batches of
+ * up to {@code maxBatchSize}, waiting at most {@code maxDelay} after the first one, and writes
+ * each batch with one {@link AIContextService#storeConversationContexts} call. When the store is
+ * durable, the batch's messages are then marked {@code embeddingStored} with one update. Turns
+ * become searchable up to {@code maxDelay} after they are submitted, in-memory stores included.
+ * <p>
+ * A turn that cannot be stored (queue full, store down, shutdown) keeps {@code embeddingStored =
+ * false}. On startup the backfill pages through such messages by id and queues them again, so an
+ * interrupted backfill resumes where it stopped. Only the Chroma store is durable, and
+ * {@code AIConfig} does not wire it yet, so for now the update and the backfill never run.
+ * <p>
+ * {@link #clear} goes through the same queue, so a conversation is cleared after the turns queued
+ * before it are stored, and deleting a conversation does not wait on the store.
+ */
+@Slf4j
+public class ContextIngestionPipeline implements AutoCloseable {
+
+    /** A turn to store, or, when {@code turn} is {@code null}, a conversation to clear. */
+    private record Entry(Long messageId, ContextTurn turn, String clearedConversationId) {
+
+        static Entry store(Long messageId, ContextTurn turn) {
+            return new Entry(messageId, turn, null);
+        }
+
+        static Entry clear(String conversationId) {
+            return new Entry(null, null, conversationId);
+        }
+    }
+
+    private static final long IDLE_POLL_MILLIS = 500;
+
+    private final AIContextService contextService;
+    private final MessageRepository messageRepository;
+    private final AIProperties.Context.Ingestion properties;
+    private final boolean durable;
+    private final BlockingQueue<Entry> queue;
+    private final long maxDelayNanos;
+    private final Thread worker;
+    private final Timer batchLatency;
+    private final DistributionSummary batchSizes;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter backfilled;
+
+    private volatile boolean closed;
+
+    public ContextIngestionPipeline(AIContextService contextService, MessageRepository messageRepository,
+                                    AIProperties.Context.Ingestion properties, MeterRegistry meterRegistry) {
+        if (properties.getMaxBatchSize() < 1 || properties.getQueueCapacity() < 1) {
+            throw new IllegalArgumentException("Batch size and queue capacity must be at least 1");
+        }
+        this.contextService = contextService;
+        this.messageRepository = messageRepository;
+        this.properties = properties;
+        this.durable = contextService.isDurable();
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.maxDelayNanos = properties.getMaxDelay().toNanos();
+
+        Gauge.builder("ai.context.ingest.queue", queue, BlockingQueue::size)
+                .description("Turns waiting to be stored in the context store")
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("ai.context.ingest.batch")
+                .description("Time to store one batch of turns, including the embeddingStored update")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("ai.context.ingest.batch.size")
+                .description("Turns per stored batch")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("ai.context.ingest.dropped")
+                .description("Turns skipped because the ingestion queue was full")
+                .register(meterRegistry);
+        this.failed = Counter.builder("ai.context.ingest.failed")
+                .description("Turns in batches the context store rejected")
+                .register(meterRegistry);
+        this.backfilled = Counter.builder("ai.context.ingest.backfilled")
+                .description("Older messages queued by the startup backfill")
+                .register(meterRegistry);
+
+        this.worker = new Thread(this::drain, "context-ingest");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues a turn for storage. Never blocks; when the queue is full the turn is skipped and, for
+     * a durable store, picked up by the next backfill.
+     *
+     * @param messageId the persisted message, or {@code null} if there is none to mark
+     */
+    public void submit(Long messageId, String conversationId, String content, String sender) {
+        if (closed || !queue.offer(Entry.store(messageId, new ContextTurn(conversationId, content, sender)))) {
+            dropped.increment();
+            log.debug("Context ingestion queue is full, skipping turn for conversation {}", conversationId);
+        }
+    }
+
+    /**
+     * Queues clearing a conversation's context, behind any of its turns already queued. When the
+     * queue is full or closed the conversation is cleared on the calling thread instead, since a
+     * deleted conversation must not stay in the store.
+     */
+    public void clear(String conversationId) {
+        if (closed || !queue.offer(Entry.clear(conversationId))) {
+            log.debug("Context ingestion queue is full, clearing conversation {} inline", conversationId);
+            clearNow(conversationId);
+        }
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (!durable || !properties.isBackfill()) {
+            return;
+        }
+        Thread backfill = new Thread(this::backfill, "context-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    /** Queues every message created before now that is not yet in the store, oldest id first. */
+    void backfill() {
+        LocalDateTime before = LocalDateTime.now();
+        PageRequest page = PageRequest.of(0, properties.getBackfillPageSize());
+        long afterId = 0;
+        long total = 0;
+        try {
+            while (!closed) {
+                List<Message> messages = messageRepository.findMessagesWithoutEmbeddingsAfter(afterId, before, page);
+                if (messages.isEmpty()) {
+                    break;
+                }
+                for (Message message : messages) {
+                    afterId = message.getId();
+                    if (message.getContent() == null || message.getContent().isBlank()) {
+                        continue;
+                    }
+                    Entry entry = Entry.store(message.getId(), new ContextTurn(
+                            message.getConversation().getId().toString(), message.getContent(), senderOf(message)));
+                    // Blocking here paces the backfill to what the store can absorb
+                    while (!queue.offer(entry, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (closed) {
+                            return;
+                        }
+                    }
+                    backfilled.increment();
+                    total++;
+                }
+            }
+            log.info("Context backfill queued {} messages", total);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Context backfill stopped after {} messages: {}", total, e.getMessage());
+        }
+    }
+
+    private static String senderOf(Message message) {
+        if (message.getMessageType() == Message.MessageType.AI || message.getSender() == null) {
+            return ArtivioPrompts.ASSISTANT_NAME;
+        }
+        return message.getSender().getDisplayName();
+    }
+
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(properties.getMaxBatchSize());
+        while (true) {
+            try {
+                Entry first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fill(List<Entry> batch) throws InterruptedException {
+        int maxBatchSize = properties.getMaxBatchSize();
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /** Stores the batch's turns in order, clearing conversations where a clear was queued. */
+    private void flush(List<Entry> batch) {
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).turn() == null) {
+                store(batch.subList(from, i));
+                clearNow(batch.get(i).clearedConversationId());
+                from = i + 1;
+            }
+        }
+        store(batch.subList(from, batch.size()));
+    }
+
+    private void clearNow(String conversationId) {
+        try {
+            contextService.clearConversationContext(conversationId);
+        } catch (Exception e) {
+            log.warn("Failed to clear context for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    private void store(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            contextService.storeConversationContexts(batch.stream().map(Entry::turn).toList());
+            if (durable) {
+                List<Long> ids = batch.stream().map(Entry::messageId).filter(Objects::nonNull).toList();
+                if (!ids.isEmpty()) {
+                    messageRepository.markEmbeddingStored(ids);
+                }
+            }
+            batchSizes.record(batch.size());
+        } catch (Exception e) {
+            failed.increment(batch.size());
+            log.warn("Failed to store {} context turns, leaving them for the backfill: {}",
+                    batch.size(), e.getMessage());
+        } finally {
+            batchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Stops accepting turns and gives the worker a moment to store what is already queued. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.lexical.Terms;
+import com.klakar.artivio.config.AIProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Merges the snippets of several retrievers into one ranking that weighs relevance against
+ * recency.
+ * <p>
+ * Each retriever's scores are divided by its best score, so BM25 and cosine similarities become
+ * comparable, and scaled by the retriever's weight. A turn returned by several retrievers keeps
+ * its best relevance. Recency is 1 for the newest candidate and halves every
+ * {@code recencyHalfLife} candidates from there; counting candidates rather than minutes keeps the
+ * setting meaningful whether turns are seconds or days apart. The final score is
+ * {@code senderWeight * (relevanceWeight * relevance + recencyWeight * recency)}.
+ * <p>
+ * Near-identical snippets ("thanks!" twice, a question asked again) are collapsed to the
+ * best-scoring one before the {@code maxResults} best are returned, so they do not take up the
+ * token budget twice.
+ */
+public class ContextReranker {
+
+    /** The snippets one retriever returned for the query. */
+    public record Candidates(String retriever, double weight, List<ContextSnippet> snippets) {
+    }
+
+    private final AIProperties.Context.Hybrid properties;
+
+    public ContextReranker(AIProperties.Context.Hybrid properties) {
+        if (properties.getRecencyHalfLife() <= 0) {
+            throw new IllegalArgumentException("recency-half-life must be positive");
+        }
+        this.properties = properties;
+    }
+
+    /** The {@code maxResults} best distinct snippets, best first, with their combined score. */
+    public List<ContextSnippet> rerank(List<Candidates> candidates, int maxResults) {
+        List<Candidate> merged = merge(candidates);
+        if (merged.isEmpty() || maxResults < 1) {
+            return List.of();
+        }
+
+        merged.sort(Comparator.comparingLong((Candidate candidate) -> candidate.snippet.timestamp()).reversed());
+        int position = 0;
+        for (int i = 0; i < merged.size(); i++) {
+            Candidate candidate = merged.get(i);
+            // Turns stored in the same millisecond are equally recent
+            if (i > 0 && candidate.snippet.timestamp() != merged.get(i - 1).snippet.timestamp()) {
+                position = i;
+            }
+            double recency = Math.pow(0.5, position / properties.getRecencyHalfLife());
+            double senderWeight = ArtivioPrompts.ASSISTANT_NAME.equals(candidate.snippet.sender())
+                    ? properties.getAssistantWeight() : 1.0;
+            candidate.score = senderWeight * (properties.getRelevanceWeight() * candidate.relevance
+                    + properties.getRecencyWeight() * recency);
+        }
+
+        merged.sort(Comparator.comparingDouble((Candidate candidate) -> candidate.score).reversed());
+        List<Candidate> kept = new ArrayList<>(Math.min(maxResults, merged.size()));
+        for (Candidate candidate : merged) {
+            if (kept.size() == maxResults) {
+                break;
+            }
+            if (!duplicatesAny(candidate, kept)) {
+                kept.add(candidate);
+            }
+        }
+
+        List<ContextSnippet> ranked = new ArrayList<>(kept.size());
+        for (Candidate candidate : kept) {
+            ranked.add(candidate.snippet.withScore(candidate.score));
+        }
+        return ranked;
+    }
+
+    /** One candidate per distinct sender and text, with its best weighted, normalized score. */
+    private static List<Candidate> merge(List<Candidates> candidates) {
+        Map<Key, Candidate> bySenderAndText = new HashMap<>();
+        List<Candidate> merged = new ArrayList<>();
+        for (Candidates retrieved : candidates) {
+            double best = 0;
+            for (ContextSnippet snippet : retrieved.snippets()) {
+                best = Math.max(best, snippet.score());
+            }
+            for (ContextSnippet snippet : retrieved.snippets()) {
+                double relevance = best > 0 ? retrieved.weight() * Math.max(0, snippet.score()) / best : 0;
+                long[] words = Terms.distinct(snippet.text());
+                Key key = new Key(snippet.sender(), Arrays.hashCode(words), words);
+                Candidate candidate = bySenderAndText.get(key);
+                if (candidate == null) {
+                    candidate = new Candidate(snippet, words);
+                    bySenderAndText.put(key, candidate);
+                    merged.add(candidate);
+                } else if (snippet.timestamp() > candidate.snippet.timestamp()) {
+                    // Every store stamps turns itself; keep the newest stamp
+                    candidate.snippet = snippet;
+                }
+                candidate.relevance = Math.max(candidate.relevance, relevance);
+            }
+        }
+        return merged;
+    }
+
+    private boolean duplicatesAny(Candidate candidate, List<Candidate> kept) {
+        for (Candidate other : kept) {
+            if (jaccard(candidate.wordSet, other.wordSet) >= properties.getDuplicateThreshold()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Share of words two sorted, distinct word hash arrays have in common. */
+    static double jaccard(long[] a, long[] b) {
+        if (a.length == 0 && b.length == 0) {
+            return 1;
+        }
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    /** Sender and word set of a snippet; snippets differing only in case or punctuation share one. */
+    private record Key(String sender, int hash, long[] words) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Objects.equals(sender, other.sender)
+                    && Arrays.equals(words, other.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hash + Objects.hashCode(sender);
+        }
+    }
+
+    private static final class Candidate {
+
+        ContextSnippet snippet;
+        final long[] wordSet;
+        double relevance;
+        double score;
+
+        Candidate(ContextSnippet snippet, long[] wordSet) {
+            this.snippet = snippet;
+            this.wordSet = wordSet;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.klakar.artivio.ai.context;
+
+import java.util.List;
+
+/**
+ * One stored conversation turn returned by an {@link com.klakar.artivio.service.AIContextService}.
+ *
+ * @param text      message content
+ * @param sender    display name of the author, or {@link com.klakar.artivio.ai.ArtivioPrompts#ASSISTANT_NAME}
+ * @param timestamp epoch millis when the turn was stored
+ * @param score     relevance to the current query, higher is better; 0 when the store does not rank
+ */
+public record ContextSnippet(String text, String sender, long timestamp, double score) {
+
+    public ContextSnippet withText(String text) {
+        return new ContextSnippet(text, sender, timestamp, score);
+    }
+
+    public ContextSnippet withScore(double score) {
+        return new ContextSnippet(text, sender, timestamp, score);
+    }
+
+    /** The line this snippet contributes to the prompt. */
+    public String format() {
+        return "[" + sender + "]: " + text;
+    }
+
+    /** The snippets as one context block, one line each. */
+    public static String formatAll(List<ContextSnippet> snippets) {
+        StringBuilder context = new StringBuilder();
+        for (ContextSnippet snippet : snippets) {
+            context.append(snippet.format()).append('\n');
+        }
+        return context.toString().trim();
+    }
+}
@@ -0,0 +1,9 @@
+package com.klakar.artivio.ai.context;
+
+/**
+ * A conversation turn on its way into an {@link com.klakar.artivio.service.AIContextService}.
+ *
+ * @param sender display name of the author, or {@link com.klakar.artivio.ai.ArtivioPrompts#ASSISTANT_NAME}
+ */
+public record ContextTurn(String conversationId, String content, String sender) {
+}
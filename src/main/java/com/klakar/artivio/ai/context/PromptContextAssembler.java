@@ -0,0 +1,123 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.config.AIProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Turns stored conversation snippets into the context block of a prompt without exceeding the
+ * configured input-token budget.
+ * <p>
+ * The newest turns are taken first, then the remaining snippets by relevance. A snippet that does
+ * not fit is cut down to the space left if that is still worth sending, otherwise dropped. The
+ * selected snippets are returned in chronological order.
+ */
+@Slf4j
+public class PromptContextAssembler {
+
+    private static final String TRUNCATION_MARK = "…";
+    private static final int MIN_TRUNCATED_TOKENS = 16;
+
+    private static final Comparator<ContextSnippet> NEWEST_FIRST =
+            Comparator.comparingLong(ContextSnippet::timestamp).reversed();
+    private static final Comparator<ContextSnippet> MOST_RELEVANT_FIRST =
+            Comparator.comparingDouble(ContextSnippet::score).reversed().thenComparing(NEWEST_FIRST);
+
+    private final TokenEstimator tokenEstimator;
+    private final AIProperties.Context properties;
+
+    public PromptContextAssembler(TokenEstimator tokenEstimator, AIProperties.Context properties) {
+        this.tokenEstimator = tokenEstimator;
+        this.properties = properties;
+    }
+
+    /** How many snippets to ask the context store for; the budget decides how many are used. */
+    public int getMaxSnippets() {
+        return properties.getMaxSnippets();
+    }
+
+    public String assemble(String userMessage, List<ContextSnippet> snippets) {
+        return ContextSnippet.formatAll(select(userMessage, snippets));
+    }
+
+    /** The snippets that fit the budget, possibly truncated, in chronological order. */
+    public List<ContextSnippet> select(String userMessage, List<ContextSnippet> snippets) {
+        int budget = properties.getMaxInputTokens() - properties.getReservedTokens()
+                - tokenEstimator.estimate(userMessage);
+        if (budget <= 0 || snippets == null || snippets.isEmpty()) {
+            return List.of();
+        }
+
+        List<ContextSnippet> ordered = prioritize(userMessage, snippets);
+        List<ContextSnippet> selected = new ArrayList<>();
+        int remaining = budget;
+        int dropped = 0;
+
+        for (ContextSnippet snippet : ordered) {
+            int cost = cost(snippet);
+            if (cost <= remaining) {
+                selected.add(snippet);
+                remaining -= cost;
+                continue;
+            }
+
+            ContextSnippet truncated = remaining >= MIN_TRUNCATED_TOKENS ? truncate(snippet, remaining) : null;
+            if (truncated != null) {
+                selected.add(truncated);
+                remaining -= cost(truncated);
+            } else {
+                dropped++;
+            }
+        }
+
+        selected.sort(Comparator.comparingLong(ContextSnippet::timestamp));
+        log.debug("Assembled {} of {} context snippets using {} of {} tokens ({} dropped)",
+                selected.size(), ordered.size(), budget - remaining, budget, dropped);
+        return selected;
+    }
+
+    /**
+     * Newest turns first, then the rest by relevance. The newest snippet is skipped when it is the
+     * message being answered: turns are stored in the background, so it may or may not have
+     * reached the store by the time the response is generated.
+     */
+    private List<ContextSnippet> prioritize(String userMessage, List<ContextSnippet> snippets) {
+        List<ContextSnippet> byRecency = new ArrayList<>(snippets);
+        byRecency.sort(NEWEST_FIRST);
+        if (userMessage != null && byRecency.get(0).text().trim().equals(userMessage.trim())) {
+            byRecency.remove(0);
+        }
+
+        int recent = Math.min(properties.getRecentTurns(), byRecency.size());
+        List<ContextSnippet> ordered = new ArrayList<>(byRecency.subList(0, recent));
+        List<ContextSnippet> rest = new ArrayList<>(byRecency.subList(recent, byRecency.size()));
+        rest.sort(MOST_RELEVANT_FIRST);
+        ordered.addAll(rest);
+        return ordered;
+    }
+
+    private ContextSnippet truncate(ContextSnippet snippet, int tokens) {
+        String text = snippet.text();
+        int length = Math.min(text.length(), tokenEstimator.charsFor(tokens));
+        while (length > 0) {
+            if (Character.isHighSurrogate(text.charAt(length - 1))) {
+                length--;
+                continue;
+            }
+            ContextSnippet truncated = snippet.withText(text.substring(0, length).trim() + TRUNCATION_MARK);
+            if (cost(truncated) <= tokens) {
+                return truncated;
+            }
+            length = length * 3 / 4;
+        }
+        return null;
+    }
+
+    private int cost(ContextSnippet snippet) {
+        // One extra token for the line break between snippets
+        return tokenEstimator.estimate(snippet.format()) + 1;
+    }
+}
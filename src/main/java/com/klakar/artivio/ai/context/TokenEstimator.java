@@ -0,0 +1,55 @@
+package com.klakar.artivio.ai.context;
+
+/**
+ * Cheap, allocation-free approximation of how many tokens the provider will count for a text.
+ * <p>
+ * ASCII runs at {@code charsPerToken} (about 4 for English), two-byte scripts such as accented
+ * Latin or Cyrillic at half that, and CJK characters or emoji at one token each. Compare the
+ * {@code ai.prompt.tokens} metrics against provider-reported usage and adjust
+ * {@code app.ai.context.chars-per-token} when they drift apart.
+ */
+public class TokenEstimator {
+
+    private final double charsPerToken;
+
+    public TokenEstimator(double charsPerToken) {
+        if (charsPerToken <= 0) {
+            throw new IllegalArgumentException("charsPerToken must be positive");
+        }
+        this.charsPerToken = charsPerToken;
+    }
+
+    public int estimate(CharSequence text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        int narrow = 0;
+        int wide = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                narrow++;
+            } else if (c < 0x800) {
+                narrow += 2;
+            } else {
+                wide++;
+                if (Character.isHighSurrogate(c)) {
+                    i++;
+                }
+            }
+        }
+        return (int) Math.ceil(narrow / charsPerToken) + wide;
+    }
+
+    /** Estimate from a length alone, for text that is no longer at hand. */
+    public int estimateFromLength(long chars) {
+        return (int) Math.ceil(chars / charsPerToken);
+    }
+
+    /** Number of ASCII characters that fit in the given number of tokens. */
+    public int charsFor(int tokens) {
+        return (int) (tokens * charsPerToken);
+    }
+}
@@ -0,0 +1,184 @@
+package com.klakar.artivio.ai.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeds each distinct text once per model. Vectors are kept by {@link ContentHash} of model id
+ * and text in a byte-bounded in-memory cache and, optionally, in a {@link MappedEmbeddingCache}
+ * file that survives restarts. Only texts found in neither are passed to the wrapped service, in
+ * one {@link #embedAll} call per batch.
+ */
+@Slf4j
+public class CachingEmbeddingService implements EmbeddingService, AutoCloseable {
+
+    // Key, array header and map entry, roughly
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final EmbeddingService delegate;
+    private final Cache<ContentHash, float[]> memory;
+    private final MappedEmbeddingCache disk;
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter savedCalls;
+
+    public CachingEmbeddingService(EmbeddingService delegate, AIProperties.Embedding.Cache properties,
+                                   MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((ContentHash key, float[] vector) -> ENTRY_OVERHEAD_BYTES + vector.length * Float.BYTES)
+                .build();
+        this.disk = properties.getDisk().isEnabled() ? openDisk(delegate, properties.getDisk()) : null;
+
+        this.memoryHits = lookups("memory", meterRegistry);
+        this.diskHits = lookups("disk", meterRegistry);
+        this.misses = lookups("miss", meterRegistry);
+        this.savedCalls = Counter.builder("ai.embedding.cache.saved.calls")
+                .description("Embedding calls not made because every text was cached")
+                .register(meterRegistry);
+        Gauge.builder("ai.embedding.cache.hit.ratio", this, CachingEmbeddingService::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("ai.embedding.cache.bytes", memory,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static MappedEmbeddingCache openDisk(EmbeddingService delegate, AIProperties.Embedding.Cache.Disk disk) {
+        try {
+            return new MappedEmbeddingCache(Path.of(disk.getPath()), delegate.model(), delegate.dimensions(),
+                    disk.getMaxEntries());
+        } catch (IOException e) {
+            log.error("Could not open embedding cache file {}, caching in memory only: {}", disk.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Counter lookups(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("ai.embedding.cache.lookups")
+                .description("Embedding cache lookups by where the vector was found")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String model() {
+        return delegate.model();
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        ContentHash key = ContentHash.of(delegate.model(), text);
+        float[] vector = lookup(key);
+        if (vector != null) {
+            savedCalls.increment();
+            return vector.clone();
+        }
+        vector = delegate.embed(text);
+        store(key, vector);
+        return vector;
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) {
+        String model = delegate.model();
+        float[][] vectors = new float[texts.size()][];
+        // Texts to embed, each once, with the positions that want it
+        Map<ContentHash, List<Integer>> missing = new LinkedHashMap<>();
+        List<String> missingTexts = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            ContentHash key = ContentHash.of(model, texts.get(i));
+            List<Integer> positions = missing.get(key);
+            if (positions != null) {
+                positions.add(i);
+                continue;
+            }
+            float[] vector = lookup(key);
+            if (vector != null) {
+                vectors[i] = vector.clone();
+            } else {
+                missing.put(key, new ArrayList<>(List.of(i)));
+                missingTexts.add(texts.get(i));
+            }
+        }
+
+        if (missingTexts.isEmpty()) {
+            savedCalls.increment();
+            return Arrays.asList(vectors);
+        }
+        List<float[]> embedded = delegate.embedAll(missingTexts);
+        int next = 0;
+        for (Map.Entry<ContentHash, List<Integer>> entry : missing.entrySet()) {
+            float[] vector = embedded.get(next++);
+            store(entry.getKey(), vector);
+            for (int position : entry.getValue()) {
+                vectors[position] = vector;
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    private float[] lookup(ContentHash key) {
+        float[] vector = memory.getIfPresent(key);
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        if (disk != null) {
+            vector = disk.get(key);
+            if (vector != null) {
+                diskHits.increment();
+                memory.put(key, vector);
+                return vector;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void store(ContentHash key, float[] vector) {
+        float[] copy = vector.clone();
+        memory.put(key, copy);
+        if (disk != null) {
+            disk.put(key, copy);
+        }
+    }
+
+    double hitRatio() {
+        double hits = memoryHits.count() + diskHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    @Override
+    public void close() {
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.close();
+        } catch (IOException e) {
+            log.warn("Could not close embedding cache file: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.klakar.artivio.ai.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * First 128 bits of the SHA-256 of model id and text. Never all zero, so a zero key can mark an
+ * empty slot.
+ */
+record ContentHash(long high, long low) {
+
+    static ContentHash of(String model, String text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        return new ContentHash(hash.getLong(), hash.getLong() | 1);
+    }
+}
@@ -0,0 +1,27 @@
+package com.klakar.artivio.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns text into fixed-length vectors whose cosine similarity reflects how related the texts are.
+ * Calls block, so keep them off event-loop threads.
+ */
+public interface EmbeddingService {
+
+    /** Identifies the vector space; vectors from different models must never be compared. */
+    String model();
+
+    int dimensions();
+
+    float[] embed(String text);
+
+    /** Embeds several texts, in order; implementations batch upstream calls where they can. */
+    default List<float[]> embedAll(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
+}
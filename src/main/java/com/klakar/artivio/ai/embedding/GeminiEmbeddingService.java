@@ -0,0 +1,103 @@
+package com.klakar.artivio.ai.embedding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.config.GeminiProperties;
+import com.klakar.artivio.service.AIServiceException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gemini embedding model ({@code text-embedding-004} by default) over the shared provider client.
+ * Texts are sent through {@code batchEmbedContents}, up to {@code max-batch-size} per call.
+ */
+@Slf4j
+public class GeminiEmbeddingService implements EmbeddingService {
+
+    private static final String BATCH_EMBED_PATH = "/models/{model}:batchEmbedContents";
+
+    private final WebClient geminiWebClient;
+    private final GeminiProperties geminiProperties;
+    private final AIProperties.Embedding properties;
+    private final Timer latency;
+
+    public GeminiEmbeddingService(WebClient geminiWebClient, GeminiProperties geminiProperties,
+                                  AIProperties.Embedding properties, MeterRegistry meterRegistry) {
+        this.geminiWebClient = geminiWebClient;
+        this.geminiProperties = geminiProperties;
+        this.properties = properties;
+        this.latency = Timer.builder("ai.embedding.duration")
+                .description("Time per embedding request to the provider")
+                .tag("model", properties.getModel())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String model() {
+        return properties.getModel() + "/" + properties.getDimensions();
+    }
+
+    @Override
+    public int dimensions() {
+        return properties.getDimensions();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return embedAll(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        int batchSize = Math.max(1, properties.getMaxBatchSize());
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            vectors.addAll(batch(texts.subList(from, Math.min(texts.size(), from + batchSize))));
+        }
+        return vectors;
+    }
+
+    private List<float[]> batch(List<String> texts) {
+        String model = "models/" + properties.getModel();
+        List<Map<String, Object>> requests = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            requests.add(Map.of(
+                    "model", model,
+                    "content", Map.of("parts", List.of(Map.of("text", text))),
+                    "outputDimensionality", properties.getDimensions()
+            ));
+        }
+
+        JsonNode response = latency.record(() -> geminiWebClient.post()
+                .uri(BATCH_EMBED_PATH, properties.getModel())
+                .header("Content-Type", "application/json")
+                .header("x-goog-api-key", geminiProperties.getApiKey())
+                .bodyValue(Map.of("requests", requests))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .block(properties.getTimeout()));
+
+        JsonNode embeddings = response != null ? response.path("embeddings") : null;
+        if (embeddings == null || embeddings.size() != texts.size()) {
+            throw new AIServiceException("Embedding response did not match the request");
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (JsonNode embedding : embeddings) {
+            JsonNode values = embedding.path("values");
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) values.get(i).asDouble();
+            }
+            vectors.add(vector);
+        }
+        log.debug("Embedded {} texts with {}", texts.size(), properties.getModel());
+        return vectors;
+    }
+}
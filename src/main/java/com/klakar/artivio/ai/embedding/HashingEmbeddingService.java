@@ -0,0 +1,99 @@
+package com.klakar.artivio.ai.embedding;
+
+import java.util.Locale;
+
+/**
+ * Embeddings without a model: words and their character trigrams are hashed into a fixed number
+ * of signed buckets and the result is scaled to unit length. Texts sharing words or word stems
+ * ("paint", "painting") end up close; synonyms do not. Useful offline, in tests and benchmarks, or
+ * as a cheap lexical signal next to a real model.
+ */
+public class HashingEmbeddingService implements EmbeddingService {
+
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+
+    private final int dimensions;
+
+    public HashingEmbeddingService(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String model() {
+        return "hashing-" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                addWord(vector, normalized, start, i);
+                start = -1;
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private void addWord(float[] vector, String text, int start, int end) {
+        add(vector, hash(text, start, end), 1f);
+        // Boundary markers make "art" in "artist" differ from a standalone "art"
+        for (int i = start - 1; i + 3 <= end + 1; i++) {
+            int h = 0x9E3779B9;
+            for (int j = i; j < i + 3; j++) {
+                char c = j < start || j >= end ? '#' : text.charAt(j);
+                h = (h ^ c) * 0x01000193;
+            }
+            add(vector, mix(h), TRIGRAM_WEIGHT);
+        }
+    }
+
+    private void add(float[] vector, int hash, float weight) {
+        // One hash picks both the bucket and the sign, so collisions cancel out on average
+        vector[Math.floorMod(hash, dimensions)] += (hash & 0x80000000) == 0 ? weight : -weight;
+    }
+
+    private static int hash(String text, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x01000193;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ h >>> 16;
+    }
+
+    private static void normalize(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        if (sum == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.klakar.artivio.ai.embedding;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Embeddings in a memory-mapped file, so they outlive the process. The file is a fixed-size hash
+ * table: a header, then {@code capacity} slots of key and vector. A key is looked for in
+ * {@value #PROBES} consecutive slots from its home slot; when all are taken by other keys, the
+ * home slot is overwritten. Old entries are therefore lost at random once the table fills up,
+ * which is fine for a cache.
+ * <p>
+ * A file written for another model, dimension count or capacity is cleared on open.
+ */
+@Slf4j
+final class MappedEmbeddingCache implements AutoCloseable {
+
+    private static final int MAGIC = 0x41525645;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int KEY_BYTES = 16;
+    private static final int PROBES = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int dimensions;
+    private final int capacity;
+    private final int slotBytes;
+
+    MappedEmbeddingCache(Path path, String model, int dimensions, int capacity) throws IOException {
+        this.dimensions = dimensions;
+        this.capacity = capacity;
+        this.slotBytes = KEY_BYTES + dimensions * Float.BYTES;
+        long size = HEADER_BYTES + (long) capacity * slotBytes;
+        if (capacity < 1 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Embedding cache file must hold 1 to "
+                    + (Integer.MAX_VALUE - HEADER_BYTES) / slotBytes + " entries");
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long modelHash = ContentHash.of(model, "").high();
+        boolean matches = channel.size() == size && headerMatches(modelHash);
+        if (!matches && channel.size() > 0) {
+            log.info("Embedding cache {} was written for another model or size, starting empty", path);
+            channel.truncate(0);
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+        if (!matches) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, dimensions);
+            buffer.putInt(12, capacity);
+            buffer.putLong(16, modelHash);
+        }
+    }
+
+    private boolean headerMatches(long modelHash) throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        header.order(ByteOrder.nativeOrder());
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION && header.getInt(8) == dimensions
+                && header.getInt(12) == capacity && header.getLong(16) == modelHash;
+    }
+
+    synchronized float[] get(ContentHash key) {
+        int slot = find(key);
+        if (slot < 0 || !holds(slot, key)) {
+            return null;
+        }
+        float[] vector = new float[dimensions];
+        int offset = offset(slot) + KEY_BYTES;
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = buffer.getFloat(offset + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    synchronized void put(ContentHash key, float[] vector) {
+        int slot = find(key);
+        if (slot < 0) {
+            slot = home(key);
+        }
+        int offset = offset(slot);
+        // Clear the key first, so a crash mid-write leaves an empty slot rather than a wrong vector
+        buffer.putLong(offset, 0);
+        buffer.putLong(offset + 8, 0);
+        for (int i = 0; i < dimensions; i++) {
+            buffer.putFloat(offset + KEY_BYTES + i * Float.BYTES, vector[i]);
+        }
+        buffer.putLong(offset + 8, key.low());
+        buffer.putLong(offset, key.high());
+    }
+
+    /** The slot holding {@code key}, else the first empty one in its probe window, else -1. */
+    private int find(ContentHash key) {
+        int slot = home(key);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int offset = offset(slot);
+            long high = buffer.getLong(offset);
+            long low = buffer.getLong(offset + 8);
+            if ((high == 0 && low == 0) || (high == key.high() && low == key.low())) {
+                return slot;
+            }
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+        return -1;
+    }
+
+    private boolean holds(int slot, ContentHash key) {
+        int offset = offset(slot);
+        return buffer.getLong(offset) == key.high() && buffer.getLong(offset + 8) == key.low();
+    }
+
+    private int home(ContentHash key) {
+        return (int) Math.floorMod(key.high() ^ key.low(), (long) capacity);
+    }
+
+    private int offset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    /** Slots in use; walks the whole file, so meant for tests and diagnostics. */
+    synchronized int size() {
+        int used = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            if (buffer.getLong(offset) != 0 || buffer.getLong(offset + 8) != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
+import com.klakar.artivio.ai.usage.AIUsageTracker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timing and {@code usageMetadata} of upstream Gemini calls, published as meters tagged by model
+ * and summed per user and conversation in the {@link AIUsageTracker}.
+ * <p>
+ * Meters:
+ * <ul>
+ *     <li>{@code ai.provider.ttfb{mode}}: request sent until the first body bytes (generate) or
+ *     the first event (stream) arrive</li>
+ *     <li>{@code ai.provider.duration{mode,outcome}}: request sent until the response ended</li>
+ *     <li>{@code ai.completion.tokens}: reported {@code candidatesTokenCount}</li>
+ *     <li>{@code ai.finish.reasons{reason}}: why generation stopped, e.g. {@code stop},
+ *     {@code max_tokens} or {@code safety}</li>
+ * </ul>
+ * Prompt tokens are recorded by the client itself as {@code ai.prompt.tokens}, next to its estimate.
+ */
+public class GeminiCallTelemetry {
+
+    public static final String GENERATE = "generate";
+    public static final String STREAM = "stream";
+
+    private final String model;
+    private final MeterRegistry meterRegistry;
+    private final AIUsageTracker usageTracker;
+    private final DistributionSummary completionTokens;
+
+    public GeminiCallTelemetry(String model, MeterRegistry meterRegistry, AIUsageTracker usageTracker) {
+        this.model = model;
+        this.meterRegistry = meterRegistry;
+        this.usageTracker = usageTracker;
+        this.completionTokens = DistributionSummary.builder("ai.completion.tokens")
+                .description("Generated tokens per provider call")
+                .tag("model", model)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts timing one call; call it right before the request is sent.
+     *
+     * @param conversationId the conversation the call belongs to, or {@code null}
+     */
+    public Call start(String mode, AIRequestContext request, String conversationId) {
+        return new Call(mode, request.owner(), conversationId);
+    }
+
+    private Timer ttfb(String mode) {
+        return Timer.builder("ai.provider.ttfb")
+                .description("Time from sending a provider request to the first response bytes")
+                .tag("model", model)
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private Timer duration(String mode, String outcome) {
+        return Timer.builder("ai.provider.duration")
+                .description("Time from sending a provider request until the response ended")
+                .tag("model", model)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    /** One upstream call. All methods may be called from any thread; only the first end counts. */
+    public final class Call {
+
+        private final String mode;
+        private final String owner;
+        private final String conversationId;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean firstByte = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        // Latest values reported; stream events repeat usage with growing counts
+        private volatile int promptTokens;
+        private volatile int cachedTokens;
+        private volatile int candidatesTokens;
+        private volatile String finishReason;
+
+        private Call(String mode, String owner, String conversationId) {
+            this.mode = mode;
+            this.owner = owner;
+            this.conversationId = conversationId;
+        }
+
+        public int promptTokens() {
+            return promptTokens;
+        }
+
+        public int cachedTokens() {
+            return cachedTokens;
+        }
+
+        public void onFirstByte() {
+            if (firstByte.compareAndSet(false, true)) {
+                ttfb(mode).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void onResponse(GeminiResponse response) {
+            if (response.promptTokenCount() > 0) {
+                promptTokens = response.promptTokenCount();
+                cachedTokens = response.cachedTokenCount();
+            }
+            if (response.candidatesTokenCount() > 0) {
+                candidatesTokens = response.candidatesTokenCount();
+            }
+            if (response.finishReason() != null) {
+                finishReason = response.finishReason();
+            }
+        }
+
+        public void onComplete() {
+            end("success", false);
+        }
+
+        public void onError() {
+            end("error", true);
+        }
+
+        /** The caller went away; tokens reported so far are still counted. */
+        public void onCancel() {
+            end("cancelled", false);
+        }
+
+        private void end(String outcome, boolean failed) {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            duration(mode, outcome).record(elapsed, TimeUnit.NANOSECONDS);
+            if (candidatesTokens > 0) {
+                completionTokens.record(candidatesTokens);
+            }
+            if (finishReason != null) {
+                meterRegistry.counter("ai.finish.reasons",
+                        "model", model, "reason", finishReason.toLowerCase(Locale.ROOT)).increment();
+            }
+            usageTracker.record(owner, conversationId, new AIUsageTracker.Sample(
+                    promptTokens, cachedTokens, candidatesTokens, elapsed, failed));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.context.ContextSnippet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One entry of a Gemini {@code contents} array: a turn by the user or the model.
+ * Serializes to {@code {"role": ..., "parts": [{"text": ...}, ...]}}.
+ */
+public record GeminiContent(String role, List<Part> parts) {
+
+    public static final String USER = "user";
+    public static final String MODEL = "model";
+
+    public record Part(String text) {
+    }
+
+    /**
+     * Maps stored turns plus the new message to alternating contents. AI turns become model turns;
+     * everything else (other participants, summaries) is user input labelled with its sender, and
+     * consecutive turns of the same role share one content entry.
+     */
+    public static List<GeminiContent> of(List<ContextSnippet> history, String message) {
+        List<GeminiContent> contents = new ArrayList<>();
+        String role = null;
+        List<Part> parts = null;
+        for (ContextSnippet snippet : history) {
+            boolean model = ArtivioPrompts.ASSISTANT_NAME.equals(snippet.sender());
+            String snippetRole = model ? MODEL : USER;
+            if (!snippetRole.equals(role)) {
+                if (parts != null) {
+                    contents.add(new GeminiContent(role, List.copyOf(parts)));
+                }
+                role = snippetRole;
+                parts = new ArrayList<>();
+            }
+            parts.add(new Part(model ? snippet.text() : snippet.format()));
+        }
+
+        if (USER.equals(role)) {
+            parts.add(new Part(message));
+            contents.add(new GeminiContent(USER, List.copyOf(parts)));
+        } else {
+            if (parts != null) {
+                contents.add(new GeminiContent(role, List.copyOf(parts)));
+            }
+            contents.add(new GeminiContent(USER, List.of(new Part(message))));
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,370 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.config.GeminiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-conversation handles on Gemini cached content ({@code cachedContents}), so long
+ * conversations stop sending, and paying full processing for, the same earlier turns every time.
+ * <p>
+ * A cache holds the system instruction plus a prefix of the conversation that ends on a model
+ * turn. A request may use it while its own contents still start with exactly that prefix; it then
+ * sends only the turns after it. Caches are created in the background once the prefix is worth
+ * caching, so the turn that triggers creation is sent in full and is not slowed down. A cache is
+ * replaced by a longer one once the uncached tail grows past the same threshold. Its TTL is
+ * extended when it is used close to expiry. Caches that are replaced or evicted are deleted on
+ * the server; expired ones are left for the server to drop.
+ */
+@Slf4j
+public class GeminiContextCache {
+
+    // Stop using a cache this long before the server expires it
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(30);
+    private static final String CACHED_CONTENTS_PATH = "/cachedContents";
+
+    /**
+     * How to send one request.
+     *
+     * @param cachedContent cache handle to reference, or {@code null} to send everything
+     * @param contents      the turns to put in the request body
+     */
+    public record Plan(String cachedContent, List<GeminiContent> contents) {
+    }
+
+    /** A cache handle, or with a {@code null} name a marker that creating one recently failed. */
+    private record Entry(String name, int prefixLength, long prefixHash, Instant expireTime) {
+
+        Entry withExpireTime(Instant expireTime) {
+            return new Entry(name, prefixLength, prefixHash, expireTime);
+        }
+    }
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final GeminiProperties geminiProperties;
+    private final GeminiProperties.ContextCache properties;
+    private final Map<String, Object> systemInstruction;
+    private final TokenEstimator tokenEstimator;
+    private final int systemInstructionTokens;
+
+    private final Cache<String, Entry> entries;
+    private final Set<String> creating = ConcurrentHashMap.newKeySet();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final MeterRegistry meterRegistry;
+
+    public GeminiContextCache(WebClient webClient,
+                              ObjectMapper objectMapper,
+                              GeminiProperties geminiProperties,
+                              Map<String, Object> systemInstruction,
+                              TokenEstimator tokenEstimator,
+                              MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.geminiProperties = geminiProperties;
+        this.properties = geminiProperties.getContextCache();
+        this.systemInstruction = systemInstruction;
+        this.tokenEstimator = tokenEstimator;
+        this.systemInstructionTokens = tokenEstimator.estimate(ArtivioPrompts.SYSTEM_PREAMBLE);
+        this.meterRegistry = meterRegistry;
+
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxEntries())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return nanosUntilUnusable(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return nanosUntilUnusable(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((String conversationId, Entry entry, RemovalCause cause) -> {
+                    if (entry == null || entry.name() == null) {
+                        return;
+                    }
+                    if (cause == RemovalCause.SIZE) {
+                        delete(entry.name());
+                    } else if (cause == RemovalCause.EXPIRED) {
+                        event("expired");
+                    }
+                })
+                .build();
+
+        String model = geminiProperties.getModel();
+        this.hits = Counter.builder("ai.gemini.context.cache.lookups")
+                .description("Multi-turn requests that could use cached content")
+                .tag("model", model)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ai.gemini.context.cache.lookups")
+                .description("Multi-turn requests that could use cached content")
+                .tag("model", model)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("ai.gemini.context.cache.entries", entries, Cache::estimatedSize)
+                .tag("model", model)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decides whether a request can reference cached content, and starts creating or extending
+     * caches in the background where worthwhile.
+     *
+     * @param contents the full multi-turn contents, ending with the new user message
+     */
+    public Plan plan(String conversationId, List<GeminiContent> contents) {
+        Plan uncached = new Plan(null, contents);
+        int prefixLength = cacheablePrefixLength(contents);
+        if (conversationId == null || prefixLength == 0) {
+            return uncached;
+        }
+
+        Entry entry = entries.getIfPresent(conversationId);
+        if (entry != null && entry.name() == null) {
+            // Creating one failed recently
+            return uncached;
+        }
+
+        if (entry != null && entry.prefixLength() <= prefixLength
+                && entry.prefixHash() == hash(contents, entry.prefixLength())) {
+            hits.increment();
+            refreshIfExpiring(conversationId, entry);
+            if (estimate(contents, entry.prefixLength(), prefixLength) >= properties.getMinTokens()) {
+                create(conversationId, contents.subList(0, prefixLength));
+            }
+            return new Plan(entry.name(), contents.subList(entry.prefixLength(), contents.size()));
+        }
+
+        if (systemInstructionTokens + estimate(contents, 0, prefixLength) < properties.getMinTokens()) {
+            return uncached;
+        }
+        misses.increment();
+        create(conversationId, contents.subList(0, prefixLength));
+        return uncached;
+    }
+
+    /** Forgets a handle the server no longer accepts, e.g. after it expired early. */
+    public void invalidate(String conversationId, String name) {
+        Entry removed = entries.asMap().computeIfPresent(conversationId,
+                (key, entry) -> name.equals(entry.name()) ? null : entry);
+        if (removed == null) {
+            event("invalidated");
+            log.debug("Cached content {} of conversation {} was rejected, dropping it", name, conversationId);
+        }
+    }
+
+    /** Drops and deletes the conversation's cache, e.g. when the conversation is deleted. */
+    public void evict(String conversationId) {
+        Entry entry = entries.asMap().remove(conversationId);
+        if (entry != null && entry.name() != null) {
+            delete(entry.name());
+        }
+    }
+
+    private void create(String conversationId, List<GeminiContent> prefix) {
+        if (!creating.add(conversationId)) {
+            return;
+        }
+        long prefixHash = hash(prefix, prefix.size());
+        Map<String, Object> request = Map.of(
+                "model", "models/" + geminiProperties.getModel(),
+                "systemInstruction", systemInstruction,
+                "contents", prefix,
+                "ttl", ttl()
+        );
+
+        webClient.post()
+                .uri(CACHED_CONTENTS_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("x-goog-api-key", geminiProperties.getApiKey())
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(String.class)
+                .doFinally(signal -> creating.remove(conversationId))
+                .subscribe(
+                        response -> {
+                            JsonNode created = readTree(response);
+                            String name = created.path("name").asText(null);
+                            if (name == null) {
+                                onCreateFailed(conversationId, new IllegalStateException("No cache name in response"));
+                                return;
+                            }
+                            Entry entry = new Entry(name, prefix.size(), prefixHash, expireTime(created));
+                            Entry previous = entries.asMap().put(conversationId, entry);
+                            event("created");
+                            log.debug("Cached {} turns of conversation {} as {}", prefix.size(), conversationId, name);
+                            if (previous != null && previous.name() != null && !previous.name().equals(name)) {
+                                delete(previous.name());
+                            }
+                        },
+                        e -> onCreateFailed(conversationId, e)
+                );
+    }
+
+    private void onCreateFailed(String conversationId, Throwable e) {
+        event("failed");
+        log.warn("Could not create cached content for conversation {}: {}", conversationId, describe(e));
+        Instant retryAt = Instant.now().plus(properties.getFailureBackoff()).plus(EXPIRY_MARGIN);
+        entries.asMap().merge(conversationId, new Entry(null, 0, 0, retryAt),
+                // Keep a working cache; only back off from creating a new one
+                (current, marker) -> current.name() != null ? current : marker);
+    }
+
+    private void refreshIfExpiring(String conversationId, Entry entry) {
+        Duration left = Duration.between(Instant.now(), entry.expireTime());
+        if (left.compareTo(properties.getRefreshBefore()) > 0 || !refreshing.add(entry.name())) {
+            return;
+        }
+
+        webClient.patch()
+                .uri("/" + entry.name() + "?updateMask=ttl")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("x-goog-api-key", geminiProperties.getApiKey())
+                .bodyValue(Map.of("ttl", ttl()))
+                .retrieve()
+                .bodyToMono(String.class)
+                .doFinally(signal -> refreshing.remove(entry.name()))
+                .subscribe(
+                        response -> {
+                            Instant expireTime = expireTime(readTree(response));
+                            entries.asMap().computeIfPresent(conversationId, (key, current) ->
+                                    entry.name().equals(current.name()) ? current.withExpireTime(expireTime) : current);
+                            event("refreshed");
+                        },
+                        e -> {
+                            log.warn("Could not extend cached content {}: {}", entry.name(), describe(e));
+                            if (e instanceof WebClientResponseException.NotFound) {
+                                invalidate(conversationId, entry.name());
+                            }
+                        }
+                );
+    }
+
+    private void delete(String name) {
+        webClient.delete()
+                .uri("/" + name)
+                .header("x-goog-api-key", geminiProperties.getApiKey())
+                .retrieve()
+                .toBodilessEntity()
+                .subscribe(
+                        response -> event("deleted"),
+                        e -> log.debug("Could not delete cached content {}: {}", name, describe(e))
+                );
+    }
+
+    /**
+     * Number of leading contents that may be cached: everything up to the last model turn before
+     * the new message, so the uncached part of a request always starts with a user turn.
+     */
+    private static int cacheablePrefixLength(List<GeminiContent> contents) {
+        for (int i = contents.size() - 2; i >= 0; i--) {
+            if (GeminiContent.MODEL.equals(contents.get(i).role())) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private int estimate(List<GeminiContent> contents, int from, int to) {
+        int tokens = 0;
+        for (int i = from; i < to; i++) {
+            for (GeminiContent.Part part : contents.get(i).parts()) {
+                tokens += tokenEstimator.estimate(part.text());
+            }
+        }
+        return tokens;
+    }
+
+    /** 64-bit FNV-1a over roles and texts of the first {@code length} contents. */
+    private static long hash(List<GeminiContent> contents, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            GeminiContent content = contents.get(i);
+            hash = fnv(hash, content.role());
+            for (GeminiContent.Part part : content.parts()) {
+                hash = fnv(hash, part.text());
+            }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        // Separator so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xffff) * 0x100000001b3L;
+    }
+
+    private long nanosUntilUnusable(Entry entry) {
+        Duration left = Duration.between(Instant.now(), entry.expireTime().minus(EXPIRY_MARGIN));
+        return Math.max(0, left.toNanos());
+    }
+
+    private String ttl() {
+        return properties.getTtl().toSeconds() + "s";
+    }
+
+    private Instant expireTime(JsonNode response) {
+        String expireTime = response.path("expireTime").asText(null);
+        if (expireTime != null) {
+            try {
+                return Instant.parse(expireTime);
+            } catch (RuntimeException e) {
+                log.debug("Unparseable cache expireTime {}", expireTime);
+            }
+        }
+        return Instant.now().plus(properties.getTtl());
+    }
+
+    private JsonNode readTree(String response) {
+        try {
+            return objectMapper.readTree(response);
+        } catch (Exception e) {
+            return objectMapper.createObjectNode();
+        }
+    }
+
+    private void event(String event) {
+        meterRegistry.counter("ai.gemini.context.cache.events", "model", geminiProperties.getModel(), "event", event)
+                .increment();
+    }
+
+    private static String describe(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode() + " " + responseException.getResponseBodyAsString();
+        }
+        return e.getMessage();
+    }
+}
@@ -0,0 +1,213 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.web.reactive.function.BodyInserter;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code generateContent} request body for one model configuration, encoded once.
+ * <p>
+ * The system instruction, generation config and safety settings never change between calls, so
+ * they are kept as ready-made UTF-8 bytes. Per call only the conversation turns are JSON-encoded
+ * and copied, together with the fixed parts, into a single buffer taken from the connection's
+ * buffer factory (pooled with Reactor Netty).
+ * <p>
+ * Requests that reuse a cached content handle leave out the system instruction, which is part of
+ * the cache.
+ */
+public final class GeminiRequestTemplate {
+
+    private static final List<String> SAFETY_CATEGORIES = List.of(
+            "HARM_CATEGORY_HARASSMENT",
+            "HARM_CATEGORY_HATE_SPEECH",
+            "HARM_CATEGORY_SEXUALLY_EXPLICIT",
+            "HARM_CATEGORY_DANGEROUS_CONTENT"
+    );
+    private static final String CONTEXT_INTRO = ArtivioPrompts.CONTEXT_INTRO.strip() + "\n";
+    private static final String MESSAGE_INTRO_WITHOUT_CONTEXT = ArtivioPrompts.MESSAGE_INTRO.strip() + " ";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Object> systemInstruction;
+    private final byte[] systemInstructionPrefix;
+    private final byte[] singleTurnOpen;
+    private final byte[] contextIntro;
+    private final byte[] messageIntro;
+    private final byte[] messageIntroWithoutContext;
+    private final byte[] singleTurnClose;
+    private final byte[] suffix;
+
+    public GeminiRequestTemplate(ObjectMapper objectMapper, double temperature, int maxOutputTokens) {
+        this.objectMapper = objectMapper;
+        this.systemInstruction = Map.of("parts", List.of(Map.of("text", ArtivioPrompts.SYSTEM_PREAMBLE)));
+        Map<String, Object> generationConfig = Map.of(
+                "temperature", temperature,
+                "topK", 32,
+                "topP", 1.0,
+                "maxOutputTokens", maxOutputTokens,
+                "stopSequences", List.of()
+        );
+        List<Map<String, String>> safetySettings = SAFETY_CATEGORIES.stream()
+                .map(category -> Map.of("category", category, "threshold", "BLOCK_MEDIUM_AND_ABOVE"))
+                .toList();
+
+        try {
+            this.systemInstructionPrefix = concat(
+                    ascii("{\"systemInstruction\":"),
+                    objectMapper.writeValueAsBytes(systemInstruction),
+                    ascii(",\"contents\":"));
+            this.singleTurnOpen = ascii("[{\"role\":\"user\",\"parts\":[{\"text\":\"");
+            this.contextIntro = escape(CONTEXT_INTRO);
+            this.messageIntro = escape(ArtivioPrompts.MESSAGE_INTRO);
+            this.messageIntroWithoutContext = escape(MESSAGE_INTRO_WITHOUT_CONTEXT);
+            this.singleTurnClose = ascii("\"}]}]");
+            this.suffix = concat(
+                    ascii(",\"generationConfig\":"),
+                    objectMapper.writeValueAsBytes(generationConfig),
+                    ascii(",\"safetySettings\":"),
+                    objectMapper.writeValueAsBytes(safetySettings),
+                    ascii("}")
+            );
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode Gemini request template", e);
+        }
+    }
+
+    /** The {@code systemInstruction} object, also needed when creating cached content. */
+    public Map<String, Object> systemInstruction() {
+        return systemInstruction;
+    }
+
+    /** The prompt text every single-turn request carries besides the user message and context. */
+    public String fixedText(boolean withContext) {
+        return withContext
+                ? ArtivioPrompts.SYSTEM_PREAMBLE + CONTEXT_INTRO + ArtivioPrompts.MESSAGE_INTRO
+                : ArtivioPrompts.SYSTEM_PREAMBLE + MESSAGE_INTRO_WITHOUT_CONTEXT;
+    }
+
+    /**
+     * Body inserter for {@code WebClient.RequestBodySpec#body(BodyInserter)}: one user turn holding
+     * the flattened context and the message.
+     */
+    public BodyInserter<byte[], ReactiveHttpOutputMessage> body(String prompt, String context) {
+        return (outputMessage, insertContext) -> {
+            byte[] encodedContext = hasContext(context) ? escape(context) : null;
+            byte[] encodedPrompt = escape(prompt);
+            outputMessage.getHeaders().setContentLength(length(encodedPrompt, encodedContext));
+            return outputMessage.writeWith(Mono.fromSupplier(() ->
+                    write(outputMessage.bufferFactory(), encodedPrompt, encodedContext)));
+        };
+    }
+
+    /**
+     * Body inserter for a multi-turn request.
+     *
+     * @param cachedContent name of a cached content handle holding the system instruction and the
+     *                      turns before {@code contents}, or {@code null}
+     */
+    public BodyInserter<byte[], ReactiveHttpOutputMessage> body(List<GeminiContent> contents, String cachedContent) {
+        return (outputMessage, insertContext) -> {
+            byte[] prefix = prefix(cachedContent);
+            byte[] encodedContents = encode(contents);
+            outputMessage.getHeaders().setContentLength(prefix.length + encodedContents.length + suffix.length);
+            return outputMessage.writeWith(Mono.fromSupplier(() ->
+                    writeContents(outputMessage.bufferFactory(), prefix, encodedContents)));
+        };
+    }
+
+    /** Writes the complete single-turn body for one call into a buffer from {@code bufferFactory}. */
+    public DataBuffer write(DataBufferFactory bufferFactory, String prompt, String context) {
+        return write(bufferFactory, escape(prompt), hasContext(context) ? escape(context) : null);
+    }
+
+    /** Writes the complete multi-turn body for one call into a buffer from {@code bufferFactory}. */
+    public DataBuffer write(DataBufferFactory bufferFactory, List<GeminiContent> contents, String cachedContent) {
+        return writeContents(bufferFactory, prefix(cachedContent), encode(contents));
+    }
+
+    private DataBuffer write(DataBufferFactory bufferFactory, byte[] encodedPrompt, byte[] encodedContext) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(length(encodedPrompt, encodedContext));
+        buffer.write(systemInstructionPrefix);
+        buffer.write(singleTurnOpen);
+        if (encodedContext != null) {
+            buffer.write(contextIntro);
+            buffer.write(encodedContext);
+            buffer.write(messageIntro);
+        } else {
+            buffer.write(messageIntroWithoutContext);
+        }
+        buffer.write(encodedPrompt);
+        buffer.write(singleTurnClose);
+        buffer.write(suffix);
+        return buffer;
+    }
+
+    private DataBuffer writeContents(DataBufferFactory bufferFactory, byte[] prefix, byte[] encodedContents) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(prefix.length + encodedContents.length + suffix.length);
+        buffer.write(prefix);
+        buffer.write(encodedContents);
+        buffer.write(suffix);
+        return buffer;
+    }
+
+    private int length(byte[] encodedPrompt, byte[] encodedContext) {
+        int length = systemInstructionPrefix.length + singleTurnOpen.length + encodedPrompt.length
+                + singleTurnClose.length + suffix.length;
+        if (encodedContext != null) {
+            length += contextIntro.length + encodedContext.length + messageIntro.length;
+        } else {
+            length += messageIntroWithoutContext.length;
+        }
+        return length;
+    }
+
+    private byte[] prefix(String cachedContent) {
+        if (cachedContent == null) {
+            return systemInstructionPrefix;
+        }
+        return concat(ascii("{\"cachedContent\":\""), escape(cachedContent), ascii("\",\"contents\":"));
+    }
+
+    private byte[] encode(List<GeminiContent> contents) {
+        try {
+            return objectMapper.writeValueAsBytes(contents);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode Gemini contents", e);
+        }
+    }
+
+    private static boolean hasContext(String context) {
+        return context != null && !context.isBlank();
+    }
+
+    private static byte[] escape(String text) {
+        return JsonStringEncoder.getInstance().quoteAsUTF8(text);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
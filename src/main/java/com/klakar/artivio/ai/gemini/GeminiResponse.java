@@ -0,0 +1,19 @@
+package com.klakar.artivio.ai.gemini;
+
+/**
+ * The parts of a Gemini {@code GenerateContentResponse} the application uses.
+ *
+ * @param text              concatenated text of all parts of the first candidate
+ * @param hasText           whether any text part was present at all
+ * @param promptTokenCount  {@code usageMetadata.promptTokenCount}, or 0 when not reported
+ * @param cachedTokenCount  {@code usageMetadata.cachedContentTokenCount}: the part of the prompt
+ *                          served from cached content, or 0
+ * @param candidatesTokenCount {@code usageMetadata.candidatesTokenCount}, or 0 when not reported
+ * @param finishReason      {@code finishReason} of the first candidate, or {@code null} while the
+ *                          candidate is still being generated
+ */
+public record GeminiResponse(String text, boolean hasText, int promptTokenCount, int cachedTokenCount,
+                             int candidatesTokenCount, String finishReason) {
+
+    public static final GeminiResponse EMPTY = new GeminiResponse("", false, 0, 0, 0, null);
+}
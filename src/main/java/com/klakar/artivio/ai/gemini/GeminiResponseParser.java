@@ -0,0 +1,168 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental extractor for Gemini {@code GenerateContentResponse} bodies.
+ * <p>
+ * Tokens are pulled from a Jackson parser as bytes arrive, without building a {@code String}
+ * of the body or a {@code JsonNode} tree. Only {@code candidates[0].content.parts[*].text},
+ * {@code candidates[0].finishReason} and the token counts from {@code usageMetadata} are kept;
+ * everything else (safety ratings, citation metadata, further candidates) is tokenized and
+ * dropped. A parser instance handles exactly one response.
+ */
+public final class GeminiResponseParser {
+
+    // Frame types for the path from the root to the values we keep
+    private static final int NONE = 0;
+    private static final int ROOT = 1;
+    private static final int CANDIDATES = 2;
+    private static final int CANDIDATE = 3;
+    private static final int CONTENT = 4;
+    private static final int PARTS = 5;
+    private static final int PART = 6;
+    private static final int USAGE = 7;
+    private static final int SKIP = 8;
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final StringBuilder text = new StringBuilder();
+
+    private int[] frames = new int[16];
+    private int depth;
+    private String fieldName;
+    private int candidateCount;
+    private boolean hasText;
+    private int promptTokenCount;
+    private int cachedTokenCount;
+    private int candidatesTokenCount;
+    private String finishReason;
+
+    private GeminiResponseParser(JsonParser parser, ByteBufferFeeder feeder) {
+        this.parser = parser;
+        this.feeder = feeder;
+    }
+
+    /** Creates a parser that is fed body chunks as they arrive via {@link #feed(DataBuffer)}. */
+    public static GeminiResponseParser nonBlocking(JsonFactory jsonFactory) throws IOException {
+        JsonParser parser = jsonFactory.createNonBlockingByteBufferParser();
+        return new GeminiResponseParser(parser, (ByteBufferFeeder) parser.getNonBlockingInputFeeder());
+    }
+
+    /** Parses a complete response held in memory, e.g. a single SSE event. */
+    public static GeminiResponse parse(JsonFactory jsonFactory, String json) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            GeminiResponseParser responseParser = new GeminiResponseParser(parser, null);
+            responseParser.drain();
+            return responseParser.result();
+        }
+    }
+
+    /**
+     * Consumes all readable bytes of the buffer. The caller keeps ownership and may release
+     * the buffer as soon as this returns.
+     */
+    public void feed(DataBuffer buffer) throws IOException {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                feed(iterator.next());
+            }
+        }
+    }
+
+    public void feed(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        feeder.feedInput(buffer);
+        drain();
+    }
+
+    /** Signals the end of the body and returns what was extracted. */
+    public GeminiResponse finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        return result();
+    }
+
+    private GeminiResponse result() {
+        return new GeminiResponse(text.toString(), hasText, promptTokenCount, cachedTokenCount,
+                candidatesTokenCount, finishReason);
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        int frame = depth == 0 ? NONE : frames[depth - 1];
+        switch (token) {
+            case FIELD_NAME -> {
+                if (frame != SKIP) {
+                    fieldName = parser.currentName();
+                }
+            }
+            case START_OBJECT -> push(objectFrame(frame));
+            case START_ARRAY -> push(arrayFrame(frame));
+            case END_OBJECT, END_ARRAY -> depth--;
+            case VALUE_STRING -> {
+                if (frame == PART && "text".equals(fieldName)) {
+                    text.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    hasText = true;
+                } else if (frame == CANDIDATE && "finishReason".equals(fieldName)) {
+                    finishReason = parser.getText();
+                }
+            }
+            case VALUE_NUMBER_INT -> {
+                if (frame == USAGE && "promptTokenCount".equals(fieldName)) {
+                    promptTokenCount = parser.getIntValue();
+                } else if (frame == USAGE && "cachedContentTokenCount".equals(fieldName)) {
+                    cachedTokenCount = parser.getIntValue();
+                } else if (frame == USAGE && "candidatesTokenCount".equals(fieldName)) {
+                    candidatesTokenCount = parser.getIntValue();
+                }
+            }
+            default -> {
+                // Floats, booleans and nulls are never needed
+            }
+        }
+    }
+
+    private int objectFrame(int parent) {
+        return switch (parent) {
+            case NONE -> ROOT;
+            case ROOT -> "usageMetadata".equals(fieldName) ? USAGE : SKIP;
+            case CANDIDATES -> candidateCount++ == 0 ? CANDIDATE : SKIP;
+            case CANDIDATE -> "content".equals(fieldName) ? CONTENT : SKIP;
+            case PARTS -> PART;
+            default -> SKIP;
+        };
+    }
+
+    private int arrayFrame(int parent) {
+        return switch (parent) {
+            case ROOT -> "candidates".equals(fieldName) ? CANDIDATES : SKIP;
+            case CONTENT -> "parts".equals(fieldName) ? PARTS : SKIP;
+            default -> SKIP;
+        };
+    }
+
+    private void push(int frame) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        frames[depth++] = frame;
+    }
+}
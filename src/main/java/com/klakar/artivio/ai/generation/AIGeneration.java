@@ -0,0 +1,77 @@
+package com.klakar.artivio.ai.generation;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle on one in-flight AI response: who it is for, how much has been streamed, and the
+ * subscription to dispose when it is no longer wanted.
+ */
+public final class AIGeneration {
+
+    public enum CancelReason {
+        // A newer message arrived in the same conversation
+        SUPERSEDED,
+        // The user's last WebSocket session closed
+        DISCONNECTED;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final String username;
+    private final Long conversationId;
+    private final Disposable.Swap subscription = Disposables.swap();
+    private final AtomicReference<CancelReason> cancelReason = new AtomicReference<>();
+    private final AtomicLong streamedChars = new AtomicLong();
+
+    public AIGeneration(String username, Long conversationId) {
+        this.username = username;
+        this.conversationId = conversationId;
+    }
+
+    /**
+     * Ties the running pipeline to this handle. If the generation was cancelled before the
+     * subscription existed, the subscription is disposed right away.
+     */
+    public void attach(Disposable disposable) {
+        subscription.update(disposable);
+    }
+
+    public void onChunk(String chunk) {
+        streamedChars.addAndGet(chunk.length());
+    }
+
+    /** @return {@code true} if this call cancelled it, {@code false} if it was already cancelled */
+    public boolean cancel(CancelReason reason) {
+        if (!cancelReason.compareAndSet(null, reason)) {
+            return false;
+        }
+        subscription.dispose();
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelReason.get() != null;
+    }
+
+    public CancelReason getCancelReason() {
+        return cancelReason.get();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public long getStreamedChars() {
+        return streamedChars.get();
+    }
+}
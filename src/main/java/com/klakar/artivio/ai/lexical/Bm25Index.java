@@ -0,0 +1,305 @@
+package com.klakar.artivio.ai.lexical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Okapi BM25 over a bounded window of short documents, such as the turns of one conversation.
+ * <p>
+ * Documents are numbered in insertion order and kept in a ring that doubles as needed, up to the
+ * power of two that fits {@code capacity}; adding to a full index drops the oldest. Terms are
+ * split and hashed by {@link Terms} and mapped to dense ids by a {@link TermDictionary}. Each
+ * term's postings are parallel {@code int} arrays of document number and term frequency, in
+ * document order, so the oldest document is always at the front of every list it appears in and
+ * dropping it is a cursor move per distinct term. Terms left without postings are removed and
+ * their ids reused, so memory follows the live window rather than everything ever added.
+ * <p>
+ * Methods are synchronized; an index is meant to be small and private to one conversation.
+ *
+ * @param <T> what is returned for a matching document
+ */
+public final class Bm25Index<T> {
+
+    public record Match<T>(T payload, float score) {
+    }
+
+    // Payload reference, length and term array reference of a ring slot, plus the query's score
+    private static final int SLOT_BYTES = 16;
+    // Postings reference and hash of a term id
+    private static final int TERM_BYTES = 16;
+    private static final int POSTINGS_OVERHEAD_BYTES = 64;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int INITIAL_POSTINGS = 4;
+    private static final int INITIAL_SLOTS = 8;
+
+    private final int capacity;
+    private final float k1;
+    private final float b;
+
+    private Object[] payloads;
+    private int[] lengths;
+    private int[][] documentTerms;
+    private int next;
+    private int size;
+    private long totalLength;
+
+    private final TermDictionary dictionary = new TermDictionary();
+    private long[] termHashes = new long[16];
+    private Postings[] postings = new Postings[16];
+    private long variableBytes;
+
+    /**
+     * @param capacity documents kept; the oldest is dropped beyond this
+     * @param k1       term frequency saturation, typically 1.2
+     * @param b        document length normalization, 0 (none) to 1 (full), typically 0.75
+     */
+    public Bm25Index(int capacity, float k1, float b) {
+        if (capacity < 1 || k1 < 0 || b < 0 || b > 1) {
+            throw new IllegalArgumentException("Invalid BM25 index parameters");
+        }
+        this.capacity = capacity;
+        this.k1 = k1;
+        this.b = b;
+        int slots = Math.min(Integer.highestOneBit(Math.max(1, capacity - 1)) << 1, INITIAL_SLOTS);
+        this.payloads = new Object[slots];
+        this.lengths = new int[slots];
+        this.documentTerms = new int[slots][];
+    }
+
+    /**
+     * Indexes {@code text}, dropping the oldest document first when the index is full.
+     *
+     * @return the payload of the dropped document, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T add(String text, T payload) {
+        T dropped = null;
+        if (size == capacity) {
+            dropped = (T) payloads[slot(next - size)];
+            dropOldest();
+        } else if (size == payloads.length) {
+            grow();
+        }
+
+        long[] hashes = Terms.hashes(text);
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i == 0 || hashes[i] != hashes[i - 1]) {
+                distinct++;
+            }
+        }
+        int document = next++;
+        int[] termIds = new int[distinct];
+        int t = 0;
+        for (int i = 0; i < hashes.length; ) {
+            int run = i;
+            while (i < hashes.length && hashes[i] == hashes[run]) {
+                i++;
+            }
+            int id = dictionary.getOrAdd(hashes[run]);
+            Postings list = postingsFor(id, hashes[run]);
+            variableBytes -= list.bytes();
+            list.append(document, i - run);
+            variableBytes += list.bytes();
+            termIds[t++] = id;
+        }
+
+        int slot = slot(document);
+        payloads[slot] = payload;
+        lengths[slot] = hashes.length;
+        documentTerms[slot] = termIds;
+        totalLength += hashes.length;
+        variableBytes += ARRAY_HEADER_BYTES + 4L * termIds.length;
+        size++;
+        return dropped;
+    }
+
+    private Postings postingsFor(int id, long hash) {
+        if (id >= postings.length) {
+            int length = Math.max(id + 1, postings.length * 2);
+            postings = Arrays.copyOf(postings, length);
+            termHashes = Arrays.copyOf(termHashes, length);
+        }
+        Postings list = postings[id];
+        if (list == null) {
+            list = new Postings();
+            postings[id] = list;
+            variableBytes += POSTINGS_OVERHEAD_BYTES;
+        }
+        termHashes[id] = hash;
+        return list;
+    }
+
+    private int slot(int document) {
+        return document & (payloads.length - 1);
+    }
+
+    /** Doubles the ring; the live documents move to their slots in the larger one. */
+    private void grow() {
+        int slots = payloads.length * 2;
+        Object[] grownPayloads = new Object[slots];
+        int[] grownLengths = new int[slots];
+        int[][] grownTerms = new int[slots][];
+        for (int document = next - size; document != next; document++) {
+            int from = slot(document);
+            int to = document & (slots - 1);
+            grownPayloads[to] = payloads[from];
+            grownLengths[to] = lengths[from];
+            grownTerms[to] = documentTerms[from];
+        }
+        payloads = grownPayloads;
+        lengths = grownLengths;
+        documentTerms = grownTerms;
+    }
+
+    private void dropOldest() {
+        int slot = slot(next - size);
+        for (int id : documentTerms[slot]) {
+            Postings list = postings[id];
+            list.start++;
+            if (list.start == list.end) {
+                dictionary.remove(termHashes[id]);
+                variableBytes -= list.bytes();
+                list.clear();
+                variableBytes += list.bytes();
+            }
+        }
+        variableBytes -= ARRAY_HEADER_BYTES + 4L * documentTerms[slot].length;
+        totalLength -= lengths[slot];
+        payloads[slot] = null;
+        documentTerms[slot] = null;
+        lengths[slot] = 0;
+        size--;
+    }
+
+    /**
+     * The {@code k} documents scoring highest for {@code query}, best first; documents sharing no
+     * term are left out.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Match<T>> search(String query, int k) {
+        if (size == 0 || k < 1) {
+            return List.of();
+        }
+        long[] hashes = Terms.hashes(query);
+        Arrays.sort(hashes);
+
+        float averageLength = Math.max(1f, (float) totalLength / size);
+        float[] scores = new float[payloads.length];
+        // k1 scaled by the document's length relative to the average, computed once per document
+        float[] norms = new float[payloads.length];
+        int[] touched = new int[size];
+        int touchedCount = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (i > 0 && hashes[i] == hashes[i - 1]) {
+                continue;
+            }
+            int id = dictionary.get(hashes[i]);
+            if (id < 0) {
+                continue;
+            }
+            Postings list = postings[id];
+            int frequency = list.end - list.start;
+            // Never negative, unlike the original formula, so very common terms still count a little
+            float idf = (float) Math.log(1 + (size - frequency + 0.5) / (frequency + 0.5));
+            for (int p = list.start; p < list.end; p++) {
+                int slot = slot(list.documents[p]);
+                if (scores[slot] == 0) {
+                    touched[touchedCount++] = slot;
+                    norms[slot] = k1 * (1 - b + b * lengths[slot] / averageLength);
+                }
+                int tf = list.frequencies[p];
+                scores[slot] += idf * tf * (k1 + 1) / (tf + norms[slot]);
+            }
+        }
+
+        // Insertion into a short sorted array beats a heap for the handful of results asked for
+        int limit = Math.min(k, touchedCount);
+        int[] bestSlots = new int[limit];
+        float[] bestScores = new float[limit];
+        int found = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            float score = scores[slot];
+            if (found == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+            int position = found < limit ? found++ : limit - 1;
+            while (position > 0 && bestScores[position - 1] < score) {
+                bestScores[position] = bestScores[position - 1];
+                bestSlots[position] = bestSlots[position - 1];
+                position--;
+            }
+            bestScores[position] = score;
+            bestSlots[position] = slot;
+        }
+
+        List<Match<T>> matches = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            matches.add(new Match<>((T) payloads[bestSlots[i]], bestScores[i]));
+        }
+        return matches;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Distinct terms in the live documents. */
+    public synchronized int terms() {
+        return dictionary.size();
+    }
+
+    /** Estimated bytes held by the index itself, payloads excluded. */
+    public synchronized long bytes() {
+        return (long) SLOT_BYTES * payloads.length + (long) TERM_BYTES * postings.length + dictionary.bytes() + variableBytes;
+    }
+
+    /** Documents containing one term, oldest first, with how often the term occurs in each. */
+    private static final class Postings {
+
+        int[] documents = new int[INITIAL_POSTINGS];
+        int[] frequencies = new int[INITIAL_POSTINGS];
+        int start;
+        int end;
+
+        void append(int document, int frequency) {
+            if (end == documents.length) {
+                int live = end - start;
+                if (start > 0 && live <= documents.length / 2) {
+                    // Reclaim the space of dropped documents before growing
+                    System.arraycopy(documents, start, documents, 0, live);
+                    System.arraycopy(frequencies, start, frequencies, 0, live);
+                } else {
+                    int[] grownDocuments = new int[documents.length * 2];
+                    int[] grownFrequencies = new int[documents.length * 2];
+                    System.arraycopy(documents, start, grownDocuments, 0, live);
+                    System.arraycopy(frequencies, start, grownFrequencies, 0, live);
+                    documents = grownDocuments;
+                    frequencies = grownFrequencies;
+                }
+                start = 0;
+                end = live;
+            }
+            documents[end] = document;
+            frequencies[end] = frequency;
+            end++;
+        }
+
+        /** Empties the list for the next term given this id, dropping arrays grown for a frequent one. */
+        void clear() {
+            if (documents.length > INITIAL_POSTINGS) {
+                documents = new int[INITIAL_POSTINGS];
+                frequencies = new int[INITIAL_POSTINGS];
+            }
+            start = 0;
+            end = 0;
+        }
+
+        long bytes() {
+            return 2L * (ARRAY_HEADER_BYTES + 4L * documents.length);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.klakar.artivio.ai.lexical;
+
+import java.util.Arrays;
+
+/**
+ * Maps 64-bit term hashes to small dense term ids, without boxing: an open-addressing table with
+ * linear probing over two parallel arrays. Ids of removed terms are handed out again, so the ids in
+ * use stay below the peak number of distinct live terms. Not thread-safe.
+ */
+final class TermDictionary {
+
+    private static final int MIN_CAPACITY = 16;
+    // Hash 0 marks an empty slot; a term that hashes to it is stored under this one instead
+    private static final long ZERO_HASH = 0x9E3779B97F4A7C15L;
+
+    private long[] hashes;
+    private int[] ids;
+    private int size;
+    private int nextId;
+    private int[] freeIds = new int[MIN_CAPACITY];
+    private int freeCount;
+
+    TermDictionary() {
+        this.hashes = new long[MIN_CAPACITY];
+        this.ids = new int[MIN_CAPACITY];
+    }
+
+    /** The id of {@code hash}, or -1 when the term is not present. */
+    int get(long hash) {
+        long key = key(hash);
+        int mask = hashes.length - 1;
+        for (int slot = slot(key, mask); hashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == key) {
+                return ids[slot];
+            }
+        }
+        return -1;
+    }
+
+    /** The id of {@code hash}, adding the term under a free id when it is not present. */
+    int getOrAdd(long hash) {
+        long key = key(hash);
+        int mask = hashes.length - 1;
+        int slot = slot(key, mask);
+        for (; hashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == key) {
+                return ids[slot];
+            }
+        }
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        hashes[slot] = key;
+        ids[slot] = id;
+        if (++size * 4 > hashes.length * 3) {
+            resize(hashes.length * 2);
+        }
+        return id;
+    }
+
+    /** Removes the term, freeing its id for the next new term. */
+    void remove(long hash) {
+        long key = key(hash);
+        int mask = hashes.length - 1;
+        int slot = slot(key, mask);
+        while (hashes[slot] != key) {
+            if (hashes[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = ids[slot];
+        size--;
+
+        // Shift later entries of the probe run back, so lookups never stop at a hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; hashes[next] != 0; next = (next + 1) & mask) {
+            int home = slot(hashes[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                hashes[hole] = hashes[next];
+                ids[hole] = ids[next];
+                hole = next;
+            }
+        }
+        hashes[hole] = 0;
+        ids[hole] = 0;
+        if (hashes.length > MIN_CAPACITY && size * 8 < hashes.length) {
+            resize(hashes.length / 2);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** One more than the highest id ever handed out; arrays indexed by id need this length. */
+    int idBound() {
+        return nextId;
+    }
+
+    long bytes() {
+        return 12L * hashes.length + 4L * freeIds.length;
+    }
+
+    private void resize(int capacity) {
+        long[] oldHashes = hashes;
+        int[] oldIds = ids;
+        hashes = new long[capacity];
+        ids = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] != 0) {
+                int slot = slot(oldHashes[i], mask);
+                while (hashes[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private static long key(long hash) {
+        return hash == 0 ? ZERO_HASH : hash;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ key >>> 32) & mask;
+    }
+}
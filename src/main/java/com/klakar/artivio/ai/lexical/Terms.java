@@ -0,0 +1,58 @@
+package com.klakar.artivio.ai.lexical;
+
+import java.util.Arrays;
+
+/**
+ * Splits text into terms: lowercased runs of letters and digits, each identified by a 64-bit FNV-1a
+ * hash with a final mix so the low bits are usable as a table index.
+ */
+public final class Terms {
+
+    private Terms() {
+    }
+
+    /** Hashes of the terms of {@code text}, in order, repeats included. */
+    public static long[] hashes(String text) {
+        long[] hashes = new long[16];
+        int count = 0;
+        long hash = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    hash = 0xCBF29CE484222325L;
+                    inWord = true;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * 0x100000001B3L;
+            } else if (inWord) {
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = mix(hash);
+                inWord = false;
+            }
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    /** Hashes of the distinct terms of {@code text}, sorted. */
+    public static long[] distinct(String text) {
+        long[] hashes = hashes(text);
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (distinct == 0 || hashes[i] != hashes[distinct - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
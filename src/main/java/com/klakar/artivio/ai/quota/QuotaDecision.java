@@ -0,0 +1,22 @@
+package com.klakar.artivio.ai.quota;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a quota check.
+ *
+ * @param exceeded   the limit that refused the request, {@code null} when allowed
+ * @param retryAfter how long until the request would be allowed, zero when allowed
+ */
+public record QuotaDecision(QuotaLimit exceeded, Duration retryAfter) {
+
+    public static final QuotaDecision ALLOWED = new QuotaDecision(null, Duration.ZERO);
+
+    public static QuotaDecision rejected(QuotaLimit exceeded, Duration retryAfter) {
+        return new QuotaDecision(exceeded, retryAfter);
+    }
+
+    public boolean allowed() {
+        return exceeded == null;
+    }
+}
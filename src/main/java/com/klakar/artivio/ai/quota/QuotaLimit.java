@@ -0,0 +1,12 @@
+package com.klakar.artivio.ai.quota;
+
+public enum QuotaLimit {
+    /** AI replies per minute. */
+    REQUESTS,
+    /** Estimated tokens per day. */
+    TOKENS;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
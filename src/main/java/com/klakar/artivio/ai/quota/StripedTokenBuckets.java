@@ -0,0 +1,161 @@
+package com.klakar.artivio.ai.quota;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-key pair of token buckets: one for requests per minute and one for estimated tokens per day.
+ * <p>
+ * Keys are spread over a power-of-two number of independently locked stripes, so checks for
+ * different users rarely contend. A bucket is a small mutable object, allocated once per key and
+ * updated in place afterwards. A bucket that has refilled completely is the same as no bucket,
+ * so each stripe drops those whenever it grows past its sweep mark. Memory therefore follows
+ * recently active users, not every user ever seen.
+ * <p>
+ * Both buckets refill continuously; the daily limit is a rolling 24 hours, not a calendar day.
+ */
+public class StripedTokenBuckets {
+
+    private static final long NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+    private static final long NANOS_PER_DAY = Duration.ofDays(1).toNanos();
+    private static final int MIN_SWEEP_MARK = 64;
+
+    private final double requestCapacity;
+    private final double requestsPerNano;
+    private final double tokenCapacity;
+    private final double tokensPerNano;
+    private final Stripe[] stripes;
+    private final int mask;
+    private final LongSupplier nanoClock;
+
+    public StripedTokenBuckets(int requestsPerMinute, long tokensPerDay, int stripes) {
+        this(requestsPerMinute, tokensPerDay, stripes, System::nanoTime);
+    }
+
+    StripedTokenBuckets(int requestsPerMinute, long tokensPerDay, int stripes, LongSupplier nanoClock) {
+        if (requestsPerMinute < 1 || tokensPerDay < 1) {
+            throw new IllegalArgumentException("Quota limits must be positive");
+        }
+        this.requestCapacity = requestsPerMinute;
+        this.requestsPerNano = (double) requestsPerMinute / NANOS_PER_MINUTE;
+        this.tokenCapacity = tokensPerDay;
+        this.tokensPerNano = (double) tokensPerDay / NANOS_PER_DAY;
+        this.nanoClock = nanoClock;
+
+        int count = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * 4;
+        count = Integer.highestOneBit(Math.max(1, count - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+    }
+
+    /** Takes one request and {@code tokens} from the key's buckets if both have enough, or neither. */
+    public QuotaDecision tryAcquire(String key, int tokens) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            long now = nanoClock.getAsLong();
+            Bucket bucket = stripe.bucket(key, now, this);
+            if (bucket.requests < 1) {
+                return QuotaDecision.rejected(QuotaLimit.REQUESTS, waitFor(1 - bucket.requests, requestsPerNano));
+            }
+            if (bucket.tokens < tokens) {
+                return QuotaDecision.rejected(QuotaLimit.TOKENS, waitFor(tokens - bucket.tokens, tokensPerNano));
+            }
+            bucket.requests -= 1;
+            bucket.tokens -= tokens;
+            return QuotaDecision.ALLOWED;
+        }
+    }
+
+    /**
+     * Takes tokens used beyond the estimate checked up front. The bucket may go into debt, down to
+     * one day's worth, which later requests then wait out.
+     */
+    public void charge(String key, int tokens) {
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.bucket(key, nanoClock.getAsLong(), this);
+            bucket.tokens = Math.max(-tokenCapacity, bucket.tokens - tokens);
+        }
+    }
+
+    /** Number of keys currently tracked. */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.buckets.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private static Duration waitFor(double missing, double perNano) {
+        return Duration.ofNanos((long) Math.ceil(missing / perNano));
+    }
+
+    private static final class Stripe {
+
+        private final Map<String, Bucket> buckets = new HashMap<>();
+        private int sweepMark = MIN_SWEEP_MARK;
+
+        /** The key's bucket, refilled up to {@code now}. */
+        Bucket bucket(String key, long now, StripedTokenBuckets limits) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= sweepMark) {
+                    sweep(now, limits);
+                }
+                bucket = new Bucket(limits.requestCapacity, limits.tokenCapacity, now);
+                buckets.put(key, bucket);
+                return bucket;
+            }
+            bucket.refill(now, limits);
+            return bucket;
+        }
+
+        private void sweep(long now, StripedTokenBuckets limits) {
+            for (Iterator<Bucket> it = buckets.values().iterator(); it.hasNext(); ) {
+                Bucket bucket = it.next();
+                bucket.refill(now, limits);
+                if (bucket.requests >= limits.requestCapacity && bucket.tokens >= limits.tokenCapacity) {
+                    it.remove();
+                }
+            }
+            sweepMark = Math.max(MIN_SWEEP_MARK, buckets.size() * 2);
+        }
+    }
+
+    private static final class Bucket {
+
+        private double requests;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double requests, double tokens, long now) {
+            this.requests = requests;
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        void refill(long now, StripedTokenBuckets limits) {
+            long elapsed = now - refilledAt;
+            if (elapsed <= 0) {
+                return;
+            }
+            requests = Math.min(limits.requestCapacity, requests + elapsed * limits.requestsPerNano);
+            tokens = Math.min(limits.tokenCapacity, tokens + elapsed * limits.tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
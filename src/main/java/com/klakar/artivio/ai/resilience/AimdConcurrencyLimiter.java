@@ -0,0 +1,92 @@
+package com.klakar.artivio.ai.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Additive-increase / multiplicative-decrease limit on concurrent outbound calls.
+ * The limit grows by one on a success observed while at least half of it is in use,
+ * and is multiplied by the backoff ratio whenever the provider signals overload.
+ */
+public class AimdConcurrencyLimiter {
+
+    public enum Outcome {
+        /** The call succeeded; the limit may grow. */
+        SUCCESS,
+        /** The provider signalled overload (429, timeout); the limit shrinks. */
+        DROPPED,
+        /** The call ended without saying anything about capacity (cancelled, client error). */
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejections = new AtomicLong();
+    private volatile int limit;
+
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Reserves a slot, or returns {@code false} when the current limit is already in use.
+     * Every successful acquire must be paired with exactly one {@link #release(Outcome)}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejections.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(Outcome outcome) {
+        int inFlightBeforeRelease = inFlight.getAndDecrement();
+        switch (outcome) {
+            case SUCCESS -> onSuccess(inFlightBeforeRelease);
+            case DROPPED -> onDropped();
+            case IGNORED -> {
+            }
+        }
+    }
+
+    private synchronized void onSuccess(int inFlightAtCompletion) {
+        // Only grow when the limit is actually being exercised, so idle periods don't inflate it
+        if (inFlightAtCompletion * 2 >= limit && limit < maxLimit) {
+            limit = limit + 1;
+        }
+    }
+
+    private synchronized void onDropped() {
+        limit = Math.max(minLimit, (int) (limit * backoffRatio));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+}
@@ -0,0 +1,186 @@
+package com.klakar.artivio.ai.resilience;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. It opens when the failure rate over the last
+ * {@code slidingWindowSize} calls reaches the threshold, rejects calls while open, and after
+ * {@code openDuration} lets a few trial calls through to decide whether to close again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED(0), HALF_OPEN(1), OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        /** Numeric form for gauges: 0 closed, 1 half-open, 2 open. */
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumNumberOfCalls;
+    private final long openDurationNanos;
+    private final int halfOpenPermittedCalls;
+    private final LongSupplier nanoClock;
+
+    // Ring of recent outcomes, guarded by this
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    // Bumped on every state change, so outcomes of calls admitted in an earlier state are dropped
+    private long generation;
+    private long openedAtNanos;
+    private int halfOpenInFlight;
+    private int halfOpenSuccesses;
+    private long rejections;
+
+    public CircuitBreaker(double failureRateThreshold,
+                          int slidingWindowSize,
+                          int minimumNumberOfCalls,
+                          Duration openDuration,
+                          int halfOpenPermittedCalls) {
+        this(failureRateThreshold, slidingWindowSize, minimumNumberOfCalls, openDuration, halfOpenPermittedCalls,
+                System::nanoTime);
+    }
+
+    CircuitBreaker(double failureRateThreshold,
+                   int slidingWindowSize,
+                   int minimumNumberOfCalls,
+                   Duration openDuration,
+                   int halfOpenPermittedCalls,
+                   LongSupplier nanoClock) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[slidingWindowSize];
+        this.minimumNumberOfCalls = Math.min(minimumNumberOfCalls, slidingWindowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns a permit if a call may proceed, or {@code null} if it must be rejected. A permit
+     * must be handed back once through {@link #onSuccess(Permit)}, {@link #onFailure(Permit)} or
+     * {@link #onIgnored(Permit)}. Outcomes only count in the state the permit was granted in: a
+     * slow call admitted while closed says nothing about a half-open trial.
+     */
+    public synchronized Permit tryAcquirePermission() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAtNanos >= openDurationNanos) {
+            transitionTo(State.HALF_OPEN);
+            halfOpenInFlight = 0;
+            halfOpenSuccesses = 0;
+        }
+
+        switch (state) {
+            case CLOSED:
+                return new Permit(generation);
+            case HALF_OPEN:
+                if (halfOpenInFlight + halfOpenSuccesses < halfOpenPermittedCalls) {
+                    halfOpenInFlight++;
+                    return new Permit(generation);
+                }
+                rejections++;
+                return null;
+            default:
+                rejections++;
+                return null;
+        }
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        if (permit.generation != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses >= halfOpenPermittedCalls) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(Permit permit) {
+        if (permit.generation != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumNumberOfCalls
+                    && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /** Hands a permit back without recording an outcome, e.g. when the caller cancelled. */
+    public synchronized void onIgnored(Permit permit) {
+        if (permit.generation == generation && state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % window.length;
+    }
+
+    private void open() {
+        transitionTo(State.OPEN);
+        openedAtNanos = nanoClock.getAsLong();
+    }
+
+    private void close() {
+        transitionTo(State.CLOSED);
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        generation++;
+    }
+
+    /** Admission of one call, tied to the breaker state it was granted in. */
+    public static final class Permit {
+
+        private final long generation;
+
+        private Permit(long generation) {
+            this.generation = generation;
+        }
+    }
+}
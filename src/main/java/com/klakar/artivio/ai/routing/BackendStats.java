@@ -0,0 +1,80 @@
+package com.klakar.artivio.ai.routing;
+
+/**
+ * Exponentially weighted latency and error rate of one AI backend.
+ * <p>
+ * Latency mean and variance follow the usual EWMA recurrences, so the p95 is approximated as
+ * {@code mean + 1.645 * stddev} without keeping any samples. Recent calls dominate: with
+ * {@code alpha = 0.2} a call stops mattering after a few dozen newer ones.
+ */
+public class BackendStats {
+
+    private static final double Z_95 = 1.645;
+
+    private final double alpha;
+
+    private long samples;
+    private double latencyMillis;
+    private double latencyVariance;
+    private double errorRate;
+
+    public BackendStats(double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]");
+        }
+        this.alpha = alpha;
+    }
+
+    public synchronized void recordSuccess(long latencyNanos) {
+        recordLatency(latencyNanos);
+        errorRate -= alpha * errorRate;
+    }
+
+    /**
+     * A call that lost a hedge race and was cancelled: its elapsed time is a lower bound on its
+     * latency, which is exactly what the router needs to learn that the backend got slow.
+     */
+    public synchronized void recordCancelled(long elapsedNanos) {
+        recordLatency(elapsedNanos);
+    }
+
+    public synchronized void recordFailure() {
+        errorRate += alpha * (1 - errorRate);
+    }
+
+    private void recordLatency(long latencyNanos) {
+        double latency = latencyNanos / 1_000_000.0;
+        if (samples++ == 0) {
+            latencyMillis = latency;
+        } else {
+            double diff = latency - latencyMillis;
+            double increment = alpha * diff;
+            latencyMillis += increment;
+            latencyVariance = (1 - alpha) * (latencyVariance + diff * increment);
+        }
+    }
+
+    public synchronized boolean hasLatencySamples() {
+        return samples > 0;
+    }
+
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public synchronized double getLatencyP95Millis() {
+        return latencyMillis + Z_95 * Math.sqrt(latencyVariance);
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Lower is better: expected latency plus a penalty that grows with the error rate. A backend
+     * that has not answered yet scores 0, so it gets tried.
+     */
+    public synchronized double score(double errorPenaltyMillis) {
+        return latencyMillis + errorPenaltyMillis * errorRate;
+    }
+}
@@ -0,0 +1,13 @@
+package com.klakar.artivio.ai.scheduling;
+
+/** Scheduling class of an AI request. */
+public enum AIPriority {
+    /** A user is waiting for the reply. */
+    INTERACTIVE,
+    /** Work nobody is waiting on right now: summaries, embeddings, backfills. */
+    BACKGROUND;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,32 @@
+package com.klakar.artivio.ai.scheduling;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Who an AI request is for and how urgent it is, carried in the Reactor {@link Context} so the
+ * {@code AIService} signature stays unchanged. Callers attach it with
+ * {@code aiService.streamResponse(...).contextWrite(AIRequestContext.interactive(username))}.
+ */
+public record AIRequestContext(String owner, AIPriority priority) {
+
+    private static final String KEY = AIRequestContext.class.getName();
+
+    /** Requests that carry no context are treated as interactive work of one shared owner. */
+    public static final AIRequestContext UNATTRIBUTED = new AIRequestContext("unattributed", AIPriority.INTERACTIVE);
+
+    public static Context interactive(String username) {
+        return Context.of(KEY, new AIRequestContext(username, AIPriority.INTERACTIVE));
+    }
+
+    /**
+     * @param owner what the work is fair-shared by, e.g. {@code "summary:" + conversationId}
+     */
+    public static Context background(String owner) {
+        return Context.of(KEY, new AIRequestContext(owner, AIPriority.BACKGROUND));
+    }
+
+    public static AIRequestContext from(ContextView context) {
+        return context.getOrDefault(KEY, UNATTRIBUTED);
+    }
+}
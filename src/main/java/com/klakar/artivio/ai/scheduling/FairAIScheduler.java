@@ -0,0 +1,312 @@
+package com.klakar.artivio.ai.scheduling;
+
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for AI calls that shares capacity fairly between users.
+ * <p>
+ * At most {@code maxConcurrent} calls run at once, and at most {@code maxInFlightPerOwner} for any
+ * one owner. Waiting requests are queued per owner. Free slots go first to a priority class, by
+ * stride scheduling on the class weights, so background work keeps a small share under load and
+ * never starves. Within the class they go to an owner chosen by deficit round robin, with each
+ * request's estimated token count as its cost. A user sending long prompts therefore gets the
+ * same token throughput as one sending short ones, not more.
+ */
+public class FairAIScheduler {
+
+    private static final String QUEUE_FULL_MESSAGE =
+            "You're sending messages faster than I can answer. Please wait for the current reply.";
+
+    private final AIProperties.Fairness properties;
+    private final Map<AIPriority, PriorityClass> classes = new EnumMap<>(AIPriority.class);
+    private final Map<String, OwnerQueue> owners = new HashMap<>();
+    private final Map<AIPriority, Timer> queueWait = new EnumMap<>(AIPriority.class);
+    private final Map<AIPriority, Counter> rejections = new EnumMap<>(AIPriority.class);
+
+    // Guarded by this
+    private int inFlight;
+    private double virtualTime;
+
+    public FairAIScheduler(AIProperties.Fairness properties, MeterRegistry meterRegistry) {
+        if (properties.getMaxConcurrent() < 1 || properties.getMaxInFlightPerOwner() < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be at least 1");
+        }
+        if (properties.getQuantumTokens() < 1) {
+            // The round robin only stops once an owner's deficit covers its request
+            throw new IllegalArgumentException("quantum-tokens must be at least 1");
+        }
+        this.properties = properties;
+        classes.put(AIPriority.INTERACTIVE, new PriorityClass(properties.getInteractiveWeight()));
+        classes.put(AIPriority.BACKGROUND, new PriorityClass(properties.getBackgroundWeight()));
+
+        for (AIPriority priority : AIPriority.values()) {
+            queueWait.put(priority, Timer.builder("ai.scheduler.queue.wait")
+                    .description("Time AI requests spend queued before being dispatched")
+                    .tag("class", priority.tag())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+            rejections.put(priority, Counter.builder("ai.scheduler.rejections")
+                    .description("AI requests refused because the owner's queue was full")
+                    .tag("class", priority.tag())
+                    .register(meterRegistry));
+            Gauge.builder("ai.scheduler.queued", this, scheduler -> scheduler.getQueued(priority))
+                    .tag("class", priority.tag())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("ai.scheduler.inflight", this, FairAIScheduler::getInFlight)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Emits a ticket once the request may run. The ticket must be handed back to
+     * {@link #release(Ticket)} when the call ends. Cancelling while still queued gives up the place.
+     *
+     * @param cost estimated tokens of the request, used to share throughput between owners
+     */
+    public Mono<Ticket> acquire(AIRequestContext request, int cost) {
+        return Mono.create(sink -> {
+            Ticket ticket = new Ticket(request.owner(), request.priority(), Math.max(1, cost), sink);
+            if (!enqueue(ticket)) {
+                rejections.get(request.priority()).increment();
+                sink.error(new AIServiceException(QUEUE_FULL_MESSAGE));
+                return;
+            }
+            sink.onCancel(() -> release(ticket));
+            dispatch();
+        });
+    }
+
+    /** Frees the ticket's slot, or its place in the queue. Safe to call more than once. */
+    public void release(Ticket ticket) {
+        synchronized (this) {
+            switch (ticket.state) {
+                case QUEUED -> removeQueued(ticket);
+                case RUNNING -> {
+                    inFlight--;
+                    owners.get(ticket.owner).inFlight--;
+                    removeOwnerIfIdle(ticket.owner);
+                }
+                case DONE -> {
+                    return;
+                }
+            }
+            ticket.state = TicketState.DONE;
+        }
+        dispatch();
+    }
+
+    private synchronized boolean enqueue(Ticket ticket) {
+        OwnerQueue owner = owners.computeIfAbsent(ticket.owner, key -> new OwnerQueue());
+        ArrayDeque<Ticket> pending = owner.pending(ticket.priority);
+        if (pending.size() >= properties.getMaxQueuedPerOwner()) {
+            removeOwnerIfIdle(ticket.owner);
+            return false;
+        }
+        PriorityClass priorityClass = classes.get(ticket.priority);
+        if (priorityClass.active.isEmpty()) {
+            // A class coming back from idle starts at the current virtual time instead of
+            // spending credit saved up while it had nothing to do
+            priorityClass.pass = Math.max(priorityClass.pass, virtualTime);
+        }
+        if (pending.isEmpty()) {
+            priorityClass.active.addLast(owner);
+        }
+        pending.addLast(ticket);
+        priorityClass.queued++;
+        return true;
+    }
+
+    private void dispatch() {
+        List<Ticket> dispatched = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < properties.getMaxConcurrent()) {
+                Ticket next = next();
+                if (next == null) {
+                    break;
+                }
+                next.state = TicketState.RUNNING;
+                inFlight++;
+                owners.get(next.owner).inFlight++;
+                dispatched.add(next);
+            }
+        }
+        // Start the calls outside the lock
+        for (Ticket ticket : dispatched) {
+            queueWait.get(ticket.priority).record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+            ticket.sink.success(ticket);
+        }
+    }
+
+    /** Picks and dequeues the next request to run, or {@code null} if nothing can run. */
+    private Ticket next() {
+        PriorityClass chosen = null;
+        AIPriority chosenPriority = null;
+        for (Map.Entry<AIPriority, PriorityClass> entry : classes.entrySet()) {
+            PriorityClass candidate = entry.getValue();
+            if (hasRunnableOwner(candidate) && (chosen == null || candidate.pass < chosen.pass)) {
+                chosen = candidate;
+                chosenPriority = entry.getKey();
+            }
+        }
+        if (chosen == null) {
+            return null;
+        }
+        virtualTime = chosen.pass;
+        chosen.pass += 1.0 / chosen.weight;
+
+        // Deficit round robin: the owner at the head earns a quantum per visit and may send once
+        // its deficit covers the cost of its oldest request. Owners at their in-flight cap are skipped
+        while (true) {
+            OwnerQueue owner = chosen.active.pollFirst();
+            ArrayDeque<Ticket> pending = owner.pending(chosenPriority);
+            if (owner.inFlight >= properties.getMaxInFlightPerOwner()) {
+                chosen.active.addLast(owner);
+                continue;
+            }
+            Ticket head = pending.peekFirst();
+            if (owner.deficit(chosenPriority) < head.cost) {
+                owner.addDeficit(chosenPriority, properties.getQuantumTokens());
+                chosen.active.addLast(owner);
+                continue;
+            }
+            pending.pollFirst();
+            chosen.queued--;
+            owner.addDeficit(chosenPriority, -head.cost);
+            if (pending.isEmpty()) {
+                // Idle owners do not bank credit
+                owner.resetDeficit(chosenPriority);
+            } else {
+                chosen.active.addFirst(owner);
+            }
+            return head;
+        }
+    }
+
+    private boolean hasRunnableOwner(PriorityClass priorityClass) {
+        for (OwnerQueue owner : priorityClass.active) {
+            if (owner.inFlight < properties.getMaxInFlightPerOwner()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeQueued(Ticket ticket) {
+        OwnerQueue owner = owners.get(ticket.owner);
+        ArrayDeque<Ticket> pending = owner.pending(ticket.priority);
+        pending.remove(ticket);
+        PriorityClass priorityClass = classes.get(ticket.priority);
+        priorityClass.queued--;
+        if (pending.isEmpty()) {
+            priorityClass.active.remove(owner);
+            owner.resetDeficit(ticket.priority);
+        }
+        removeOwnerIfIdle(ticket.owner);
+    }
+
+    private void removeOwnerIfIdle(String name) {
+        OwnerQueue owner = owners.get(name);
+        if (owner != null && owner.isIdle()) {
+            owners.remove(name);
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued(AIPriority priority) {
+        return classes.get(priority).queued;
+    }
+
+    private enum TicketState {
+        QUEUED, RUNNING, DONE
+    }
+
+    /** A request's place in the scheduler. */
+    public static final class Ticket {
+
+        private final String owner;
+        private final AIPriority priority;
+        private final int cost;
+        private final MonoSink<Ticket> sink;
+        private final long enqueuedAt = System.nanoTime();
+        private TicketState state = TicketState.QUEUED;
+
+        private Ticket(String owner, AIPriority priority, int cost, MonoSink<Ticket> sink) {
+            this.owner = owner;
+            this.priority = priority;
+            this.cost = cost;
+            this.sink = sink;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public AIPriority getPriority() {
+            return priority;
+        }
+    }
+
+    private static final class PriorityClass {
+
+        private final int weight;
+        // Owners with queued requests of this class, in round-robin order
+        private final ArrayDeque<OwnerQueue> active = new ArrayDeque<>();
+        private double pass;
+        private int queued;
+
+        PriorityClass(int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Class weights must be at least 1");
+            }
+            this.weight = weight;
+        }
+    }
+
+    private static final class OwnerQueue {
+
+        private final Map<AIPriority, ArrayDeque<Ticket>> pending = new EnumMap<>(AIPriority.class);
+        private final Map<AIPriority, Long> deficits = new EnumMap<>(AIPriority.class);
+        private int inFlight;
+
+        ArrayDeque<Ticket> pending(AIPriority priority) {
+            return pending.computeIfAbsent(priority, key -> new ArrayDeque<>());
+        }
+
+        long deficit(AIPriority priority) {
+            return deficits.getOrDefault(priority, 0L);
+        }
+
+        void addDeficit(AIPriority priority, long amount) {
+            deficits.merge(priority, amount, Long::sum);
+        }
+
+        void resetDeficit(AIPriority priority) {
+            deficits.remove(priority);
+        }
+
+        boolean isIdle() {
+            if (inFlight > 0) {
+                return false;
+            }
+            return pending.values().stream().allMatch(ArrayDeque::isEmpty);
+        }
+    }
+}
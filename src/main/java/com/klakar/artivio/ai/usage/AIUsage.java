@@ -0,0 +1,29 @@
+package com.klakar.artivio.ai.usage;
+
+import java.time.Instant;
+
+/**
+ * Provider usage summed over the calls made for one user, one conversation, or everyone.
+ *
+ * @param key                 username, conversation id, or {@code "total"}
+ * @param requests            upstream calls that finished, failed or were cancelled
+ * @param failures            calls that ended in an error
+ * @param promptTokens        reported prompt tokens, cached part included
+ * @param cachedTokens        part of {@code promptTokens} served from cached content
+ * @param completionTokens    reported generated tokens
+ * @param totalTokens         prompt plus completion tokens
+ * @param avgUpstreamMillis   mean time from sending the request to the end of the response
+ * @param maxUpstreamMillis   slowest single call
+ * @param lastRequestAt       when the latest call finished
+ */
+public record AIUsage(String key,
+                      long requests,
+                      long failures,
+                      long promptTokens,
+                      long cachedTokens,
+                      long completionTokens,
+                      long totalTokens,
+                      double avgUpstreamMillis,
+                      double maxUpstreamMillis,
+                      Instant lastRequestAt) {
+}
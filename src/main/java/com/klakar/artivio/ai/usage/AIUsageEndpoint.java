@@ -0,0 +1,68 @@
+package com.klakar.artivio.ai.usage;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/aiusage}: node-local provider usage from the {@link AIUsageTracker}.
+ * <ul>
+ *     <li>{@code GET /actuator/aiusage?order=tokens|latency&limit=10}: totals plus the top users
+ *     and conversations</li>
+ *     <li>{@code GET /actuator/aiusage/users/{username}} and
+ *     {@code GET /actuator/aiusage/conversations/{id}}: one entry, 404 when not tracked</li>
+ * </ul>
+ * Only the users listed in {@code app.ai.usage.admins} may read it.
+ */
+@Endpoint(id = "aiusage")
+public class AIUsageEndpoint {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    public record Report(AIUsage total, List<AIUsage> users, List<AIUsage> conversations) {
+    }
+
+    private final AIUsageTracker tracker;
+
+    public AIUsageEndpoint(AIUsageTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @ReadOperation
+    public Report report(@Nullable String order, @Nullable Integer limit) {
+        AIUsageTracker.Order sortOrder = order != null ? parseOrder(order) : AIUsageTracker.Order.TOKENS;
+        int size = limit != null ? limit : DEFAULT_LIMIT;
+        if (size < 0) {
+            throw new InvalidEndpointRequestException("limit must not be negative", "Negative limit");
+        }
+        return new Report(
+                tracker.total(),
+                tracker.topUsers(sortOrder, size),
+                tracker.topConversations(sortOrder, size)
+        );
+    }
+
+    /** Unknown orders are a bad request (400), not a server error. */
+    private static AIUsageTracker.Order parseOrder(String order) {
+        for (AIUsageTracker.Order candidate : AIUsageTracker.Order.values()) {
+            if (candidate.name().equalsIgnoreCase(order)) {
+                return candidate;
+            }
+        }
+        throw new InvalidEndpointRequestException(
+                "Unknown order '" + order + "', expected tokens or latency", "Unknown order");
+    }
+
+    @ReadOperation
+    public AIUsage entry(@Selector String scope, @Selector String id) {
+        return switch (scope) {
+            case "users" -> tracker.user(id).orElse(null);
+            case "conversations" -> tracker.conversation(id).orElse(null);
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package com.klakar.artivio.ai.usage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.klakar.artivio.config.AIProperties;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running per-user and per-conversation totals of provider usage, for sizing quotas and finding
+ * conversations whose prompts are expensive or slow.
+ * <p>
+ * Totals live in memory on this node and start over on restart; the Micrometer meters recorded
+ * next to them are the durable, fleet-wide view. Users and conversations not seen for
+ * {@code expireAfterAccess} are dropped, and each map is capped, so memory stays bounded.
+ */
+public class AIUsageTracker {
+
+    private static final String TOTAL = "total";
+
+    /**
+     * What one upstream call used.
+     *
+     * @param upstreamNanos time from sending the request until the response ended
+     * @param failed        whether the call ended in an error
+     */
+    public record Sample(int promptTokens, int cachedTokens, int completionTokens, long upstreamNanos, boolean failed) {
+    }
+
+    public enum Order {
+        // Most prompt plus completion tokens first
+        TOKENS,
+        // Slowest average upstream time first
+        LATENCY
+    }
+
+    private final Aggregate total = new Aggregate();
+    private final Cache<String, Aggregate> users;
+    private final Cache<String, Aggregate> conversations;
+
+    public AIUsageTracker(AIProperties.Usage properties) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxUsers())
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .build();
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxConversations())
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .build();
+    }
+
+    /**
+     * @param owner          who the call was made for, as carried in the request context
+     * @param conversationId the conversation it belongs to, or {@code null}
+     */
+    public void record(String owner, String conversationId, Sample sample) {
+        total.add(sample);
+        if (owner != null) {
+            users.get(owner, key -> new Aggregate()).add(sample);
+        }
+        if (conversationId != null) {
+            conversations.get(conversationId, key -> new Aggregate()).add(sample);
+        }
+    }
+
+    public AIUsage total() {
+        return total.snapshot(TOTAL);
+    }
+
+    public Optional<AIUsage> user(String username) {
+        return Optional.ofNullable(users.getIfPresent(username)).map(aggregate -> aggregate.snapshot(username));
+    }
+
+    public Optional<AIUsage> conversation(String conversationId) {
+        return Optional.ofNullable(conversations.getIfPresent(conversationId))
+                .map(aggregate -> aggregate.snapshot(conversationId));
+    }
+
+    public List<AIUsage> topUsers(Order order, int limit) {
+        return top(users, order, limit);
+    }
+
+    public List<AIUsage> topConversations(Order order, int limit) {
+        return top(conversations, order, limit);
+    }
+
+    private static List<AIUsage> top(Cache<String, Aggregate> aggregates, Order order, int limit) {
+        Comparator<AIUsage> comparator = order == Order.LATENCY
+                ? Comparator.comparingDouble(AIUsage::avgUpstreamMillis)
+                : Comparator.comparingLong(AIUsage::totalTokens);
+        return aggregates.asMap().entrySet().stream()
+                .map(entry -> entry.getValue().snapshot(entry.getKey()))
+                .sorted(comparator.reversed())
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+
+    private static final class Aggregate {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder cachedTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder upstreamNanos = new LongAdder();
+        private final LongAccumulator maxUpstreamNanos = new LongAccumulator(Math::max, 0);
+        private volatile long lastRequestAt;
+
+        void add(Sample sample) {
+            requests.increment();
+            if (sample.failed()) {
+                failures.increment();
+            }
+            promptTokens.add(sample.promptTokens());
+            cachedTokens.add(sample.cachedTokens());
+            completionTokens.add(sample.completionTokens());
+            upstreamNanos.add(sample.upstreamNanos());
+            maxUpstreamNanos.accumulate(sample.upstreamNanos());
+            lastRequestAt = System.currentTimeMillis();
+        }
+
+        AIUsage snapshot(String key) {
+            long count = requests.sum();
+            long prompt = promptTokens.sum();
+            long completion = completionTokens.sum();
+            return new AIUsage(
+                    key,
+                    count,
+                    failures.sum(),
+                    prompt,
+                    cachedTokens.sum(),
+                    completion,
+                    prompt + completion,
+                    count == 0 ? 0 : millis(upstreamNanos.sum()) / count,
+                    millis(maxUpstreamNanos.get()),
+                    lastRequestAt == 0 ? null : Instant.ofEpochMilli(lastRequestAt)
+            );
+        }
+
+        private static double millis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
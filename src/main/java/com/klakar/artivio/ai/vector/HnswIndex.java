@@ -0,0 +1,576 @@
+package com.klakar.artivio.ai.vector;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Approximate nearest-neighbour index over cosine similarity: a Hierarchical Navigable Small
+ * World graph (Malkov and Yashunin). Each vector becomes a node linked to its closest neighbours
+ * on a random number of layers; a search walks greedily down the sparse upper layers and then
+ * explores the bottom layer with a candidate list of {@code efSearch} nodes.
+ * <p>
+ * Vectors are scaled to unit length and kept off-heap in {@link OffHeapVectors}; the graph and
+ * the payloads live on the heap. Inserts and searches may run concurrently from any number of
+ * threads: registration of a new node is serialised, linking takes a lock per touched node, and
+ * searches take no locks at all. Neighbour lists are replaced as a whole and published with
+ * release/acquire ordering, so a search always sees a consistent list.
+ * <p>
+ * Deletion only tombstones a node: searches still walk through it, which keeps the graph
+ * connected, but never return it. The space is reclaimed by copying the live nodes into a new
+ * index, see {@link #vector(int)} and {@link #isDeleted(int)}.
+ *
+ * @param <T> what is stored with each vector and handed back with matches
+ */
+public class HnswIndex<T> {
+
+    public record Match<T>(int id, T payload, float similarity) {
+    }
+
+    private record EntryPoint(int id, int level) {
+    }
+
+    private static final VarHandle LINKS = MethodHandles.arrayElementVarHandle(int[][].class);
+    private static final int[] NO_LINKS = new int[0];
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxBottomLinks;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelFactor;
+    private final OffHeapVectors vectors;
+    private final Object registrationLock = new Object();
+    private final Object entryLock = new Object();
+
+    private volatile Node<T>[] nodes;
+    private volatile int size;
+    private final AtomicInteger deleted = new AtomicInteger();
+    private volatile EntryPoint entryPoint;
+
+    /**
+     * @param m              links per node on the upper layers; the bottom layer allows {@code 2 * m}
+     * @param efConstruction candidates considered when linking a new node
+     * @param efSearch       candidates considered per search, raised to {@code k} when smaller
+     */
+    @SuppressWarnings("unchecked")
+    public HnswIndex(int dimensions, int m, int efConstruction, int efSearch) {
+        if (dimensions <= 0 || m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("Invalid HNSW parameters");
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxBottomLinks = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelFactor = 1 / Math.log(m);
+        this.vectors = new OffHeapVectors(dimensions);
+        this.nodes = (Node<T>[]) new Node[64];
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Off-heap memory reserved for vectors. */
+    public long vectorBytes() {
+        return vectors.bytes();
+    }
+
+    public T payload(int id) {
+        return node(id).payload;
+    }
+
+    /** Tombstoned nodes, still counted in {@link #size()}. */
+    public int deletedCount() {
+        return deleted.get();
+    }
+
+    public boolean isDeleted(int id) {
+        return node(id).deleted;
+    }
+
+    /** Tombstones a node so searches stop returning it; returns false if it already was. */
+    public boolean delete(int id) {
+        Node<T> node = node(id);
+        synchronized (node) {
+            if (node.deleted) {
+                return false;
+            }
+            node.deleted = true;
+        }
+        deleted.incrementAndGet();
+        return true;
+    }
+
+    /** A copy of the stored vector, scaled to unit length. */
+    public float[] vector(int id) {
+        float[] vector = new float[dimensions];
+        vectors.get(id, vector);
+        return vector;
+    }
+
+    /** Adds a vector and links it into the graph; returns its id. */
+    public int add(float[] vector, T payload) {
+        float[] unit = unit(vector);
+        int level = randomLevel();
+        Node<T> node = new Node<>(payload, level);
+        int id = register(unit, node);
+
+        EntryPoint entry = entryPoint;
+        if (entry == null) {
+            synchronized (entryLock) {
+                if (entryPoint == null) {
+                    entryPoint = new EntryPoint(id, level);
+                    return id;
+                }
+                entry = entryPoint;
+            }
+        }
+
+        int current = entry.id();
+        float currentSimilarity = vectors.dot(current, unit);
+        for (int layer = entry.level(); layer > level; layer--) {
+            current = greedy(unit, current, currentSimilarity, layer);
+            currentSimilarity = vectors.dot(current, unit);
+        }
+        for (int layer = Math.min(level, entry.level()); layer >= 0; layer--) {
+            ScoreHeap found = searchLayer(unit, current, currentSimilarity, efConstruction, layer, null, id);
+            ScoreHeap.Sorted candidates = found.sortedDescending();
+            int[] neighbours = selectNeighbours(candidates.ids(), candidates.scores(), candidates.ids().length, m);
+            link(id, node, layer, neighbours);
+            for (int neighbour : neighbours) {
+                connect(neighbour, id, layer);
+            }
+            if (candidates.ids().length > 0) {
+                current = candidates.ids()[0];
+                currentSimilarity = candidates.scores()[0];
+            }
+        }
+
+        if (level > entry.level()) {
+            synchronized (entryLock) {
+                if (level > entryPoint.level()) {
+                    entryPoint = new EntryPoint(id, level);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * The {@code k} stored vectors most similar to {@code query} whose payload passes
+     * {@code filter}, best first. Nodes failing the filter are still walked through, so a
+     * selective filter costs more exploration, not less recall.
+     *
+     * @param filter which payloads may be returned, or {@code null} for all
+     */
+    public List<Match<T>> search(float[] query, int k, Predicate<T> filter) {
+        EntryPoint entry = entryPoint;
+        if (entry == null || k <= 0) {
+            return List.of();
+        }
+        float[] unit = unit(query);
+        int current = entry.id();
+        float currentSimilarity = vectors.dot(current, unit);
+        for (int layer = entry.level(); layer > 0; layer--) {
+            current = greedy(unit, current, currentSimilarity, layer);
+            currentSimilarity = vectors.dot(current, unit);
+        }
+        ScoreHeap results = searchLayer(unit, current, currentSimilarity, Math.max(efSearch, k), 0, filter, -1);
+        return matches(results, k);
+    }
+
+    /** Exact top {@code k} by scanning every vector; the reference for recall, and fine for small sets. */
+    public List<Match<T>> exactSearch(float[] query, int k, Predicate<T> filter) {
+        if (k <= 0) {
+            return List.of();
+        }
+        float[] unit = unit(query);
+        ScoreHeap results = new ScoreHeap(false, k + 1);
+        int count = size;
+        for (int id = 0; id < count; id++) {
+            if (!accepts(id, filter, -1)) {
+                continue;
+            }
+            float similarity = vectors.dot(id, unit);
+            if (results.size() < k || similarity > results.topScore()) {
+                results.push(id, similarity);
+                if (results.size() > k) {
+                    results.pop();
+                }
+            }
+        }
+        return matches(results, k);
+    }
+
+    /**
+     * Exact top {@code k} among the first {@code count} entries of {@code ids}. Cheaper than a
+     * filtered graph search when the caller already knows the few ids that may match.
+     */
+    public List<Match<T>> exactSearch(float[] query, int k, int[] ids, int count) {
+        if (k <= 0 || count == 0) {
+            return List.of();
+        }
+        float[] unit = unit(query);
+        ScoreHeap results = new ScoreHeap(false, k + 1);
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (node(id).deleted) {
+                continue;
+            }
+            float similarity = vectors.dot(id, unit);
+            if (results.size() < k || similarity > results.topScore()) {
+                results.push(id, similarity);
+                if (results.size() > k) {
+                    results.pop();
+                }
+            }
+        }
+        return matches(results, k);
+    }
+
+    private int register(float[] unit, Node<T> node) {
+        synchronized (registrationLock) {
+            int id = size;
+            vectors.set(id, unit);
+            Node<T>[] current = nodes;
+            if (id == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[id] = node;
+            nodes = current;
+            size = id + 1;
+            return id;
+        }
+    }
+
+    private Node<T> node(int id) {
+        return nodes[id];
+    }
+
+    private static int[] links(Node<?> node, int layer) {
+        return (int[]) LINKS.getAcquire(node.links, layer);
+    }
+
+    private int greedy(float[] query, int start, float startSimilarity, int layer) {
+        int current = start;
+        float best = startSimilarity;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : links(node(current), layer)) {
+                float similarity = vectors.dot(neighbour, query);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first exploration of one layer. Returns up to {@code ef} accepted nodes in a min-heap,
+     * so the worst kept result is on top.
+     */
+    private ScoreHeap searchLayer(float[] query, int entry, float entrySimilarity, int ef, int layer,
+                                  Predicate<T> filter, int exclude) {
+        VisitedSet visited = new VisitedSet();
+        ScoreHeap candidates = new ScoreHeap(true, ef * 2);
+        ScoreHeap results = new ScoreHeap(false, ef + 1);
+
+        visited.add(entry);
+        candidates.push(entry, entrySimilarity);
+        if (accepts(entry, filter, exclude)) {
+            results.push(entry, entrySimilarity);
+        }
+
+        while (candidates.size() > 0) {
+            if (results.size() >= ef && candidates.topScore() < results.topScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            for (int neighbour : links(node(candidate), layer)) {
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float similarity = vectors.dot(neighbour, query);
+                if (results.size() < ef || similarity > results.topScore()) {
+                    candidates.push(neighbour, similarity);
+                    if (accepts(neighbour, filter, exclude)) {
+                        results.push(neighbour, similarity);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean accepts(int id, Predicate<T> filter, int exclude) {
+        Node<T> node = node(id);
+        return id != exclude && !node.deleted && (filter == null || filter.test(node.payload));
+    }
+
+    /**
+     * Neighbour selection heuristic: walking candidates from most to least similar, keep one only
+     * if it is closer to the base than to every neighbour kept so far. This spreads links across
+     * directions instead of bunching them in one cluster, which keeps the graph navigable.
+     */
+    private int[] selectNeighbours(int[] ids, float[] scores, int count, int max) {
+        int[] selected = new int[Math.min(max, count)];
+        int kept = 0;
+        for (int i = 0; i < count && kept < selected.length; i++) {
+            int candidate = ids[i];
+            boolean keep = true;
+            for (int j = 0; j < kept; j++) {
+                if (vectors.dot(candidate, selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[kept++] = candidate;
+            }
+        }
+        return kept == selected.length ? selected : Arrays.copyOf(selected, kept);
+    }
+
+    private void link(int id, Node<T> node, int layer, int[] neighbours) {
+        synchronized (node) {
+            int[] existing = links(node, layer);
+            if (existing.length == 0) {
+                LINKS.setRelease(node.links, layer, neighbours);
+                return;
+            }
+        }
+        // Other inserts already linked to this node on this layer; merge through the normal path
+        for (int neighbour : neighbours) {
+            connect(id, neighbour, layer);
+        }
+    }
+
+    /** Adds a link from {@code from} to {@code to}, pruning the list when it is full. */
+    private void connect(int from, int to, int layer) {
+        Node<T> node = node(from);
+        int max = layer == 0 ? maxBottomLinks : m;
+        synchronized (node) {
+            int[] existing = links(node, layer);
+            for (int link : existing) {
+                if (link == to) {
+                    return;
+                }
+            }
+            int[] updated;
+            if (existing.length < max) {
+                updated = Arrays.copyOf(existing, existing.length + 1);
+                updated[existing.length] = to;
+            } else {
+                ScoreHeap ranked = new ScoreHeap(false, existing.length + 1);
+                for (int link : existing) {
+                    ranked.push(link, vectors.dot(from, link));
+                }
+                ranked.push(to, vectors.dot(from, to));
+                ScoreHeap.Sorted sorted = ranked.sortedDescending();
+                updated = selectNeighbours(sorted.ids(), sorted.scores(), sorted.ids().length, max);
+            }
+            LINKS.setRelease(node.links, layer, updated);
+        }
+    }
+
+    private List<Match<T>> matches(ScoreHeap results, int k) {
+        ScoreHeap.Sorted sorted = results.sortedDescending();
+        int count = Math.min(k, sorted.ids().length);
+        List<Match<T>> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = sorted.ids()[i];
+            matches.add(new Match<>(id, node(id).payload, sorted.scores()[i]));
+        }
+        return matches;
+    }
+
+    private int randomLevel() {
+        double draw = 1 - ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(draw) * levelFactor));
+    }
+
+    private float[] unit(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        float[] unit = new float[dimensions];
+        if (sum > 0) {
+            float scale = (float) (1 / Math.sqrt(sum));
+            for (int i = 0; i < dimensions; i++) {
+                unit[i] = vector[i] * scale;
+            }
+        }
+        return unit;
+    }
+
+    private static final class Node<T> {
+
+        private final T payload;
+        // links[layer] is replaced whole under the node's lock, never modified in place
+        private final int[][] links;
+        private volatile boolean deleted;
+
+        Node(T payload, int level) {
+            this.payload = payload;
+            this.links = new int[level + 1][];
+            Arrays.fill(links, NO_LINKS);
+        }
+    }
+
+    /** Binary heap of (id, score) pairs in parallel primitive arrays. */
+    private static final class ScoreHeap {
+
+        record Sorted(int[] ids, float[] scores) {
+        }
+
+        private final boolean max;
+        private int[] ids;
+        private float[] scores;
+        private int size;
+
+        ScoreHeap(boolean max, int capacity) {
+            this.max = max;
+            this.ids = new int[Math.max(4, capacity)];
+            this.scores = new float[ids.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!above(score, scores[parent])) {
+                    break;
+                }
+                ids[index] = ids[parent];
+                scores[index] = scores[parent];
+                index = parent;
+            }
+            ids[index] = id;
+            scores[index] = score;
+        }
+
+        int pop() {
+            int top = ids[0];
+            size--;
+            int lastId = ids[size];
+            float lastScore = scores[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && above(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!above(scores[child], lastScore)) {
+                    break;
+                }
+                ids[index] = ids[child];
+                scores[index] = scores[child];
+                index = child;
+            }
+            ids[index] = lastId;
+            scores[index] = lastScore;
+            return top;
+        }
+
+        /** Drains the heap into arrays ordered from the highest score down. */
+        Sorted sortedDescending() {
+            int count = size;
+            int[] sortedIds = new int[count];
+            float[] sortedScores = new float[count];
+            for (int i = 0; i < count; i++) {
+                int slot = max ? i : count - 1 - i;
+                sortedScores[slot] = scores[0];
+                sortedIds[slot] = pop();
+            }
+            return new Sorted(sortedIds, sortedScores);
+        }
+
+        private boolean above(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+
+    /** Open-addressing set of node ids visited by one search. */
+    private static final class VisitedSet {
+
+        private int[] slots = new int[256];
+        private int count;
+
+        VisitedSet() {
+            Arrays.fill(slots, -1);
+        }
+
+        /** Returns {@code false} when the id was already present. */
+        boolean add(int id) {
+            if (count * 2 >= slots.length) {
+                grow();
+            }
+            int mask = slots.length - 1;
+            int index = mix(id) & mask;
+            while (slots[index] != -1) {
+                if (slots[index] == id) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            slots[index] = id;
+            count++;
+            return true;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            Arrays.fill(slots, -1);
+            count = 0;
+            for (int id : old) {
+                if (id != -1) {
+                    add(id);
+                }
+            }
+        }
+
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
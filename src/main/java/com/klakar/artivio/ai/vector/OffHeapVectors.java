@@ -0,0 +1,82 @@
+package com.klakar.artivio.ai.vector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-length float vectors addressed by a dense id, stored outside the Java heap in direct
+ * buffers of {@value #CHUNK_SIZE} vectors each. Vectors in a chunk are contiguous, so the GC never
+ * scans or moves them and a similarity loop walks plain memory.
+ * <p>
+ * Writes must be serialised by the caller and must happen before the id is published to readers;
+ * reads of published ids need no locking.
+ */
+final class OffHeapVectors {
+
+    private static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int dimensions;
+    private volatile FloatBuffer[] chunks = new FloatBuffer[0];
+
+    OffHeapVectors(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /** Off-heap bytes reserved so far, including unused space in the last chunk. */
+    long bytes() {
+        return (long) chunks.length * CHUNK_SIZE * dimensions * Float.BYTES;
+    }
+
+    void set(int id, float[] vector) {
+        int chunk = id >>> CHUNK_SHIFT;
+        FloatBuffer[] current = chunks;
+        if (chunk >= current.length) {
+            FloatBuffer[] grown = Arrays.copyOf(current, chunk + 1);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = ByteBuffer.allocateDirect(CHUNK_SIZE * dimensions * Float.BYTES)
+                        .order(ByteOrder.nativeOrder())
+                        .asFloatBuffer();
+            }
+            current = grown;
+        }
+        current[chunk].put((id & CHUNK_MASK) * dimensions, vector, 0, dimensions);
+        chunks = current;
+    }
+
+    void get(int id, float[] target) {
+        chunks[id >>> CHUNK_SHIFT].get((id & CHUNK_MASK) * dimensions, target, 0, dimensions);
+    }
+
+    /** Dot product of a stored vector with {@code query}. */
+    float dot(int id, float[] query) {
+        FloatBuffer chunk = chunks[id >>> CHUNK_SHIFT];
+        int offset = (id & CHUNK_MASK) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += chunk.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    /** Dot product of two stored vectors. */
+    float dot(int a, int b) {
+        FloatBuffer[] current = chunks;
+        FloatBuffer chunkA = current[a >>> CHUNK_SHIFT];
+        FloatBuffer chunkB = current[b >>> CHUNK_SHIFT];
+        int offsetA = (a & CHUNK_MASK) * dimensions;
+        int offsetB = (b & CHUNK_MASK) * dimensions;
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += chunkA.get(offsetA + i) * chunkB.get(offsetB + i);
+        }
+        return sum;
+    }
+}
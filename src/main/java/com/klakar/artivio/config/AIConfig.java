@@ -1,15 +1,56 @@
 package com.klakar.artivio.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.context.ContextIngestionPipeline;
+import com.klakar.artivio.ai.context.PromptContextAssembler;
+import com.klakar.artivio.ai.embedding.CachingEmbeddingService;
+import com.klakar.artivio.ai.embedding.EmbeddingService;
+import com.klakar.artivio.ai.embedding.GeminiEmbeddingService;
+import com.klakar.artivio.ai.embedding.HashingEmbeddingService;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.scheduling.FairAIScheduler;
+import com.klakar.artivio.ai.usage.AIUsageEndpoint;
+import com.klakar.artivio.ai.usage.AIUsageTracker;
+import com.klakar.artivio.repository.MessageRepository;
 import com.klakar.artivio.service.AIContextService;
+import com.klakar.artivio.service.AIQuotaService;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.ConversationSummaryService;
+import com.klakar.artivio.service.impl.Bm25AIContextServiceImpl;
+import com.klakar.artivio.service.impl.CachingAIServiceImpl;
+import com.klakar.artivio.service.impl.FairSchedulingAIServiceImpl;
 import com.klakar.artivio.service.impl.FallbackAIContextServiceImpl;
+import com.klakar.artivio.service.impl.GeminiAIServiceImpl;
+import com.klakar.artivio.service.impl.HnswAIContextServiceImpl;
+import com.klakar.artivio.service.impl.HybridAIContextServiceImpl;
+import com.klakar.artivio.service.impl.LocalAIQuotaServiceImpl;
+import com.klakar.artivio.service.impl.OpenAICompatibleAIServiceImpl;
+import com.klakar.artivio.service.impl.RedisAIQuotaServiceImpl;
+import com.klakar.artivio.service.impl.RoutingAIServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 
 @Configuration
+@EnableConfigurationProperties({GeminiProperties.class, AIProperties.class})
 @Slf4j
 public class AIConfig {
 
@@ -25,15 +66,284 @@ public class AIConfig {
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024));
     }
 
+    /**
+     * Connection pool dedicated to the AI provider. With metrics enabled Reactor Netty publishes
+     * {@code reactor.netty.connection.provider.*} gauges (active, idle, pending) to Micrometer.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider geminiConnectionProvider(GeminiProperties geminiProperties) {
+        GeminiProperties.Pool pool = geminiProperties.getPool();
+        return ConnectionProvider.builder("gemini")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(pool.isMetricsEnabled())
+                .build();
+    }
+
+    /**
+     * Long-lived client for the AI provider, built once so connections, TLS sessions and codecs are reused.
+     */
+    @Bean
+    public WebClient geminiWebClient(WebClient.Builder webClientBuilder,
+                                     ConnectionProvider geminiConnectionProvider,
+                                     GeminiProperties geminiProperties) {
+        log.info("Gemini WebClient configured: baseUrl={}, maxConnections={}, http2={}",
+                geminiProperties.getBaseUrl(), geminiProperties.getPool().getMaxConnections(),
+                geminiProperties.isHttp2Enabled());
+        return createProviderWebClient(webClientBuilder, geminiConnectionProvider, geminiProperties.getBaseUrl(), geminiProperties);
+    }
+
+    /**
+     * Client for one provider endpoint. All providers share the pool; Reactor Netty keeps separate
+     * connections per remote address.
+     */
+    private static WebClient createProviderWebClient(WebClient.Builder webClientBuilder,
+                                                     ConnectionProvider connectionProvider,
+                                                     String baseUrl,
+                                                     GeminiProperties httpSettings) {
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) httpSettings.getConnectTimeout().toMillis())
+                .responseTimeout(httpSettings.getResponseTimeout());
+
+        if (httpSettings.isHttp2Enabled()) {
+            // h2 is negotiated via ALPN over TLS; plain-text endpoints (local stubs) need h2c
+            boolean secure = baseUrl.startsWith("https");
+            httpClient = httpClient.protocol(secure ? HttpProtocol.H2 : HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        // Clone so the shared builder is never mutated
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(baseUrl)
+                .build();
+    }
+
+    /**
+     * The {@link AIService} the rest of the application talks to: the Gemini client, routed
+     * together with any extra {@code app.ai.providers}, wrapped in whichever decorators are enabled.
+     * Cache hits are answered before fair scheduling, so only real provider calls take a slot.
+     */
+    @Bean
+    @Primary
+    public AIService aiService(GeminiAIServiceImpl geminiAIService,
+                               GeminiProperties geminiProperties,
+                               AIProperties aiProperties,
+                               WebClient.Builder webClientBuilder,
+                               ConnectionProvider geminiConnectionProvider,
+                               ObjectMapper objectMapper,
+                               TokenEstimator tokenEstimator,
+                               AIUsageTracker usageTracker,
+                               ObjectProvider<ReactiveStringRedisTemplate> redisTemplate,
+                               MeterRegistry meterRegistry) {
+        AIService provider = geminiAIService;
+        // Cache keys hold only what is known before routing: every model a request may go to
+        List<String> models = new ArrayList<>(List.of(geminiAIService.getModelName()));
+        if (!aiProperties.getProviders().isEmpty()) {
+            List<RoutingAIServiceImpl.Backend> backends = new ArrayList<>();
+            backends.add(new RoutingAIServiceImpl.Backend("gemini", geminiAIService));
+            for (AIProperties.Provider providerProperties : aiProperties.getProviders()) {
+                backends.add(new RoutingAIServiceImpl.Backend(providerProperties.getName(), createProvider(
+                        providerProperties, geminiProperties, webClientBuilder, geminiConnectionProvider,
+                        objectMapper, tokenEstimator, usageTracker, meterRegistry)));
+                models.add(providerProperties.getModel());
+            }
+            provider = new RoutingAIServiceImpl(backends, aiProperties.getRouting(), meterRegistry);
+        }
+
+        if (aiProperties.getFairness().isEnabled()) {
+            provider = new FairSchedulingAIServiceImpl(
+                    provider, new FairAIScheduler(aiProperties.getFairness(), meterRegistry), tokenEstimator);
+        }
+
+        AIProperties.Cache cache = aiProperties.getCache();
+        if (!cache.getLocal().isEnabled() && !cache.getRedis().isEnabled()) {
+            return provider;
+        }
+        return new CachingAIServiceImpl(
+                provider,
+                String.join(",", models),
+                geminiProperties.getTemperature(),
+                cache,
+                redisTemplate.getIfAvailable(),
+                meterRegistry
+        );
+    }
+
+    private static AIService createProvider(AIProperties.Provider providerProperties,
+                                            GeminiProperties geminiProperties,
+                                            WebClient.Builder webClientBuilder,
+                                            ConnectionProvider connectionProvider,
+                                            ObjectMapper objectMapper,
+                                            TokenEstimator tokenEstimator,
+                                            AIUsageTracker usageTracker,
+                                            MeterRegistry meterRegistry) {
+        double temperature = providerProperties.getTemperature() != null
+                ? providerProperties.getTemperature()
+                : geminiProperties.getTemperature();
+        int maxTokens = providerProperties.getMaxTokens() != null
+                ? providerProperties.getMaxTokens()
+                : geminiProperties.getMaxTokens();
+
+        if (providerProperties.getType() == AIProperties.ProviderType.OPENAI) {
+            WebClient webClient = createProviderWebClient(
+                    webClientBuilder, connectionProvider, providerProperties.getBaseUrl(), geminiProperties);
+            return new OpenAICompatibleAIServiceImpl(webClient, objectMapper, providerProperties.getModel(),
+                    providerProperties.getApiKey(), temperature, maxTokens);
+        }
+
+        // Another Gemini model: same client tuning and protection settings as the primary
+        GeminiProperties properties = new GeminiProperties();
+        properties.setModel(providerProperties.getModel());
+        properties.setApiKey(providerProperties.getApiKey() != null
+                ? providerProperties.getApiKey()
+                : geminiProperties.getApiKey());
+        properties.setBaseUrl(providerProperties.getBaseUrl() != null
+                ? providerProperties.getBaseUrl()
+                : geminiProperties.getBaseUrl());
+        properties.setTemperature(temperature);
+        properties.setMaxTokens(maxTokens);
+        properties.setHttp2Enabled(geminiProperties.isHttp2Enabled());
+        properties.setConnectTimeout(geminiProperties.getConnectTimeout());
+        properties.setResponseTimeout(geminiProperties.getResponseTimeout());
+        properties.setLimiter(geminiProperties.getLimiter());
+        properties.setCircuitBreaker(geminiProperties.getCircuitBreaker());
+        properties.setContextCache(geminiProperties.getContextCache());
+
+        WebClient webClient = createProviderWebClient(
+                webClientBuilder, connectionProvider, properties.getBaseUrl(), properties);
+        return new GeminiAIServiceImpl(webClient, objectMapper, properties, tokenEstimator, usageTracker, meterRegistry);
+    }
+
     @Bean
-    public AIContextService aiContextService() {
+    public AIUsageTracker aiUsageTracker(AIProperties aiProperties) {
+        return new AIUsageTracker(aiProperties.getUsage());
+    }
+
+    @Bean
+    public AIUsageEndpoint aiUsageEndpoint(AIUsageTracker aiUsageTracker) {
+        return new AIUsageEndpoint(aiUsageTracker);
+    }
+
+    @Bean
+    public TokenEstimator tokenEstimator(AIProperties aiProperties) {
+        return new TokenEstimator(aiProperties.getContext().getCharsPerToken());
+    }
+
+    @Bean
+    public PromptContextAssembler promptContextAssembler(TokenEstimator tokenEstimator, AIProperties aiProperties) {
+        return new PromptContextAssembler(tokenEstimator, aiProperties.getContext());
+    }
+
+    @Bean
+    public AIQuotaService aiQuotaService(AIProperties aiProperties,
+                                         ObjectProvider<ReactiveStringRedisTemplate> redisTemplate,
+                                         MeterRegistry meterRegistry) {
+        AIProperties.Quota quota = aiProperties.getQuota();
+        LocalAIQuotaServiceImpl local = new LocalAIQuotaServiceImpl(quota, meterRegistry);
+        if (!quota.isEnabled() || quota.getStore() != AIProperties.QuotaStore.REDIS) {
+            return local;
+        }
+        ReactiveStringRedisTemplate template = redisTemplate.getIfAvailable();
+        if (template == null) {
+            log.warn("AI quota store is redis but no Redis connection is configured, using local buckets");
+            return local;
+        }
+        return new RedisAIQuotaServiceImpl(template, quota, local, meterRegistry);
+    }
+
+    /**
+     * Embeddings for semantic context. Without a usable Gemini key the hashing embedder is used, so
+     * the vector store still works offline, lexically.
+     */
+    @Bean
+    public EmbeddingService embeddingService(WebClient geminiWebClient,
+                                             GeminiProperties geminiProperties,
+                                             AIProperties aiProperties,
+                                             MeterRegistry meterRegistry) {
+        AIProperties.Embedding embedding = aiProperties.getEmbedding();
+        String apiKey = geminiProperties.getApiKey();
+        boolean geminiConfigured = apiKey != null && !apiKey.isEmpty() && !apiKey.equals("demo");
+        EmbeddingService embeddingService;
+        if (embedding.getProvider() == AIProperties.EmbeddingProvider.GEMINI && geminiConfigured) {
+            embeddingService = new GeminiEmbeddingService(geminiWebClient, geminiProperties, embedding, meterRegistry);
+        } else {
+            if (embedding.getProvider() == AIProperties.EmbeddingProvider.GEMINI) {
+                log.warn("Gemini API key is not configured, using hashing embeddings");
+            }
+            embeddingService = new HashingEmbeddingService(embedding.getDimensions());
+        }
+
+        AIProperties.Embedding.Cache cache = embedding.getCache();
+        if (!cache.isEnabled()) {
+            return embeddingService;
+        }
+        log.info("Caching embeddings in memory{}", cache.getDisk().isEnabled()
+                ? " and in " + cache.getDisk().getPath() : "");
+        return new CachingEmbeddingService(embeddingService, cache, meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ContextIngestionPipeline contextIngestionPipeline(AIContextService aiContextService,
+                                                             MessageRepository messageRepository,
+                                                             AIProperties aiProperties,
+                                                             MeterRegistry meterRegistry) {
+        return new ContextIngestionPipeline(aiContextService, messageRepository,
+                aiProperties.getContext().getIngestion(), meterRegistry);
+    }
+
+    @Bean
+    public AIContextService aiContextService(ConversationSummaryService conversationSummaryService,
+                                             EmbeddingService embeddingService,
+                                             AIProperties aiProperties,
+                                             MeterRegistry meterRegistry) {
+        AIProperties.Context context = aiProperties.getContext();
+        if (context.getStore() != AIProperties.ContextStore.HYBRID) {
+            return contextStore(context.getStore(), conversationSummaryService, embeddingService, aiProperties,
+                    meterRegistry);
+        }
+
+        AIProperties.Context.Hybrid hybrid = context.getHybrid();
+        List<HybridAIContextServiceImpl.Retriever> retrievers = new ArrayList<>();
+        for (AIProperties.ContextStore store : new LinkedHashSet<>(hybrid.getRetrievers())) {
+            if (store == AIProperties.ContextStore.HYBRID) {
+                throw new IllegalStateException("app.ai.context.hybrid.retrievers cannot include hybrid");
+            }
+            retrievers.add(new HybridAIContextServiceImpl.Retriever(store.name().toLowerCase(Locale.ROOT),
+                    contextStore(store, conversationSummaryService, embeddingService, aiProperties, meterRegistry),
+                    hybrid.getRetrieverWeights().getOrDefault(store, 1.0)));
+        }
+        return new HybridAIContextServiceImpl(retrievers, hybrid, meterRegistry);
+    }
+
+    private AIContextService contextStore(AIProperties.ContextStore store,
+                                          ConversationSummaryService conversationSummaryService,
+                                          EmbeddingService embeddingService,
+                                          AIProperties aiProperties,
+                                          MeterRegistry meterRegistry) {
+        AIProperties.Context context = aiProperties.getContext();
+        if (store == AIProperties.ContextStore.HNSW) {
+            log.info("Using the in-process HNSW vector index for AI context");
+            return new HnswAIContextServiceImpl(embeddingService, context.getHnsw(), meterRegistry);
+        }
+        if (store == AIProperties.ContextStore.BM25) {
+            log.info("Using in-process BM25 keyword search for AI context");
+            return new Bm25AIContextServiceImpl(context.getBm25(), meterRegistry);
+        }
+
+        AIProperties.Summary summary = aiProperties.getSummary();
+        AIProperties.Context.Memory memory = context.getMemory();
+        ConversationSummaryService summarizer = summary.isEnabled() ? conversationSummaryService : null;
         if (chromaEnabled) {
             log.info("ChromaDB is enabled, but VectorStore configuration is manual");
             // For now, use fallback until ChromaDB is properly configured
-            return new FallbackAIContextServiceImpl();
+            return new FallbackAIContextServiceImpl(summarizer, summary, memory, meterRegistry);
         } else {
             log.info("ChromaDB is disabled, using fallback AIContextService");
-            return new FallbackAIContextServiceImpl();
+            return new FallbackAIContextServiceImpl(summarizer, summary, memory, meterRegistry);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,274 @@
+package com.klakar.artivio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.ai")
+public class AIProperties {
+
+    private Cache cache = new Cache();
+    private Context context = new Context();
+    private Summary summary = new Summary();
+    private Embedding embedding = new Embedding();
+
+    // Extra backends next to app.gemini; with any configured, requests go through the router
+    private List<Provider> providers = new ArrayList<>();
+    private Routing routing = new Routing();
+    private Generation generation = new Generation();
+    private Fairness fairness = new Fairness();
+    private Quota quota = new Quota();
+    private Usage usage = new Usage();
+
+    @Data
+    public static class Cache {
+        private Local local = new Local();
+        private Redis redis = new Redis();
+
+        @Data
+        public static class Local {
+            private boolean enabled = true;
+            private long maxSize = 10_000;
+            private Duration ttl = Duration.ofMinutes(10);
+        }
+
+        @Data
+        public static class Redis {
+            private boolean enabled = false;
+            private Duration ttl = Duration.ofHours(1);
+            private Duration timeout = Duration.ofMillis(200);
+            private String keyPrefix = "artivio:ai:response:";
+        }
+    }
+
+    @Data
+    public static class Context {
+        // Estimated tokens for the whole request: preamble, context and user message
+        private int maxInputTokens = 2048;
+        private int reservedTokens = 200;
+        private int maxSnippets = 20;
+        private int recentTurns = 4;
+        private double charsPerToken = 4.0;
+        // Where conversation turns are kept and retrieved from
+        private ContextStore store = ContextStore.MEMORY;
+        private Memory memory = new Memory();
+        private Hnsw hnsw = new Hnsw();
+        private Bm25 bm25 = new Bm25();
+        private Hybrid hybrid = new Hybrid();
+        private Ingestion ingestion = new Ingestion();
+
+        @Data
+        public static class Memory {
+            // Budget for raw turns held by the in-memory store; least valuable conversations go first
+            private long maxBytes = 64L * 1024 * 1024;
+            // Conversations not written or read for this long are dropped
+            private Duration idleTimeout = Duration.ofHours(6);
+        }
+
+        @Data
+        public static class Bm25 {
+            // Turns indexed per conversation; the oldest drop out of the index beyond this
+            private int maxTurns = 1000;
+            // Budget for all conversation indexes, turn text included; least valuable conversations go first
+            private long maxBytes = 64L * 1024 * 1024;
+            private Duration idleTimeout = Duration.ofHours(6);
+            // Term frequency saturation and document length normalization
+            private double k1 = 1.2;
+            private double b = 0.75;
+        }
+
+        @Data
+        public static class Hybrid {
+            // Stores that each keep the turns and are asked for candidates; any but HYBRID
+            private List<ContextStore> retrievers = new ArrayList<>(List.of(ContextStore.MEMORY, ContextStore.BM25));
+            // Candidates asked of each retriever, as a multiple of the snippets wanted
+            private int candidateFactor = 2;
+            // Scale of each retriever's scores after normalizing them to 0..1; unlisted retrievers count fully
+            private Map<ContextStore, Double> retrieverWeights = new EnumMap<>(ContextStore.class);
+            // Final score: sender weight * (relevance weight * relevance + recency weight * recency)
+            private double relevanceWeight = 0.45;
+            private double recencyWeight = 0.55;
+            // Recency halves every this many candidates, counted from the newest
+            private double recencyHalfLife = 2;
+            // Applied to the assistant's turns, which mostly restate what they answer
+            private double assistantWeight = 0.8;
+            // Word overlap (Jaccard) at which two snippets count as the same; above 1 keeps near-duplicates
+            private double duplicateThreshold = 0.8;
+        }
+
+        @Data
+        public static class Hnsw {
+            // Links per node and layer (twice that on the bottom layer); more means better recall and more memory
+            private int m = 16;
+            // Candidate list size while inserting and while searching; higher is slower and more accurate
+            private int efConstruction = 200;
+            private int efSearch = 64;
+            // Conversations with at most this many turns are always scanned exactly instead of searched in the graph
+            private int exactScanLimit = 2048;
+            // Turns indexed before new ones are refused
+            private int maxVectors = 1_000_000;
+            // Nodes per segment; compaction rebuilds one segment at a time
+            private int segmentSize = 100_000;
+            // Share of deleted turns at which a segment is rebuilt, and how often that is checked
+            private double compactionThreshold = 0.2;
+            private Duration compactionInterval = Duration.ofMinutes(1);
+        }
+
+        @Data
+        public static class Ingestion {
+            // A batch is written once it has this many turns or its first turn has waited max-delay
+            private int maxBatchSize = 64;
+            private Duration maxDelay = Duration.ofMillis(200);
+            // Turns arriving while the queue is full are skipped and left to the backfill
+            private int queueCapacity = 10_000;
+            // On startup, store messages that never made it into a durable context store
+            private boolean backfill = true;
+            private int backfillPageSize = 500;
+        }
+    }
+
+    public enum ContextStore {
+        // Recent turns per conversation plus the rolling summary
+        MEMORY,
+        // Semantic search over embedded turns, in-process
+        HNSW,
+        // Keyword relevance (BM25) over the turns of each conversation, in-process, no embedding model
+        BM25,
+        // Candidates of several of the above, re-ranked by relevance, recency and sender
+        HYBRID
+    }
+
+    @Data
+    public static class Embedding {
+        private EmbeddingProvider provider = EmbeddingProvider.GEMINI;
+        private String model = "text-embedding-004";
+        // Vector length; Gemini truncates to it, hashing produces it
+        private int dimensions = 768;
+        private int maxBatchSize = 100;
+        private Duration timeout = Duration.ofSeconds(10);
+        private Cache cache = new Cache();
+
+        @Data
+        public static class Cache {
+            // Vectors keyed by a hash of model and text, so repeated messages are embedded once
+            private boolean enabled = true;
+            private long maxBytes = 32L * 1024 * 1024;
+            private Disk disk = new Disk();
+
+            @Data
+            public static class Disk {
+                // Memory-mapped second tier that survives restarts; changing maxEntries starts it empty
+                private boolean enabled = false;
+                private String path = "data/embedding-cache.bin";
+                private int maxEntries = 100_000;
+            }
+        }
+    }
+
+    public enum EmbeddingProvider {
+        // Gemini embedding model over the app.gemini connection
+        GEMINI,
+        // Feature hashing of words and character trigrams; offline and lexical only
+        HASHING
+    }
+
+    @Data
+    public static class Summary {
+        private boolean enabled = true;
+        // Raw turns kept per conversation; older ones are folded into the summary
+        private int recentTurns = 10;
+        // Raw turns allowed to pile up before a fold, so each summary call covers a batch
+        private int threshold = 16;
+        private int maxWords = 200;
+        private Duration timeout = Duration.ofSeconds(30);
+        private int queueCapacity = 500;
+    }
+
+    @Data
+    public static class Provider {
+        private String name;
+        private ProviderType type = ProviderType.GEMINI;
+        private String model;
+        private String baseUrl;
+        private String apiKey;
+        // Fall back to the app.gemini values when unset
+        private Double temperature;
+        private Integer maxTokens;
+    }
+
+    public enum ProviderType {
+        GEMINI,
+        OPENAI
+    }
+
+    @Data
+    public static class Routing {
+        private double ewmaAlpha = 0.2;
+        // Added to a backend's score per unit of error rate
+        private Duration errorPenalty = Duration.ofSeconds(2);
+        private boolean hedgingEnabled = true;
+        private Duration hedgeMinDelay = Duration.ofMillis(250);
+        private Duration hedgeMaxDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Generation {
+        private ConcurrencyPolicy policy = ConcurrencyPolicy.CANCEL_PREVIOUS;
+        private boolean cancelOnDisconnect = true;
+    }
+
+    @Data
+    public static class Fairness {
+        private boolean enabled = true;
+        // Kept below the provider limiter's initial limit so requests queue here, fairly, rather than being rejected there
+        private int maxConcurrent = 16;
+        private int maxInFlightPerOwner = 2;
+        private int maxQueuedPerOwner = 10;
+        // Tokens an owner may send per round-robin turn
+        private int quantumTokens = 1024;
+        private int interactiveWeight = 4;
+        private int backgroundWeight = 1;
+    }
+
+    @Data
+    public static class Quota {
+        private boolean enabled = true;
+        private int requestsPerMinute = 20;
+        private long tokensPerDay = 200_000;
+        private QuotaStore store = QuotaStore.LOCAL;
+        // Lock stripes for the local buckets; 0 means four per available processor
+        private int stripes = 0;
+        private String redisKeyPrefix = "artivio:ai:quota:";
+        private Duration redisTimeout = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Usage {
+        // Per-user and per-conversation totals kept in memory for /actuator/aiusage
+        private long maxUsers = 10_000;
+        private long maxConversations = 50_000;
+        private Duration expireAfterAccess = Duration.ofHours(24);
+        // Usernames allowed to read /actuator/aiusage; nobody when empty
+        private List<String> admins = new ArrayList<>();
+    }
+
+    public enum QuotaStore {
+        // Buckets per node
+        LOCAL,
+        // One shared bucket per user across nodes
+        REDIS
+    }
+
+    public enum ConcurrencyPolicy {
+        // A new message stops the response still being generated in the same conversation
+        CANCEL_PREVIOUS,
+        // Every message gets its own response
+        CONCURRENT
+    }
+}
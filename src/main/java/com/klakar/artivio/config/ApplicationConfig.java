@@ -2,12 +2,15 @@ package com.klakar.artivio.config;
 
 import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.concurrent.Executor;
 
@@ -41,4 +44,31 @@ public class ApplicationConfig {
         executor.initialize();
         return executor;
     }
-}
\ No newline at end of file
+
+    /**
+     * Single low-priority thread for background conversation summaries, so they never compete
+     * with interactive requests and never update the same summary concurrently.
+     */
+    @Bean(name = "summaryExecutor")
+    public Executor summaryExecutor(@Value("${app.ai.summary.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.setThreadNamePrefix("Artivio-Summary-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded scheduler for the blocking edges of the AI pipeline (context lookup, JPA, WebSocket publish).
+     * Provider calls themselves are non-blocking, so in-flight AI requests are limited by the HTTP
+     * connection pool rather than by this thread count.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler aiScheduler(@Value("${app.ai.scheduler.thread-cap:10}") int threadCap,
+                                 @Value("${app.ai.scheduler.queued-task-cap:1000}") int queuedTaskCap) {
+        return Schedulers.newBoundedElastic(threadCap, queuedTaskCap, "Artivio-AI");
+    }
+}
@@ -0,0 +1,73 @@
+package com.klakar.artivio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.gemini")
+public class GeminiProperties {
+
+    private String apiKey = "demo";
+    private String model = "gemini-1.5-flash";
+    private double temperature = 0.7;
+    private int maxTokens = 1000;
+    private String baseUrl = "https://generativelanguage.googleapis.com/v1beta";
+
+    // HTTP client tuning for the long-lived provider client
+    private boolean http2Enabled = false;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration responseTimeout = Duration.ofSeconds(30);
+    private Pool pool = new Pool();
+
+    // Protection of the provider (and of us) when it starts rate limiting or failing
+    private Limiter limiter = new Limiter();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    // Server-side caching of long conversation prefixes (cachedContents API)
+    private ContextCache contextCache = new ContextCache();
+
+    @Data
+    public static class Pool {
+        private int maxConnections = 100;
+        private int pendingAcquireMaxCount = 500;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        private boolean metricsEnabled = true;
+    }
+
+    @Data
+    public static class Limiter {
+        private boolean enabled = true;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 100;
+        private double backoffRatio = 0.7;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private double failureRateThreshold = 50;
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenPermittedCalls = 3;
+    }
+
+    @Data
+    public static class ContextCache {
+        private boolean enabled = false;
+        // Below the model's minimum for cached content the API refuses to create one
+        private int minTokens = 4096;
+        private Duration ttl = Duration.ofMinutes(10);
+        // Extend the TTL when a cache is used with less than this left
+        private Duration refreshBefore = Duration.ofMinutes(3);
+        private int maxEntries = 1000;
+        // After a failed create, wait this long before trying again for the same conversation
+        private Duration failureBackoff = Duration.ofMinutes(1);
+    }
+}
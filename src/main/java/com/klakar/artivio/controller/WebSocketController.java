@@ -1,7 +1,10 @@
 package com.klakar.artivio.controller;
 
+import com.klakar.artivio.ai.generation.AIGeneration;
+import com.klakar.artivio.config.AIProperties;
 import com.klakar.artivio.dto.ChatMessageRequest;
 import com.klakar.artivio.dto.MessageDTO;
+import com.klakar.artivio.service.AIGenerationRegistry;
 import com.klakar.artivio.service.ChatService;
 import com.klakar.artivio.service.UserService;
 import lombok.RequiredArgsConstructor;
@@ -10,6 +13,8 @@ import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
@@ -25,6 +30,9 @@ public class WebSocketController {
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatService chatService;
     private final UserService userService;
+    private final SimpUserRegistry simpUserRegistry;
+    private final AIGenerationRegistry aiGenerationRegistry;
+    private final AIProperties aiProperties;
 
     @MessageMapping("/chat.sendMessage")
     public void sendMessage(@Payload ChatMessageRequest chatMessage, Principal principal) {
@@ -118,12 +126,25 @@ public class WebSocketController {
                 messagingTemplate.convertAndSend("/topic/user.status", statusMessage);
 
                 log.info("User {} set offline and status broadcasted", username);
+
+                // Nobody is left to receive responses still being generated for this user
+                if (aiProperties.getGeneration().isCancelOnDisconnect()
+                        && !hasOtherSessions(username, event.getSessionId())) {
+                    aiGenerationRegistry.cancelUserGenerations(username, AIGeneration.CancelReason.DISCONNECTED);
+                }
             } catch (Exception e) {
                 log.error("Error handling user disconnection for {}: {}", username, e.getMessage(), e);
             }
         }
     }
 
+    // The user registry may or may not have dropped the closing session yet, so it is skipped explicitly
+    private boolean hasOtherSessions(String username, String sessionId) {
+        SimpUser user = simpUserRegistry.getUser(username);
+        return user != null && user.getSessions().stream()
+                .anyMatch(session -> !session.getId().equals(sessionId));
+    }
+
     // WebSocket message classes
     public static class TypingNotification {
         private String sender;
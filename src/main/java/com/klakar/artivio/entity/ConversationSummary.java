@@ -0,0 +1,46 @@
+package com.klakar.artivio.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rolling summary of the turns of a conversation that no longer fit in the raw AI context window.
+ */
+@Entity
+@Table(name = "conversation_summaries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ConversationSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conversation_id", nullable = false, unique = true)
+    private String conversationId;
+
+    @Column(name = "summary", nullable = false, columnDefinition = "TEXT")
+    @Builder.Default
+    private String summary = "";
+
+    // Number of turns folded into the summary so far
+    @Column(name = "summarized_turns", nullable = false)
+    @Builder.Default
+    private Integer summarizedTurns = 0;
+
+    @Column(name = "updated_at")
+    @Builder.Default
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    @PreUpdate
+    public void preUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
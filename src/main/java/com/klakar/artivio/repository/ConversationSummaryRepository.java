@@ -0,0 +1,15 @@
+package com.klakar.artivio.repository;
+
+import com.klakar.artivio.entity.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+
+    Optional<ConversationSummary> findByConversationId(String conversationId);
+
+    void deleteByConversationId(String conversationId);
+}
@@ -6,11 +6,14 @@ import com.klakar.artivio.entity.User;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +28,20 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.conversation = :conversation AND m.embeddingStored = false")
     List<Message> findMessagesWithoutEmbeddings(Conversation conversation);
 
+    // Only turns of live conversations; system notices are never part of the AI context
+    @Query("SELECT m FROM Message m LEFT JOIN FETCH m.sender WHERE m.embeddingStored = false " +
+            "AND m.conversation.isActive = true " +
+            "AND m.messageType <> com.klakar.artivio.entity.Message$MessageType.SYSTEM " +
+            "AND m.id > :afterId AND m.createdAt < :before ORDER BY m.id")
+    List<Message> findMessagesWithoutEmbeddingsAfter(@Param("afterId") Long afterId,
+                                                     @Param("before") LocalDateTime before,
+                                                     Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Message m SET m.embeddingStored = true WHERE m.id IN :ids")
+    int markEmbeddingStored(@Param("ids") Collection<Long> ids);
+
     @Query("SELECT m FROM Message m WHERE m.conversation = :conversation ORDER BY m.createdAt DESC")
     List<Message> findLastMessageByConversationQuery(@Param("conversation") Conversation conversation, Pageable pageable);
 
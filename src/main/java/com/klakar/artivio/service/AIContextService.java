@@ -1,7 +1,26 @@
 package com.klakar.artivio.service;
 
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.ContextTurn;
+
+import java.util.List;
+
 public interface AIContextService {
     void storeConversationContext(String conversationId, String messageContent, String sender);
     String getRelevantContext(String conversationId, String query, int maxResults);
+    List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults);
     void clearConversationContext(String conversationId);
-}
\ No newline at end of file
+
+    /**
+     * Stores several turns in one go. Unlike {@link #storeConversationContext} this throws when the
+     * batch could not be stored, so the caller can keep it for a retry.
+     */
+    default void storeConversationContexts(List<ContextTurn> turns) {
+        turns.forEach(turn -> storeConversationContext(turn.conversationId(), turn.content(), turn.sender()));
+    }
+
+    /** Whether stored turns survive a restart, which is what {@code Message.embeddingStored} records. */
+    default boolean isDurable() {
+        return false;
+    }
+}
@@ -0,0 +1,11 @@
+package com.klakar.artivio.service;
+
+import com.klakar.artivio.ai.generation.AIGeneration;
+
+public interface AIGenerationRegistry {
+    /** Registers a new generation, cancelling earlier ones in the conversation if the policy says so. */
+    AIGeneration start(String username, Long conversationId);
+    /** Forgets a generation once its pipeline has terminated, whether completed, failed or cancelled. */
+    void finish(AIGeneration generation);
+    int cancelUserGenerations(String username, AIGeneration.CancelReason reason);
+}
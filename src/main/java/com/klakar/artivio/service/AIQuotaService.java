@@ -0,0 +1,10 @@
+package com.klakar.artivio.service;
+
+import com.klakar.artivio.ai.quota.QuotaDecision;
+
+public interface AIQuotaService {
+    /** Checks and takes one AI reply plus {@code estimatedTokens} from the user's quota. */
+    QuotaDecision tryAcquire(String username, int estimatedTokens);
+    /** Charges tokens only known once the reply is done (context, response). Never refuses. */
+    void recordUsage(String username, int tokens);
+}
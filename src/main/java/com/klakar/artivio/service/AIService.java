@@ -1,10 +1,59 @@
 package com.klakar.artivio.service;
 
+import com.klakar.artivio.ai.AIPrompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 import java.util.concurrent.CompletableFuture;
 
 public interface AIService {
-    CompletableFuture<String> generateResponse(String prompt, String context);
-    CompletableFuture<String> generateResponse(String prompt);
+
+    /**
+     * Generates a complete response without blocking the caller. Failures are signalled as
+     * {@link AIServiceException} carrying a user-facing message.
+     */
+    Mono<String> generate(String prompt, String context);
+
+    /**
+     * Streams the response as the provider produces it. Failures are signalled as
+     * {@link AIServiceException} carrying a user-facing message.
+     */
+    Flux<String> streamResponse(String prompt, String context);
+
+    /**
+     * Like {@link #generate(String, String)}, with the context as separate turns. Providers
+     * without a multi-turn request format get the flattened context.
+     */
+    default Mono<String> generate(AIPrompt prompt) {
+        return generate(prompt.message(), prompt.context());
+    }
+
+    /**
+     * Like {@link #streamResponse(String, String)}, with the context as separate turns. Providers
+     * without a multi-turn request format get the flattened context.
+     */
+    default Flux<String> streamResponse(AIPrompt prompt) {
+        return streamResponse(prompt.message(), prompt.context());
+    }
+
+    /**
+     * Drops whatever the provider keeps for the conversation, such as cached context, once the
+     * conversation is deleted. Does nothing by default.
+     */
+    default void forgetConversation(String conversationId) {
+    }
+
     boolean isConfigured();
+
     String getModelName();
-}
\ No newline at end of file
+
+    default CompletableFuture<String> generateResponse(String prompt, String context) {
+        return generate(prompt, context)
+                .onErrorResume(AIServiceException.class, e -> Mono.just(e.getMessage()))
+                .toFuture();
+    }
+
+    default CompletableFuture<String> generateResponse(String prompt) {
+        return generateResponse(prompt, null);
+    }
+}
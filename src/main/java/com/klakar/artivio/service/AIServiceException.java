@@ -0,0 +1,16 @@
+package com.klakar.artivio.service;
+
+/**
+ * Signals a failed AI generation. The message is safe to show to the user, so callers
+ * that need a plain text answer can fall back to it.
+ */
+public class AIServiceException extends RuntimeException {
+
+    public AIServiceException(String userMessage) {
+        super(userMessage);
+    }
+
+    public AIServiceException(String userMessage, Throwable cause) {
+        super(userMessage, cause);
+    }
+}
@@ -0,0 +1,13 @@
+package com.klakar.artivio.service;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface ConversationSummaryService {
+    /** Queues turns that dropped out of the raw context window to be folded into the summary. */
+    void foldAsync(String conversationId, List<ContextSnippet> turns);
+    Optional<String> getSummary(String conversationId);
+    void clearSummary(String conversationId);
+}
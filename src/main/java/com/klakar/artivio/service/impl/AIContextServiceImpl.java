@@ -1,15 +1,21 @@
 package com.klakar.artivio.service.impl;
 
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.ContextTurn;
 import com.klakar.artivio.service.AIContextService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,7 +23,10 @@ import java.util.stream.Collectors;
 @ConditionalOnBean(VectorStore.class)
 public class AIContextServiceImpl implements AIContextService {
 
+    private static final int DELETE_PAGE_SIZE = 500;
+
     private final VectorStore vectorStore;
+    private final FilterExpressionBuilder filters = new FilterExpressionBuilder();
 
     public AIContextServiceImpl(VectorStore vectorStore) {
         this.vectorStore = vectorStore;
@@ -32,15 +41,7 @@ public class AIContextServiceImpl implements AIContextService {
         }
 
         try {
-            // Create metadata for the document
-            Map<String, Object> metadata = Map.of(
-                    "conversationId", conversationId,
-                    "sender", sender,
-                    "timestamp", String.valueOf(System.currentTimeMillis()),
-                    "messageLength", String.valueOf(messageContent.length())
-            );
-
-            Document document = new Document(messageContent, metadata);
+            Document document = toDocument(new ContextTurn(conversationId, messageContent, sender));
 
             vectorStore.add(List.of(document));
             log.debug("Stored context for conversation {}: {} characters from {}",
@@ -51,6 +52,28 @@ public class AIContextServiceImpl implements AIContextService {
         }
     }
 
+    @Override
+    public void storeConversationContexts(List<ContextTurn> turns) {
+        // One add lets the store embed the whole batch in a single call
+        vectorStore.add(turns.stream().map(this::toDocument).toList());
+        log.debug("Stored {} context turns", turns.size());
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    private Document toDocument(ContextTurn turn) {
+        Map<String, Object> metadata = Map.of(
+                "conversationId", turn.conversationId(),
+                "sender", turn.sender(),
+                "timestamp", String.valueOf(System.currentTimeMillis()),
+                "messageLength", String.valueOf(turn.content().length())
+        );
+        return new Document(turn.content(), metadata);
+    }
+
     @Override
     public String getRelevantContext(String conversationId, String query, int maxResults) {
         if (vectorStore == null) {
@@ -59,23 +82,11 @@ public class AIContextServiceImpl implements AIContextService {
         }
 
         try {
-            // Create search request
-            SearchRequest searchRequest = SearchRequest.defaults()
-                    .withQuery(query)
-                    .withTopK(Math.min(maxResults, 10))
-                    .withSimilarityThreshold(0.6);
-
+            List<Document> relevantDocs = vectorStore.similaritySearch(
+                    conversationSearch(conversationId, query, Math.min(maxResults, 10)));
 
-            List<Document> relevantDocs = vectorStore.similaritySearch(searchRequest);
-
-            // Filter by conversation ID and extract content
             String context = relevantDocs.stream()
-                    .filter(doc -> {
-                        Map<String, Object> metadata = doc.getMetadata();
-                        return metadata != null && conversationId.equals(metadata.get("conversationId"));
-                    })
                     .map(Document::getContent)
-                    .limit(maxResults)
                     .collect(Collectors.joining("\n\n"));
 
             log.debug("Retrieved {} relevant documents for conversation {}",
@@ -89,6 +100,55 @@ public class AIContextServiceImpl implements AIContextService {
         }
     }
 
+    @Override
+    public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+        if (vectorStore == null) {
+            log.warn("Vector store not available, returning no context snippets");
+            return Collections.emptyList();
+        }
+
+        try {
+            List<ContextSnippet> snippets = vectorStore.similaritySearch(
+                            conversationSearch(conversationId, query, maxResults)).stream()
+                    .map(this::toSnippet)
+                    .collect(Collectors.toList());
+
+            log.debug("Retrieved {} context snippets for conversation {}", snippets.size(), conversationId);
+            return snippets;
+
+        } catch (Exception e) {
+            log.error("Failed to retrieve context snippets for conversation {}: {}", conversationId, e.getMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Restricts the search to the conversation inside the vector store. Filtering the hits
+     * afterwards left most queries empty once other conversations filled the global top K.
+     */
+    private SearchRequest conversationSearch(String conversationId, String query, int topK) {
+        return SearchRequest.defaults()
+                .withQuery(query)
+                .withTopK(topK)
+                .withSimilarityThreshold(0.6)
+                .withFilterExpression(filters.eq("conversationId", conversationId).build());
+    }
+
+    private ContextSnippet toSnippet(Document document) {
+        Map<String, Object> metadata = document.getMetadata();
+        Object sender = metadata.get("sender");
+        Object timestamp = metadata.get("timestamp");
+        // Chroma reports cosine distance; turn it into a similarity so higher means more relevant
+        Object distance = metadata.get("distance");
+
+        return new ContextSnippet(
+                document.getContent(),
+                sender != null ? sender.toString() : "Unknown",
+                timestamp != null ? Long.parseLong(timestamp.toString()) : 0L,
+                distance instanceof Number number ? 1.0 - number.doubleValue() : 0.0
+        );
+    }
+
     @Override
     public void clearConversationContext(String conversationId) {
         if (vectorStore == null) {
@@ -97,12 +157,27 @@ public class AIContextServiceImpl implements AIContextService {
         }
 
         try {
-            // Note: ChromaDB doesn't have a direct delete by metadata method in Spring AI
-            // This would need to be implemented differently based on the vector store capabilities
-            log.info("Context clearing requested for conversation {}", conversationId);
-            // Implementation would depend on the specific vector store capabilities
+            // Spring AI has no delete by metadata here, so find the conversation's documents a page
+            // at a time and delete them by id until a page comes back short. A page with nothing
+            // new (a store that applies deletes lazily) ends it too, so every round makes progress
+            Set<String> deleted = new HashSet<>();
+            while (true) {
+                List<Document> page = vectorStore.similaritySearch(SearchRequest.defaults()
+                        .withQuery(conversationId)
+                        .withTopK(DELETE_PAGE_SIZE)
+                        .withSimilarityThresholdAll()
+                        .withFilterExpression(filters.eq("conversationId", conversationId).build()));
+                List<String> ids = page.stream().map(Document::getId).filter(deleted::add).toList();
+                if (!ids.isEmpty()) {
+                    vectorStore.delete(ids);
+                }
+                if (page.size() < DELETE_PAGE_SIZE || ids.isEmpty()) {
+                    break;
+                }
+            }
+            log.info("Cleared context for conversation {} ({} documents deleted)", conversationId, deleted.size());
         } catch (Exception e) {
             log.error("Failed to clear context for conversation {}: {}", conversationId, e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
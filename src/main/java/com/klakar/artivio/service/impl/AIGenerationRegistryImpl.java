@@ -0,0 +1,135 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.generation.AIGeneration;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIGenerationRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of AI responses still being generated, per conversation and per user, so that work
+ * nobody will read can be stopped: a response overtaken by a newer message in the same conversation,
+ * or one whose user has closed every session.
+ * <p>
+ * Cancelling disposes the response pipeline, which cancels the upstream HTTP call and so stops
+ * further output tokens from being billed. The tokens saved are estimated from the average length
+ * of completed responses minus what the cancelled one had already streamed.
+ */
+@Service
+@Slf4j
+public class AIGenerationRegistryImpl implements AIGenerationRegistry {
+
+    private static final double RESPONSE_LENGTH_ALPHA = 0.1;
+
+    private final AIProperties.Generation properties;
+    private final TokenEstimator tokenEstimator;
+    private final Map<Long, AIGeneration> byConversation = new ConcurrentHashMap<>();
+    private final Map<String, Set<AIGeneration>> byUser = new ConcurrentHashMap<>();
+    private final Map<AIGeneration.CancelReason, Counter> cancelled = new EnumMap<>(AIGeneration.CancelReason.class);
+    private final Map<AIGeneration.CancelReason, DistributionSummary> tokensSaved = new EnumMap<>(AIGeneration.CancelReason.class);
+
+    // Smoothed length in characters of responses that ran to completion
+    private double averageResponseChars;
+    private boolean hasResponseSamples;
+
+    public AIGenerationRegistryImpl(AIProperties aiProperties, TokenEstimator tokenEstimator, MeterRegistry meterRegistry) {
+        this.properties = aiProperties.getGeneration();
+        this.tokenEstimator = tokenEstimator;
+
+        for (AIGeneration.CancelReason reason : AIGeneration.CancelReason.values()) {
+            cancelled.put(reason, Counter.builder("ai.generations.cancelled")
+                    .description("AI responses stopped before they completed")
+                    .tag("reason", reason.tag())
+                    .register(meterRegistry));
+            tokensSaved.put(reason, DistributionSummary.builder("ai.generations.tokens.saved")
+                    .description("Estimated output tokens not generated because a response was stopped")
+                    .baseUnit("tokens")
+                    .tag("reason", reason.tag())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("ai.generations.active", byUser, users -> users.values().stream().mapToInt(Set::size).sum())
+                .description("AI responses currently being generated")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public AIGeneration start(String username, Long conversationId) {
+        AIGeneration generation = new AIGeneration(username, conversationId);
+        byUser.computeIfAbsent(username, key -> ConcurrentHashMap.newKeySet()).add(generation);
+
+        AIGeneration previous = byConversation.put(conversationId, generation);
+        if (previous != null && properties.getPolicy() == AIProperties.ConcurrencyPolicy.CANCEL_PREVIOUS) {
+            cancel(previous, AIGeneration.CancelReason.SUPERSEDED);
+        }
+        return generation;
+    }
+
+    @Override
+    public void finish(AIGeneration generation) {
+        byConversation.remove(generation.getConversationId(), generation);
+        byUser.computeIfPresent(generation.getUsername(), (username, generations) -> {
+            generations.remove(generation);
+            return generations.isEmpty() ? null : generations;
+        });
+        if (!generation.isCancelled()) {
+            recordResponseLength(generation.getStreamedChars());
+        }
+    }
+
+    @Override
+    public int cancelUserGenerations(String username, AIGeneration.CancelReason reason) {
+        Set<AIGeneration> generations = byUser.get(username);
+        if (generations == null) {
+            return 0;
+        }
+        int count = 0;
+        for (AIGeneration generation : generations) {
+            if (cancel(generation, reason)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.debug("Cancelled {} AI responses for user {} ({})", count, username, reason.tag());
+        }
+        return count;
+    }
+
+    private boolean cancel(AIGeneration generation, AIGeneration.CancelReason reason) {
+        if (!generation.cancel(reason)) {
+            return false;
+        }
+        cancelled.get(reason).increment();
+        tokensSaved.get(reason).record(estimateTokensSaved(generation.getStreamedChars()));
+        log.debug("Cancelled AI response in conversation {} ({})", generation.getConversationId(), reason.tag());
+        return true;
+    }
+
+    private synchronized void recordResponseLength(long chars) {
+        if (chars == 0) {
+            return;
+        }
+        if (!hasResponseSamples) {
+            averageResponseChars = chars;
+            hasResponseSamples = true;
+        } else {
+            averageResponseChars += RESPONSE_LENGTH_ALPHA * (chars - averageResponseChars);
+        }
+    }
+
+    private synchronized int estimateTokensSaved(long streamedChars) {
+        if (!hasResponseSamples) {
+            return 0;
+        }
+        return tokenEstimator.estimateFromLength(Math.max(0, (long) averageResponseChars - streamedChars));
+    }
+}
@@ -0,0 +1,61 @@
+package com.klakar.artivio.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Builds stable keys for AI requests so that prompts differing only in case or
+ * whitespace map to the same entry.
+ */
+final class AIRequestKeys {
+
+    private AIRequestKeys() {
+    }
+
+    static String of(String prompt, String context, String model, double temperature) {
+        MessageDigest digest = sha256();
+        update(digest, normalize(prompt));
+        update(digest, normalize(context));
+        update(digest, model);
+        update(digest, Double.toString(temperature));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Separator so ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.klakar.artivio.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.lexical.Bm25Index;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword relevance over conversation turns, in-process and without an embedding model: each
+ * conversation has its own {@link Bm25Index} of its latest {@code max-turns} turns, updated as
+ * turns are stored, and a query returns the turns scoring highest under BM25.
+ * <p>
+ * Conversation indexes are weighed by the bytes they hold, turn text included, and kept in a
+ * Caffeine cache bounded by {@code app.ai.context.bm25.max-bytes}, like the in-memory store: past
+ * the budget the least valuable conversations are dropped whole, and idle ones expire. Nothing
+ * survives a restart.
+ */
+@Slf4j
+public class Bm25AIContextServiceImpl implements AIContextService {
+
+    record Turn(String text, String sender, long timestamp) {
+    }
+
+    // Cache entry, key and index object, charged to every conversation on top of its index
+    private static final int CONVERSATION_OVERHEAD_BYTES = 200;
+    // Turn record and string headers of its text and sender
+    private static final int TURN_OVERHEAD_BYTES = 64;
+
+    private final Cache<String, Conversation> conversations;
+    private final AIProperties.Context.Bm25 properties;
+    private final Timer searchLatency;
+
+    public Bm25AIContextServiceImpl(AIProperties.Context.Bm25 properties, MeterRegistry meterRegistry) {
+        if (properties.getMaxTurns() < 1) {
+            throw new IllegalArgumentException("max-turns must be at least 1");
+        }
+        this.properties = properties;
+        this.conversations = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((String conversationId, Conversation conversation) -> conversation.weight(conversationId))
+                .expireAfterAccess(properties.getIdleTimeout())
+                .removalListener((String conversationId, Conversation conversation, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        meterRegistry.counter("ai.context.lexical.evictions",
+                                "cause", cause.name().toLowerCase(Locale.ROOT)).increment();
+                    }
+                })
+                .build();
+
+        Gauge.builder("ai.context.lexical.conversations", conversations, Cache::estimatedSize)
+                .description("Conversations with a keyword index held in memory")
+                .register(meterRegistry);
+        Gauge.builder("ai.context.lexical.bytes", this, Bm25AIContextServiceImpl::bytes)
+                .description("Estimated memory held by the keyword indexes, turn text included")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.searchLatency = Timer.builder("ai.context.lexical.search")
+                .description("Time to score one conversation's turns against a query")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        log.info("Initialized BM25 AIContextService (turns per conversation: {}, budget: {} bytes)",
+                properties.getMaxTurns(), properties.getMaxBytes());
+    }
+
+    @Override
+    public void storeConversationContext(String conversationId, String messageContent, String sender) {
+        try {
+            Turn turn = new Turn(messageContent, sender, System.currentTimeMillis());
+            // compute() serialises writers of one conversation and lets the cache re-weigh it
+            conversations.asMap().compute(conversationId, (id, conversation) -> {
+                Conversation target = conversation != null ? conversation : new Conversation(properties);
+                target.add(turn);
+                return target;
+            });
+            log.debug("Indexed context for conversation {}: {} characters from {}",
+                    conversationId, messageContent.length(), sender);
+        } catch (Exception e) {
+            log.error("Error storing context for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getRelevantContext(String conversationId, String query, int maxResults) {
+        return ContextSnippet.formatAll(getContextSnippets(conversationId, query, maxResults));
+    }
+
+    @Override
+    public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+        Conversation conversation = conversations.getIfPresent(conversationId);
+        if (query == null || query.isBlank() || conversation == null) {
+            return Collections.emptyList();
+        }
+        try {
+            long start = System.nanoTime();
+            List<Bm25Index.Match<Turn>> matches = conversation.index.search(query, maxResults);
+            searchLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            List<ContextSnippet> snippets = matches.stream()
+                    .map(match -> new ContextSnippet(match.payload().text(), match.payload().sender(),
+                            match.payload().timestamp(), match.score()))
+                    .toList();
+            log.debug("Retrieved {} matching turns for conversation {}", snippets.size(), conversationId);
+            return snippets;
+        } catch (Exception e) {
+            log.error("Error getting context snippets for conversation {}: {}", conversationId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void clearConversationContext(String conversationId) {
+        try {
+            conversations.invalidate(conversationId);
+            log.info("Cleared context for conversation {}", conversationId);
+        } catch (Exception e) {
+            log.error("Error clearing context for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /** Estimated bytes held, as weighed against the budget. */
+    public long bytes() {
+        return conversations.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    public long conversations() {
+        return conversations.estimatedSize();
+    }
+
+    /** Runs pending evictions now, so sizes read afterwards are exact. */
+    void cleanUp() {
+        conversations.cleanUp();
+    }
+
+    /** One conversation's index and the bytes of the turn text it holds. */
+    private static final class Conversation {
+
+        final Bm25Index<Turn> index;
+        // Only written inside compute(), which also reads it through weight()
+        private long textBytes;
+
+        Conversation(AIProperties.Context.Bm25 properties) {
+            this.index = new Bm25Index<>(properties.getMaxTurns(), (float) properties.getK1(), (float) properties.getB());
+        }
+
+        void add(Turn turn) {
+            Turn dropped = index.add(turn.text(), turn);
+            textBytes += turnBytes(turn);
+            if (dropped != null) {
+                textBytes -= turnBytes(dropped);
+            }
+        }
+
+        int weight(String conversationId) {
+            long weight = CONVERSATION_OVERHEAD_BYTES + 2L * conversationId.length() + index.bytes() + textBytes;
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+
+        // Charged as UTF-16, and senders (usually shared) per turn, so the budget errs on the safe side
+        private static long turnBytes(Turn turn) {
+            return TURN_OVERHEAD_BYTES + 2L * turn.text().length() + (turn.sender() != null ? 2L * turn.sender().length() : 0);
+        }
+    }
+}
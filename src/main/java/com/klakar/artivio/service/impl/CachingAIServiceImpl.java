@@ -0,0 +1,212 @@
+package com.klakar.artivio.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Caching decorator around an {@link AIService}. Responses are keyed on a normalized hash of
+ * prompt, context, model and temperature and looked up in a bounded in-process tier first,
+ * then in an optional Redis tier. Failed generations are never cached.
+ * <p>
+ * The key only holds what is known before the request is routed. In front of a
+ * {@link RoutingAIServiceImpl} the model is the whole set of routed models, so an answer from
+ * any of them is reused for the same prompt, and changing the set starts a fresh cache.
+ */
+@Slf4j
+public class CachingAIServiceImpl implements AIService {
+
+    private final AIService delegate;
+    private final String model;
+    private final double temperature;
+    private final AIProperties.Cache properties;
+    private final Cache<String, String> localCache;
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter localEvictions;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+
+    public CachingAIServiceImpl(AIService delegate,
+                                String model,
+                                double temperature,
+                                AIProperties.Cache properties,
+                                ReactiveStringRedisTemplate redisTemplate,
+                                MeterRegistry meterRegistry) {
+        this(delegate, model, temperature, properties, redisTemplate, meterRegistry, Ticker.systemTicker());
+    }
+
+    CachingAIServiceImpl(AIService delegate,
+                         String model,
+                         double temperature,
+                         AIProperties.Cache properties,
+                         ReactiveStringRedisTemplate redisTemplate,
+                         MeterRegistry meterRegistry,
+                         Ticker ticker) {
+        this.delegate = delegate;
+        this.model = model;
+        this.temperature = temperature;
+        this.properties = properties;
+        this.redisTemplate = properties.getRedis().isEnabled() ? redisTemplate : null;
+
+        this.localHits = getsCounter(meterRegistry, "local", "hit");
+        this.localMisses = getsCounter(meterRegistry, "local", "miss");
+        this.redisHits = getsCounter(meterRegistry, "redis", "hit");
+        this.redisMisses = getsCounter(meterRegistry, "redis", "miss");
+        this.localEvictions = Counter.builder("ai.response.cache.evictions")
+                .tag("tier", "local")
+                .register(meterRegistry);
+
+        if (properties.getLocal().isEnabled()) {
+            this.localCache = Caffeine.newBuilder()
+                    .maximumSize(properties.getLocal().getMaxSize())
+                    .expireAfterWrite(properties.getLocal().getTtl())
+                    .ticker(ticker)
+                    .removalListener((String key, String value, RemovalCause cause) -> {
+                        if (cause.wasEvicted()) {
+                            localEvictions.increment();
+                        }
+                    })
+                    .build();
+            Gauge.builder("ai.response.cache.size", localCache, Cache::estimatedSize)
+                    .tag("tier", "local")
+                    .register(meterRegistry);
+        } else {
+            this.localCache = null;
+        }
+
+        log.info("AI response cache enabled: local={}, redis={}",
+                localCache != null, this.redisTemplate != null);
+    }
+
+    @Override
+    public Mono<String> generate(String prompt, String context) {
+        return cachedGenerate(key(prompt, context), () -> delegate.generate(prompt, context));
+    }
+
+    @Override
+    public Mono<String> generate(AIPrompt prompt) {
+        return cachedGenerate(key(prompt.message(), prompt.context()), () -> delegate.generate(prompt));
+    }
+
+    @Override
+    public Flux<String> streamResponse(String prompt, String context) {
+        return cachedStream(key(prompt, context), () -> delegate.streamResponse(prompt, context));
+    }
+
+    @Override
+    public Flux<String> streamResponse(AIPrompt prompt) {
+        return cachedStream(key(prompt.message(), prompt.context()), () -> delegate.streamResponse(prompt));
+    }
+
+    private Mono<String> cachedGenerate(String key, Supplier<Mono<String>> generation) {
+        return lookup(key)
+                .switchIfEmpty(Mono.defer(() -> generation.get()
+                        .doOnNext(response -> store(key, response))));
+    }
+
+    private Flux<String> cachedStream(String key, Supplier<Flux<String>> stream) {
+        return lookup(key)
+                .flux()
+                .switchIfEmpty(Flux.defer(() -> {
+                    // Cache the full text only once the stream completed successfully
+                    StringBuilder fullResponse = new StringBuilder();
+                    return stream.get()
+                            .doOnNext(fullResponse::append)
+                            .doOnComplete(() -> store(key, fullResponse.toString().trim()));
+                }));
+    }
+
+    @Override
+    public void forgetConversation(String conversationId) {
+        delegate.forgetConversation(conversationId);
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return delegate.isConfigured();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    private String key(String prompt, String context) {
+        return AIRequestKeys.of(prompt, context, model, temperature);
+    }
+
+    private Mono<String> lookup(String key) {
+        return Mono.defer(() -> {
+            if (localCache != null) {
+                String cached = localCache.getIfPresent(key);
+                if (cached != null) {
+                    localHits.increment();
+                    return Mono.just(cached);
+                }
+                localMisses.increment();
+            }
+
+            if (redisTemplate == null) {
+                return Mono.empty();
+            }
+
+            return redisTemplate.opsForValue().get(properties.getRedis().getKeyPrefix() + key)
+                    .timeout(properties.getRedis().getTimeout())
+                    .doOnNext(cached -> {
+                        redisHits.increment();
+                        if (localCache != null) {
+                            localCache.put(key, cached);
+                        }
+                    })
+                    .switchIfEmpty(Mono.fromRunnable(redisMisses::increment))
+                    .onErrorResume(e -> {
+                        log.warn("AI response cache lookup in Redis failed: {}", e.getMessage());
+                        redisMisses.increment();
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    private void store(String key, String response) {
+        if (response == null || response.isEmpty()) {
+            return;
+        }
+
+        if (localCache != null) {
+            localCache.put(key, response);
+        }
+
+        if (redisTemplate != null) {
+            redisTemplate.opsForValue()
+                    .set(properties.getRedis().getKeyPrefix() + key, response, properties.getRedis().getTtl())
+                    .timeout(properties.getRedis().getTimeout())
+                    .subscribe(
+                            null,
+                            e -> log.warn("Failed to store AI response in Redis cache: {}", e.getMessage())
+                    );
+        }
+    }
+
+    private static Counter getsCounter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("ai.response.cache.gets")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -1,5 +1,15 @@
 package com.klakar.artivio.service.impl;
 
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.context.ContextIngestionPipeline;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.PromptContextAssembler;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.generation.AIGeneration;
+import com.klakar.artivio.ai.quota.QuotaDecision;
+import com.klakar.artivio.ai.quota.QuotaLimit;
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
 import com.klakar.artivio.dto.ConversationDTO;
 import com.klakar.artivio.dto.MessageDTO;
 import com.klakar.artivio.dto.UserDTO;
@@ -9,7 +19,10 @@ import com.klakar.artivio.entity.User;
 import com.klakar.artivio.repository.ConversationRepository;
 import com.klakar.artivio.repository.MessageRepository;
 import com.klakar.artivio.service.AIContextService;
+import com.klakar.artivio.service.AIGenerationRegistry;
+import com.klakar.artivio.service.AIQuotaService;
 import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.AIServiceException;
 import com.klakar.artivio.service.ChatService;
 import com.klakar.artivio.service.UserService;
 import lombok.RequiredArgsConstructor;
@@ -18,10 +31,15 @@ import org.modelmapper.ModelMapper;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,6 +48,10 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ChatServiceImpl implements ChatService {
 
+    private static final String FALLBACK_AI_RESPONSE =
+            "Sorry, I'm having trouble processing your message right now. Please try again.";
+    private static final String STOPPED_AI_RESPONSE = "(Response stopped.)";
+
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
     private final UserService userService;
@@ -37,6 +59,12 @@ public class ChatServiceImpl implements ChatService {
     private final SimpMessagingTemplate messagingTemplate;
     private final AIService aiService;
     private final AIContextService aiContextService;
+    private final ContextIngestionPipeline contextIngestionPipeline;
+    private final PromptContextAssembler promptContextAssembler;
+    private final AIGenerationRegistry aiGenerationRegistry;
+    private final AIQuotaService aiQuotaService;
+    private final TokenEstimator tokenEstimator;
+    private final Scheduler aiScheduler;
 
     @Override
     public ConversationDTO createOrGetConversation(String username, Long recipientId, Conversation.ConversationType type) {
@@ -114,16 +142,13 @@ public class ChatServiceImpl implements ChatService {
             conversation.setLastMessageAt(LocalDateTime.now());
             conversationRepository.save(conversation);
 
-            // Store context (safe with fallback)
-            try {
-                aiContextService.storeConversationContext(
-                        conversationId.toString(),
-                        content,
-                        sender.getDisplayName()
-                );
-            } catch (Exception e) {
-                log.warn("Failed to store AI context: {}", e.getMessage());
-            }
+            // Stored in the background; a turn that never makes it is picked up by the backfill
+            contextIngestionPipeline.submit(
+                    savedMessage.getId(),
+                    conversationId.toString(),
+                    content,
+                    sender.getDisplayName()
+            );
 
             MessageDTO messageDTO = convertToMessageDTO(savedMessage);
 
@@ -132,7 +157,15 @@ public class ChatServiceImpl implements ChatService {
 
             // Generate AI response if it's an AI conversation
             if (conversation.getConversationType() == Conversation.ConversationType.HUMAN_TO_AI) {
-                generateAIResponseAsync(conversation, content, sender);
+                // The message itself is charged now; context and reply once they are known. With the
+                // Redis store this waits up to app.ai.quota.redis-timeout, like the database calls above
+                QuotaDecision quota = aiQuotaService.tryAcquire(sender.getUsername(), tokenEstimator.estimate(content));
+                if (quota.allowed()) {
+                    generateAIResponseAsync(conversation, content, sender);
+                } else {
+                    log.info("User {} is over the AI {} quota", sender.getUsername(), quota.exceeded().tag());
+                    sendQuotaExceededMessage(conversation, sender, quota);
+                }
             }
 
             log.info("Message sent successfully: {} in conversation {}", savedMessage.getId(), conversationId);
@@ -184,73 +217,116 @@ public class ChatServiceImpl implements ChatService {
     }
 
     private void generateAIResponseAsync(Conversation conversation, String userMessage, User user) {
-        CompletableFuture.runAsync(() -> {
-            try {
-                // Get relevant context (safe with fallback)
-                String context = "";
-                try {
-                    context = aiContextService.getRelevantContext(
-                            conversation.getId().toString(),
-                            userMessage,
-                            5
-                    );
-                } catch (Exception e) {
-                    log.warn("Failed to get AI context: {}", e.getMessage());
-                }
-
-                // Generate AI response
-                aiService.generateResponse(userMessage, context)
-                        .thenAccept(aiResponse -> {
-                            try {
-                                // Create AI message
-                                Message aiMessage = Message.builder()
-                                        .conversation(conversation)
-                                        .sender(null) // AI message
-                                        .content(aiResponse)
-                                        .messageType(Message.MessageType.AI)
-                                        .isRead(false)
-                                        .isDelivered(true)
-                                        .messageStatus(Message.MessageStatus.SENT)
-                                        .build();
-
-                                Message savedAIMessage = messageRepository.save(aiMessage);
-
-                                // Store AI response in context (safe with fallback)
-                                try {
-                                    aiContextService.storeConversationContext(
-                                            conversation.getId().toString(),
-                                            aiResponse,
-                                            "Artivio AI"
-                                    );
-                                } catch (Exception e) {
-                                    log.warn("Failed to store AI response context: {}", e.getMessage());
-                                }
-
-                                // Update conversation timestamp
-                                conversation.setLastMessageAt(LocalDateTime.now());
-                                conversationRepository.save(conversation);
-
-                                // Send streaming response
-                                sendStreamingMessage(user.getUsername(), savedAIMessage);
-
-                                log.info("AI response sent for conversation {}", conversation.getId());
-
-                            } catch (Exception e) {
-                                log.error("Error saving AI response", e);
-                                sendErrorMessage(conversation, user);
-                            }
-                        })
-                        .exceptionally(throwable -> {
-                            log.error("Error generating AI response", throwable);
+        // Blocking work (context lookup, JPA, WebSocket publish) runs on the bounded AI scheduler;
+        // the provider call itself stays on the non-blocking HTTP client
+        AIGeneration generation = aiGenerationRegistry.start(user.getUsername(), conversation.getId());
+        Disposable subscription = Mono.fromCallable(() -> getAIContext(conversation, userMessage))
+                .subscribeOn(aiScheduler)
+                .flatMap(history -> streamAIResponse(conversation, userMessage, history, user, generation))
+                .doFinally(signal -> aiGenerationRegistry.finish(generation))
+                .subscribe(
+                        null,
+                        throwable -> {
+                            log.error("Error in generateAIResponseAsync", throwable);
                             sendErrorMessage(conversation, user);
-                            return null;
-                        });
+                        }
+                );
+        // Disposing the subscription cancels the provider call, so stopped responses are no longer billed
+        generation.attach(subscription);
+    }
 
-            } catch (Exception e) {
-                log.error("Error in generateAIResponseAsync", e);
-                sendErrorMessage(conversation, user);
-            }
-        });
+    private List<ContextSnippet> getAIContext(Conversation conversation, String userMessage) {
+        // Get relevant context (safe with fallback), trimmed to the input-token budget
+        try {
+            List<ContextSnippet> snippets = aiContextService.getContextSnippets(
+                    conversation.getId().toString(),
+                    userMessage,
+                    promptContextAssembler.getMaxSnippets()
+            );
+            return promptContextAssembler.select(userMessage, snippets);
+        } catch (Exception e) {
+            log.warn("Failed to get AI context: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Mono<Void> streamAIResponse(Conversation conversation, String userMessage, List<ContextSnippet> history,
+                                        User user, AIGeneration generation) {
+        // Persist an empty AI message up front so the client has an id to apply stream updates to
+        Message aiMessage = messageRepository.save(Message.builder()
+                .conversation(conversation)
+                .sender(null) // AI message
+                .content("")
+                .messageType(Message.MessageType.AI)
+                .isRead(false)
+                .isDelivered(true)
+                .messageStatus(Message.MessageStatus.SENT)
+                .build());
+
+        MessageDTO messageDTO = convertToMessageDTO(aiMessage);
+        messagingTemplate.convertAndSendToUser(user.getUsername(), "/queue/messages", messageDTO);
+
+        // Forward chunks to the client as the provider produces them
+        AIPrompt prompt = new AIPrompt(conversation.getId().toString(), history, userMessage);
+        // Appended on the publishOn worker only; other threads read the published snapshot
+        StringBuilder fullResponse = new StringBuilder();
+        AtomicReference<String> streamed = new AtomicReference<>("");
+        // Whichever of completing and stopping claims the message first owns its final content
+        AtomicBoolean finished = new AtomicBoolean();
+        return aiService.streamResponse(prompt)
+                .contextWrite(AIRequestContext.interactive(user.getUsername()))
+                .publishOn(aiScheduler)
+                .doOnNext(chunk -> {
+                    generation.onChunk(chunk);
+                    String text = fullResponse.append(chunk).toString();
+                    streamed.set(text);
+                    messageDTO.setContent(text);
+                    messagingTemplate.convertAndSendToUser(
+                            user.getUsername(),
+                            "/queue/message-updates",
+                            messageDTO
+                    );
+                })
+                .then(Mono.fromRunnable(() -> {
+                    if (finished.compareAndSet(false, true)) {
+                        completeAIResponse(conversation, aiMessage, user, streamed.get().trim());
+                    }
+                }))
+                .onErrorResume(throwable -> Mono.fromRunnable(() -> {
+                    log.error("Error streaming AI response", throwable);
+                    String fallback = throwable instanceof AIServiceException ? throwable.getMessage() : FALLBACK_AI_RESPONSE;
+                    if (finished.compareAndSet(false, true)) {
+                        completeAIResponse(conversation, aiMessage, user, fallback);
+                    }
+                }))
+                .doFinally(signal -> aiQuotaService.recordUsage(user.getUsername(),
+                        tokenEstimator.estimate(prompt.context()) + tokenEstimator.estimate(streamed.get())))
+                // Cancellation arrives on the caller's thread (a new message or a disconnect); once
+                // completion has started the saved and ingested response is left as it is
+                .doOnCancel(() -> {
+                    if (finished.compareAndSet(false, true)) {
+                        String partialResponse = streamed.get().trim();
+                        aiScheduler.schedule(() -> stopAIResponse(aiMessage, user, partialResponse));
+                    }
+                })
+                .then();
+    }
+
+    /** Keeps whatever was streamed before the response was cancelled, without adding it to the AI context. */
+    private void stopAIResponse(Message aiMessage, User user, String partialResponse) {
+        try {
+            aiMessage.setContent(partialResponse.isEmpty() ? STOPPED_AI_RESPONSE : partialResponse + " " + STOPPED_AI_RESPONSE);
+            // Never ingested, so the context backfill must not pick it up either
+            aiMessage.setEmbeddingStored(true);
+            Message savedAIMessage = messageRepository.save(aiMessage);
+            messagingTemplate.convertAndSendToUser(
+                    user.getUsername(),
+                    "/queue/message-updates",
+                    convertToMessageDTO(savedAIMessage)
+            );
+        } catch (Exception e) {
+            log.error("Error saving stopped AI response", e);
+        }
     }
 
     private void sendErrorMessage(Conversation conversation, User user) {
@@ -258,11 +334,13 @@ public class ChatServiceImpl implements ChatService {
             Message errorMessage = Message.builder()
                     .conversation(conversation)
                     .sender(null)
-                    .content("Sorry, I'm having trouble processing your message right now. Please try again.")
+                    .content(FALLBACK_AI_RESPONSE)
                     .messageType(Message.MessageType.AI)
                     .isRead(false)
                     .isDelivered(true)
                     .messageStatus(Message.MessageStatus.SENT)
+                    // Not a turn of the conversation; keeps it out of the context backfill
+                    .embeddingStored(true)
                     .build();
 
             Message savedErrorMessage = messageRepository.save(errorMessage);
@@ -278,43 +356,72 @@ public class ChatServiceImpl implements ChatService {
         }
     }
 
-    private void sendStreamingMessage(String username, Message message) {
+    private void sendQuotaExceededMessage(Conversation conversation, User user, QuotaDecision quota) {
         try {
-            MessageDTO messageDTO = convertToMessageDTO(message);
-            String[] words = message.getContent().split("\\s+");
-
-            // Send initial message with empty content
-            messageDTO.setContent("");
-            messagingTemplate.convertAndSendToUser(username, "/queue/messages", messageDTO);
-
-            // Send words one by one for streaming effect
-            StringBuilder currentContent = new StringBuilder();
-            for (int i = 0; i < words.length; i++) {
-                try {
-                    Thread.sleep(100); // 100ms delay between words
-                    currentContent.append(words[i]);
-                    if (i < words.length - 1) {
-                        currentContent.append(" ");
-                    }
+            String content = quota.exceeded() == QuotaLimit.REQUESTS
+                    ? "You're sending messages to the AI too quickly. Please try again in " + describe(quota.retryAfter()) + "."
+                    : "You've reached your daily AI usage limit. Please try again in " + describe(quota.retryAfter()) + ".";
+            Message systemMessage = messageRepository.save(Message.builder()
+                    .conversation(conversation)
+                    .sender(null)
+                    .content(content)
+                    .messageType(Message.MessageType.SYSTEM)
+                    .isRead(false)
+                    .isDelivered(true)
+                    .messageStatus(Message.MessageStatus.SENT)
+                    .embeddingStored(true)
+                    .build());
 
-                    messageDTO.setContent(currentContent.toString());
+            messagingTemplate.convertAndSendToUser(
+                    user.getUsername(),
+                    "/queue/messages",
+                    convertToMessageDTO(systemMessage)
+            );
+        } catch (Exception e) {
+            log.error("Error sending quota message", e);
+        }
+    }
+
+    private static String describe(Duration wait) {
+        long seconds = Math.max(1, wait.toSeconds());
+        if (seconds < 120) {
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        }
+        if (seconds < 7200) {
+            return "about " + (seconds + 59) / 60 + " minutes";
+        }
+        return "about " + (seconds + 3599) / 3600 + " hours";
+    }
+
+    private void completeAIResponse(Conversation conversation, Message aiMessage, User user, String aiResponse) {
+        try {
+            // Persist the full text once the stream has finished
+            aiMessage.setContent(aiResponse.isEmpty() ? FALLBACK_AI_RESPONSE : aiResponse);
+            Message savedAIMessage = messageRepository.save(aiMessage);
+
+            contextIngestionPipeline.submit(
+                    savedAIMessage.getId(),
+                    conversation.getId().toString(),
+                    savedAIMessage.getContent(),
+                    ArtivioPrompts.ASSISTANT_NAME
+            );
+
+            // Update conversation timestamp
+            conversation.setLastMessageAt(LocalDateTime.now());
+            conversationRepository.save(conversation);
+
+            // Send the final content so the client ends up with exactly what was stored
+            messagingTemplate.convertAndSendToUser(
+                    user.getUsername(),
+                    "/queue/message-updates",
+                    convertToMessageDTO(savedAIMessage)
+            );
+
+            log.info("AI response sent for conversation {}", conversation.getId());
 
-                    // Send update
-                    messagingTemplate.convertAndSendToUser(
-                            username,
-                            "/queue/message-updates",
-                            messageDTO
-                    );
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
         } catch (Exception e) {
-            log.error("Error sending streaming message", e);
-            // Fallback: send complete message
-            MessageDTO fallbackDTO = convertToMessageDTO(message);
-            messagingTemplate.convertAndSendToUser(username, "/queue/messages", fallbackDTO);
+            log.error("Error saving AI response", e);
+            sendErrorMessage(conversation, user);
         }
     }
 
@@ -412,6 +519,11 @@ public class ChatServiceImpl implements ChatService {
             conversation.setIsActive(false);
             conversationRepository.save(conversation);
 
+            // Deleted conversations must stop showing up in, and taking space in, the context store
+            contextIngestionPipeline.clear(conversationId.toString());
+            // Including the transcript the provider may hold in cached content
+            aiService.forgetConversation(conversationId.toString());
+
             log.info("Conversation {} deleted by user {}", conversationId, username);
 
         } catch (Exception e) {
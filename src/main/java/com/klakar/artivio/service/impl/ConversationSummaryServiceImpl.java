@@ -0,0 +1,184 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.entity.ConversationSummary;
+import com.klakar.artivio.repository.ConversationSummaryRepository;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.ConversationSummaryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Folds old conversation turns into a persisted per-conversation summary.
+ * <p>
+ * Work runs on the single low-priority {@code summaryExecutor} thread, so updates to one
+ * conversation's summary never overlap. Turns that arrive while a fold is queued are merged into
+ * the same batch; a failed fold keeps its turns for the next attempt. A fold still running when
+ * its conversation is cleared neither saves its summary nor keeps its turns.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryServiceImpl implements ConversationSummaryService {
+
+    private static final String SUMMARY_INSTRUCTION =
+            "Update the running summary of this conversation with the new turns. " +
+            "Keep names, facts, decisions and open questions; drop greetings and filler. " +
+            "Reply with the updated summary only, in at most %d words.";
+    // Upper bound on turns waiting for a fold, e.g. while the provider is unavailable
+    private static final int MAX_PENDING_TURNS = 200;
+
+    private final ConversationSummaryRepository summaryRepository;
+    private final AIService aiService;
+    private final Executor summaryExecutor;
+    private final AIProperties.Summary properties;
+
+    private final Map<String, List<ContextSnippet>> pendingTurns = new ConcurrentHashMap<>();
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+    // Conversations being folded, mapped to whether they were cleared meanwhile; guarded by itself
+    private final Map<String, Boolean> folding = new HashMap<>();
+
+    public ConversationSummaryServiceImpl(ConversationSummaryRepository summaryRepository,
+                                          AIService aiService,
+                                          @Qualifier("summaryExecutor") Executor summaryExecutor,
+                                          AIProperties aiProperties) {
+        this.summaryRepository = summaryRepository;
+        this.aiService = aiService;
+        this.summaryExecutor = summaryExecutor;
+        this.properties = aiProperties.getSummary();
+    }
+
+    @Override
+    public void foldAsync(String conversationId, List<ContextSnippet> turns) {
+        if (turns.isEmpty()) {
+            return;
+        }
+        if (!aiService.isConfigured()) {
+            log.debug("AI service not configured, dropping {} turns of conversation {}", turns.size(), conversationId);
+            return;
+        }
+
+        pendingTurns.merge(conversationId, new ArrayList<>(turns), ConversationSummaryServiceImpl::append);
+        if (!scheduled.add(conversationId)) {
+            return;
+        }
+
+        try {
+            summaryExecutor.execute(() -> fold(conversationId));
+        } catch (RejectedExecutionException e) {
+            // Turns stay pending and are retried with the next overflow of this conversation
+            scheduled.remove(conversationId);
+            log.warn("Summary queue full, postponing summary of conversation {}", conversationId);
+        }
+    }
+
+    private void fold(String conversationId) {
+        scheduled.remove(conversationId);
+        List<ContextSnippet> batch;
+        synchronized (folding) {
+            batch = pendingTurns.remove(conversationId);
+            if (batch == null || batch.isEmpty()) {
+                return;
+            }
+            folding.put(conversationId, false);
+        }
+
+        try {
+            ConversationSummary summary = summaryRepository.findByConversationId(conversationId)
+                    .orElseGet(() -> ConversationSummary.builder().conversationId(conversationId).build());
+
+            String updated = aiService.generate(
+                    String.format(SUMMARY_INSTRUCTION, properties.getMaxWords()),
+                    buildSummaryInput(summary.getSummary(), batch)
+            ).contextWrite(AIRequestContext.background("summary:" + conversationId)).block(properties.getTimeout());
+
+            if (updated == null || updated.isBlank()) {
+                throw new IllegalStateException("Empty summary returned");
+            }
+
+            summary.setSummary(updated.trim());
+            summary.setSummarizedTurns(summary.getSummarizedTurns() + batch.size());
+            summary.setUpdatedAt(LocalDateTime.now());
+            synchronized (folding) {
+                if (folding.get(conversationId)) {
+                    log.debug("Conversation {} was cleared while it was being summarized", conversationId);
+                    return;
+                }
+                summaryRepository.save(summary);
+            }
+
+            log.debug("Folded {} turns into summary of conversation {} ({} turns total)",
+                    batch.size(), conversationId, summary.getSummarizedTurns());
+        } catch (Exception e) {
+            log.warn("Failed to summarize conversation {}: {}", conversationId, e.getMessage());
+            synchronized (folding) {
+                if (!folding.get(conversationId)) {
+                    // Older turns go first so the next fold still sees them in order
+                    pendingTurns.merge(conversationId, batch, (newer, failed) -> append(failed, newer));
+                }
+            }
+        } finally {
+            synchronized (folding) {
+                folding.remove(conversationId);
+            }
+        }
+    }
+
+    private String buildSummaryInput(String currentSummary, List<ContextSnippet> batch) {
+        StringBuilder input = new StringBuilder();
+        if (currentSummary != null && !currentSummary.isBlank()) {
+            input.append("Current summary:\n").append(currentSummary).append("\n\n");
+        }
+        input.append("New turns:\n");
+        for (ContextSnippet turn : batch) {
+            input.append(turn.format()).append('\n');
+        }
+        return input.toString().trim();
+    }
+
+    private static List<ContextSnippet> append(List<ContextSnippet> first, List<ContextSnippet> second) {
+        List<ContextSnippet> merged = new ArrayList<>(first.size() + second.size());
+        merged.addAll(first);
+        merged.addAll(second);
+        if (merged.size() > MAX_PENDING_TURNS) {
+            return new ArrayList<>(merged.subList(merged.size() - MAX_PENDING_TURNS, merged.size()));
+        }
+        return merged;
+    }
+
+    @Override
+    public Optional<String> getSummary(String conversationId) {
+        try {
+            return summaryRepository.findByConversationId(conversationId)
+                    .map(ConversationSummary::getSummary)
+                    .filter(summary -> !summary.isBlank());
+        } catch (Exception e) {
+            log.error("Error loading summary for conversation {}: {}", conversationId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    @Transactional
+    public void clearSummary(String conversationId) {
+        synchronized (folding) {
+            pendingTurns.remove(conversationId);
+            folding.replace(conversationId, true);
+        }
+        summaryRepository.deleteByConversationId(conversationId);
+    }
+}
@@ -0,0 +1,84 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
+import com.klakar.artivio.ai.scheduling.FairAIScheduler;
+import com.klakar.artivio.service.AIService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * {@link AIService} decorator that admits calls through a {@link FairAIScheduler}. The owner and
+ * priority class come from the {@link AIRequestContext} in the subscriber's Reactor context; the
+ * slot is held until the response completes, fails or is cancelled.
+ */
+public class FairSchedulingAIServiceImpl implements AIService {
+
+    private final AIService delegate;
+    private final FairAIScheduler scheduler;
+    private final TokenEstimator tokenEstimator;
+
+    public FairSchedulingAIServiceImpl(AIService delegate, FairAIScheduler scheduler, TokenEstimator tokenEstimator) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.tokenEstimator = tokenEstimator;
+    }
+
+    @Override
+    public Mono<String> generate(String prompt, String context) {
+        return scheduled(cost(prompt, context), () -> delegate.generate(prompt, context));
+    }
+
+    @Override
+    public Mono<String> generate(AIPrompt prompt) {
+        return scheduled(cost(prompt.message(), prompt.context()), () -> delegate.generate(prompt));
+    }
+
+    @Override
+    public Flux<String> streamResponse(String prompt, String context) {
+        return scheduledStream(cost(prompt, context), () -> delegate.streamResponse(prompt, context));
+    }
+
+    @Override
+    public Flux<String> streamResponse(AIPrompt prompt) {
+        return scheduledStream(cost(prompt.message(), prompt.context()), () -> delegate.streamResponse(prompt));
+    }
+
+    private Mono<String> scheduled(int cost, Supplier<Mono<String>> call) {
+        return Mono.deferContextual(reactorContext -> Mono.usingWhen(
+                scheduler.acquire(AIRequestContext.from(reactorContext), cost),
+                ticket -> call.get(),
+                ticket -> Mono.fromRunnable(() -> scheduler.release(ticket))
+        ));
+    }
+
+    private Flux<String> scheduledStream(int cost, Supplier<Flux<String>> call) {
+        return Flux.deferContextual(reactorContext -> Flux.usingWhen(
+                scheduler.acquire(AIRequestContext.from(reactorContext), cost),
+                ticket -> call.get(),
+                ticket -> Mono.fromRunnable(() -> scheduler.release(ticket))
+        ));
+    }
+
+    private int cost(String prompt, String context) {
+        return tokenEstimator.estimate(prompt) + (context != null ? tokenEstimator.estimate(context) : 0);
+    }
+
+    @Override
+    public void forgetConversation(String conversationId) {
+        delegate.forgetConversation(conversationId);
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return delegate.isConfigured();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+}
@@ -1,37 +1,102 @@
 package com.klakar.artivio.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
 import com.klakar.artivio.service.AIContextService;
+import com.klakar.artivio.service.ConversationSummaryService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.Map;
-
-@Service
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * In-memory context store: the most recent raw turns per conversation, plus (when a summarizer is
+ * configured) a rolling summary of everything older, so the context handed to the AI stays bounded
+ * however long the conversation runs.
+ * <p>
+ * Each conversation is a fixed-size ring of turns, kept as the strings they arrived as (no copying
+ * or formatting on the write path). Conversations are weighed by the bytes they hold and kept in a
+ * Caffeine cache bounded by {@code app.ai.context.memory.max-bytes}, so the store as a whole stays
+ * bounded however many conversations there are: past the budget the least valuable conversations
+ * are dropped whole, and idle ones expire. A dropped conversation
+ * starts again from its summary and the next turns.
+ */
 @Slf4j
 public class FallbackAIContextServiceImpl implements AIContextService {
 
-    // In-memory storage for conversation context (fallback)
-    private final Map<String, ConcurrentLinkedQueue<String>> conversationContexts = new ConcurrentHashMap<>();
-    private final int MAX_CONTEXT_SIZE = 10; // Keep last 10 messages per conversation
+    private static final String SUMMARY_SENDER = "Summary of earlier conversation";
+
+    // Cache entry, key and ring arrays, charged to every conversation on top of its turns
+    private static final int CONVERSATION_OVERHEAD_BYTES = 160;
+    // String headers of one turn's text and sender
+    private static final int TURN_OVERHEAD_BYTES = 48;
+
+    private final Cache<String, Ring> conversationContexts;
+    private final ConversationSummaryService summaryService;
+    private final int recentTurns;
+    private final int summaryThreshold;
 
-    public FallbackAIContextServiceImpl() {
-        log.info("Initialized FallbackAIContextService with in-memory storage");
+    /**
+     * @param summaryService receives turns that drop out of the raw window; {@code null} to simply discard them
+     */
+    public FallbackAIContextServiceImpl(ConversationSummaryService summaryService, AIProperties.Summary properties,
+                                        AIProperties.Context.Memory memory, MeterRegistry meterRegistry) {
+        this(summaryService, properties, memory, meterRegistry, Ticker.systemTicker());
+    }
+
+    FallbackAIContextServiceImpl(ConversationSummaryService summaryService, AIProperties.Summary properties,
+                                 AIProperties.Context.Memory memory, MeterRegistry meterRegistry, Ticker ticker) {
+        this.summaryService = summaryService;
+        this.recentTurns = Math.max(1, properties.getRecentTurns());
+        this.summaryThreshold = summaryService != null ? Math.max(properties.getThreshold(), recentTurns) : recentTurns;
+        this.conversationContexts = Caffeine.newBuilder()
+                .maximumWeight(memory.getMaxBytes())
+                .weigher((String conversationId, Ring ring) -> ring.weight(conversationId))
+                .expireAfterAccess(memory.getIdleTimeout())
+                .ticker(ticker)
+                .removalListener((String conversationId, Ring ring, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        meterRegistry.counter("ai.context.store.evictions",
+                                "cause", cause.name().toLowerCase(Locale.ROOT)).increment();
+                    }
+                })
+                .build();
+
+        Gauge.builder("ai.context.store.conversations", conversationContexts, Cache::estimatedSize)
+                .description("Conversations with raw turns held in memory")
+                .register(meterRegistry);
+        Gauge.builder("ai.context.store.bytes", this, FallbackAIContextServiceImpl::bytes)
+                .description("Estimated memory held by the in-memory context store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        log.info("Initialized FallbackAIContextService with in-memory storage (recent turns: {}, summaries: {}, budget: {} bytes)",
+                recentTurns, summaryService != null, memory.getMaxBytes());
     }
 
     @Override
     public void storeConversationContext(String conversationId, String messageContent, String sender) {
         try {
-            String contextEntry = String.format("[%s]: %s", sender, messageContent);
-
-            conversationContexts.computeIfAbsent(conversationId, k -> new ConcurrentLinkedQueue<>())
-                    .offer(contextEntry);
-
-            // Keep only recent messages
-            ConcurrentLinkedQueue<String> queue = conversationContexts.get(conversationId);
-            while (queue.size() > MAX_CONTEXT_SIZE) {
-                queue.poll();
+            long timestamp = System.currentTimeMillis();
+
+            // Keep only recent messages, handing older ones to the summarizer. compute() serialises
+            // writers of one conversation and lets the cache re-weigh it.
+            List<ContextSnippet> overflow = summaryService != null ? new ArrayList<>() : null;
+            conversationContexts.asMap().compute(conversationId, (id, ring) -> {
+                Ring target = ring != null ? ring : new Ring(summaryThreshold);
+                target.append(sender, messageContent, timestamp, recentTurns, overflow);
+                return target;
+            });
+            if (overflow != null && !overflow.isEmpty()) {
+                summaryService.foldAsync(conversationId, overflow);
             }
 
             log.debug("Stored context for conversation {}: {} characters from {}",
@@ -44,24 +109,15 @@ public class FallbackAIContextServiceImpl implements AIContextService {
     @Override
     public String getRelevantContext(String conversationId, String query, int maxResults) {
         try {
-            ConcurrentLinkedQueue<String> context = conversationContexts.get(conversationId);
+            List<ContextSnippet> snippets = getContextSnippets(conversationId, query, maxResults);
 
-            if (context == null || context.isEmpty()) {
+            if (snippets.isEmpty()) {
                 return "";
             }
 
-            // Return recent context (simple implementation)
-            StringBuilder contextBuilder = new StringBuilder();
-            int count = 0;
-
-            for (String entry : context) {
-                if (count >= maxResults) break;
-                contextBuilder.append(entry).append("\n");
-                count++;
-            }
-
-            String result = contextBuilder.toString().trim();
-            log.debug("Retrieved {} context entries for conversation {}", count, conversationId);
+            // Summary first, then the most recent turns
+            String result = ContextSnippet.formatAll(snippets);
+            log.debug("Retrieved {} context entries for conversation {}", snippets.size(), conversationId);
 
             return result;
         } catch (Exception e) {
@@ -70,13 +126,124 @@ public class FallbackAIContextServiceImpl implements AIContextService {
         }
     }
 
+    @Override
+    public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+        try {
+            List<ContextSnippet> snippets = new ArrayList<>();
+
+            // The summary ranks above any raw turn and sorts before them chronologically
+            Optional<String> summary = summaryService != null
+                    ? summaryService.getSummary(conversationId)
+                    : Optional.empty();
+            summary.ifPresent(text -> snippets.add(new ContextSnippet(text, SUMMARY_SENDER, 0L, 1.0)));
+
+            // No relevance ranking here, so hand back the most recent entries
+            Ring ring = conversationContexts.getIfPresent(conversationId);
+            if (ring != null) {
+                ring.latest(maxResults, snippets);
+            }
+            return snippets;
+        } catch (Exception e) {
+            log.error("Error getting context snippets for conversation {}: {}", conversationId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     public void clearConversationContext(String conversationId) {
         try {
-            conversationContexts.remove(conversationId);
+            conversationContexts.invalidate(conversationId);
+            if (summaryService != null) {
+                summaryService.clearSummary(conversationId);
+            }
             log.info("Cleared context for conversation {}", conversationId);
         } catch (Exception e) {
             log.error("Error clearing context for conversation {}: {}", conversationId, e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /** Estimated bytes held, as weighed against the budget. */
+    public long bytes() {
+        return conversationContexts.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    public long conversations() {
+        return conversationContexts.estimatedSize();
+    }
+
+    /** Runs pending evictions now, so sizes read afterwards are exact. */
+    void cleanUp() {
+        conversationContexts.cleanUp();
+    }
+
+    /** The raw turns of one conversation, oldest first, in circular arrays. */
+    private static final class Ring {
+
+        private final String[] texts;
+        private final String[] senders;
+        private final long[] timestamps;
+        private int head;
+        private int size;
+        private long bytes;
+
+        Ring(int capacity) {
+            this.texts = new String[capacity];
+            this.senders = new String[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        /**
+         * Adds a turn. When the ring is full, the oldest turns are removed first so that
+         * {@code keep} remain including the new one; folding in batches keeps the number of
+         * summary calls well below the number of messages.
+         *
+         * @param overflow receives the removed turns, or {@code null} to discard them
+         */
+        synchronized void append(String sender, String text, long timestamp, int keep, List<ContextSnippet> overflow) {
+            if (size == texts.length) {
+                int drop = size - keep + 1;
+                for (int i = 0; i < drop; i++) {
+                    if (overflow != null) {
+                        overflow.add(snippet(head));
+                    }
+                    bytes -= turnBytes(senders[head], texts[head]);
+                    texts[head] = null;
+                    senders[head] = null;
+                    head = (head + 1) % texts.length;
+                    size--;
+                }
+            }
+            int tail = (head + size) % texts.length;
+            texts[tail] = text;
+            senders[tail] = sender;
+            timestamps[tail] = timestamp;
+            bytes += turnBytes(sender, text);
+            size++;
+        }
+
+        /** Adds up to {@code max} of the newest turns to {@code into}, oldest first. */
+        synchronized void latest(int max, List<ContextSnippet> into) {
+            int count = Math.min(Math.max(0, max), size);
+            for (int i = size - count; i < size; i++) {
+                into.add(snippet((head + i) % texts.length));
+            }
+        }
+
+        // Read by the cache inside compute(), after append has returned
+        int weight(String conversationId) {
+            long weight = CONVERSATION_OVERHEAD_BYTES + 2L * conversationId.length() + 16L * texts.length + bytes;
+            return (int) Math.min(Integer.MAX_VALUE, weight);
+        }
+
+        private ContextSnippet snippet(int index) {
+            return new ContextSnippet(texts[index], senders[index], timestamps[index], 0);
+        }
+
+        // Charged as UTF-16, and senders (usually shared) per turn, so the budget errs on the safe side
+        private static long turnBytes(String sender, String text) {
+            return TURN_OVERHEAD_BYTES + 2L * text.length() + (sender != null ? 2L * sender.length() : 0);
+        }
+    }
+}
@@ -1,184 +1,588 @@
 package com.klakar.artivio.service.impl;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.gemini.GeminiCallTelemetry;
+import com.klakar.artivio.ai.gemini.GeminiContent;
+import com.klakar.artivio.ai.gemini.GeminiContextCache;
+import com.klakar.artivio.ai.gemini.GeminiRequestTemplate;
+import com.klakar.artivio.ai.gemini.GeminiResponse;
+import com.klakar.artivio.ai.gemini.GeminiResponseParser;
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
+import com.klakar.artivio.ai.usage.AIUsageTracker;
+import com.klakar.artivio.config.GeminiProperties;
 import com.klakar.artivio.service.AIService;
-import lombok.RequiredArgsConstructor;
+import com.klakar.artivio.service.AIServiceException;
+import com.klakar.artivio.ai.resilience.AimdConcurrencyLimiter;
+import com.klakar.artivio.ai.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class GeminiAIServiceImpl implements AIService {
 
-    private final WebClient.Builder webClientBuilder;
+    private final WebClient geminiWebClient;
     private final ObjectMapper objectMapper;
+    private final GeminiProperties geminiProperties;
+    private final GeminiRequestTemplate requestTemplate;
+    private final TokenEstimator tokenEstimator;
+    private final int fixedPromptTokens;
+    private final int fixedPromptTokensWithContext;
+    private final int systemInstructionTokens;
+
+    // Identical requests currently waiting on the provider, keyed like the response cache
+    private final Map<String, Mono<String>> inFlightRequests = new ConcurrentHashMap<>();
+    private final Map<String, Flux<String>> inFlightStreams = new ConcurrentHashMap<>();
+    private final Counter coalescedRequests;
+
+    // Estimated vs reported prompt size, for calibrating the token estimator
+    private final DistributionSummary estimatedPromptTokens;
+    private final DistributionSummary actualPromptTokens;
+    private final DistributionSummary promptTokenEstimateRatio;
+    private final DistributionSummary cachedPromptTokens;
+    private final GeminiCallTelemetry telemetry;
+
+    // Null when disabled in configuration
+    private final AimdConcurrencyLimiter concurrencyLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final GeminiContextCache contextCache;
+
+    private static final String GENERATE_CONTENT_PATH = "/models/{model}:generateContent";
+    private static final String STREAM_GENERATE_CONTENT_PATH = "/models/{model}:streamGenerateContent?alt=sse";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final String NOT_CONFIGURED_MESSAGE = "Gemini AI is not properly configured. Please check the API key.";
+    private static final String RATE_LIMITED_MESSAGE = "I'm getting too many requests right now. Please wait a moment and try again.";
+    private static final String UNAVAILABLE_MESSAGE = "The AI service is temporarily unavailable. Please try again in a moment.";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    public GeminiAIServiceImpl(WebClient geminiWebClient,
+                               ObjectMapper objectMapper,
+                               GeminiProperties geminiProperties,
+                               TokenEstimator tokenEstimator,
+                               AIUsageTracker usageTracker,
+                               MeterRegistry meterRegistry) {
+        this.geminiWebClient = geminiWebClient;
+        this.objectMapper = objectMapper;
+        this.geminiProperties = geminiProperties;
+        this.requestTemplate = new GeminiRequestTemplate(
+                objectMapper, geminiProperties.getTemperature(), geminiProperties.getMaxTokens());
+        this.tokenEstimator = tokenEstimator;
+        this.fixedPromptTokens = tokenEstimator.estimate(requestTemplate.fixedText(false));
+        this.fixedPromptTokensWithContext = tokenEstimator.estimate(requestTemplate.fixedText(true));
+        this.systemInstructionTokens = tokenEstimator.estimate(ArtivioPrompts.SYSTEM_PREAMBLE);
+        this.coalescedRequests = Counter.builder("ai.requests.coalesced")
+                .description("AI requests that joined an identical in-flight provider call")
+                .tag("model", geminiProperties.getModel())
+                .register(meterRegistry);
+        this.estimatedPromptTokens = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Prompt tokens per provider call")
+                .tag("model", geminiProperties.getModel())
+                .tag("source", "estimated")
+                .register(meterRegistry);
+        this.actualPromptTokens = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Prompt tokens per provider call")
+                .tag("model", geminiProperties.getModel())
+                .tag("source", "actual")
+                .register(meterRegistry);
+        this.promptTokenEstimateRatio = DistributionSummary.builder("ai.prompt.tokens.estimate.ratio")
+                .description("Reported over estimated prompt tokens; 1.0 means the estimator is calibrated")
+                .tag("model", geminiProperties.getModel())
+                .register(meterRegistry);
+        this.cachedPromptTokens = DistributionSummary.builder("ai.prompt.tokens")
+                .description("Prompt tokens per provider call")
+                .tag("model", geminiProperties.getModel())
+                .tag("source", "cached")
+                .register(meterRegistry);
+        this.telemetry = new GeminiCallTelemetry(geminiProperties.getModel(), meterRegistry, usageTracker);
+
+        this.concurrencyLimiter = createConcurrencyLimiter(geminiProperties.getLimiter(), meterRegistry);
+        this.circuitBreaker = createCircuitBreaker(geminiProperties.getCircuitBreaker(), meterRegistry);
+        this.contextCache = geminiProperties.getContextCache().isEnabled()
+                ? new GeminiContextCache(geminiWebClient, objectMapper, geminiProperties,
+                        requestTemplate.systemInstruction(), tokenEstimator, meterRegistry)
+                : null;
+    }
+
+    private AimdConcurrencyLimiter createConcurrencyLimiter(GeminiProperties.Limiter properties, MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
 
-    @Value("${app.gemini.api-key:demo}")
-    private String geminiApiKey;
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(
+                properties.getInitialLimit(),
+                properties.getMinLimit(),
+                properties.getMaxLimit(),
+                properties.getBackoffRatio()
+        );
+        String model = geminiProperties.getModel();
+        Gauge.builder("ai.limiter.limit", limiter, AimdConcurrencyLimiter::getLimit)
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("ai.limiter.inflight", limiter, AimdConcurrencyLimiter::getInFlight)
+                .tag("model", model)
+                .register(meterRegistry);
+        FunctionCounter.builder("ai.limiter.rejections", limiter, AimdConcurrencyLimiter::getRejections)
+                .tag("model", model)
+                .register(meterRegistry);
+        return limiter;
+    }
 
-    @Value("${app.gemini.model:gemini-1.5-flash}")
-    private String model;
+    private CircuitBreaker createCircuitBreaker(GeminiProperties.CircuitBreaker properties, MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
 
-    @Value("${app.gemini.temperature:0.7}")
-    private double temperature;
+        CircuitBreaker breaker = new CircuitBreaker(
+                properties.getFailureRateThreshold(),
+                properties.getSlidingWindowSize(),
+                properties.getMinimumNumberOfCalls(),
+                properties.getOpenDuration(),
+                properties.getHalfOpenPermittedCalls()
+        );
+        String model = geminiProperties.getModel();
+        Gauge.builder("ai.circuitbreaker.state", breaker, b -> b.getState().getCode())
+                .description("0 = closed, 1 = half-open, 2 = open")
+                .tag("model", model)
+                .register(meterRegistry);
+        FunctionCounter.builder("ai.circuitbreaker.rejections", breaker, CircuitBreaker::getRejections)
+                .tag("model", model)
+                .register(meterRegistry);
+        return breaker;
+    }
 
-    @Value("${app.gemini.max-tokens:1000}")
-    private int maxTokens;
+    @Override
+    public Mono<String> generate(String prompt, String context) {
+        if (!isConfigured()) {
+            return Mono.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+        }
 
-    private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/{model}:generateContent";
-    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+        String key = AIRequestKeys.of(prompt, context, geminiProperties.getModel(), geminiProperties.getTemperature());
+        return coalesced(key, () -> callGeminiAPI(
+                requestTemplate.body(prompt, context), estimatePromptTokens(prompt, context), null)
+                .onErrorMap(this::toAIServiceException));
+    }
 
+    /**
+     * Sends the history as alternating user and model turns under a system instruction. Long
+     * conversations reference their earlier turns through cached content when that is enabled.
+     */
     @Override
-    public CompletableFuture<String> generateResponse(String prompt, String context) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return callGeminiAPI(prompt, context);
-            } catch (Exception e) {
-                log.error("Error calling Gemini API", e);
-                return "I'm having trouble generating a response right now. Please try again.";
+    public Mono<String> generate(AIPrompt prompt) {
+        if (!isConfigured()) {
+            return Mono.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+        }
+
+        String key = AIRequestKeys.of(prompt.message(), prompt.context(),
+                geminiProperties.getModel(), geminiProperties.getTemperature());
+        return coalesced(key, () -> Mono.defer(() -> {
+            List<GeminiContent> contents = GeminiContent.of(prompt.history(), prompt.message());
+            int estimatedTokens = estimatePromptTokens(contents);
+            GeminiContextCache.Plan plan = plan(prompt, contents);
+            Mono<String> call = callGeminiAPI(
+                    requestTemplate.body(plan.contents(), plan.cachedContent()), estimatedTokens, prompt.conversationId());
+            if (plan.cachedContent() != null) {
+                call = call.onErrorResume(GeminiAIServiceImpl::isRejectedCache, e -> {
+                    onRejectedCache(prompt, plan, e);
+                    return callGeminiAPI(requestTemplate.body(contents, null), estimatedTokens, prompt.conversationId());
+                });
+            }
+            return call.onErrorMap(this::toAIServiceException);
+        }));
+    }
+
+    private Mono<String> coalesced(String key, Supplier<Mono<String>> upstream) {
+        return Mono.defer(() -> {
+            Mono<String> inFlight = inFlightRequests.get(key);
+            if (inFlight == null) {
+                Mono<String> call = sharedCall(key, upstream.get());
+                inFlight = inFlightRequests.putIfAbsent(key, call);
+                if (inFlight == null) {
+                    return call;
+                }
             }
+            coalescedRequests.increment();
+            return inFlight;
+        });
+    }
+
+    /**
+     * Wraps one upstream call so every waiter gets its result or error. The upstream call is
+     * cancelled only once all waiters have cancelled, and the entry is dropped as soon as the
+     * call terminates so later requests start a fresh call.
+     */
+    private Mono<String> sharedCall(String key, Mono<String> upstream) {
+        AtomicReference<Mono<String>> self = new AtomicReference<>();
+        Mono<String> call = upstream
+                // Before the result reaches the waiters, so a request sent right after starts afresh
+                .doOnTerminate(() -> inFlightRequests.remove(key, self.get()))
+                .doOnCancel(() -> inFlightRequests.remove(key, self.get()))
+                .share();
+        self.set(call);
+        return call;
+    }
+
+    /**
+     * One {@code generateContent} call; errors are left unmapped so callers can still react to them.
+     *
+     * @param conversationId for usage totals, or {@code null}
+     */
+    private Mono<String> callGeminiAPI(BodyInserter<byte[], ReactiveHttpOutputMessage> body, int estimatedTokens,
+                                       String conversationId) {
+        log.debug("Sending request to Gemini API with model: {}", geminiProperties.getModel());
+
+        Mono<String> request = Mono.deferContextual(reactorContext -> {
+            GeminiCallTelemetry.Call call = telemetry.start(
+                    GeminiCallTelemetry.GENERATE, AIRequestContext.from(reactorContext), conversationId);
+            return geminiWebClient.post()
+                    .uri(GENERATE_CONTENT_PATH, geminiProperties.getModel())
+                    .header("Content-Type", "application/json")
+                    .header("x-goog-api-key", geminiProperties.getApiKey())
+                    .body(body)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .doOnNext(buffer -> call.onFirstByte())
+                    .as(buffers -> extractResponse(buffers, call::onResponse))
+                    .timeout(TIMEOUT)
+                    .map(response -> {
+                        recordPromptTokens(estimatedTokens, response.promptTokenCount(), response.cachedTokenCount());
+                        return response.text().trim();
+                    })
+                    .doOnSuccess(text -> call.onComplete())
+                    .doOnError(e -> call.onError())
+                    .doOnCancel(call::onCancel);
         });
+
+        return guarded(request.flux())
+                .singleOrEmpty()
+                .doOnSuccess(text -> log.debug("Successfully received response from Gemini API"));
     }
 
     @Override
-    public CompletableFuture<String> generateResponse(String prompt) {
-        return generateResponse(prompt, null);
+    public Flux<String> streamResponse(String prompt, String context) {
+        if (!isConfigured()) {
+            return Flux.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+        }
+
+        String key = AIRequestKeys.of(prompt, context, geminiProperties.getModel(), geminiProperties.getTemperature());
+        return coalescedStream(key, () -> streamGeminiAPI(
+                requestTemplate.body(prompt, context), estimatePromptTokens(prompt, context), null)
+                .onErrorMap(this::toAIServiceException));
     }
 
-    private String callGeminiAPI(String prompt, String context) {
-        try {
-            if (!isConfigured()) {
-                return "Gemini AI is not properly configured. Please check the API key.";
+    @Override
+    public Flux<String> streamResponse(AIPrompt prompt) {
+        if (!isConfigured()) {
+            return Flux.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+        }
+
+        String key = AIRequestKeys.of(prompt.message(), prompt.context(),
+                geminiProperties.getModel(), geminiProperties.getTemperature());
+        return coalescedStream(key, () -> Flux.defer(() -> {
+            List<GeminiContent> contents = GeminiContent.of(prompt.history(), prompt.message());
+            int estimatedTokens = estimatePromptTokens(contents);
+            GeminiContextCache.Plan plan = plan(prompt, contents);
+            Flux<String> stream = streamGeminiAPI(
+                    requestTemplate.body(plan.contents(), plan.cachedContent()), estimatedTokens, prompt.conversationId());
+            if (plan.cachedContent() != null) {
+                // A rejected handle fails the request before any text arrives
+                stream = stream.onErrorResume(GeminiAIServiceImpl::isRejectedCache, e -> {
+                    onRejectedCache(prompt, plan, e);
+                    return streamGeminiAPI(requestTemplate.body(contents, null), estimatedTokens, prompt.conversationId());
+                });
             }
+            return stream.onErrorMap(this::toAIServiceException);
+        }));
+    }
 
-            WebClient webClient = webClientBuilder
-                    .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-                    .build();
-
-            String fullPrompt = buildFullPrompt(prompt, context);
-
-            // Prepare the request body for Gemini API
-            Map<String, Object> requestBody = Map.of(
-                    "contents", new Object[]{
-                            Map.of(
-                                    "parts", new Object[]{
-                                            Map.of("text", fullPrompt)
-                                    }
-                            )
-                    },
-                    "generationConfig", Map.of(
-                            "temperature", temperature,
-                            "topK", 32,
-                            "topP", 1.0,
-                            "maxOutputTokens", maxTokens,
-                            "stopSequences", new String[]{}
-                    ),
-                    "safetySettings", new Object[]{
-                            Map.of(
-                                    "category", "HARM_CATEGORY_HARASSMENT",
-                                    "threshold", "BLOCK_MEDIUM_AND_ABOVE"
-                            ),
-                            Map.of(
-                                    "category", "HARM_CATEGORY_HATE_SPEECH",
-                                    "threshold", "BLOCK_MEDIUM_AND_ABOVE"
-                            ),
-                            Map.of(
-                                    "category", "HARM_CATEGORY_SEXUALLY_EXPLICIT",
-                                    "threshold", "BLOCK_MEDIUM_AND_ABOVE"
-                            ),
-                            Map.of(
-                                    "category", "HARM_CATEGORY_DANGEROUS_CONTENT",
-                                    "threshold", "BLOCK_MEDIUM_AND_ABOVE"
-                            )
-                    }
-            );
-
-            log.debug("Sending request to Gemini API with model: {}", model);
-
-            String response = webClient.post()
-                    .uri(GEMINI_API_URL, model)
+    private Flux<String> coalescedStream(String key, Supplier<Flux<String>> upstream) {
+        return Flux.defer(() -> {
+            Flux<String> inFlight = inFlightStreams.get(key);
+            if (inFlight == null) {
+                Flux<String> stream = sharedStream(key, upstream.get());
+                inFlight = inFlightStreams.putIfAbsent(key, stream);
+                if (inFlight == null) {
+                    return stream;
+                }
+            }
+            coalescedRequests.increment();
+            return inFlight;
+        });
+    }
+
+    /**
+     * Like {@link #sharedCall}, for a stream: the chunks are replayed, so a request joining after
+     * the first chunks arrived still receives the whole response.
+     */
+    private Flux<String> sharedStream(String key, Flux<String> upstream) {
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> stream = upstream
+                .doOnTerminate(() -> inFlightStreams.remove(key, self.get()))
+                .doOnCancel(() -> inFlightStreams.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(stream);
+        return stream;
+    }
+
+    private Flux<String> streamGeminiAPI(BodyInserter<byte[], ReactiveHttpOutputMessage> body, int estimatedTokens,
+                                         String conversationId) {
+        log.debug("Streaming request to Gemini API with model: {}", geminiProperties.getModel());
+
+        // Each SSE event carries a complete GenerateContentResponse holding the next slice of text;
+        // usage metadata is repeated on the events, the last one holding the final counts
+        Flux<String> request = Flux.deferContextual(reactorContext -> {
+            GeminiCallTelemetry.Call call = telemetry.start(
+                    GeminiCallTelemetry.STREAM, AIRequestContext.from(reactorContext), conversationId);
+            return geminiWebClient.post()
+                    .uri(STREAM_GENERATE_CONTENT_PATH, geminiProperties.getModel())
                     .header("Content-Type", "application/json")
-                    .header("x-goog-api-key", geminiApiKey)
-                    .bodyValue(requestBody)
+                    .header("x-goog-api-key", geminiProperties.getApiKey())
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .body(body)
                     .retrieve()
-                    .bodyToMono(String.class)
+                    .bodyToFlux(SSE_TYPE)
                     .timeout(TIMEOUT)
-                    .block();
+                    .mapNotNull(ServerSentEvent::data)
+                    .doOnNext(data -> call.onFirstByte())
+                    .map(this::parseChunk)
+                    .doOnNext(call::onResponse)
+                    .map(GeminiResponse::text)
+                    .filter(chunk -> !chunk.isEmpty())
+                    .doOnComplete(() -> {
+                        recordPromptTokens(estimatedTokens, call.promptTokens(), call.cachedTokens());
+                        call.onComplete();
+                    })
+                    .doOnError(e -> call.onError())
+                    .doOnCancel(call::onCancel);
+        });
 
-            String extractedText = extractTextFromResponse(response);
-            log.debug("Successfully received response from Gemini API");
-            return extractedText;
+        return guarded(request);
+    }
 
-        } catch (WebClientResponseException e) {
-            log.error("Gemini API error: Status {}, Body: {}", e.getStatusCode(), e.getResponseBodyAsString());
-            return handleAPIError(e);
-        } catch (Exception e) {
-            log.error("Unexpected error calling Gemini API", e);
-            return "Sorry, I encountered an unexpected error. Please try again.";
+    private GeminiContextCache.Plan plan(AIPrompt prompt, List<GeminiContent> contents) {
+        if (contextCache == null) {
+            return new GeminiContextCache.Plan(null, contents);
         }
+        return contextCache.plan(prompt.conversationId(), contents);
     }
 
-    private String buildFullPrompt(String userMessage, String context) {
-        StringBuilder prompt = new StringBuilder();
+    /** The handle expired early, was deleted elsewhere, or belongs to another key or model. */
+    private static boolean isRejectedCache(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 400 || status == 403 || status == 404;
+        }
+        return false;
+    }
 
-        prompt.append("You are Artivio AI, a helpful and creative assistant integrated into the Artivio chat application. ");
-        prompt.append("Artivio's tagline is 'Where creativity meets intelligence'. ");
-        prompt.append("\n\nPersonality and Guidelines:");
-        prompt.append("\n- Be conversational, friendly, and engaging");
-        prompt.append("\n- Provide helpful, accurate, and creative responses");
-        prompt.append("\n- Keep responses concise but informative (aim for 1-3 paragraphs)");
-        prompt.append("\n- Use a warm, professional tone");
-        prompt.append("\n- If asked about yourself, mention you're Artivio AI");
-        prompt.append("\n- Be helpful with coding, creative writing, analysis, and general questions");
-        prompt.append("\n- If you're unsure about something, say so honestly");
+    private void onRejectedCache(AIPrompt prompt, GeminiContextCache.Plan plan, Throwable e) {
+        log.warn("Gemini rejected cached content {}, resending the full conversation: {}",
+                plan.cachedContent(), e.getMessage());
+        contextCache.invalidate(prompt.conversationId(), plan.cachedContent());
+    }
 
-        if (context != null && !context.trim().isEmpty()) {
-            prompt.append("\n\nPrevious conversation context:\n").append(context);
+    /**
+     * Runs an upstream call behind the circuit breaker and the adaptive concurrency limiter,
+     * failing fast with the usual user-facing text when either refuses it.
+     */
+    private <T> Flux<T> guarded(Flux<T> request) {
+        return Flux.defer(() -> {
+            CircuitBreaker.Permit permit = null;
+            if (circuitBreaker != null) {
+                permit = circuitBreaker.tryAcquirePermission();
+                if (permit == null) {
+                    log.warn("Gemini circuit breaker is open, failing fast");
+                    return Flux.error(new AIServiceException(UNAVAILABLE_MESSAGE));
+                }
+            }
+            if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+                if (permit != null) {
+                    circuitBreaker.onIgnored(permit);
+                }
+                log.warn("Gemini concurrency limit of {} reached, rejecting request", concurrencyLimiter.getLimit());
+                return Flux.error(new AIServiceException(RATE_LIMITED_MESSAGE));
+            }
+
+            AtomicBoolean released = new AtomicBoolean();
+            CircuitBreaker.Permit granted = permit;
+            return request
+                    .doOnComplete(() -> release(released, granted, AimdConcurrencyLimiter.Outcome.SUCCESS, false))
+                    .doOnError(e -> release(released, granted, classify(e), isProviderFailure(e)))
+                    .doOnCancel(() -> release(released, granted, AimdConcurrencyLimiter.Outcome.IGNORED, false));
+        });
+    }
+
+    private void release(AtomicBoolean released,
+                         CircuitBreaker.Permit permit,
+                         AimdConcurrencyLimiter.Outcome outcome,
+                         boolean providerFailure) {
+        if (!released.compareAndSet(false, true)) {
+            return;
+        }
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.release(outcome);
         }
+        if (permit != null) {
+            if (providerFailure) {
+                circuitBreaker.onFailure(permit);
+            } else if (outcome == AimdConcurrencyLimiter.Outcome.IGNORED) {
+                circuitBreaker.onIgnored(permit);
+            } else {
+                circuitBreaker.onSuccess(permit);
+            }
+        }
+    }
 
-        prompt.append("\n\nUser message: ").append(userMessage);
-        prompt.append("\n\nPlease provide a helpful response:");
+    /** Rate limiting, overload and timeouts mean "slow down"; anything else says nothing about capacity. */
+    private static AimdConcurrencyLimiter.Outcome classify(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 429 || status == 503
+                    ? AimdConcurrencyLimiter.Outcome.DROPPED
+                    : AimdConcurrencyLimiter.Outcome.IGNORED;
+        }
+        if (e instanceof TimeoutException || e instanceof WebClientRequestException) {
+            return AimdConcurrencyLimiter.Outcome.DROPPED;
+        }
+        return AimdConcurrencyLimiter.Outcome.IGNORED;
+    }
 
-        return prompt.toString();
+    /** Failures that count against the provider's health, as opposed to bad requests or bad output. */
+    private static boolean isProviderFailure(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
     }
 
-    private String extractTextFromResponse(String response) {
-        try {
-            JsonNode root = objectMapper.readTree(response);
-            JsonNode candidates = root.get("candidates");
-
-            if (candidates != null && candidates.isArray() && candidates.size() > 0) {
-                JsonNode firstCandidate = candidates.get(0);
-                JsonNode content = firstCandidate.get("content");
-
-                if (content != null) {
-                    JsonNode parts = content.get("parts");
-                    if (parts != null && parts.isArray() && parts.size() > 0) {
-                        JsonNode firstPart = parts.get(0);
-                        JsonNode text = firstPart.get("text");
-                        if (text != null) {
-                            return text.asText().trim();
+    private AIServiceException toAIServiceException(Throwable e) {
+        if (e instanceof AIServiceException aiServiceException) {
+            return aiServiceException;
+        }
+        if (e instanceof WebClientResponseException responseException) {
+            log.error("Gemini API error: Status {}, Body: {}",
+                    responseException.getStatusCode(), responseException.getResponseBodyAsString());
+            return new AIServiceException(handleAPIError(responseException), e);
+        }
+        log.error("Unexpected error calling Gemini API", e);
+        return new AIServiceException("Sorry, I encountered an unexpected error. Please try again.", e);
+    }
+
+    /**
+     * Parses the body as its buffers arrive and releases each one straight away, so the
+     * response never exists as a single String or JsonNode tree.
+     *
+     * @param onParsed sees every parsed response, including ones rejected for having no text
+     */
+    private Mono<GeminiResponse> extractResponse(Flux<DataBuffer> body, Consumer<GeminiResponse> onParsed) {
+        return Mono.defer(() -> {
+            GeminiResponseParser parser = createResponseParser();
+            return body
+                    .doOnNext(buffer -> {
+                        try {
+                            parser.feed(buffer);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            DataBufferUtils.release(buffer);
                         }
-                    }
-                }
-            }
+                    })
+                    .then(Mono.fromCallable(parser::finish))
+                    .onErrorMap(e -> e instanceof IOException || e instanceof UncheckedIOException, e -> {
+                        log.error("Error parsing Gemini response", e);
+                        return new AIServiceException("I had trouble processing the response. Please try again.", e);
+                    })
+                    .doOnNext(response -> {
+                        onParsed.accept(response);
+                        if (!response.hasText()) {
+                            log.warn("Unexpected response format from Gemini API: no candidate text");
+                            throw new AIServiceException("I received an unexpected response format. Please try again.");
+                        }
+                    });
+        });
+    }
 
-            log.warn("Unexpected response format from Gemini API: {}", response);
-            return "I received an unexpected response format. Please try again.";
+    private GeminiResponseParser createResponseParser() {
+        try {
+            return GeminiResponseParser.nonBlocking(objectMapper.getFactory());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    private GeminiResponse parseChunk(String chunk) {
+        try {
+            return GeminiResponseParser.parse(objectMapper.getFactory(), chunk);
         } catch (Exception e) {
-            log.error("Error parsing Gemini response", e);
-            return "I had trouble processing the response. Please try again.";
+            log.error("Error parsing Gemini stream chunk", e);
+            return GeminiResponse.EMPTY;
+        }
+    }
+
+    private int estimatePromptTokens(String prompt, String context) {
+        boolean hasContext = context != null && !context.isBlank();
+        if (!hasContext) {
+            return fixedPromptTokens + tokenEstimator.estimate(prompt);
+        }
+        return fixedPromptTokensWithContext + tokenEstimator.estimate(prompt) + tokenEstimator.estimate(context);
+    }
+
+    private int estimatePromptTokens(List<GeminiContent> contents) {
+        int tokens = systemInstructionTokens;
+        for (GeminiContent content : contents) {
+            for (GeminiContent.Part part : content.parts()) {
+                tokens += tokenEstimator.estimate(part.text());
+            }
         }
+        return tokens;
+    }
+
+    /** {@code reported} includes the {@code cached} part, which is billed at the reduced rate. */
+    private void recordPromptTokens(int estimated, int reported, int cached) {
+        if (reported <= 0) {
+            return;
+        }
+        estimatedPromptTokens.record(estimated);
+        actualPromptTokens.record(reported);
+        if (cached > 0) {
+            cachedPromptTokens.record(cached);
+        }
+        promptTokenEstimateRatio.record((double) reported / Math.max(estimated, 1));
+        log.debug("Prompt tokens for {}: estimated {}, reported {}", geminiProperties.getModel(), estimated, reported);
     }
 
     private String handleAPIError(WebClientResponseException e) {
@@ -197,25 +601,34 @@ public class GeminiAIServiceImpl implements AIService {
                 return "I don't have permission to process this request.";
             case 429:
                 log.error("Rate limit exceeded for Gemini API");
-                return "I'm getting too many requests right now. Please wait a moment and try again.";
+                return RATE_LIMITED_MESSAGE;
             case 500:
             case 502:
             case 503:
                 log.error("Gemini API server error: {}", responseBody);
-                return "The AI service is temporarily unavailable. Please try again in a moment.";
+                return UNAVAILABLE_MESSAGE;
             default:
                 log.error("Unknown error from Gemini API: Status {}, Body: {}", statusCode, responseBody);
                 return "I encountered an unexpected error. Please try again.";
         }
     }
 
+    /** Deletes the conversation's cached content on the server instead of waiting for its TTL. */
+    @Override
+    public void forgetConversation(String conversationId) {
+        if (contextCache != null) {
+            contextCache.evict(conversationId);
+        }
+    }
+
     @Override
     public boolean isConfigured() {
-        return geminiApiKey != null && !geminiApiKey.equals("demo") && !geminiApiKey.isEmpty();
+        String apiKey = geminiProperties.getApiKey();
+        return apiKey != null && !apiKey.equals("demo") && !apiKey.isEmpty();
     }
 
     @Override
     public String getModelName() {
-        return model;
+        return geminiProperties.getModel();
     }
 }
\ No newline at end of file
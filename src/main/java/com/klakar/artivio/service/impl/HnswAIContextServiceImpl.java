@@ -0,0 +1,490 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.ContextTurn;
+import com.klakar.artivio.ai.embedding.EmbeddingService;
+import com.klakar.artivio.ai.vector.HnswIndex;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Semantic context without an external vector database: every stored turn is embedded and added
+ * to an in-process {@link HnswIndex}, and retrieval returns the turns of the conversation most
+ * similar to the query, scored by cosine similarity.
+ * <p>
+ * Searches are partitioned by conversation. Each conversation keeps the ids of its own turns and
+ * is normally answered by scanning just those vectors. The shared graph, with a conversation
+ * filter, is only used for a conversation above {@code exactScanLimit} turns that also holds a
+ * good share of the index: a filtered walk has to step over every foreign turn it meets, so for
+ * a small share it visits most of the graph.
+ * <p>
+ * Turns go into segments of up to {@code segmentSize} nodes; only the newest one takes inserts.
+ * Clearing a conversation drops its partition, so searches stop seeing it at once, and tombstones
+ * its nodes. A background compactor copies the live nodes of any segment with too many
+ * tombstones into a fresh segment and swaps it in, which frees the old graph and vectors.
+ */
+@Slf4j
+public class HnswAIContextServiceImpl implements AIContextService, AutoCloseable {
+
+    /** One indexed turn. */
+    record Turn(String conversationId, String text, String sender, long timestamp) {
+    }
+
+    /** Ids of one conversation's turns within one segment; appended under the partition's lock. */
+    static final class Slice {
+
+        private final HnswIndex<Turn> segment;
+        private volatile int[] ids;
+        private volatile int count;
+
+        Slice(HnswIndex<Turn> segment, int[] ids, int count) {
+            this.segment = segment;
+            this.ids = ids;
+            this.count = count;
+        }
+
+        void append(int id) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[count] = id;
+            count = count + 1;
+        }
+    }
+
+    /**
+     * The turns of one conversation, at most one slice per segment. Changed under its lock, read
+     * without one.
+     */
+    static final class Partition {
+
+        private volatile Slice[] slices = new Slice[0];
+        // Guarded by this
+        private boolean deleted;
+
+        /** Returns false once the conversation has been cleared. */
+        synchronized boolean add(HnswIndex<Turn> segment, int id) {
+            if (deleted) {
+                return false;
+            }
+            // An insert that picked a segment just before it was sealed can land after turns in
+            // the next one, so the segment's slice is not necessarily the last
+            Slice[] current = slices;
+            for (int i = current.length - 1; i >= 0; i--) {
+                if (current[i].segment == segment) {
+                    current[i].append(id);
+                    return true;
+                }
+            }
+            Slice slice = new Slice(segment, new int[8], 0);
+            slice.append(id);
+            Slice[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = slice;
+            slices = grown;
+            return true;
+        }
+
+        /** Points the slices of {@code from} at the copies in {@code to}; false if there are none to move. */
+        synchronized boolean move(HnswIndex<Turn> from, HnswIndex<Turn> to, int[] ids) {
+            if (deleted) {
+                return false;
+            }
+            List<Slice> updated = new ArrayList<>(slices.length);
+            boolean moved = false;
+            for (Slice slice : slices) {
+                if (slice.segment != from) {
+                    updated.add(slice);
+                } else if (!moved) {
+                    updated.add(new Slice(to, ids, ids.length));
+                    moved = true;
+                }
+            }
+            if (moved) {
+                slices = updated.toArray(new Slice[0]);
+            }
+            return moved;
+        }
+
+        int turns(HnswIndex<Turn> segment) {
+            int turns = 0;
+            for (Slice slice : slices) {
+                if (slice.segment == segment) {
+                    turns += slice.count;
+                }
+            }
+            return turns;
+        }
+
+        /** Tombstones every turn and refuses further ones; returns how many were tombstoned. */
+        synchronized int delete() {
+            deleted = true;
+            int tombstoned = 0;
+            for (Slice slice : slices) {
+                int[] ids = slice.ids;
+                for (int i = 0; i < slice.count; i++) {
+                    if (slice.segment.delete(ids[i])) {
+                        tombstoned++;
+                    }
+                }
+            }
+            return tombstoned;
+        }
+    }
+
+    // The graph is used for conversations holding at least 1/MIN_GRAPH_SHARE of the index
+    private static final int MIN_GRAPH_SHARE = 10;
+
+    private final EmbeddingService embeddingService;
+    private final AIProperties.Context.Hnsw properties;
+    private final List<HnswIndex<Turn>> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    // Inserts hold the read lock; compaction takes the write lock to wait out inserts into a sealed segment
+    private final ReadWriteLock insertLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService compactor;
+    private final Timer scanLatency;
+    private final Timer graphLatency;
+    private final Timer compactionTime;
+    private final Counter reclaimed;
+    private final AtomicBoolean fullLogged = new AtomicBoolean();
+
+    private volatile HnswIndex<Turn> active;
+
+    public HnswAIContextServiceImpl(EmbeddingService embeddingService, AIProperties.Context.Hnsw properties,
+                                    MeterRegistry meterRegistry) {
+        this.embeddingService = embeddingService;
+        this.properties = properties;
+        this.active = newSegment();
+        segments.add(active);
+
+        this.scanLatency = searchTimer("scan", meterRegistry);
+        this.graphLatency = searchTimer("graph", meterRegistry);
+        this.compactionTime = Timer.builder("ai.context.vector.compaction")
+                .description("Time to rebuild one segment without its tombstoned turns")
+                .register(meterRegistry);
+        this.reclaimed = Counter.builder("ai.context.vector.reclaimed")
+                .description("Tombstoned turns removed by compaction")
+                .register(meterRegistry);
+        Gauge.builder("ai.context.vector.size", this, HnswAIContextServiceImpl::liveTurns)
+                .description("Searchable turns in the in-process vector index")
+                .register(meterRegistry);
+        Gauge.builder("ai.context.vector.tombstones", this, HnswAIContextServiceImpl::tombstones)
+                .description("Deleted turns still taking space until compaction")
+                .register(meterRegistry);
+        Gauge.builder("ai.context.vector.tombstone.ratio", this, HnswAIContextServiceImpl::tombstoneRatio)
+                .register(meterRegistry);
+        Gauge.builder("ai.context.vector.segments", segments, List::size)
+                .register(meterRegistry);
+        Gauge.builder("ai.context.vector.offheap", this, HnswAIContextServiceImpl::vectorBytes)
+                .description("Off-heap memory reserved for vectors")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        long interval = properties.getCompactionInterval().toMillis();
+        if (interval > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "vector-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+        log.info("Initialized HnswAIContextService (model: {}, m: {}, efConstruction: {}, efSearch: {})",
+                embeddingService.model(), properties.getM(), properties.getEfConstruction(), properties.getEfSearch());
+    }
+
+    @Override
+    public void storeConversationContext(String conversationId, String messageContent, String sender) {
+        try {
+            if (full()) {
+                return;
+            }
+            add(embeddingService.embed(messageContent), conversationId, messageContent, sender);
+            log.debug("Indexed context for conversation {}: {} characters from {}",
+                    conversationId, messageContent.length(), sender);
+        } catch (Exception e) {
+            log.error("Error storing context for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    @Override
+    public void storeConversationContexts(List<ContextTurn> turns) {
+        if (full()) {
+            return;
+        }
+        List<float[]> vectors = embeddingService.embedAll(turns.stream().map(ContextTurn::content).toList());
+        for (int i = 0; i < turns.size(); i++) {
+            ContextTurn turn = turns.get(i);
+            add(vectors.get(i), turn.conversationId(), turn.content(), turn.sender());
+        }
+        log.debug("Indexed {} context turns", turns.size());
+    }
+
+    private boolean full() {
+        if (nodes() < properties.getMaxVectors()) {
+            return false;
+        }
+        if (fullLogged.compareAndSet(false, true)) {
+            log.warn("Vector index is full ({} turns), new turns are not indexed", properties.getMaxVectors());
+        }
+        return true;
+    }
+
+    private void add(float[] vector, String conversationId, String content, String sender) {
+        insertLock.readLock().lock();
+        try {
+            HnswIndex<Turn> segment = activeSegment();
+            int id = segment.add(vector, new Turn(conversationId, content, sender, System.currentTimeMillis()));
+            if (!partitions.computeIfAbsent(conversationId, key -> new Partition()).add(segment, id)) {
+                // Cleared while this turn was being added
+                segment.delete(id);
+            }
+        } finally {
+            insertLock.readLock().unlock();
+        }
+    }
+
+    private HnswIndex<Turn> activeSegment() {
+        HnswIndex<Turn> segment = active;
+        if (segment.size() < properties.getSegmentSize()) {
+            return segment;
+        }
+        synchronized (segments) {
+            if (active.size() >= properties.getSegmentSize()) {
+                seal();
+            }
+            return active;
+        }
+    }
+
+    // Caller holds the segments lock
+    private void seal() {
+        active = newSegment();
+        segments.add(active);
+    }
+
+    private HnswIndex<Turn> newSegment() {
+        return new HnswIndex<>(embeddingService.dimensions(),
+                properties.getM(), properties.getEfConstruction(), properties.getEfSearch());
+    }
+
+    @Override
+    public String getRelevantContext(String conversationId, String query, int maxResults) {
+        return ContextSnippet.formatAll(getContextSnippets(conversationId, query, maxResults));
+    }
+
+    @Override
+    public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+        Partition partition = partitions.get(conversationId);
+        if (query == null || query.isBlank() || partition == null) {
+            return Collections.emptyList();
+        }
+        try {
+            float[] vector = embeddingService.embed(query);
+            List<HnswIndex.Match<Turn>> matches = search(partition, conversationId, vector, maxResults);
+            List<ContextSnippet> snippets = matches.stream()
+                    .map(match -> new ContextSnippet(match.payload().text(), match.payload().sender(),
+                            match.payload().timestamp(), match.similarity()))
+                    .toList();
+            log.debug("Retrieved {} similar turns for conversation {}", snippets.size(), conversationId);
+            return snippets;
+        } catch (Exception e) {
+            log.error("Error getting context snippets for conversation {}: {}", conversationId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private List<HnswIndex.Match<Turn>> search(Partition partition, String conversationId, float[] vector,
+                                               int maxResults) {
+        Slice[] slices = partition.slices;
+        int turns = 0;
+        for (Slice slice : slices) {
+            turns += slice.count;
+        }
+        if (turns <= properties.getExactScanLimit() || turns < liveTurns() / MIN_GRAPH_SHARE) {
+            return scanLatency.record(() -> {
+                List<List<HnswIndex.Match<Turn>>> perSlice = new ArrayList<>(slices.length);
+                for (Slice slice : slices) {
+                    // Read count before ids: the array seen is at least as new as the count
+                    int count = slice.count;
+                    perSlice.add(slice.segment.exactSearch(vector, maxResults, slice.ids, count));
+                }
+                return best(perSlice, maxResults);
+            });
+        }
+        return graphLatency.record(() -> {
+            List<List<HnswIndex.Match<Turn>>> perSegment = new ArrayList<>(segments.size());
+            for (HnswIndex<Turn> segment : segments) {
+                perSegment.add(segment.search(vector, maxResults,
+                        turn -> turn.conversationId().equals(conversationId)));
+            }
+            return best(perSegment, maxResults);
+        });
+    }
+
+    private static List<HnswIndex.Match<Turn>> best(List<List<HnswIndex.Match<Turn>>> results, int maxResults) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        return results.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingDouble((HnswIndex.Match<Turn> match) -> match.similarity()).reversed())
+                .limit(maxResults)
+                .toList();
+    }
+
+    private static Timer searchTimer(String strategy, MeterRegistry meterRegistry) {
+        return Timer.builder("ai.context.vector.search")
+                .description("Time to find similar turns in the in-process index, embedding excluded")
+                .tag("strategy", strategy)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void clearConversationContext(String conversationId) {
+        try {
+            Partition partition = partitions.remove(conversationId);
+            int tombstoned = partition == null ? 0 : partition.delete();
+            log.info("Cleared context for conversation {} ({} turns tombstoned)", conversationId, tombstoned);
+        } catch (Exception e) {
+            log.error("Error clearing context for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+
+    /** Rebuilds every segment whose share of tombstones has reached the threshold. */
+    void compact() {
+        synchronized (segments) {
+            HnswIndex<Turn> current = active;
+            if (current.size() > 0 && tombstoneRatio(current) >= properties.getCompactionThreshold()) {
+                seal();
+            }
+        }
+        for (HnswIndex<Turn> segment : segments) {
+            if (segment != active && segment.size() > 0
+                    && tombstoneRatio(segment) >= properties.getCompactionThreshold()) {
+                compact(segment);
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.error("Vector index compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void compact(HnswIndex<Turn> segment) {
+        long start = System.nanoTime();
+        // Inserts that picked this segment before it was sealed finish before it is copied
+        insertLock.writeLock().lock();
+        insertLock.writeLock().unlock();
+
+        HnswIndex<Turn> compacted = newSegment();
+        Map<String, List<Integer>> moved = new HashMap<>();
+        int nodes = segment.size();
+        for (int id = 0; id < nodes; id++) {
+            if (segment.isDeleted(id)) {
+                continue;
+            }
+            Turn turn = segment.payload(id);
+            int copy = compacted.add(segment.vector(id), turn);
+            moved.computeIfAbsent(turn.conversationId(), key -> new ArrayList<>()).add(copy);
+        }
+        moved.forEach((conversationId, copies) -> {
+            int[] ids = copies.stream().mapToInt(Integer::intValue).toArray();
+            Partition partition = partitions.get(conversationId);
+            if (partition == null || !partition.move(segment, compacted, ids)) {
+                // Cleared while the segment was being copied
+                for (int id : ids) {
+                    compacted.delete(id);
+                }
+            }
+        });
+        synchronized (segments) {
+            if (compacted.size() == 0) {
+                segments.remove(segment);
+            } else {
+                segments.set(segments.indexOf(segment), compacted);
+            }
+        }
+
+        int purged = nodes - compacted.size();
+        reclaimed.increment(purged);
+        compactionTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Compacted vector segment: {} of {} turns purged, {} MB off-heap released",
+                purged, nodes, (segment.vectorBytes() - compacted.vectorBytes()) / (1024 * 1024));
+    }
+
+    int nodes() {
+        int nodes = 0;
+        for (HnswIndex<Turn> segment : segments) {
+            nodes += segment.size();
+        }
+        return nodes;
+    }
+
+    int tombstones() {
+        int tombstones = 0;
+        for (HnswIndex<Turn> segment : segments) {
+            tombstones += segment.deletedCount();
+        }
+        return tombstones;
+    }
+
+    int liveTurns() {
+        return nodes() - tombstones();
+    }
+
+    double tombstoneRatio() {
+        int nodes = nodes();
+        return nodes == 0 ? 0 : (double) tombstones() / nodes;
+    }
+
+    private static double tombstoneRatio(HnswIndex<?> segment) {
+        return (double) segment.deletedCount() / segment.size();
+    }
+
+    long vectorBytes() {
+        long bytes = 0;
+        for (HnswIndex<Turn> segment : segments) {
+            bytes += segment.vectorBytes();
+        }
+        return bytes;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+    }
+}
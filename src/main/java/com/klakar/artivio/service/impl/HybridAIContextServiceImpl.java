@@ -0,0 +1,157 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextReranker;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.ContextTurn;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Context from several stores at once, for example the recent-turns ring, BM25 and a vector
+ * index. Every turn is written to each store; a query asks each for
+ * {@code candidateFactor * maxResults} candidates and the {@link ContextReranker} merges them into
+ * one ranking of relevance, recency and sender, with near-duplicates removed. The
+ * {@code PromptContextAssembler} then fits the result into the token budget as usual.
+ * <p>
+ * A store that fails is left out of the answer rather than failing it. The service is durable if
+ * any of its stores is, and a batch counts as stored only when every durable store took it.
+ */
+@Slf4j
+public class HybridAIContextServiceImpl implements AIContextService, AutoCloseable {
+
+    /** One store taking part, under the name used in metrics and weights. */
+    public record Retriever(String name, AIContextService store, double weight) {
+    }
+
+    private final List<Retriever> retrievers;
+    private final ContextReranker reranker;
+    private final int candidateFactor;
+    private final Map<String, Timer> retrieveLatency;
+    private final Timer rerankLatency;
+    private final DistributionSummary candidateCounts;
+
+    public HybridAIContextServiceImpl(List<Retriever> retrievers, AIProperties.Context.Hybrid properties,
+                                      MeterRegistry meterRegistry) {
+        if (retrievers.isEmpty()) {
+            throw new IllegalArgumentException("At least one retriever is required");
+        }
+        this.retrievers = List.copyOf(retrievers);
+        this.reranker = new ContextReranker(properties);
+        this.candidateFactor = Math.max(1, properties.getCandidateFactor());
+        Map<String, Timer> timers = new HashMap<>();
+        for (Retriever retriever : retrievers) {
+            timers.put(retriever.name(), Timer.builder("ai.context.hybrid.retrieve")
+                    .description("Time for one store to return its candidates")
+                    .tag("retriever", retriever.name())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+        }
+        this.retrieveLatency = Map.copyOf(timers);
+        this.rerankLatency = Timer.builder("ai.context.hybrid.rerank")
+                .description("Time to merge, score and deduplicate the candidates")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.candidateCounts = DistributionSummary.builder("ai.context.hybrid.candidates")
+                .description("Candidates from all stores per query, before deduplication")
+                .register(meterRegistry);
+        log.info("Initialized hybrid AIContextService over {}",
+                retrievers.stream().map(Retriever::name).toList());
+    }
+
+    @Override
+    public void storeConversationContext(String conversationId, String messageContent, String sender) {
+        for (Retriever retriever : retrievers) {
+            retriever.store().storeConversationContext(conversationId, messageContent, sender);
+        }
+    }
+
+    @Override
+    public void storeConversationContexts(List<ContextTurn> turns) {
+        RuntimeException failure = null;
+        for (Retriever retriever : retrievers) {
+            try {
+                retriever.store().storeConversationContexts(turns);
+            } catch (RuntimeException e) {
+                log.warn("Store {} failed to take {} context turns: {}", retriever.name(), turns.size(), e.getMessage());
+                if (retriever.store().isDurable() && failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public boolean isDurable() {
+        return retrievers.stream().anyMatch(retriever -> retriever.store().isDurable());
+    }
+
+    @Override
+    public String getRelevantContext(String conversationId, String query, int maxResults) {
+        return ContextSnippet.formatAll(getContextSnippets(conversationId, query, maxResults));
+    }
+
+    @Override
+    public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+        try {
+            int wanted = maxResults * candidateFactor;
+            List<ContextReranker.Candidates> candidates = new ArrayList<>(retrievers.size());
+            int count = 0;
+            for (Retriever retriever : retrievers) {
+                long start = System.nanoTime();
+                List<ContextSnippet> snippets = retrieve(retriever, conversationId, query, wanted);
+                retrieveLatency.get(retriever.name()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                candidates.add(new ContextReranker.Candidates(retriever.name(), retriever.weight(), snippets));
+                count += snippets.size();
+            }
+            candidateCounts.record(count);
+
+            List<ContextSnippet> ranked = rerankLatency.record(() -> reranker.rerank(candidates, maxResults));
+            log.debug("Re-ranked {} candidates into {} context snippets for conversation {}",
+                    count, ranked.size(), conversationId);
+            return ranked;
+        } catch (Exception e) {
+            log.error("Error getting context snippets for conversation {}: {}", conversationId, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<ContextSnippet> retrieve(Retriever retriever, String conversationId, String query, int wanted) {
+        try {
+            return retriever.store().getContextSnippets(conversationId, query, wanted);
+        } catch (Exception e) {
+            log.warn("Store {} failed to return context for conversation {}: {}",
+                    retriever.name(), conversationId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    @Override
+    public void clearConversationContext(String conversationId) {
+        for (Retriever retriever : retrievers) {
+            retriever.store().clearConversationContext(conversationId);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Retriever retriever : retrievers) {
+            if (retriever.store() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
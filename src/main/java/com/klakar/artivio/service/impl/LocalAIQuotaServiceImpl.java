@@ -0,0 +1,66 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.quota.QuotaDecision;
+import com.klakar.artivio.ai.quota.QuotaLimit;
+import com.klakar.artivio.ai.quota.StripedTokenBuckets;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIQuotaService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link AIQuotaService} backed by in-process token buckets. Limits apply per node, so a user
+ * spread over several nodes gets the quota once per node.
+ */
+@Slf4j
+public class LocalAIQuotaServiceImpl implements AIQuotaService {
+
+    private final boolean enabled;
+    private final StripedTokenBuckets buckets;
+    private final Map<QuotaLimit, Counter> rejections = new EnumMap<>(QuotaLimit.class);
+
+    public LocalAIQuotaServiceImpl(AIProperties.Quota properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.buckets = new StripedTokenBuckets(
+                properties.getRequestsPerMinute(), properties.getTokensPerDay(), properties.getStripes());
+        for (QuotaLimit limit : QuotaLimit.values()) {
+            rejections.put(limit, rejectionCounter(meterRegistry, limit));
+        }
+        Gauge.builder("ai.quota.tracked.users", buckets, StripedTokenBuckets::size)
+                .description("Users with a partly used AI quota on this node")
+                .register(meterRegistry);
+        log.info("AI quota {}: {} replies/minute, {} tokens/day per user",
+                enabled ? "enabled" : "disabled", properties.getRequestsPerMinute(), properties.getTokensPerDay());
+    }
+
+    static Counter rejectionCounter(MeterRegistry meterRegistry, QuotaLimit limit) {
+        return Counter.builder("ai.quota.rejections")
+                .description("AI replies refused because the user was over quota")
+                .tag("limit", limit.tag())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public QuotaDecision tryAcquire(String username, int estimatedTokens) {
+        if (!enabled) {
+            return QuotaDecision.ALLOWED;
+        }
+        QuotaDecision decision = buckets.tryAcquire(username, estimatedTokens);
+        if (!decision.allowed()) {
+            rejections.get(decision.exceeded()).increment();
+        }
+        return decision;
+    }
+
+    @Override
+    public void recordUsage(String username, int tokens) {
+        if (enabled && tokens > 0) {
+            buckets.charge(username, tokens);
+        }
+    }
+}
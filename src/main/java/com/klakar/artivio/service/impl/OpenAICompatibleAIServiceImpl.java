@@ -0,0 +1,167 @@
+package com.klakar.artivio.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.AIServiceException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AIService} for any provider speaking the OpenAI {@code /chat/completions} protocol
+ * (OpenAI itself, Azure OpenAI, vLLM, Ollama, ...). Used as an extra routing backend.
+ */
+@Slf4j
+public class OpenAICompatibleAIServiceImpl implements AIService {
+
+    private static final String CHAT_COMPLETIONS_PATH = "/chat/completions";
+    private static final String STREAM_DONE = "[DONE]";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final String RATE_LIMITED_MESSAGE = "I'm getting too many requests right now. Please wait a moment and try again.";
+    private static final String UNAVAILABLE_MESSAGE = "The AI service is temporarily unavailable. Please try again in a moment.";
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final String model;
+    private final String apiKey;
+    private final double temperature;
+    private final int maxTokens;
+
+    public OpenAICompatibleAIServiceImpl(WebClient webClient,
+                                         ObjectMapper objectMapper,
+                                         String model,
+                                         String apiKey,
+                                         double temperature,
+                                         int maxTokens) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.model = model;
+        this.apiKey = apiKey;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public Mono<String> generate(String prompt, String context) {
+        return webClient.post()
+                .uri(CHAT_COMPLETIONS_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (apiKey != null && !apiKey.isEmpty()) {
+                        headers.setBearerAuth(apiKey);
+                    }
+                })
+                .bodyValue(buildRequestBody(prompt, context, false))
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(TIMEOUT)
+                .map(this::extractMessageText)
+                .onErrorMap(this::toAIServiceException);
+    }
+
+    @Override
+    public Flux<String> streamResponse(String prompt, String context) {
+        return webClient.post()
+                .uri(CHAT_COMPLETIONS_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .headers(headers -> {
+                    if (apiKey != null && !apiKey.isEmpty()) {
+                        headers.setBearerAuth(apiKey);
+                    }
+                })
+                .bodyValue(buildRequestBody(prompt, context, true))
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .timeout(TIMEOUT)
+                .mapNotNull(ServerSentEvent::data)
+                .takeWhile(data -> !STREAM_DONE.equals(data.trim()))
+                .map(this::extractDeltaText)
+                .filter(chunk -> !chunk.isEmpty())
+                .onErrorMap(this::toAIServiceException);
+    }
+
+    private Map<String, Object> buildRequestBody(String prompt, String context, boolean stream) {
+        StringBuilder userContent = new StringBuilder();
+        if (context != null && !context.isBlank()) {
+            userContent.append(ArtivioPrompts.CONTEXT_INTRO.strip()).append('\n').append(context);
+            userContent.append(ArtivioPrompts.MESSAGE_INTRO);
+        } else {
+            userContent.append(ArtivioPrompts.MESSAGE_INTRO.strip()).append(' ');
+        }
+        userContent.append(prompt);
+
+        return Map.of(
+                "model", model,
+                "messages", List.of(
+                        Map.of("role", "system", "content", ArtivioPrompts.SYSTEM_PREAMBLE),
+                        Map.of("role", "user", "content", userContent.toString())
+                ),
+                "temperature", temperature,
+                "max_tokens", maxTokens,
+                "stream", stream
+        );
+    }
+
+    private String extractMessageText(String response) {
+        JsonNode content;
+        try {
+            content = objectMapper.readTree(response).path("choices").path(0).path("message").path("content");
+        } catch (Exception e) {
+            log.error("Error parsing {} response", model, e);
+            throw new AIServiceException("I had trouble processing the response. Please try again.", e);
+        }
+        if (!content.isTextual()) {
+            log.warn("Unexpected response format from {}: no message content", model);
+            throw new AIServiceException("I received an unexpected response format. Please try again.");
+        }
+        return content.asText().trim();
+    }
+
+    private String extractDeltaText(String chunk) {
+        try {
+            return objectMapper.readTree(chunk).path("choices").path(0).path("delta").path("content").asText("");
+        } catch (Exception e) {
+            log.error("Error parsing {} stream chunk", model, e);
+            return "";
+        }
+    }
+
+    private AIServiceException toAIServiceException(Throwable e) {
+        if (e instanceof AIServiceException aiServiceException) {
+            return aiServiceException;
+        }
+        if (e instanceof WebClientResponseException responseException) {
+            log.error("{} API error: Status {}, Body: {}",
+                    model, responseException.getStatusCode(), responseException.getResponseBodyAsString());
+            return new AIServiceException(responseException.getStatusCode().value() == 429
+                    ? RATE_LIMITED_MESSAGE
+                    : UNAVAILABLE_MESSAGE, e);
+        }
+        log.error("Unexpected error calling {}", model, e);
+        return new AIServiceException("Sorry, I encountered an unexpected error. Please try again.", e);
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return model != null && !model.isEmpty();
+    }
+
+    @Override
+    public String getModelName() {
+        return model;
+    }
+}
@@ -0,0 +1,147 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.quota.QuotaDecision;
+import com.klakar.artivio.ai.quota.QuotaLimit;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIQuotaService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AIQuotaService} that keeps the buckets in Redis, so every node enforces one shared quota
+ * per user. Each check is a single Lua script call that refills, checks and takes from both
+ * buckets atomically, using the Redis server clock. If Redis cannot answer within the timeout,
+ * the node's local buckets decide instead of failing the user's message.
+ * <p>
+ * Calls block the calling thread for at most {@code redis-timeout} (100 ms by default).
+ * {@link #tryAcquire} runs on the thread sending the chat message, which already blocks on the
+ * database, so that bounded wait is accepted instead of making {@link AIQuotaService} reactive.
+ * {@link #recordUsage} runs when a reply ends: on the AI response scheduler, or on the thread
+ * that cancelled the reply.
+ */
+@Slf4j
+public class RedisAIQuotaServiceImpl implements AIQuotaService {
+
+    private static final long MILLIS_PER_MINUTE = Duration.ofMinutes(1).toMillis();
+    private static final long MILLIS_PER_DAY = Duration.ofDays(1).toMillis();
+
+    // Returns {0, 0} when allowed, otherwise {1 (requests) or 2 (tokens), retry after in ms}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TOKEN_BUCKETS = RedisScript.of("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local requestCapacity, requestRate = tonumber(ARGV[1]), tonumber(ARGV[2])
+            local tokenCapacity, tokenRate = tonumber(ARGV[3]), tonumber(ARGV[4])
+            local cost, acquire = tonumber(ARGV[5]), ARGV[6] == '1'
+
+            local state = redis.call('HMGET', KEYS[1], 'r', 't', 'ts')
+            local requests = tonumber(state[1]) or requestCapacity
+            local tokens = tonumber(state[2]) or tokenCapacity
+            local elapsed = math.max(0, now - (tonumber(state[3]) or now))
+            requests = math.min(requestCapacity, requests + elapsed * requestRate)
+            tokens = math.min(tokenCapacity, tokens + elapsed * tokenRate)
+
+            local result = {0, 0}
+            if not acquire then
+              tokens = math.max(-tokenCapacity, tokens - cost)
+            elseif requests < 1 then
+              result = {1, math.ceil((1 - requests) / requestRate)}
+            elseif tokens < cost then
+              result = {2, math.ceil((cost - tokens) / tokenRate)}
+            else
+              requests = requests - 1
+              tokens = tokens - cost
+            end
+
+            redis.call('HSET', KEYS[1], 'r', tostring(requests), 't', tostring(tokens), 'ts', now)
+            local untilFull = math.max((requestCapacity - requests) / requestRate, (tokenCapacity - tokens) / tokenRate)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(untilFull) + 1000)
+            return result
+            """, List.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final AIProperties.Quota properties;
+    private final AIQuotaService fallback;
+    private final Map<QuotaLimit, Counter> rejections = new EnumMap<>(QuotaLimit.class);
+    private final Counter redisErrors;
+    private final String requestCapacity;
+    private final String requestRate;
+    private final String tokenCapacity;
+    private final String tokenRate;
+
+    public RedisAIQuotaServiceImpl(ReactiveStringRedisTemplate redisTemplate,
+                                   AIProperties.Quota properties,
+                                   AIQuotaService fallback,
+                                   MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.fallback = fallback;
+        for (QuotaLimit limit : QuotaLimit.values()) {
+            rejections.put(limit, LocalAIQuotaServiceImpl.rejectionCounter(meterRegistry, limit));
+        }
+        this.redisErrors = Counter.builder("ai.quota.redis.errors")
+                .description("Quota checks answered by local buckets because Redis failed")
+                .register(meterRegistry);
+
+        // Rates per millisecond, matching the script's clock
+        this.requestCapacity = Integer.toString(properties.getRequestsPerMinute());
+        this.requestRate = Double.toString((double) properties.getRequestsPerMinute() / MILLIS_PER_MINUTE);
+        this.tokenCapacity = Long.toString(properties.getTokensPerDay());
+        this.tokenRate = Double.toString((double) properties.getTokensPerDay() / MILLIS_PER_DAY);
+        log.info("AI quota kept in Redis under {}", properties.getRedisKeyPrefix());
+    }
+
+    @Override
+    public QuotaDecision tryAcquire(String username, int estimatedTokens) {
+        try {
+            List<?> result = run(username, estimatedTokens, true);
+            long code = ((Number) result.get(0)).longValue();
+            if (code == 0) {
+                return QuotaDecision.ALLOWED;
+            }
+            QuotaLimit limit = code == 1 ? QuotaLimit.REQUESTS : QuotaLimit.TOKENS;
+            rejections.get(limit).increment();
+            return QuotaDecision.rejected(limit, Duration.ofMillis(((Number) result.get(1)).longValue()));
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("AI quota check in Redis failed, using local buckets: {}", e.getMessage());
+            return fallback.tryAcquire(username, estimatedTokens);
+        }
+    }
+
+    @Override
+    public void recordUsage(String username, int tokens) {
+        if (tokens <= 0) {
+            return;
+        }
+        try {
+            run(username, tokens, false);
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("Recording AI usage in Redis failed, using local buckets: {}", e.getMessage());
+            fallback.recordUsage(username, tokens);
+        }
+    }
+
+    private List<?> run(String username, int tokens, boolean acquire) {
+        List<?> result = redisTemplate.execute(
+                        TOKEN_BUCKETS,
+                        List.of(properties.getRedisKeyPrefix() + username),
+                        List.of(requestCapacity, requestRate, tokenCapacity, tokenRate,
+                                Integer.toString(tokens), acquire ? "1" : "0"))
+                .next()
+                .block(properties.getRedisTimeout());
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("Unexpected quota script result: " + result);
+        }
+        return result;
+    }
+}
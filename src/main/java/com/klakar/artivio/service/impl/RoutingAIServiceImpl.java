@@ -0,0 +1,334 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.ai.routing.BackendStats;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.AIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * {@link AIService} that spreads requests over several provider backends.
+ * <p>
+ * Each request goes to the backend with the best score (EWMA latency plus an error-rate penalty,
+ * tracked separately for full responses and for time to first streamed chunk). The runner-up is
+ * started when the first choice fails or completes without any text, or, with hedging on, when
+ * it has not answered within its own p95; whichever produces a value first wins and the other
+ * call is cancelled.
+ */
+@Slf4j
+public class RoutingAIServiceImpl implements AIService {
+
+    private static final String NOT_CONFIGURED_MESSAGE = "No AI provider is configured. Please check the API keys.";
+    private static final String EMPTY_RESPONSE_MESSAGE = "The AI service returned an empty response. Please try again.";
+    private static final String HEDGE = "hedge";
+    private static final String FAILOVER = "failover";
+
+    /** A named provider the router may send requests to. */
+    public record Backend(String name, AIService service) {
+    }
+
+    private final List<RoutedBackend> backends;
+    private final AIProperties.Routing properties;
+    private final double errorPenaltyMillis;
+
+    public RoutingAIServiceImpl(List<Backend> backends, AIProperties.Routing properties, MeterRegistry meterRegistry) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required");
+        }
+        this.properties = properties;
+        this.errorPenaltyMillis = properties.getErrorPenalty().toMillis();
+        this.backends = new ArrayList<>();
+        for (Backend backend : backends) {
+            this.backends.add(new RoutedBackend(backend, properties.getEwmaAlpha(), meterRegistry));
+        }
+        log.info("AI router configured with backends {} (hedging: {})",
+                backends.stream().map(Backend::name).toList(), properties.isHedgingEnabled());
+    }
+
+    @Override
+    public Mono<String> generate(String prompt, String context) {
+        return route(service -> service.generate(prompt, context));
+    }
+
+    @Override
+    public Mono<String> generate(AIPrompt prompt) {
+        return route(service -> service.generate(prompt));
+    }
+
+    @Override
+    public Flux<String> streamResponse(String prompt, String context) {
+        return routeStream(service -> service.streamResponse(prompt, context));
+    }
+
+    @Override
+    public Flux<String> streamResponse(AIPrompt prompt) {
+        return routeStream(service -> service.streamResponse(prompt));
+    }
+
+    private Mono<String> route(Function<AIService, Mono<String>> call) {
+        return Mono.defer(() -> {
+            List<RoutedBackend> ranked = rank(RoutedBackend::generateStats);
+            if (ranked.isEmpty()) {
+                return Mono.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+            }
+
+            RoutedBackend primary = ranked.get(0);
+            Mono<String> first = timed(primary, primary.generateStats, call.apply(primary.service()));
+            if (ranked.size() == 1) {
+                return first;
+            }
+
+            RoutedBackend secondary = ranked.get(1);
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Mono<String> second = secondaryTrigger(primary.generateStats, primaryFailed)
+                    .flatMap(reason -> {
+                        secondary.secondaryRequests(reason).increment();
+                        log.debug("Starting {} request on {} after {}", reason, secondary.name(), primary.name());
+                        return timed(secondary, secondary.generateStats, call.apply(secondary.service()));
+                    });
+
+            // An empty answer is a failure too; otherwise the race waits on a secondary that never starts
+            Mono<String> primaryCall = first
+                    .doOnSuccess(text -> {
+                        if (text == null) {
+                            primaryFailed.tryEmitEmpty();
+                        }
+                    })
+                    .doOnError(e -> primaryFailed.tryEmitEmpty());
+            return Mono.firstWithValue(primaryCall, second)
+                    .onErrorMap(RoutingAIServiceImpl::unwrap);
+        });
+    }
+
+    private Flux<String> routeStream(Function<AIService, Flux<String>> call) {
+        return Flux.defer(() -> {
+            List<RoutedBackend> ranked = rank(RoutedBackend::streamStats);
+            if (ranked.isEmpty()) {
+                return Flux.error(new AIServiceException(NOT_CONFIGURED_MESSAGE));
+            }
+
+            // For streams the race is decided by the first chunk, so stats track time to first chunk
+            RoutedBackend primary = ranked.get(0);
+            Flux<String> first = timedStream(primary, call.apply(primary.service()));
+            if (ranked.size() == 1) {
+                return first;
+            }
+
+            RoutedBackend secondary = ranked.get(1);
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Flux<String> second = secondaryTrigger(primary.streamStats, primaryFailed)
+                    .flatMapMany(reason -> {
+                        secondary.secondaryRequests(reason).increment();
+                        log.debug("Starting {} stream on {} after {}", reason, secondary.name(), primary.name());
+                        return timedStream(secondary, call.apply(secondary.service()));
+                    });
+
+            AtomicBoolean primaryEmitted = new AtomicBoolean();
+            Flux<String> primaryCall = first
+                    .doOnNext(chunk -> primaryEmitted.set(true))
+                    .doOnComplete(() -> {
+                        if (!primaryEmitted.get()) {
+                            primaryFailed.tryEmitEmpty();
+                        }
+                    })
+                    .doOnError(e -> primaryFailed.tryEmitEmpty());
+            return Flux.firstWithValue(primaryCall, second)
+                    .onErrorMap(RoutingAIServiceImpl::unwrap);
+        });
+    }
+
+    /** Configured backends, best first. */
+    private List<RoutedBackend> rank(Function<RoutedBackend, BackendStats> stats) {
+        List<RoutedBackend> ranked = new ArrayList<>(backends.size());
+        for (RoutedBackend backend : backends) {
+            if (backend.service().isConfigured()) {
+                ranked.add(backend);
+            }
+        }
+        // Stable sort, so configuration order breaks ties
+        ranked.sort(Comparator.comparingDouble(backend -> stats.apply(backend).score(errorPenaltyMillis)));
+        return ranked;
+    }
+
+    /** Emits why the secondary should start: the primary failed, or (when hedging) it is slower than usual. */
+    private Mono<String> secondaryTrigger(BackendStats primaryStats, Sinks.Empty<Void> primaryFailed) {
+        Mono<String> failover = primaryFailed.asMono().thenReturn(FAILOVER);
+        if (!properties.isHedgingEnabled()) {
+            return failover;
+        }
+        return Mono.firstWithSignal(Mono.delay(hedgeDelay(primaryStats)).thenReturn(HEDGE), failover);
+    }
+
+    private Duration hedgeDelay(BackendStats stats) {
+        long min = properties.getHedgeMinDelay().toMillis();
+        long max = properties.getHedgeMaxDelay().toMillis();
+        if (!stats.hasLatencySamples()) {
+            return properties.getHedgeMaxDelay();
+        }
+        long p95 = (long) stats.getLatencyP95Millis();
+        return Duration.ofMillis(Math.max(min, Math.min(max, p95)));
+    }
+
+    private static Mono<String> timed(RoutedBackend backend, BackendStats stats, Mono<String> call) {
+        return Mono.defer(() -> {
+            backend.requests.increment();
+            long start = System.nanoTime();
+            AtomicBoolean done = new AtomicBoolean();
+            return call
+                    .doOnSuccess(text -> {
+                        if (done.compareAndSet(false, true)) {
+                            stats.recordSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (done.compareAndSet(false, true)) {
+                            stats.recordFailure();
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            stats.recordCancelled(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    private static Flux<String> timedStream(RoutedBackend backend, Flux<String> call) {
+        return Flux.defer(() -> {
+            backend.requests.increment();
+            long start = System.nanoTime();
+            AtomicBoolean firstChunk = new AtomicBoolean(true);
+            return call
+                    .doOnNext(chunk -> {
+                        if (firstChunk.compareAndSet(true, false)) {
+                            backend.streamStats.recordSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (firstChunk.compareAndSet(true, false)) {
+                            backend.streamStats.recordSuccess(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> backend.streamStats.recordFailure())
+                    .doOnCancel(() -> {
+                        if (firstChunk.compareAndSet(true, false)) {
+                            backend.streamStats.recordCancelled(System.nanoTime() - start);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * When no backend produced a value, surface the first user-facing error rather than Reactor's
+     * wrapper, or a user-facing error of our own if they all just came back empty.
+     */
+    private static Throwable unwrap(Throwable e) {
+        boolean onlyEmpty = e instanceof NoSuchElementException;
+        for (Throwable suppressed : e.getSuppressed()) {
+            if (suppressed instanceof AIServiceException) {
+                return suppressed;
+            }
+            onlyEmpty &= suppressed instanceof NoSuchElementException;
+        }
+        return onlyEmpty ? new AIServiceException(EMPTY_RESPONSE_MESSAGE) : e;
+    }
+
+    /** Any backend may have served the conversation. */
+    @Override
+    public void forgetConversation(String conversationId) {
+        for (RoutedBackend backend : backends) {
+            backend.service().forgetConversation(conversationId);
+        }
+    }
+
+    @Override
+    public boolean isConfigured() {
+        return backends.stream().anyMatch(backend -> backend.service().isConfigured());
+    }
+
+    /** The first configured backend's model; the one answering a given request may differ. */
+    @Override
+    public String getModelName() {
+        return backends.get(0).service().getModelName();
+    }
+
+    private static final class RoutedBackend {
+
+        private final Backend backend;
+        private final BackendStats generateStats;
+        private final BackendStats streamStats;
+        private final Counter requests;
+        private final Counter hedges;
+        private final Counter failovers;
+
+        RoutedBackend(Backend backend, double alpha, MeterRegistry meterRegistry) {
+            this.backend = backend;
+            this.generateStats = new BackendStats(alpha);
+            this.streamStats = new BackendStats(alpha);
+
+            String name = backend.name();
+            this.requests = Counter.builder("ai.router.requests")
+                    .tag("backend", name)
+                    .register(meterRegistry);
+            this.hedges = Counter.builder("ai.router.secondary.requests")
+                    .description("Requests started on a runner-up backend")
+                    .tag("backend", name)
+                    .tag("reason", HEDGE)
+                    .register(meterRegistry);
+            this.failovers = Counter.builder("ai.router.secondary.requests")
+                    .description("Requests started on a runner-up backend")
+                    .tag("backend", name)
+                    .tag("reason", FAILOVER)
+                    .register(meterRegistry);
+            registerGauges(meterRegistry, name, "generate", generateStats);
+            registerGauges(meterRegistry, name, "stream", streamStats);
+        }
+
+        private static void registerGauges(MeterRegistry meterRegistry, String name, String mode, BackendStats stats) {
+            Gauge.builder("ai.router.latency.ewma", stats, BackendStats::getLatencyMillis)
+                    .description("Smoothed latency in milliseconds; time to first chunk for streams")
+                    .tag("backend", name)
+                    .tag("mode", mode)
+                    .register(meterRegistry);
+            Gauge.builder("ai.router.error.rate", stats, BackendStats::getErrorRate)
+                    .tag("backend", name)
+                    .tag("mode", mode)
+                    .register(meterRegistry);
+        }
+
+        String name() {
+            return backend.name();
+        }
+
+        AIService service() {
+            return backend.service();
+        }
+
+        BackendStats generateStats() {
+            return generateStats;
+        }
+
+        BackendStats streamStats() {
+            return streamStats;
+        }
+
+        Counter secondaryRequests(String reason) {
+            return HEDGE.equals(reason) ? hedges : failovers;
+        }
+    }
+}
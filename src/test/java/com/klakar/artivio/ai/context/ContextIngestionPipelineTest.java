@@ -0,0 +1,169 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.entity.Conversation;
+import com.klakar.artivio.entity.Message;
+import com.klakar.artivio.entity.User;
+import com.klakar.artivio.repository.MessageRepository;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContextIngestionPipelineTest {
+
+    private final RecordingContextService contextService = new RecordingContextService();
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AIProperties.Context.Ingestion properties = new AIProperties.Context.Ingestion();
+
+    @BeforeEach
+    void setUp() {
+        properties.setMaxBatchSize(4);
+        properties.setMaxDelay(Duration.ofMillis(50));
+    }
+
+    @Test
+    void storesQueuedTurnsInBatchesAndMarksThemStored() {
+        ContextIngestionPipeline pipeline = newPipeline();
+        for (long id = 1; id <= 10; id++) {
+            pipeline.submit(id, "c1", "turn " + id, "Alice");
+        }
+        pipeline.close();
+
+        assertThat(contextService.batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(4));
+        assertThat(contextService.batches.stream().flatMap(List::stream).map(ContextTurn::content))
+                .containsExactly("turn 1", "turn 2", "turn 3", "turn 4", "turn 5",
+                        "turn 6", "turn 7", "turn 8", "turn 9", "turn 10");
+        assertThat(markedIds()).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+    }
+
+    @Test
+    void leavesFailedBatchesUnmarked() {
+        contextService.failing = true;
+        ContextIngestionPipeline pipeline = newPipeline();
+        pipeline.submit(1L, "c1", "lost turn", "Alice");
+        pipeline.close();
+
+        verify(messageRepository, never()).markEmbeddingStored(anyCollection());
+        assertThat(meterRegistry.counter("ai.context.ingest.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    void clearsConversationsAfterTheTurnsQueuedBeforeThem() {
+        ContextIngestionPipeline pipeline = newPipeline();
+        pipeline.submit(1L, "c1", "first", "Alice");
+        pipeline.submit(2L, "c2", "other", "Bob");
+        pipeline.clear("c1");
+        pipeline.submit(3L, "c2", "later", "Bob");
+        pipeline.close();
+
+        assertThat(contextService.events).containsExactly("store c1 c2", "clear c1", "store c2");
+    }
+
+    @Test
+    void clearsInlineOnceClosed() {
+        ContextIngestionPipeline pipeline = newPipeline();
+        pipeline.close();
+
+        pipeline.clear("c1");
+
+        assertThat(contextService.events).containsExactly("clear c1");
+    }
+
+    @Test
+    void backfillQueuesMessagesThatWereNeverStored() {
+        Conversation conversation = Conversation.builder().id(7L).build();
+        User alice = User.builder().displayName("Alice").build();
+        List<Message> page = List.of(
+                Message.builder().id(3L).conversation(conversation).sender(alice).content("old question")
+                        .messageType(Message.MessageType.HUMAN).build(),
+                Message.builder().id(4L).conversation(conversation).content("")
+                        .messageType(Message.MessageType.AI).build(),
+                Message.builder().id(5L).conversation(conversation).content("old answer")
+                        .messageType(Message.MessageType.AI).build());
+        when(messageRepository.findMessagesWithoutEmbeddingsAfter(eq(0L), any(), any())).thenReturn(page);
+        when(messageRepository.findMessagesWithoutEmbeddingsAfter(eq(5L), any(), any())).thenReturn(List.of());
+
+        ContextIngestionPipeline pipeline = newPipeline();
+        pipeline.backfill();
+        pipeline.close();
+
+        assertThat(contextService.batches.stream().flatMap(List::stream))
+                .containsExactly(new ContextTurn("7", "old question", "Alice"),
+                        new ContextTurn("7", "old answer", "Artivio AI"));
+        assertThat(markedIds()).containsExactlyInAnyOrder(3L, 5L);
+        verify(messageRepository, never()).findMessagesWithoutEmbeddingsAfter(eq(3L), any(), any());
+    }
+
+    private ContextIngestionPipeline newPipeline() {
+        return new ContextIngestionPipeline(contextService, messageRepository, properties, meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> markedIds() {
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(messageRepository, atLeastOnce()).markEmbeddingStored(ids.capture());
+        List<Long> all = new ArrayList<>();
+        ids.getAllValues().forEach(all::addAll);
+        return all;
+    }
+
+    private static class RecordingContextService implements AIContextService {
+
+        final List<List<ContextTurn>> batches = new CopyOnWriteArrayList<>();
+        final List<String> events = new CopyOnWriteArrayList<>();
+        volatile boolean failing;
+
+        @Override
+        public void storeConversationContexts(List<ContextTurn> turns) {
+            if (failing) {
+                throw new IllegalStateException("store is down");
+            }
+            batches.add(List.copyOf(turns));
+            events.add("store " + String.join(" ", turns.stream().map(ContextTurn::conversationId).toList()));
+        }
+
+        @Override
+        public boolean isDurable() {
+            return true;
+        }
+
+        @Override
+        public void storeConversationContext(String conversationId, String messageContent, String sender) {
+            storeConversationContexts(List.of(new ContextTurn(conversationId, messageContent, sender)));
+        }
+
+        @Override
+        public String getRelevantContext(String conversationId, String query, int maxResults) {
+            return "";
+        }
+
+        @Override
+        public List<ContextSnippet> getContextSnippets(String conversationId, String query, int maxResults) {
+            return List.of();
+        }
+
+        @Override
+        public void clearConversationContext(String conversationId) {
+            events.add("clear " + conversationId);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.lexical.Terms;
+import com.klakar.artivio.config.AIProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextRerankerTest {
+
+    private final AIProperties.Context.Hybrid properties = new AIProperties.Context.Hybrid();
+
+    @Test
+    void mergesRetrieversOnTheirNormalizedScores() {
+        ContextReranker reranker = new ContextReranker(properties);
+        List<ContextSnippet> lexical = List.of(
+                snippet("Cadmium red is opaque", "Alice", 1, 12.0),
+                snippet("Alizarin is a transparent red", "Alice", 2, 6.0));
+        List<ContextSnippet> vector = List.of(
+                snippet("alizarin is a transparent red!", "Alice", 2, 0.9),
+                snippet("Quinacridone makes a clean glaze", "Alice", 3, 0.3));
+
+        List<ContextSnippet> ranked = reranker.rerank(List.of(
+                new ContextReranker.Candidates("bm25", 1.0, lexical),
+                new ContextReranker.Candidates("hnsw", 1.0, vector)), 10);
+
+        // The same turn from both retrievers is one candidate, with its best relevance
+        assertThat(ranked).extracting(ContextSnippet::text).hasSize(3)
+                .containsOnlyOnce("Cadmium red is opaque", "Quinacridone makes a clean glaze");
+        assertThat(ranked.get(0).text()).startsWith("Alizarin").isNotEqualTo("alizarin is a transparent red!");
+        assertThat(ranked).isSortedAccordingTo((a, b) -> Double.compare(b.score(), a.score()));
+    }
+
+    @Test
+    void recencyOutweighsWeakRelevanceAndDecaysWithAge() {
+        properties.setRelevanceWeight(0.6);
+        properties.setRecencyWeight(0.4);
+        properties.setRecencyHalfLife(1);
+        ContextReranker reranker = new ContextReranker(properties);
+        List<ContextSnippet> recent = List.of(
+                snippet("what about the sky?", "Alice", 100, 0),
+                snippet("the mountains look good", "Alice", 99, 0),
+                snippet("I started the underpainting", "Alice", 98, 0));
+        List<ContextSnippet> lexical = List.of(
+                snippet("My sky uses cerulean and white", "Alice", 10, 8.0),
+                snippet("I started the underpainting", "Alice", 98, 0.4));
+
+        List<ContextSnippet> ranked = reranker.rerank(List.of(
+                new ContextReranker.Candidates("memory", 1.0, recent),
+                new ContextReranker.Candidates("bm25", 1.0, lexical)), 3);
+
+        assertThat(ranked).extracting(ContextSnippet::text).containsExactly(
+                "My sky uses cerulean and white", "what about the sky?", "the mountains look good");
+    }
+
+    @Test
+    void keepsTheNewestTurnsAlongsideAnOldRelevantOne() {
+        ContextReranker reranker = new ContextReranker(properties);
+        List<ContextSnippet> recent = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            recent.add(snippet("Working on layer " + i + " of the seascape", "Alice", 100 + i, 0));
+        }
+        List<ContextSnippet> lexical = List.of(
+                snippet("My palette is titanium white, ultramarine and burnt sienna", "Alice", 1, 7.5));
+
+        List<ContextSnippet> ranked = reranker.rerank(List.of(
+                new ContextReranker.Candidates("memory", 1.0, recent),
+                new ContextReranker.Candidates("bm25", 1.0, lexical)), 5);
+
+        assertThat(ranked).extracting(ContextSnippet::text)
+                .contains("My palette is titanium white, ultramarine and burnt sienna")
+                .contains("Working on layer 29 of the seascape", "Working on layer 28 of the seascape")
+                .doesNotContain("Working on layer 0 of the seascape");
+    }
+
+    @Test
+    void dropsNearDuplicatesAndWeighsTheAssistantDown() {
+        ContextReranker reranker = new ContextReranker(properties);
+        List<ContextSnippet> recent = List.of(
+                snippet("Thanks, that helps a lot", "Alice", 5, 0),
+                snippet("Thanks that helps a lot!!", "Alice", 4, 0),
+                snippet("Glad it helps", ArtivioPrompts.ASSISTANT_NAME, 3, 0),
+                snippet("glad it helps :)", "Alice", 3, 0));
+
+        List<ContextSnippet> ranked = reranker.rerank(List.of(
+                new ContextReranker.Candidates("memory", 1.0, recent)), 10);
+
+        assertThat(ranked).extracting(ContextSnippet::text)
+                .containsExactly("Thanks, that helps a lot", "glad it helps :)");
+    }
+
+    @Test
+    void measuresWordOverlap() {
+        assertThat(ContextReranker.jaccard(Terms.distinct("red blue green"), Terms.distinct("Blue, red.")))
+                .isEqualTo(2.0 / 3);
+        assertThat(ContextReranker.jaccard(Terms.distinct(""), Terms.distinct("...")))
+                .isEqualTo(1.0);
+    }
+
+    private static ContextSnippet snippet(String text, String sender, long timestamp, double score) {
+        return new ContextSnippet(text, sender, timestamp, score);
+    }
+}
@@ -0,0 +1,79 @@
+package com.klakar.artivio.ai.context;
+
+import com.klakar.artivio.config.AIProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptContextAssemblerTest {
+
+    private final TokenEstimator tokenEstimator = new TokenEstimator(4.0);
+    private AIProperties.Context properties;
+    private PromptContextAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AIProperties.Context();
+        properties.setReservedTokens(0);
+        properties.setRecentTurns(2);
+        assembler = new PromptContextAssembler(tokenEstimator, properties);
+    }
+
+    @Test
+    void keepsEverythingThatFitsInChronologicalOrderWithoutTheCurrentMessage() {
+        String context = assembler.assemble("and now?", List.of(
+                new ContextSnippet("first", "Alice", 1, 0),
+                new ContextSnippet("second", "Artivio AI", 2, 0),
+                new ContextSnippet("and now?", "Alice", 3, 0)
+        ));
+
+        assertThat(context).isEqualTo("[Alice]: first\n[Artivio AI]: second");
+    }
+
+    @Test
+    void prefersRecentTurnsThenRelevanceWhenOverBudget() {
+        String filler = "x".repeat(200); // ~50 tokens each
+        properties.setMaxInputTokens(170);
+
+        String context = assembler.assemble("q", List.of(
+                new ContextSnippet("old irrelevant " + filler, "Alice", 1, 0.1),
+                new ContextSnippet("old relevant " + filler, "Alice", 2, 0.9),
+                new ContextSnippet("recent one " + filler, "Alice", 3, 0),
+                new ContextSnippet("recent two " + filler, "Alice", 4, 0)
+        ));
+
+        assertThat(context).contains("old relevant", "recent one", "recent two");
+        assertThat(context).doesNotContain("old irrelevant");
+        assertThat(tokenEstimator.estimate(context)).isLessThanOrEqualTo(169);
+    }
+
+    @Test
+    void truncatesALongRecentTurnToTheRemainingBudget() {
+        properties.setMaxInputTokens(60);
+
+        String context = assembler.assemble("q", List.of(
+                new ContextSnippet("y".repeat(1000), "Alice", 1, 0)
+        ));
+
+        assertThat(context).startsWith("[Alice]: yyy").endsWith("…");
+        assertThat(tokenEstimator.estimate(context)).isLessThanOrEqualTo(59);
+    }
+
+    @Test
+    void returnsNothingWhenTheMessageAloneUsesTheBudget() {
+        properties.setMaxInputTokens(10);
+
+        assertThat(assembler.assemble("z".repeat(100), List.of(new ContextSnippet("hi", "Alice", 1, 0))))
+                .isEmpty();
+    }
+
+    @Test
+    void estimatesWideScriptsPerCharacter() {
+        assertThat(tokenEstimator.estimate("abcdefgh")).isEqualTo(2);
+        assertThat(tokenEstimator.estimate("日本語")).isEqualTo(3);
+        assertThat(tokenEstimator.estimate("👋👋")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,107 @@
+package com.klakar.artivio.ai.embedding;
+
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingEmbeddingServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void embedsEachDistinctTextOnce() {
+        CountingEmbeddingService delegate = new CountingEmbeddingService(32);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingEmbeddingService cache = new CachingEmbeddingService(delegate, new AIProperties.Embedding.Cache(), meterRegistry);
+
+        float[] first = cache.embed("ok");
+        float[] second = cache.embed("ok");
+        List<float[]> batch = cache.embedAll(List.of("thanks", "ok", "thanks"));
+
+        assertThat(second).containsExactly(first);
+        assertThat(batch.get(1)).containsExactly(first);
+        assertThat(batch.get(2)).containsExactly(batch.get(0));
+        assertThat(delegate.calls).containsExactly(List.of("ok"), List.of("thanks"));
+        assertThat(meterRegistry.counter("ai.embedding.cache.saved.calls").count()).isEqualTo(1);
+        assertThat(cache.hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void diskTierSurvivesARestart() {
+        AIProperties.Embedding.Cache properties = new AIProperties.Embedding.Cache();
+        properties.getDisk().setEnabled(true);
+        properties.getDisk().setPath(directory.resolve("embeddings.bin").toString());
+        properties.getDisk().setMaxEntries(64);
+
+        CachingEmbeddingService before = new CachingEmbeddingService(
+                new CountingEmbeddingService(32), properties, new SimpleMeterRegistry());
+        float[] stored = before.embed("a pasted snippet");
+        before.close();
+
+        CountingEmbeddingService delegate = new CountingEmbeddingService(32);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CachingEmbeddingService after = new CachingEmbeddingService(delegate, properties, meterRegistry);
+        assertThat(after.embed("a pasted snippet")).containsExactly(stored);
+        assertThat(delegate.calls).isEmpty();
+        assertThat(meterRegistry.counter("ai.embedding.cache.lookups", "result", "disk").count()).isEqualTo(1);
+        after.close();
+
+        // Vectors of another model must not be served from the same file
+        CountingEmbeddingService otherModel = new CountingEmbeddingService(16);
+        CachingEmbeddingService other = new CachingEmbeddingService(otherModel, properties, new SimpleMeterRegistry());
+        assertThat(other.embed("a pasted snippet")).hasSize(16);
+        assertThat(otherModel.calls).hasSize(1);
+        other.close();
+    }
+
+    @Test
+    void fullDiskTableOverwritesOldEntries() throws Exception {
+        try (MappedEmbeddingCache disk = new MappedEmbeddingCache(directory.resolve("small.bin"), "m", 4, 16)) {
+            for (int i = 0; i < 100; i++) {
+                disk.put(ContentHash.of("m", "text " + i), new float[]{i, i, i, i});
+            }
+            assertThat(disk.size()).isEqualTo(16);
+            assertThat(disk.get(ContentHash.of("m", "text 99"))).containsExactly(99, 99, 99, 99);
+        }
+    }
+
+    private static class CountingEmbeddingService implements EmbeddingService {
+
+        final List<List<String>> calls = new ArrayList<>();
+        private final HashingEmbeddingService hashing;
+
+        CountingEmbeddingService(int dimensions) {
+            this.hashing = new HashingEmbeddingService(dimensions);
+        }
+
+        @Override
+        public String model() {
+            return hashing.model();
+        }
+
+        @Override
+        public int dimensions() {
+            return hashing.dimensions();
+        }
+
+        @Override
+        public float[] embed(String text) {
+            calls.add(List.of(text));
+            return hashing.embed(text);
+        }
+
+        @Override
+        public List<float[]> embedAll(List<String> texts) {
+            calls.add(List.copyOf(texts));
+            return texts.stream().map(hashing::embed).toList();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiRequestTemplateTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GeminiRequestTemplate template = new GeminiRequestTemplate(objectMapper, 0.4, 256);
+
+    @Test
+    void writesValidJsonWithEscapedDynamicText() throws IOException {
+        JsonNode body = render("Say \"hi\"\tto Zoë 👋\\", "USER: earlier\nAI: reply");
+
+        assertThat(body.at("/systemInstruction/parts/0/text").asText()).startsWith("You are Artivio AI");
+        assertThat(body.at("/contents/0/role").asText()).isEqualTo("user");
+        assertThat(body.at("/contents/0/parts/0/text").asText()).isEqualTo(
+                "Previous conversation context:\nUSER: earlier\nAI: reply\n\nUser message: Say \"hi\"\tto Zoë 👋\\");
+
+        assertThat(body.at("/generationConfig/temperature").asDouble()).isEqualTo(0.4);
+        assertThat(body.at("/generationConfig/maxOutputTokens").asInt()).isEqualTo(256);
+        assertThat(body.at("/generationConfig/stopSequences").isArray()).isTrue();
+        assertThat(body.get("safetySettings")).hasSize(4);
+    }
+
+    @Test
+    void omitsBlankContext() throws IOException {
+        String text = render("hello", "  ").at("/contents/0/parts/0/text").asText();
+
+        assertThat(text).isEqualTo("User message: hello");
+    }
+
+    @Test
+    void referencesCachedContentInsteadOfTheSystemInstruction() throws IOException {
+        List<GeminiContent> contents = List.of(
+                new GeminiContent(GeminiContent.USER, List.of(new GeminiContent.Part("[Alice]: hi"))),
+                new GeminiContent(GeminiContent.MODEL, List.of(new GeminiContent.Part("Hello \"Alice\"!"))),
+                new GeminiContent(GeminiContent.USER, List.of(new GeminiContent.Part("How are you?"))));
+
+        JsonNode full = parse(template.write(DefaultDataBufferFactory.sharedInstance, contents, null));
+        assertThat(full.at("/systemInstruction/parts/0/text").asText()).startsWith("You are Artivio AI");
+        assertThat(full.get("contents")).hasSize(3);
+        assertThat(full.at("/contents/1/role").asText()).isEqualTo("model");
+        assertThat(full.at("/contents/1/parts/0/text").asText()).isEqualTo("Hello \"Alice\"!");
+
+        JsonNode cached = parse(template.write(DefaultDataBufferFactory.sharedInstance,
+                contents.subList(2, 3), "cachedContents/abc"));
+        assertThat(cached.has("systemInstruction")).isFalse();
+        assertThat(cached.at("/cachedContent").asText()).isEqualTo("cachedContents/abc");
+        assertThat(cached.get("contents")).hasSize(1);
+        assertThat(cached.at("/generationConfig/maxOutputTokens").asInt()).isEqualTo(256);
+    }
+
+    private JsonNode render(String prompt, String context) throws IOException {
+        return parse(template.write(DefaultDataBufferFactory.sharedInstance, prompt, context));
+    }
+
+    private JsonNode parse(DataBuffer buffer) throws IOException {
+        return objectMapper.readTree(buffer.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,58 @@
+package com.klakar.artivio.ai.gemini;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeminiResponseParserTest {
+
+    private static final String RESPONSE = """
+            {"candidates":[
+              {"content":{"role":"model","parts":[{"text":"Héllo, "},{"text":"wörld 👋"}]},
+               "finishReason":"STOP",
+               "safetyRatings":[{"category":"HARM_CATEGORY_HARASSMENT","probability":"NEGLIGIBLE","text":"no"}],
+               "citationMetadata":{"citationSources":[{"uri":"https://example.com","text":"no"}]}},
+              {"content":{"parts":[{"text":"second candidate"}]}}
+             ],
+             "usageMetadata":{"promptTokenCount":12,"candidatesTokenCount":4,"totalTokenCount":16}}
+            """;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void concatenatesPartsOfFirstCandidateOnly() throws IOException {
+        GeminiResponse response = GeminiResponseParser.parse(jsonFactory, RESPONSE);
+
+        assertThat(response.hasText()).isTrue();
+        assertThat(response.text()).isEqualTo("Héllo, wörld 👋");
+        assertThat(response.promptTokenCount()).isEqualTo(12);
+        assertThat(response.candidatesTokenCount()).isEqualTo(4);
+        assertThat(response.finishReason()).isEqualTo("STOP");
+    }
+
+    @Test
+    void handlesBuffersSplitAtEveryByte() throws IOException {
+        byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        GeminiResponseParser parser = GeminiResponseParser.nonBlocking(jsonFactory);
+        for (int i = 0; i < bytes.length; i++) {
+            parser.feed(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, i, i + 1)));
+        }
+
+        assertThat(parser.finish().text()).isEqualTo("Héllo, wörld 👋");
+    }
+
+    @Test
+    void reportsMissingText() throws IOException {
+        GeminiResponse response = GeminiResponseParser.parse(jsonFactory,
+                "{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}");
+
+        assertThat(response.hasText()).isFalse();
+        assertThat(response.text()).isEmpty();
+    }
+}
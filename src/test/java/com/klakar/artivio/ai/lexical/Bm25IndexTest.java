@@ -0,0 +1,76 @@
+package com.klakar.artivio.ai.lexical;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25IndexTest {
+
+    @Test
+    void ranksRareTermsAndShortDocumentsHigher() {
+        Bm25Index<String> index = new Bm25Index<>(100, 1.2f, 0.75f);
+        index.add("The sky in my painting looks flat", "flat sky");
+        index.add("Try glazing the sky with ultramarine", "glazing");
+        index.add("The sky, the sea and the sand all use the same blue and it makes the painting look dull",
+                "long");
+        index.add("I had pasta for lunch", "lunch");
+
+        List<Bm25Index.Match<String>> matches = index.search("Ultramarine sky?", 10);
+
+        assertThat(matches).extracting(Bm25Index.Match::payload).containsExactly("glazing", "flat sky", "long");
+        assertThat(matches).isSortedAccordingTo((a, b) -> Float.compare(b.score(), a.score()));
+        assertThat(index.search("watercolor", 10)).isEmpty();
+    }
+
+    @Test
+    void dropsTheOldestDocumentsAndTheirTerms() {
+        Bm25Index<Integer> index = new Bm25Index<>(50, 1.2f, 0.75f);
+        for (int i = 0; i < 1000; i++) {
+            index.add("shared term" + i + " word" + (i % 7), i);
+        }
+
+        assertThat(index.size()).isEqualTo(50);
+        // "shared", the seven "wordN" and one "termN" per live document
+        assertThat(index.terms()).isEqualTo(1 + 7 + 50);
+        assertThat(index.search("term10", 5)).isEmpty();
+        assertThat(index.search("term990", 5)).extracting(Bm25Index.Match::payload).containsExactly(990);
+        assertThat(index.search("shared", 100)).hasSize(50)
+                .allSatisfy(match -> assertThat(match.payload()).isGreaterThanOrEqualTo(950));
+    }
+
+    @Test
+    void memoryFollowsTheLiveWindow() {
+        Bm25Index<Integer> index = new Bm25Index<>(200, 1.2f, 0.75f);
+        for (int i = 0; i < 200; i++) {
+            index.add("turn with unique token" + i, i);
+        }
+        long full = index.bytes();
+        for (int i = 200; i < 20_000; i++) {
+            index.add("turn with unique token" + i, i);
+        }
+
+        assertThat(index.bytes()).isLessThanOrEqualTo(full * 2);
+        assertThat(index.search("token19999", 1)).extracting(Bm25Index.Match::payload).containsExactly(19999);
+    }
+
+    @Test
+    void termDictionaryReusesIdsAndSurvivesRemovals() {
+        TermDictionary dictionary = new TermDictionary();
+        for (long hash = 1; hash <= 1000; hash++) {
+            assertThat(dictionary.getOrAdd(hash * 31)).isEqualTo((int) hash - 1);
+        }
+        for (long hash = 1; hash <= 1000; hash += 2) {
+            dictionary.remove(hash * 31);
+        }
+        for (long hash = 1; hash <= 1000; hash++) {
+            assertThat(dictionary.get(hash * 31)).isEqualTo(hash % 2 == 0 ? (int) hash - 1 : -1);
+        }
+        for (long hash = 2000; hash < 2500; hash++) {
+            dictionary.getOrAdd(hash * 31);
+        }
+        assertThat(dictionary.size()).isEqualTo(1000);
+        assertThat(dictionary.idBound()).isEqualTo(1000);
+    }
+}
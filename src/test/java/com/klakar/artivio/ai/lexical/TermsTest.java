@@ -0,0 +1,26 @@
+package com.klakar.artivio.ai.lexical;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TermsTest {
+
+    @Test
+    void splitsOnAnythingButLettersAndDigitsIgnoringCase() {
+        long[] hashes = Terms.hashes("Red, red-ochre 2x!");
+
+        assertThat(hashes).hasSize(4);
+        assertThat(hashes[0]).isEqualTo(hashes[1]);
+        assertThat(hashes).containsSubsequence(Terms.hashes("ochre 2X"));
+        assertThat(Terms.hashes(" ... ")).isEmpty();
+    }
+
+    @Test
+    void distinctTermsAreSortedWithoutRepeats() {
+        long[] distinct = Terms.distinct("blue red Blue RED green");
+
+        assertThat(distinct).hasSize(3).isSorted();
+        assertThat(distinct).containsExactly(Terms.distinct("green red blue"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.klakar.artivio.ai.quota;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedTokenBucketsTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void limitsRequestsPerMinuteAndRefillsGradually() {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(3, 1_000_000, 4, clock::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(buckets.tryAcquire("alice", 10).allowed()).isTrue();
+        }
+        QuotaDecision rejected = buckets.tryAcquire("alice", 10);
+        assertThat(rejected.exceeded()).isEqualTo(QuotaLimit.REQUESTS);
+        assertThat(rejected.retryAfter()).isEqualTo(Duration.ofSeconds(20));
+        assertThat(buckets.tryAcquire("bob", 10).allowed()).isTrue();
+
+        clock.addAndGet(Duration.ofSeconds(20).toNanos());
+        assertThat(buckets.tryAcquire("alice", 10).allowed()).isTrue();
+        assertThat(buckets.tryAcquire("alice", 10).allowed()).isFalse();
+    }
+
+    @Test
+    void limitsEstimatedTokensPerDayIncludingLateCharges() {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(100, 24_000, 4, clock::get);
+
+        assertThat(buckets.tryAcquire("alice", 1_000).allowed()).isTrue();
+        buckets.charge("alice", 22_000);
+
+        QuotaDecision rejected = buckets.tryAcquire("alice", 2_000);
+        assertThat(rejected.exceeded()).isEqualTo(QuotaLimit.TOKENS);
+        // 1,000 tokens short at 1,000 tokens per hour
+        assertThat(rejected.retryAfter()).isEqualTo(Duration.ofHours(1));
+
+        // Usage beyond the quota is owed and waited out
+        buckets.charge("alice", 10_000);
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        assertThat(buckets.tryAcquire("alice", 2_000).allowed()).isFalse();
+    }
+
+    @Test
+    void forgetsUsersWhoseBucketsHaveRefilled() {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(10, 10_000, 1, clock::get);
+        for (int i = 0; i < 1_000; i++) {
+            buckets.tryAcquire("user-" + i, 10);
+        }
+        assertThat(buckets.size()).isEqualTo(1_000);
+
+        // A day later the first thousand are back to full and make room for the next thousand
+        clock.addAndGet(Duration.ofDays(1).toNanos());
+        for (int i = 0; i < 1_000; i++) {
+            buckets.tryAcquire("next-user-" + i, 10);
+        }
+
+        assertThat(buckets.size()).isLessThanOrEqualTo(1_024);
+    }
+
+    @Test
+    void concurrentCallersNeverExceedTheLimit() throws Exception {
+        StripedTokenBuckets buckets = new StripedTokenBuckets(50, 1_000_000, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < 100; i++) {
+                        if (buckets.tryAcquire("shared", 1).allowed()) {
+                            allowed++;
+                        }
+                        buckets.tryAcquire("own-" + Thread.currentThread().getId() + "-" + i, 1);
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            // 50 up front, plus at most a sliver refilled while the test ran
+            assertThat(total).isBetween(50, 52);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.klakar.artivio.ai.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(50, 4, 4, OPEN_DURATION, 2, clock::get);
+
+    @Test
+    void closesAfterTheTrialCallsSucceed() {
+        trip();
+        assertThat(breaker.tryAcquirePermission()).isNull();
+
+        clock.addAndGet(OPEN_DURATION.toNanos());
+        CircuitBreaker.Permit first = breaker.tryAcquirePermission();
+        CircuitBreaker.Permit second = breaker.tryAcquirePermission();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(breaker.tryAcquirePermission()).isNull();
+
+        breaker.onSuccess(first);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onSuccess(second);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getRejections()).isEqualTo(2);
+    }
+
+    @Test
+    void reopensWhenATrialCallFails() {
+        trip();
+        clock.addAndGet(OPEN_DURATION.toNanos());
+
+        breaker.onFailure(breaker.tryAcquirePermission());
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isNull();
+    }
+
+    @Test
+    void ignoresCallsAdmittedBeforeTheBreakerWentHalfOpen() {
+        CircuitBreaker.Permit slowSuccess = breaker.tryAcquirePermission();
+        CircuitBreaker.Permit otherSlowSuccess = breaker.tryAcquirePermission();
+        CircuitBreaker.Permit slowFailure = breaker.tryAcquirePermission();
+        trip();
+        clock.addAndGet(OPEN_DURATION.toNanos());
+        CircuitBreaker.Permit trial = breaker.tryAcquirePermission();
+
+        breaker.onSuccess(slowSuccess);
+        breaker.onSuccess(otherSlowSuccess);
+        breaker.onFailure(slowFailure);
+
+        // Still waiting on real trials, with one trial slot left
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquirePermission()).isNotNull();
+        assertThat(breaker.tryAcquirePermission()).isNull();
+
+        breaker.onIgnored(trial);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(breaker.tryAcquirePermission());
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
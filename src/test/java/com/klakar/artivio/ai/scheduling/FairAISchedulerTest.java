@@ -0,0 +1,197 @@
+package com.klakar.artivio.ai.scheduling;
+
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.AIServiceException;
+import com.klakar.artivio.service.impl.FairSchedulingAIServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Simulates several users competing for a saturated scheduler: requests are queued up front and
+ * slots are then freed one at a time, recording who gets each one.
+ */
+class FairAISchedulerTest {
+
+    private AIProperties.Fairness properties;
+    private SimpleMeterRegistry meterRegistry;
+    private FairAIScheduler scheduler;
+    private List<FairAIScheduler.Ticket> running;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AIProperties.Fairness();
+        properties.setMaxConcurrent(1);
+        properties.setMaxInFlightPerOwner(1);
+        properties.setMaxQueuedPerOwner(100);
+        properties.setQuantumTokens(256);
+        meterRegistry = new SimpleMeterRegistry();
+        scheduler = new FairAIScheduler(properties, meterRegistry);
+        running = new ArrayList<>();
+    }
+
+    @Test
+    void floodingUserDoesNotDelayOthers() {
+        for (int i = 0; i < 20; i++) {
+            submit("script", AIPriority.INTERACTIVE, 100);
+        }
+        for (String user : List.of("alice", "bob", "carol")) {
+            submit(user, AIPriority.INTERACTIVE, 100);
+        }
+
+        List<String> order = drain(23);
+
+        // In arrival order the others would wait behind all 20 script requests
+        assertThat(order.subList(0, 6)).contains("alice", "bob", "carol");
+        assertThat(meterRegistry.get("ai.scheduler.queue.wait").tag("class", "interactive").timer().count())
+                .isEqualTo(23);
+    }
+
+    @Test
+    void throughputIsSharedByTokensNotRequests() {
+        for (int i = 0; i < 40; i++) {
+            submit("long-prompts", AIPriority.INTERACTIVE, 1000);
+            submit("short-prompts", AIPriority.INTERACTIVE, 100);
+        }
+
+        Map<String, Integer> tokens = new HashMap<>();
+        Map<String, Integer> requests = new HashMap<>();
+        for (String owner : drain(30)) {
+            tokens.merge(owner, owner.startsWith("long") ? 1000 : 100, Integer::sum);
+            requests.merge(owner, 1, Integer::sum);
+        }
+
+        assertThat(requests.get("short-prompts")).isGreaterThan(3 * requests.get("long-prompts"));
+        assertThat(Math.abs(tokens.get("long-prompts") - tokens.get("short-prompts"))).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    void backgroundWorkGetsItsWeightedShareWithoutStarving() {
+        properties.setInteractiveWeight(4);
+        properties.setBackgroundWeight(1);
+        for (int i = 0; i < 50; i++) {
+            submit("user-" + (i % 5), AIPriority.INTERACTIVE, 100);
+            submit("summary:" + (i % 5), AIPriority.BACKGROUND, 100);
+        }
+
+        List<String> order = drain(50);
+
+        long background = order.stream().filter(owner -> owner.startsWith("summary")).count();
+        assertThat(background).isEqualTo(10);
+        assertThat(order.subList(0, 5)).anyMatch(owner -> owner.startsWith("summary"));
+    }
+
+    @Test
+    void perOwnerInFlightCapLeavesSlotsForOthers() {
+        properties.setMaxConcurrent(4);
+        properties.setMaxInFlightPerOwner(2);
+        for (int i = 0; i < 5; i++) {
+            submit("script", AIPriority.INTERACTIVE, 100);
+        }
+        assertThat(running).hasSize(2);
+
+        submit("alice", AIPriority.INTERACTIVE, 100);
+        assertThat(running).extracting(FairAIScheduler.Ticket::getOwner)
+                .containsExactly("script", "script", "alice");
+        assertThat(scheduler.getQueued(AIPriority.INTERACTIVE)).isEqualTo(3);
+    }
+
+    @Test
+    void cancelledRequestGivesUpItsPlaceAndFullQueueIsRejected() {
+        properties.setMaxQueuedPerOwner(2);
+        submit("alice", AIPriority.INTERACTIVE, 100);
+        Disposable queued = submit("alice", AIPriority.INTERACTIVE, 100);
+        submit("alice", AIPriority.INTERACTIVE, 100);
+
+        AtomicReference<Throwable> rejected = new AtomicReference<>();
+        scheduler.acquire(new AIRequestContext("alice", AIPriority.INTERACTIVE), 100)
+                .subscribe(ticket -> { }, rejected::set);
+        assertThat(rejected.get()).isInstanceOf(AIServiceException.class);
+
+        queued.dispose();
+        assertThat(scheduler.getQueued(AIPriority.INTERACTIVE)).isEqualTo(1);
+        assertThat(drain(2)).containsExactly("alice", "alice");
+        assertThat(scheduler.getInFlight()).isZero();
+        assertThat(scheduler.getQueued(AIPriority.INTERACTIVE)).isZero();
+    }
+
+    @Test
+    void rejectsSettingsThatWouldNeverDispatch() {
+        properties.setQuantumTokens(0);
+        assertThatThrownBy(() -> new FairAIScheduler(properties, meterRegistry))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        properties.setQuantumTokens(256);
+        properties.setMaxInFlightPerOwner(0);
+        assertThatThrownBy(() -> new FairAIScheduler(properties, meterRegistry))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void decoratorHoldsSlotUntilResponseEndsOrIsCancelled() {
+        properties.setMaxConcurrent(2);
+        properties.setMaxInFlightPerOwner(2);
+        AIService stub = new AIService() {
+            @Override
+            public Mono<String> generate(String prompt, String context) {
+                return Mono.just("reply");
+            }
+
+            @Override
+            public Flux<String> streamResponse(String prompt, String context) {
+                return Flux.never();
+            }
+
+            @Override
+            public boolean isConfigured() {
+                return true;
+            }
+
+            @Override
+            public String getModelName() {
+                return "stub";
+            }
+        };
+        AIService service = new FairSchedulingAIServiceImpl(stub, scheduler, new TokenEstimator(4.0));
+
+        assertThat(service.generate("hi", null).contextWrite(AIRequestContext.interactive("alice")).block())
+                .isEqualTo("reply");
+        assertThat(scheduler.getInFlight()).isZero();
+
+        Disposable stream = service.streamResponse("hi", null)
+                .contextWrite(AIRequestContext.interactive("alice"))
+                .subscribe();
+        assertThat(scheduler.getInFlight()).isEqualTo(1);
+        stream.dispose();
+        assertThat(scheduler.getInFlight()).isZero();
+    }
+
+    private Disposable submit(String owner, AIPriority priority, int cost) {
+        return scheduler.acquire(new AIRequestContext(owner, priority), cost).subscribe(running::add);
+    }
+
+    /** Completes running requests one at a time and returns the owners in the order they ran. */
+    private List<String> drain(int count) {
+        List<String> order = new ArrayList<>();
+        while (order.size() < count && !running.isEmpty()) {
+            FairAIScheduler.Ticket ticket = running.remove(0);
+            order.add(ticket.getOwner());
+            scheduler.release(ticket);
+        }
+        return order;
+    }
+}
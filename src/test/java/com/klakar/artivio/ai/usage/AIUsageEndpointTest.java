@@ -0,0 +1,24 @@
+package com.klakar.artivio.ai.usage;
+
+import com.klakar.artivio.config.AIProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AIUsageEndpointTest {
+
+    private final AIUsageEndpoint endpoint = new AIUsageEndpoint(new AIUsageTracker(new AIProperties.Usage()));
+
+    @Test
+    void acceptsOrdersInAnyCaseAndRejectsUnknownOnes() {
+        assertThat(endpoint.report("Latency", 5).users()).isEmpty();
+
+        assertThatThrownBy(() -> endpoint.report("foo", null))
+                .isInstanceOf(InvalidEndpointRequestException.class)
+                .hasMessageContaining("tokens or latency");
+        assertThatThrownBy(() -> endpoint.report(null, -1))
+                .isInstanceOf(InvalidEndpointRequestException.class);
+    }
+}
@@ -0,0 +1,58 @@
+package com.klakar.artivio.ai.usage;
+
+import com.klakar.artivio.config.AIProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AIUsageTrackerTest {
+
+    private final AIUsageTracker tracker = new AIUsageTracker(new AIProperties.Usage());
+
+    @Test
+    void sumsCallsPerUserConversationAndOverall() {
+        tracker.record("alice", "c1", sample(100, 20, 10, 200));
+        tracker.record("alice", "c2", sample(50, 0, 5, 400));
+        tracker.record("bob", "c1", new AIUsageTracker.Sample(0, 0, 0, millis(100), true));
+
+        AIUsage alice = tracker.user("alice").orElseThrow();
+        assertThat(alice.requests()).isEqualTo(2);
+        assertThat(alice.promptTokens()).isEqualTo(150);
+        assertThat(alice.cachedTokens()).isEqualTo(20);
+        assertThat(alice.totalTokens()).isEqualTo(165);
+        assertThat(alice.avgUpstreamMillis()).isEqualTo(300.0);
+        assertThat(alice.maxUpstreamMillis()).isEqualTo(400.0);
+        assertThat(alice.lastRequestAt()).isNotNull();
+
+        AIUsage c1 = tracker.conversation("c1").orElseThrow();
+        assertThat(c1.requests()).isEqualTo(2);
+        assertThat(c1.failures()).isEqualTo(1);
+
+        assertThat(tracker.total().requests()).isEqualTo(3);
+        assertThat(tracker.user("carol")).isEmpty();
+    }
+
+    @Test
+    void ranksByTokensOrByLatency() {
+        tracker.record("heavy", null, sample(5000, 0, 500, 100));
+        tracker.record("slow", null, sample(100, 0, 10, 9000));
+        tracker.record("light", null, sample(10, 0, 1, 50));
+
+        assertThat(tracker.topUsers(AIUsageTracker.Order.TOKENS, 2))
+                .extracting(AIUsage::key)
+                .containsExactly("heavy", "slow");
+        assertThat(tracker.topUsers(AIUsageTracker.Order.LATENCY, 1))
+                .extracting(AIUsage::key)
+                .containsExactly("slow");
+    }
+
+    private static AIUsageTracker.Sample sample(int prompt, int cached, int completion, long upstreamMillis) {
+        return new AIUsageTracker.Sample(prompt, cached, completion, millis(upstreamMillis), false);
+    }
+
+    private static long millis(long millis) {
+        return Duration.ofMillis(millis).toNanos();
+    }
+}
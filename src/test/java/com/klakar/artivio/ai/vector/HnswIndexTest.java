@@ -0,0 +1,149 @@
+package com.klakar.artivio.ai.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    void findsNearlyTheSameNeighboursAsAnExactScan() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 16, 200, 64);
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            index.add(randomVector(random), i);
+        }
+
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < 50; q++) {
+            float[] query = randomVector(random);
+            Set<Integer> exact = ids(index.exactSearch(query, 10, null));
+            Set<Integer> approximate = ids(index.search(query, 10, null));
+            approximate.retainAll(exact);
+            found += approximate.size();
+            expected += exact.size();
+        }
+        assertThat((double) found / expected).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void returnsOnlyMatchesAcceptedByTheFilter() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 8, 100, 32);
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            index.add(randomVector(random), i);
+        }
+
+        float[] query = randomVector(random);
+        List<HnswIndex.Match<Integer>> matches = index.search(query, 5, payload -> payload % 100 == 0);
+
+        assertThat(matches).hasSize(5).allSatisfy(match -> assertThat(match.payload() % 100).isZero());
+        assertThat(matches).isSortedAccordingTo((a, b) -> Float.compare(b.similarity(), a.similarity()));
+        assertThat(ids(matches)).isEqualTo(ids(index.exactSearch(query, 5, payload -> payload % 100 == 0)));
+    }
+
+    @Test
+    void neverReturnsDeletedNodes() {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 8, 100, 32);
+        Random random = new Random(5);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vectors.add(randomVector(random));
+            index.add(vectors.get(i), i);
+        }
+        for (int i = 0; i < 500; i += 2) {
+            assertThat(index.delete(i)).isTrue();
+        }
+        assertThat(index.delete(0)).isFalse();
+        assertThat(index.deletedCount()).isEqualTo(250);
+
+        for (int i = 0; i < 500; i += 25) {
+            assertThat(index.search(vectors.get(i), 10, null))
+                    .hasSize(10)
+                    .allSatisfy(match -> assertThat(match.payload() % 2).isOne());
+            assertThat(index.exactSearch(vectors.get(i), 10, null))
+                    .allSatisfy(match -> assertThat(match.payload() % 2).isOne());
+        }
+        // The surviving neighbours of a deleted node are still reachable through it
+        assertThat(index.search(vectors.get(1), 1, null).get(0).payload()).isEqualTo(1);
+    }
+
+    @Test
+    void supportsConcurrentInsertsAndSearches() throws Exception {
+        HnswIndex<Integer> index = new HnswIndex<>(DIMENSIONS, 16, 100, 64);
+        List<float[]> vectors = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 4000; i++) {
+            vectors.add(randomVector(random));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                writers.add(executor.submit(() -> {
+                    for (int i = offset; i < vectors.size(); i += 4) {
+                        index.add(vectors.get(i), i);
+                    }
+                }));
+            }
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                readers.add(executor.submit(() -> {
+                    Random queries = new Random();
+                    while (writing.get()) {
+                        index.search(randomVector(queries), 10, null);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(index.size()).isEqualTo(vectors.size());
+        int selfFound = 0;
+        for (int i = 0; i < vectors.size(); i += 10) {
+            List<HnswIndex.Match<Integer>> top = index.search(vectors.get(i), 1, null);
+            if (!top.isEmpty() && top.get(0).payload() == i) {
+                selfFound++;
+            }
+        }
+        assertThat(selfFound).isGreaterThanOrEqualTo(vectors.size() / 10 * 98 / 100);
+    }
+
+    private static Set<Integer> ids(List<HnswIndex.Match<Integer>> matches) {
+        Set<Integer> ids = new HashSet<>();
+        matches.forEach(match -> ids.add(match.payload()));
+        return ids;
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,279 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.dto.MessageDTO;
+import com.klakar.artivio.dto.RegisterRequest;
+import com.klakar.artivio.entity.Conversation;
+import com.klakar.artivio.entity.Message;
+import com.klakar.artivio.service.ChatService;
+import com.klakar.artivio.service.UserService;
+import com.klakar.artivio.support.GeminiStubServer;
+import com.klakar.artivio.support.GeminiStubServer.Latency;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end latency of AI replies: {@link ChatService#sendMessage} on HUMAN_TO_AI conversations,
+ * through context lookup, scheduling and the real Gemini client, against a local
+ * {@link GeminiStubServer} with realistic latency. Reports time to first streamed token, time to
+ * the stored reply, and reply throughput, fully offline.
+ * <p>
+ * Each virtual user owns one conversation and sends its next message once the previous reply is
+ * complete, like a person would; {@code bench.users} sets the concurrency. Not part of the
+ * regular test run (the class name does not match the test includes); run it with
+ * <pre>
+ * ./mvnw test -Dtest=ChatLatencyBenchmark -Dbench.users=32 -Dbench.messages=20
+ * </pre>
+ * Settings, all system properties:
+ * <ul>
+ *     <li>{@code bench.users} (16), {@code bench.messages} (10) measured messages per user after
+ *     {@code bench.warmup} (2)</li>
+ *     <li>{@code bench.chunks} (20) streamed chunks per reply</li>
+ *     <li>{@code bench.first-byte.median}/{@code .p99} (200/1500 ms) and
+ *     {@code bench.chunk.median}/{@code .p99} (30/150 ms): log-normal stub latencies</li>
+ *     <li>{@code bench.error-rate.429}, {@code bench.error-rate.500}, {@code bench.hang-rate}
+ *     (0): share of upstream calls failing or never answering</li>
+ *     <li>{@code bench.response-timeout} (10s): client timeout, which decides hung calls</li>
+ *     <li>{@code bench.seed} (42)</li>
+ * </ul>
+ * Quotas and the response cache are off so every message reaches the stub.
+ */
+@SpringBootTest(properties = "logging.level.com.klakar.artivio=WARN")
+class ChatLatencyBenchmark {
+
+    private static final int USERS = Integer.getInteger("bench.users", 16);
+    private static final int MESSAGES = Integer.getInteger("bench.messages", 10);
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 2);
+    private static final int CHUNKS = Integer.getInteger("bench.chunks", 20);
+    private static final long REPLY_TIMEOUT_SECONDS = 120;
+
+    private static final GeminiStubServer STUB = GeminiStubServer.start()
+            .respondWith(IntStream.range(0, CHUNKS).mapToObj(i -> "token" + i + " ").toArray(String[]::new))
+            .firstByteLatency(Latency.logNormal(
+                    Long.getLong("bench.first-byte.median", 200), Long.getLong("bench.first-byte.p99", 1500)))
+            .chunkLatency(Latency.logNormal(
+                    Long.getLong("bench.chunk.median", 30), Long.getLong("bench.chunk.p99", 150)))
+            .failWith(429, doubleProperty("bench.error-rate.429"))
+            .failWith(500, doubleProperty("bench.error-rate.500"))
+            .hangRate(doubleProperty("bench.hang-rate"))
+            .seed(Long.getLong("bench.seed", 42));
+
+    private static final ReplyRecorder RECORDER = new ReplyRecorder();
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private UserService userService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("app.gemini.base-url", STUB::baseUrl);
+        registry.add("app.gemini.response-timeout", () -> System.getProperty("bench.response-timeout", "10s"));
+        registry.add("app.ai.quota.enabled", () -> false);
+        registry.add("app.ai.cache.local.enabled", () -> false);
+        registry.add("app.ai.cache.redis.enabled", () -> false);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void aiReplyLatency() throws Exception {
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        List<VirtualUser> users = IntStream.range(0, USERS)
+                .mapToObj(i -> createUser("bench-" + run + "-" + i))
+                .toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(USERS);
+        try {
+            runAll(executor, users, WARMUP, new ConcurrentLinkedQueue<>());
+
+            ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<>();
+            long start = System.nanoTime();
+            runAll(executor, users, MESSAGES, replies);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            report(new ArrayList<>(replies), seconds);
+            assertThat(replies).hasSize(USERS * MESSAGES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private VirtualUser createUser(String username) {
+        userService.register(new RegisterRequest(username, username + "@bench.local", "password", username));
+        Long conversationId = chatService
+                .createOrGetConversation(username, null, Conversation.ConversationType.HUMAN_TO_AI)
+                .getId();
+        return new VirtualUser(username, conversationId);
+    }
+
+    private void runAll(ExecutorService executor, List<VirtualUser> users, int messages,
+                        ConcurrentLinkedQueue<Reply> replies) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (VirtualUser user : users) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < messages; i++) {
+                    replies.add(send(user, i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private Reply send(VirtualUser user, int index) throws Exception {
+        Exchange exchange = RECORDER.begin(user.username());
+        chatService.sendMessage(user.username(), user.conversationId(),
+                "Question " + index + " from " + user.username() + ": what should I paint next?");
+        try {
+            return exchange.reply.get(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new AssertionError("No reply for " + user.username() + " within " + REPLY_TIMEOUT_SECONDS + "s", e);
+        }
+    }
+
+    private static void report(List<Reply> replies, double seconds) {
+        long[] firstToken = replies.stream().filter(Reply::streamed).mapToLong(Reply::firstTokenNanos).sorted().toArray();
+        long[] completion = replies.stream().mapToLong(Reply::completionNanos).sorted().toArray();
+        long failed = replies.stream().filter(reply -> !reply.streamed()).count();
+
+        System.out.printf("%nChat AI latency: %d users x %d messages, %d chunks per reply, stub %d upstream calls%n",
+                USERS, MESSAGES, CHUNKS, STUB.requestCount());
+        System.out.printf("  replies      %d (%d without streamed tokens) in %.1f s = %.1f replies/s%n",
+                replies.size(), failed, seconds, replies.size() / seconds);
+        System.out.printf("  first token  p50 %6.0f ms   p99 %6.0f ms%n",
+                percentileMillis(firstToken, 0.50), percentileMillis(firstToken, 0.99));
+        System.out.printf("  completion   p50 %6.0f ms   p99 %6.0f ms%n%n",
+                percentileMillis(completion, 0.50), percentileMillis(completion, 0.99));
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static double doubleProperty(String name) {
+        return Double.parseDouble(System.getProperty(name, "0"));
+    }
+
+    private record VirtualUser(String username, Long conversationId) {
+    }
+
+    /**
+     * @param streamed whether any token was streamed; replies that only got the fallback text or
+     *                 an error message count as not streamed
+     */
+    private record Reply(long firstTokenNanos, long completionNanos, boolean streamed) {
+    }
+
+    private static final class Exchange {
+
+        private final long start = System.nanoTime();
+        private final CompletableFuture<Reply> reply = new CompletableFuture<>();
+        private volatile MessageDTO placeholder;
+        private volatile long firstToken;
+
+        void onFirstToken() {
+            if (firstToken == 0) {
+                firstToken = System.nanoTime();
+            }
+        }
+
+        void complete() {
+            long now = System.nanoTime();
+            boolean streamed = firstToken != 0;
+            reply.complete(new Reply(streamed ? firstToken - start : 0, now - start, streamed));
+        }
+    }
+
+    /**
+     * Times replies from what {@code ChatServiceImpl} publishes to the user: the empty AI message
+     * on {@code /queue/messages}, then streamed updates that reuse that same DTO, then one update
+     * built from the stored message. Anything else the AI path sends to {@code /queue/messages}
+     * (error or quota notices) ends the exchange without tokens.
+     */
+    private static final class ReplyRecorder {
+
+        private final Map<String, Exchange> pending = new ConcurrentHashMap<>();
+
+        Exchange begin(String username) {
+            Exchange exchange = new Exchange();
+            pending.put(username, exchange);
+            return exchange;
+        }
+
+        void onSend(String username, String destination, Object payload) {
+            Exchange exchange = pending.get(username);
+            if (exchange == null || !(payload instanceof MessageDTO message)
+                    || message.getMessageType() == Message.MessageType.HUMAN) {
+                return;
+            }
+            MessageDTO placeholder = exchange.placeholder;
+            if ("/queue/messages".equals(destination)) {
+                if (placeholder == null && message.getMessageType() == Message.MessageType.AI
+                        && message.getContent().isEmpty()) {
+                    exchange.placeholder = message;
+                } else {
+                    exchange.complete();
+                }
+            } else if ("/queue/message-updates".equals(destination) && placeholder != null
+                    && placeholder.getId().equals(message.getId())) {
+                // Late updates for an earlier reply carry another message id and are ignored
+                if (message == placeholder) {
+                    exchange.onFirstToken();
+                } else {
+                    exchange.complete();
+                }
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingMessagingConfig {
+
+        /** Swallows WebSocket sends (no broker in this test) after handing them to the recorder. */
+        @Bean
+        @Primary
+        SimpMessagingTemplate recordingMessagingTemplate() {
+            return new SimpMessagingTemplate((message, timeout) -> true) {
+                @Override
+                public void convertAndSendToUser(String user, String destination, Object payload) {
+                    RECORDER.onSend(user, destination, payload);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.klakar.artivio.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.ArtivioPrompts;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.PromptContextAssembler;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.embedding.HashingEmbeddingService;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIContextService;
+import com.klakar.artivio.service.impl.Bm25AIContextServiceImpl;
+import com.klakar.artivio.service.impl.FallbackAIContextServiceImpl;
+import com.klakar.artivio.service.impl.HnswAIContextServiceImpl;
+import com.klakar.artivio.service.impl.HybridAIContextServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Offline quality and latency of context retrieval, for choosing {@code app.ai.context.store} and
+ * tuning the {@code app.ai.context.hybrid} weights. Conversations are stored in the memory, BM25
+ * and HNSW stores (hashing embeddings, so no model is needed); then each probe query is answered
+ * by every configuration, and what reaches the prompt after the {@link PromptContextAssembler}
+ * budget is compared with the turns marked relevant.
+ * <p>
+ * Reported per configuration: recall of relevant turns in the prompt context, overall and per
+ * probe kind, the mean reciprocal rank of the first relevant snippet before the budget is applied,
+ * the context tokens spent, and p50/p99 retrieval latency. Not part of the regular test run; run
+ * it with
+ * <pre>
+ * ./mvnw test -Dtest=ContextRetrievalEvaluation -Deval.conversations=100
+ * </pre>
+ * Settings, all system properties:
+ * <ul>
+ *     <li>{@code eval.dataset}: JSON file of real conversations to use instead of the synthetic
+ *     ones, {@code [{"turns": [{"sender": "Alice", "text": "..."}], "probes": [{"kind": "fact",
+ *     "query": "...", "relevant": [3]}]}]}, with {@code relevant} holding turn indexes; all turns
+ *     are stored before the probes are asked</li>
+ *     <li>{@code eval.conversations} (40) and {@code eval.turns} (60): size of the synthetic set</li>
+ *     <li>{@code eval.snippets} (8): snippets asked for per query, as {@code app.ai.context.max-snippets};
+ *     kept below the default so that the ranking decides what is left out</li>
+ *     <li>{@code eval.grid} (true): also try a grid of hybrid weights and list the best</li>
+ *     <li>{@code eval.repeat} (5): times each probe is asked, for the latency figures</li>
+ *     <li>{@code eval.seed} (42)</li>
+ * </ul>
+ */
+class ContextRetrievalEvaluation {
+
+    private static final String DATASET = System.getProperty("eval.dataset");
+    private static final int CONVERSATIONS = Integer.getInteger("eval.conversations", 40);
+    private static final int TURNS = Integer.getInteger("eval.turns", 60);
+    private static final int SNIPPETS = Integer.getInteger("eval.snippets", 8);
+    private static final boolean GRID = Boolean.parseBoolean(System.getProperty("eval.grid", "true"));
+    private static final int REPEAT = Integer.getInteger("eval.repeat", 5);
+    private static final long SEED = Long.getLong("eval.seed", 42);
+
+    record Turn(String sender, String text) {
+    }
+
+    record Probe(String kind, String query, Set<Integer> relevant) {
+    }
+
+    record Conversation(List<Turn> turns, List<Probe> probes) {
+    }
+
+    record Result(String configuration, double recall, double factRecall, double followUpRecall,
+                  double mixedRecall, double mrr, double tokens, double p50Micros, double p99Micros) {
+    }
+
+    private final AIProperties properties = new AIProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TokenEstimator tokenEstimator = new TokenEstimator(properties.getContext().getCharsPerToken());
+    private final PromptContextAssembler assembler = new PromptContextAssembler(tokenEstimator, properties.getContext());
+
+    @Test
+    void compareRetrievers() throws Exception {
+        properties.getContext().setMaxSnippets(SNIPPETS);
+        List<Conversation> conversations = DATASET != null ? load(DATASET) : SyntheticConversations.generate(
+                CONVERSATIONS, TURNS, new SplittableRandom(SEED));
+
+        FallbackAIContextServiceImpl memory = new FallbackAIContextServiceImpl(null, properties.getSummary(),
+                properties.getContext().getMemory(), meterRegistry);
+        Bm25AIContextServiceImpl bm25 = new Bm25AIContextServiceImpl(properties.getContext().getBm25(), meterRegistry);
+        HnswAIContextServiceImpl hnsw = new HnswAIContextServiceImpl(new HashingEmbeddingService(256),
+                properties.getContext().getHnsw(), meterRegistry);
+        try {
+            store(conversations, List.of(memory, bm25, hnsw));
+
+            List<Result> results = new ArrayList<>();
+            results.add(evaluate("memory", memory, conversations));
+            results.add(evaluate("bm25", bm25, conversations));
+            results.add(evaluate("hnsw (hashing)", hnsw, conversations));
+            AIProperties.Context.Hybrid defaults = properties.getContext().getHybrid();
+            Result hybrid = evaluate("hybrid memory+bm25", hybrid(defaults, memory, bm25), conversations);
+            results.add(hybrid);
+            results.add(evaluate("hybrid memory+bm25+hnsw", hybrid(defaults, memory, bm25, hnsw), conversations));
+            print("Stores and default hybrid weights", results);
+
+            if (GRID) {
+                List<Result> grid = new ArrayList<>();
+                for (double relevance : new double[]{0.3, 0.45, 0.6, 0.75, 0.9}) {
+                    for (double halfLife : new double[]{1, 2, 4, 8}) {
+                        for (double assistant : new double[]{0.6, 0.8, 1.0}) {
+                            AIProperties.Context.Hybrid weights = new AIProperties.Context.Hybrid();
+                            weights.setRelevanceWeight(relevance);
+                            weights.setRecencyWeight(1 - relevance);
+                            weights.setRecencyHalfLife(halfLife);
+                            weights.setAssistantWeight(assistant);
+                            String name = String.format("relevance %.2f half-life %.0f assistant %.1f",
+                                    relevance, halfLife, assistant);
+                            grid.add(evaluate(name, hybrid(weights, memory, bm25), conversations));
+                        }
+                    }
+                }
+                grid.sort(Comparator.comparingDouble(Result::recall).thenComparingDouble(Result::mrr).reversed());
+                print("Best hybrid memory+bm25 weights", grid.subList(0, Math.min(10, grid.size())));
+            }
+
+            if (DATASET == null) {
+                // The synthetic probes need both old facts and the latest turns
+                assertThat(hybrid.recall()).isGreaterThan(results.get(0).recall()).isGreaterThan(results.get(1).recall());
+            }
+        } finally {
+            hnsw.close();
+        }
+    }
+
+    private HybridAIContextServiceImpl hybrid(AIProperties.Context.Hybrid weights, AIContextService... stores) {
+        List<HybridAIContextServiceImpl.Retriever> retrievers = new ArrayList<>();
+        for (AIContextService store : stores) {
+            String name = store instanceof FallbackAIContextServiceImpl ? "memory"
+                    : store instanceof Bm25AIContextServiceImpl ? "bm25" : "hnsw";
+            retrievers.add(new HybridAIContextServiceImpl.Retriever(name, store, 1.0));
+        }
+        return new HybridAIContextServiceImpl(retrievers, weights, new SimpleMeterRegistry());
+    }
+
+    /** Stores turn by turn across all conversations, a millisecond apart so timestamps keep the order. */
+    private static void store(List<Conversation> conversations, List<AIContextService> stores) throws InterruptedException {
+        int longest = conversations.stream().mapToInt(conversation -> conversation.turns().size()).max().orElse(0);
+        for (int t = 0; t < longest; t++) {
+            for (int c = 0; c < conversations.size(); c++) {
+                List<Turn> turns = conversations.get(c).turns();
+                if (t < turns.size()) {
+                    for (AIContextService store : stores) {
+                        store.storeConversationContext(Integer.toString(c), turns.get(t).text(), turns.get(t).sender());
+                    }
+                }
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private Result evaluate(String name, AIContextService store, List<Conversation> conversations) {
+        int maxSnippets = assembler.getMaxSnippets();
+        List<Long> latencies = new ArrayList<>();
+        double[] found = new double[4];
+        double[] wanted = new double[4];
+        double reciprocalRanks = 0;
+        long tokens = 0;
+        int probes = 0;
+
+        for (int c = 0; c < conversations.size(); c++) {
+            Conversation conversation = conversations.get(c);
+            for (Probe probe : conversation.probes()) {
+                List<ContextSnippet> snippets = List.of();
+                for (int r = 0; r < REPEAT; r++) {
+                    long start = System.nanoTime();
+                    snippets = store.getContextSnippets(Integer.toString(c), probe.query(), maxSnippets);
+                    latencies.add(System.nanoTime() - start);
+                }
+                Set<String> relevant = new HashSet<>();
+                probe.relevant().forEach(index -> relevant.add(conversation.turns().get(index).text()));
+
+                for (int rank = 0; rank < snippets.size(); rank++) {
+                    if (relevant.contains(snippets.get(rank).text())) {
+                        reciprocalRanks += 1.0 / (rank + 1);
+                        break;
+                    }
+                }
+                List<ContextSnippet> selected = assembler.select(probe.query(), snippets);
+                tokens += tokenEstimator.estimate(ContextSnippet.formatAll(selected));
+                long hits = selected.stream().map(ContextSnippet::text).filter(relevant::contains).distinct().count();
+
+                int kind = switch (probe.kind()) {
+                    case "fact" -> 1;
+                    case "follow-up" -> 2;
+                    case "mixed" -> 3;
+                    default -> 0;
+                };
+                for (int bucket : new int[]{0, kind}) {
+                    found[bucket] += hits;
+                    wanted[bucket] += relevant.size();
+                }
+                probes++;
+            }
+        }
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new Result(name, ratio(found[0], wanted[0]), ratio(found[1], wanted[1]), ratio(found[2], wanted[2]),
+                ratio(found[3], wanted[3]), reciprocalRanks / Math.max(1, probes), (double) tokens / Math.max(1, probes),
+                percentile(sorted, 0.5) / 1000.0, percentile(sorted, 0.99) / 1000.0);
+    }
+
+    private static double ratio(double found, double wanted) {
+        return wanted == 0 ? Double.NaN : found / wanted;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.round(quantile * (sorted.length - 1)))];
+    }
+
+    private static void print(String title, List<Result> results) {
+        System.out.printf("%n%s%n%-45s %7s %7s %9s %7s %6s %7s %8s %8s%n", title, "configuration",
+                "recall", "fact", "follow-up", "mixed", "mrr", "tokens", "p50 us", "p99 us");
+        for (Result result : results) {
+            System.out.printf("%-45s %7.3f %7.3f %9.3f %7.3f %6.3f %7.0f %8.1f %8.1f%n", result.configuration(),
+                    result.recall(), result.factRecall(), result.followUpRecall(), result.mixedRecall(), result.mrr(),
+                    result.tokens(), result.p50Micros(), result.p99Micros());
+        }
+    }
+
+    private static List<Conversation> load(String path) throws IOException {
+        return new ObjectMapper().readValue(new File(path), new TypeReference<List<Conversation>>() {
+        });
+    }
+
+    /**
+     * Art-class conversations: a few facts stated early ("my canvas is ..."), chatter and assistant
+     * replies in between, and three probes at the end. A fact probe asks about one of the facts in
+     * other words, a follow-up probe refers to the last exchange only ("explain that again"), and a
+     * mixed probe needs both the last turn and a fact.
+     */
+    static final class SyntheticConversations {
+
+        private record Fact(String statement, String question, String keyword) {
+        }
+
+        private static final List<Fact> FACTS = List.of(
+                new Fact("I'm painting on a 50 by 70 linen canvas primed with oil ground",
+                        "How large was the linen canvas I mentioned?", "linen"),
+                new Fact("My palette is titanium white, ultramarine, burnt sienna and cadmium yellow",
+                        "Which pigments are on my palette?", "sienna"),
+                new Fact("The commission is a portrait of my neighbour's greyhound, due in March",
+                        "When is the greyhound portrait due?", "greyhound"),
+                new Fact("I only have a north-facing window in the studio, so the light is cool",
+                        "Does my north-facing studio window change how I should judge colour?", "window"),
+                new Fact("I use walnut oil instead of linseed because of the smell",
+                        "Remind me which oil I said I use instead of linseed?", "walnut"),
+                new Fact("My brushes are mostly synthetic filberts, sizes 4 to 12",
+                        "What sizes were my filbert brushes?", "filberts"),
+                new Fact("The gallery wants the piece varnished with a matte finish",
+                        "What finish did the gallery ask for on the varnish?", "varnished"),
+                new Fact("I'm allergic to turpentine, so I clean up with safflower oil and soap",
+                        "What did I say about turpentine and cleaning brushes?", "turpentine"),
+                new Fact("The reference photo of the harbour was taken at golden hour",
+                        "What time of day was the harbour reference photo?", "harbour"),
+                new Fact("My easel is a small tabletop one, so I work seated",
+                        "Is my tabletop easel a problem for large strokes?", "easel"));
+
+        private static final String[] CHATTER = {
+                "I think the %s area needs more work before I move on",
+                "Should I soften the edges around the %s a bit?",
+                "The %s is starting to look better after another pass",
+                "I'm not sure the %s reads well from a distance",
+                "Let me try a darker value in the %s and see"};
+        private static final String[] REPLIES = {
+                "Try stepping back and squinting at the %s to compare values",
+                "A little more contrast in the %s would help it read",
+                "Keep the %s loose for now and refine it at the end",
+                "Consider a cooler shadow in the %s to push it back"};
+        private static final String[] SUBJECTS = {
+                "sky", "background", "foreground", "shadow", "highlight", "water", "hills", "clouds", "boats",
+                "reflections", "horizon", "rocks"};
+
+        static List<Conversation> generate(int count, int turns, SplittableRandom random) {
+            List<Conversation> conversations = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                conversations.add(conversation(Math.max(12, turns), random));
+            }
+            return conversations;
+        }
+
+        private static Conversation conversation(int length, SplittableRandom random) {
+            List<Fact> shuffled = new ArrayList<>(FACTS);
+            for (int i = shuffled.size() - 1; i > 0; i--) {
+                shuffled.set(i, shuffled.set(random.nextInt(i + 1), shuffled.get(i)));
+            }
+            List<Fact> facts = shuffled.subList(0, 3);
+            // Facts go into the first half, on user turns
+            int[] positions = new int[facts.size()];
+            for (int f = 0; f < facts.size(); f++) {
+                positions[f] = 2 * (f * length / (4 * facts.size()) + random.nextInt(Math.max(1, length / 12)));
+            }
+
+            List<Turn> turns = new ArrayList<>(length);
+            for (int t = 0; t < length; t++) {
+                int fact = Arrays.stream(positions).boxed().toList().indexOf(t);
+                String subject = SUBJECTS[random.nextInt(SUBJECTS.length)];
+                if (fact >= 0) {
+                    turns.add(new Turn("Alice", facts.get(fact).statement()));
+                } else if (t % 2 == 0) {
+                    turns.add(new Turn("Alice", String.format(CHATTER[random.nextInt(CHATTER.length)], subject)
+                            + " (" + t + ")"));
+                } else {
+                    turns.add(new Turn(ArtivioPrompts.ASSISTANT_NAME,
+                            String.format(REPLIES[random.nextInt(REPLIES.length)], subject) + " (" + t + ")"));
+                }
+            }
+            // The exchange the follow-up questions refer to
+            turns.set(length - 2, new Turn("Alice", "I glazed the waves with a thin phthalo green layer"));
+            turns.set(length - 1, new Turn(ArtivioPrompts.ASSISTANT_NAME,
+                    "Let it dry fully, then scumble a little white on the crests"));
+
+            Fact asked = facts.get(random.nextInt(facts.size()));
+            Fact mixed = facts.get(random.nextInt(facts.size()));
+            List<Probe> probes = List.of(
+                    new Probe("fact", asked.question(), Set.of(indexOf(turns, asked))),
+                    new Probe("follow-up", "Sorry, can you explain that again in more detail?",
+                            Set.of(length - 2, length - 1)),
+                    new Probe("mixed", "Will that work with the " + mixed.keyword() + " I mentioned?",
+                            Set.of(length - 1, indexOf(turns, mixed))));
+            return new Conversation(turns, probes);
+        }
+
+        private static int indexOf(List<Turn> turns, Fact fact) {
+            for (int i = 0; i < turns.size(); i++) {
+                if (turns.get(i).text().equals(fact.statement())) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("Fact not placed: " + fact.statement());
+        }
+    }
+}
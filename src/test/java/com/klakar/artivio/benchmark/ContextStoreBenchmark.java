@@ -0,0 +1,117 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.impl.FallbackAIContextServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing a turn in the in-memory context store from several threads, spread over many
+ * conversations: a map of unbounded queues trimmed by {@code size()} (previous behaviour) versus
+ * the byte-budgeted ring buffers of {@link FallbackAIContextServiceImpl}. At the end of each run
+ * the retained conversations and bytes are printed, showing the new store holding its budget
+ * while the queue map grows with every conversation ever seen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContextStoreBenchmark {
+
+    private static final String TEXT = "Could you suggest a warmer palette for the sunset scene I'm painting? ".repeat(3);
+
+    @Param({"10000", "1000000"})
+    public int conversations;
+
+    private String[] conversationIds;
+    private FallbackAIContextServiceImpl ringStore;
+    private QueueStore queueStore;
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup
+    public void setUp() {
+        conversationIds = new String[conversations];
+        for (int i = 0; i < conversations; i++) {
+            conversationIds[i] = Integer.toString(1_000_000 + i);
+        }
+        AIProperties properties = new AIProperties();
+        ringStore = new FallbackAIContextServiceImpl(null, properties.getSummary(),
+                properties.getContext().getMemory(), new SimpleMeterRegistry());
+        queueStore = new QueueStore(properties.getSummary().getRecentTurns());
+        // Give the read benchmark something to find
+        for (String conversationId : conversationIds) {
+            ringStore.storeConversationContext(conversationId, TEXT, "Alice");
+            ringStore.storeConversationContext(conversationId, TEXT, "Artivio AI");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n  ring store:  %d conversations, ~%d MB%n  queue store: %d conversations%n",
+                ringStore.conversations(), ringStore.bytes() / (1024 * 1024), queueStore.contexts.size());
+    }
+
+    @Benchmark
+    public void queueStore(Writer writer) {
+        queueStore.store(conversationIds[writer.random.nextInt(conversations)], TEXT, "Alice");
+    }
+
+    @Benchmark
+    public void ringStore(Writer writer) {
+        ringStore.storeConversationContext(conversationIds[writer.random.nextInt(conversations)], TEXT, "Alice");
+    }
+
+    @Benchmark
+    public List<ContextSnippet> ringStoreRead(Writer writer) {
+        return ringStore.getContextSnippets(conversationIds[writer.random.nextInt(conversations)], TEXT, 20);
+    }
+
+    /** The store as it was: one queue per conversation, never removed, trimmed under a lock. */
+    private static final class QueueStore {
+
+        private final Map<String, ConcurrentLinkedQueue<ContextSnippet>> contexts = new ConcurrentHashMap<>();
+        private final int recentTurns;
+
+        QueueStore(int recentTurns) {
+            this.recentTurns = recentTurns;
+        }
+
+        void store(String conversationId, String text, String sender) {
+            ConcurrentLinkedQueue<ContextSnippet> queue =
+                    contexts.computeIfAbsent(conversationId, k -> new ConcurrentLinkedQueue<>());
+            queue.offer(new ContextSnippet(text, sender, System.currentTimeMillis(), 0));
+            synchronized (queue) {
+                while (queue.size() > recentTurns) {
+                    queue.poll();
+                }
+            }
+        }
+    }
+}
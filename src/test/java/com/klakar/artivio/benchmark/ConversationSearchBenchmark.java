@@ -0,0 +1,146 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.ai.vector.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieving context for one conversation out of many sharing an index:
+ * <ul>
+ *     <li>{@code globalThenFilter}: global top 10, then drop other conversations (previous behaviour)</li>
+ *     <li>{@code filteredGraph}: graph search that only accepts the conversation's turns</li>
+ *     <li>{@code partitionScan}: exact scan of the conversation's own turns</li>
+ * </ul>
+ * Conversations talk about a shared set of topics, so their turns are interleaved in vector space
+ * as real chats are. The average number of turns of the right conversation returned per query is
+ * printed for each strategy after setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ConversationSearchBenchmark {
+
+    private static final int DIMENSIONS = 64;
+    private static final int TOPICS = 200;
+    private static final int K = 10;
+    private static final int QUERIES = 512;
+
+    @Param({"10000"})
+    public int conversations;
+
+    @Param({"8"})
+    public int turnsPerConversation;
+
+    private HnswIndex<Integer> index;
+    private int[][] partitions;
+    private float[][] queries;
+    private int[] queryConversations;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] topics = new float[TOPICS][DIMENSIONS];
+        for (float[] topic : topics) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                topic[i] = (float) random.nextGaussian();
+            }
+        }
+        index = new HnswIndex<>(DIMENSIONS, 16, 100, 64);
+        partitions = new int[conversations][turnsPerConversation];
+        int[][] turnTopics = new int[conversations][turnsPerConversation];
+        for (int turn = 0; turn < turnsPerConversation; turn++) {
+            for (int conversation = 0; conversation < conversations; conversation++) {
+                int topic = random.nextInt(TOPICS);
+                turnTopics[conversation][turn] = topic;
+                partitions[conversation][turn] = index.add(around(topics[topic], random), conversation);
+            }
+        }
+        queries = new float[QUERIES][];
+        queryConversations = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            // Ask about something the conversation has discussed
+            int conversation = random.nextInt(conversations);
+            queryConversations[i] = conversation;
+            queries[i] = around(topics[turnTopics[conversation][random.nextInt(turnsPerConversation)]], random);
+        }
+
+        System.out.printf("%n  hits per query (k=%d): globalThenFilter %.2f, filteredGraph %.2f, partitionScan %.2f%n",
+                K, averageHits(this::globalThenFilter), averageHits(this::filteredGraph),
+                averageHits(this::partitionScan));
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match<Integer>> globalThenFilter() {
+        return globalThenFilter(next());
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match<Integer>> filteredGraph() {
+        return filteredGraph(next());
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match<Integer>> partitionScan() {
+        return partitionScan(next());
+    }
+
+    private List<HnswIndex.Match<Integer>> globalThenFilter(int query) {
+        int conversation = queryConversations[query];
+        return index.search(queries[query], K, null).stream()
+                .filter(match -> match.payload() == conversation)
+                .toList();
+    }
+
+    private List<HnswIndex.Match<Integer>> filteredGraph(int query) {
+        int conversation = queryConversations[query];
+        return index.search(queries[query], K, payload -> payload == conversation);
+    }
+
+    private List<HnswIndex.Match<Integer>> partitionScan(int query) {
+        int[] ids = partitions[queryConversations[query]];
+        return index.exactSearch(queries[query], K, ids, ids.length);
+    }
+
+    private int next() {
+        int query = next;
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+
+    private double averageHits(Strategy strategy) {
+        long hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            hits += strategy.search(i).size();
+        }
+        return (double) hits / QUERIES;
+    }
+
+    private static float[] around(float[] centre, Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = centre[i] + (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private interface Strategy {
+        List<HnswIndex.Match<Integer>> search(int query);
+    }
+}
@@ -0,0 +1,88 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.config.AIConfig;
+import com.klakar.artivio.config.GeminiProperties;
+import com.klakar.artivio.support.GeminiStubServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of the AI provider client against a local stub:
+ * building a client per call (previous behaviour) versus the shared pooled client from {@link AIConfig}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class GeminiClientBenchmark {
+
+    private static final String PATH = "/models/{model}:generateContent";
+    private static final Map<String, Object> BODY = Map.of(
+            "contents", List.of(Map.of("parts", List.of(Map.of("text", "ping"))))
+    );
+
+    private GeminiStubServer stub;
+    private WebClient.Builder sharedBuilder;
+    private ConnectionProvider connectionProvider;
+    private WebClient pooledClient;
+
+    @Setup
+    public void setUp() {
+        stub = GeminiStubServer.start().respondWith("pong");
+
+        AIConfig config = new AIConfig();
+        GeminiProperties properties = new GeminiProperties();
+        properties.setBaseUrl(stub.baseUrl());
+        properties.getPool().setMetricsEnabled(false);
+
+        sharedBuilder = config.webClientBuilder();
+        connectionProvider = config.geminiConnectionProvider(properties);
+        pooledClient = config.geminiWebClient(sharedBuilder, connectionProvider, properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionProvider.dispose();
+        stub.close();
+    }
+
+    @Benchmark
+    public String clientPerCall() {
+        WebClient client = sharedBuilder
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
+                .build();
+        return call(client, stub.baseUrl() + PATH);
+    }
+
+    @Benchmark
+    public String sharedPooledClient() {
+        return call(pooledClient, PATH);
+    }
+
+    private static String call(WebClient client, String uri) {
+        return client.post()
+                .uri(uri, "gemini-1.5-flash")
+                .header("Content-Type", "application/json")
+                .bodyValue(BODY)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+    }
+}
@@ -0,0 +1,110 @@
+package com.klakar.artivio.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.gemini.GeminiRequestTemplate;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing one {@code generateContent} request body into a pooled Netty buffer:
+ * nested {@code Map.of} plus preamble {@code StringBuilder} through Jackson (previous behaviour)
+ * versus {@link GeminiRequestTemplate}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeminiRequestEncodingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final GeminiRequestTemplate template = new GeminiRequestTemplate(objectMapper, 0.7, 1000);
+
+    private String prompt;
+    private String context;
+
+    @Setup
+    public void setUp() {
+        prompt = "Can you help me write a short \"welcome\" note for new members of our design team?";
+        StringBuilder history = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            history.append("USER: what do you think about the colour palette for version ").append(i).append("?\n");
+            history.append("AI: The palette works well, though the accent could use more contrast.\n");
+        }
+        context = history.toString();
+    }
+
+    @Benchmark
+    public int mapAndObjectMapper() throws JsonProcessingException {
+        byte[] bytes = objectMapper.writeValueAsBytes(buildRequestBody(prompt, context));
+        DataBuffer buffer = bufferFactory.allocateBuffer(bytes.length).write(bytes);
+        int length = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return length;
+    }
+
+    @Benchmark
+    public int template() {
+        DataBuffer buffer = template.write(bufferFactory, prompt, context);
+        int length = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return length;
+    }
+
+    private static Map<String, Object> buildRequestBody(String prompt, String context) {
+        return Map.of(
+                "contents", new Object[]{Map.of("parts", new Object[]{Map.of("text", buildFullPrompt(prompt, context))})},
+                "generationConfig", Map.of(
+                        "temperature", 0.7,
+                        "topK", 32,
+                        "topP", 1.0,
+                        "maxOutputTokens", 1000,
+                        "stopSequences", new String[]{}
+                ),
+                "safetySettings", new Object[]{
+                        Map.of("category", "HARM_CATEGORY_HARASSMENT", "threshold", "BLOCK_MEDIUM_AND_ABOVE"),
+                        Map.of("category", "HARM_CATEGORY_HATE_SPEECH", "threshold", "BLOCK_MEDIUM_AND_ABOVE"),
+                        Map.of("category", "HARM_CATEGORY_SEXUALLY_EXPLICIT", "threshold", "BLOCK_MEDIUM_AND_ABOVE"),
+                        Map.of("category", "HARM_CATEGORY_DANGEROUS_CONTENT", "threshold", "BLOCK_MEDIUM_AND_ABOVE")
+                }
+        );
+    }
+
+    private static String buildFullPrompt(String userMessage, String context) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You are Artivio AI, a helpful and creative assistant integrated into the Artivio chat application. ");
+        prompt.append("Artivio's tagline is 'Where creativity meets intelligence'. ");
+        prompt.append("\n\nPersonality and Guidelines:");
+        prompt.append("\n- Be conversational, friendly, and engaging");
+        prompt.append("\n- Provide helpful, accurate, and creative responses");
+        prompt.append("\n- Keep responses concise but informative (aim for 1-3 paragraphs)");
+        prompt.append("\n- Use a warm, professional tone");
+        prompt.append("\n- If asked about yourself, mention you're Artivio AI");
+        prompt.append("\n- Be helpful with coding, creative writing, analysis, and general questions");
+        prompt.append("\n- If you're unsure about something, say so honestly");
+        if (context != null && !context.trim().isEmpty()) {
+            prompt.append("\n\nPrevious conversation context:\n").append(context);
+        }
+        prompt.append("\n\nUser message: ").append(userMessage);
+        prompt.append("\n\nPlease provide a helpful response:");
+        return prompt.toString();
+    }
+}
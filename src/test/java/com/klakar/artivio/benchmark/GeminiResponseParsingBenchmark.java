@@ -0,0 +1,117 @@
+package com.klakar.artivio.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.gemini.GeminiResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the reply text from a {@code generateContent} body delivered in network-sized buffers:
+ * joining the buffers into a String and calling {@code readTree} (previous behaviour) versus feeding
+ * them to {@link GeminiResponseParser}. The benchmark profile attaches the {@code gc} profiler, so
+ * {@code gc.alloc.rate.norm} shows the allocation per operation next to the latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeminiResponseParsingBenchmark {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Approximate length of the reply text; metadata stays the same size. */
+    @Param({"1000", "20000"})
+    public int textLength;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        String sentence = "Artivio keeps the conversation going with a \"quoted\" word and some unicode — like this. ";
+        StringBuilder text = new StringBuilder();
+        while (text.length() < textLength) {
+            text.append(sentence);
+        }
+
+        List<Map<String, Object>> safetyRatings = new ArrayList<>();
+        for (String category : List.of("HARM_CATEGORY_HARASSMENT", "HARM_CATEGORY_HATE_SPEECH",
+                "HARM_CATEGORY_SEXUALLY_EXPLICIT", "HARM_CATEGORY_DANGEROUS_CONTENT")) {
+            safetyRatings.add(Map.of("category", category, "probability", "NEGLIGIBLE",
+                    "probabilityScore", 0.03, "severity", "HARM_SEVERITY_NEGLIGIBLE", "severityScore", 0.02));
+        }
+        List<Map<String, Object>> citations = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            citations.add(Map.of("startIndex", i * 100, "endIndex", i * 100 + 80,
+                    "uri", "https://example.com/articles/" + i, "license", ""));
+        }
+        int half = text.length() / 2;
+        Map<String, Object> response = Map.of(
+                "candidates", List.of(Map.of(
+                        "content", Map.of(
+                                "role", "model",
+                                "parts", List.of(
+                                        Map.of("text", text.substring(0, half)),
+                                        Map.of("text", text.substring(half)))),
+                        "finishReason", "STOP",
+                        "index", 0,
+                        "safetyRatings", safetyRatings,
+                        "citationMetadata", Map.of("citationSources", citations))),
+                "usageMetadata", Map.of("promptTokenCount", 412, "candidatesTokenCount", textLength / 4,
+                        "totalTokenCount", 412 + textLength / 4),
+                "modelVersion", "gemini-1.5-flash-002"
+        );
+        body = objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public String readTree() throws IOException {
+        List<DataBuffer> buffers = split();
+        DataBuffer joined = bufferFactory.join(buffers);
+        String json = joined.toString(StandardCharsets.UTF_8);
+        JsonNode text = objectMapper.readTree(json)
+                .get("candidates").get(0).get("content").get("parts").get(0).get("text");
+        return text.asText().trim();
+    }
+
+    @Benchmark
+    public String streamingParser() throws IOException {
+        GeminiResponseParser parser = GeminiResponseParser.nonBlocking(objectMapper.getFactory());
+        for (DataBuffer buffer : split()) {
+            parser.feed(buffer);
+        }
+        return parser.finish().text().trim();
+    }
+
+    /** Mimics the decoder handing over the body as it was read from the socket. */
+    private List<DataBuffer> split() {
+        List<DataBuffer> buffers = new ArrayList<>(body.length / BUFFER_SIZE + 1);
+        for (int offset = 0; offset < body.length; offset += BUFFER_SIZE) {
+            buffers.add(bufferFactory.wrap(ByteBuffer.wrap(body, offset, Math.min(BUFFER_SIZE, body.length - offset))));
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,108 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.ai.vector.HnswIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 search: the HNSW graph versus a brute-force scan of the same off-heap vectors. Vectors are
+ * drawn around a few hundred random topic centres, which is closer to real text embeddings than
+ * isotropic noise (the worst case for any graph index). Recall@10 of the graph against the exact
+ * result is printed once the index is built, so latency can be read next to the accuracy it buys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class HnswIndexBenchmark {
+
+    private static final int DIMENSIONS = 256;
+    private static final int QUERIES = 256;
+    private static final int K = 10;
+    private static final int TOPICS = 500;
+
+    @Param({"10000", "100000"})
+    public int vectors;
+
+    private float[][] topics;
+    private HnswIndex<Integer> index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        topics = new float[TOPICS][DIMENSIONS];
+        for (float[] topic : topics) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                topic[i] = (float) random.nextGaussian();
+            }
+        }
+        index = new HnswIndex<>(DIMENSIONS, 16, 200, 64);
+        for (int i = 0; i < vectors; i++) {
+            index.add(randomVector(random), i);
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = randomVector(random);
+        }
+
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = ids(index.exactSearch(query, K, null));
+            Set<Integer> approximate = ids(index.search(query, K, null));
+            approximate.retainAll(exact);
+            found += approximate.size();
+        }
+        System.out.printf("%n  %d vectors: recall@%d = %.3f, off-heap %d MB%n",
+                vectors, K, (double) found / (QUERIES * K), index.vectorBytes() / (1024 * 1024));
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match<Integer>> hnsw() {
+        return index.search(nextQuery(), K, null);
+    }
+
+    @Benchmark
+    public List<HnswIndex.Match<Integer>> bruteForce() {
+        return index.exactSearch(nextQuery(), K, null);
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+
+    private static Set<Integer> ids(List<HnswIndex.Match<Integer>> matches) {
+        Set<Integer> ids = new HashSet<>();
+        matches.forEach(match -> ids.add(match.payload()));
+        return ids;
+    }
+
+    private float[] randomVector(Random random) {
+        float[] topic = topics[random.nextInt(TOPICS)];
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = topic[i] + (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,79 @@
+package com.klakar.artivio.benchmark;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.impl.Bm25AIContextServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieving context from the BM25 store for one conversation of {@code turns} turns drawn from a
+ * small art vocabulary, so that query terms hit many postings. {@code store} measures indexing a
+ * new turn into a full conversation, which also drops its oldest turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexicalSearchBenchmark {
+
+    private static final String[] WORDS = ("paint brush canvas oil watercolor acrylic glaze layer blend shadow "
+            + "light colour palette red blue yellow green warm cool sketch portrait landscape texture wash "
+            + "the a and of to in for with how should I my it is this").split(" ");
+
+    @Param({"100", "1000"})
+    public int turns;
+
+    private Bm25AIContextServiceImpl contextService;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        AIProperties.Context.Bm25 properties = new AIProperties.Context.Bm25();
+        properties.setMaxTurns(turns);
+        contextService = new Bm25AIContextServiceImpl(properties, new SimpleMeterRegistry());
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < turns; i++) {
+            contextService.storeConversationContext("c1", sentence(random, 30), i % 2 == 0 ? "Alice" : "Artivio AI");
+        }
+        queries = new String[64];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = sentence(random, 10);
+        }
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sentence.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sentence.toString();
+    }
+
+    @Benchmark
+    public List<ContextSnippet> search() {
+        return contextService.getContextSnippets("c1", queries[next++ & 63], 10);
+    }
+
+    @Benchmark
+    public void store() {
+        contextService.storeConversationContext("c1", queries[next++ & 63], "Alice");
+    }
+}
@@ -0,0 +1,32 @@
+package com.klakar.artivio.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "app.ai.usage.admins=admin")
+@AutoConfigureMockMvc
+class SecurityConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void onlyUsageAdminsCanReadAIUsage() throws Exception {
+        mockMvc.perform(get("/actuator/aiusage"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/aiusage/users/admin").with(user("alice")))
+                .andExpect(status().isForbidden());
+
+        mockMvc.perform(get("/actuator/aiusage").with(user("admin")))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/actuator/aiusage").param("order", "foo").with(user("admin")))
+                .andExpect(status().isBadRequest());
+    }
+}
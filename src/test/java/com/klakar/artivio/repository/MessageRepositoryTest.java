@@ -0,0 +1,60 @@
+package com.klakar.artivio.repository;
+
+import com.klakar.artivio.entity.Conversation;
+import com.klakar.artivio.entity.Message;
+import com.klakar.artivio.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+class MessageRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Test
+    void backfillSkipsSystemNoticesAndDeletedConversations() {
+        User alice = entityManager.persist(User.builder()
+                .username("alice").email("alice@example.com").password("secret").displayName("Alice").build());
+        Conversation live = entityManager.persist(conversation(alice, true));
+        Conversation deleted = entityManager.persist(conversation(alice, false));
+        Message question = entityManager.persist(message(live, alice, Message.MessageType.HUMAN));
+        Message answer = entityManager.persist(message(live, null, Message.MessageType.AI));
+        entityManager.persist(message(live, null, Message.MessageType.SYSTEM));
+        entityManager.persist(message(deleted, alice, Message.MessageType.HUMAN));
+        entityManager.flush();
+
+        assertThat(messageRepository.findMessagesWithoutEmbeddingsAfter(
+                0L, LocalDateTime.now().plusMinutes(1), PageRequest.of(0, 10)))
+                .extracting(Message::getId)
+                .containsExactly(question.getId(), answer.getId());
+    }
+
+    private static Conversation conversation(User user, boolean active) {
+        return Conversation.builder()
+                .conversationType(Conversation.ConversationType.HUMAN_TO_AI)
+                .createdBy(user)
+                .title("Glazing")
+                .isActive(active)
+                .build();
+    }
+
+    private static Message message(Conversation conversation, User sender, Message.MessageType type) {
+        return Message.builder()
+                .conversation(conversation)
+                .sender(sender)
+                .content("Some turn")
+                .messageType(type)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.generation.AIGeneration;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AIGenerationRegistryImplTest {
+
+    private AIProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private AIGenerationRegistryImpl registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AIProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new AIGenerationRegistryImpl(properties, new TokenEstimator(4.0), meterRegistry);
+    }
+
+    @Test
+    void newMessageCancelsPreviousGenerationInSameConversation() {
+        AIGeneration first = registry.start("alice", 1L);
+        Disposable firstSubscription = Flux.never().subscribe();
+        first.attach(firstSubscription);
+        AIGeneration otherConversation = registry.start("alice", 2L);
+
+        AIGeneration second = registry.start("alice", 1L);
+
+        assertThat(first.getCancelReason()).isEqualTo(AIGeneration.CancelReason.SUPERSEDED);
+        assertThat(firstSubscription.isDisposed()).isTrue();
+        assertThat(second.isCancelled()).isFalse();
+        assertThat(otherConversation.isCancelled()).isFalse();
+        assertThat(cancelled("superseded")).isEqualTo(1.0);
+    }
+
+    @Test
+    void concurrentPolicyKeepsEarlierGenerations() {
+        properties.getGeneration().setPolicy(AIProperties.ConcurrencyPolicy.CONCURRENT);
+
+        AIGeneration first = registry.start("alice", 1L);
+        registry.start("alice", 1L);
+
+        assertThat(first.isCancelled()).isFalse();
+        assertThat(cancelled("superseded")).isZero();
+    }
+
+    @Test
+    void disconnectCancelsOnlyThatUsersGenerationsAndEstimatesTokensSaved() {
+        // One completed 400-character response sets the expected length
+        AIGeneration completed = registry.start("alice", 1L);
+        completed.onChunk("x".repeat(400));
+        registry.finish(completed);
+
+        AIGeneration alice = registry.start("alice", 1L);
+        alice.onChunk("x".repeat(100));
+        AIGeneration bob = registry.start("bob", 2L);
+
+        assertThat(registry.cancelUserGenerations("alice", AIGeneration.CancelReason.DISCONNECTED)).isEqualTo(1);
+
+        assertThat(alice.isCancelled()).isTrue();
+        assertThat(bob.isCancelled()).isFalse();
+        assertThat(cancelled("disconnected")).isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.generations.tokens.saved").tag("reason", "disconnected")
+                .summary().totalAmount()).isEqualTo(75.0);
+    }
+
+    @Test
+    void cancellingBeforeAttachDisposesSubscriptionOnAttach() {
+        AIGeneration generation = registry.start("alice", 1L);
+        registry.cancelUserGenerations("alice", AIGeneration.CancelReason.DISCONNECTED);
+
+        Disposable subscription = Flux.interval(Duration.ofHours(1)).subscribe();
+        generation.attach(subscription);
+
+        assertThat(subscription.isDisposed()).isTrue();
+        registry.finish(generation);
+        assertThat(meterRegistry.get("ai.generations.active").gauge().value()).isZero();
+    }
+
+    private double cancelled(String reason) {
+        return meterRegistry.get("ai.generations.cancelled").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,56 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25AIContextServiceImplTest {
+
+    private final Bm25AIContextServiceImpl contextService = new Bm25AIContextServiceImpl(
+            new AIProperties.Context.Bm25(), new SimpleMeterRegistry());
+
+    @Test
+    void returnsTheTurnsOfTheConversationThatMatchTheQuery() {
+        contextService.storeConversationContext("c1", "Which brushes work best for watercolor washes?", "Alice");
+        contextService.storeConversationContext("c1", "I had pasta for lunch today", "Alice");
+        contextService.storeConversationContext("c1", "Try a large round brush for watercolor", "Artivio AI");
+        contextService.storeConversationContext("c2", "Watercolor brushes are on sale", "Bob");
+
+        List<ContextSnippet> snippets = contextService.getContextSnippets("c1", "watercolor brushes", 5);
+
+        assertThat(snippets).extracting(ContextSnippet::text)
+                .containsExactly("Which brushes work best for watercolor washes?", "Try a large round brush for watercolor");
+        assertThat(snippets).allSatisfy(snippet -> assertThat(snippet.score()).isPositive());
+        assertThat(contextService.getRelevantContext("c1", "pasta", 5)).isEqualTo("[Alice]: I had pasta for lunch today");
+    }
+
+    @Test
+    void staysWithinTheByteBudget() {
+        AIProperties.Context.Bm25 properties = new AIProperties.Context.Bm25();
+        properties.setMaxTurns(20);
+        properties.setMaxBytes(256 * 1024);
+        Bm25AIContextServiceImpl bounded = new Bm25AIContextServiceImpl(properties, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 20_000; i++) {
+            bounded.storeConversationContext("c" + (i % 500), "Turn " + i + " about blending skin tones in oil", "Alice");
+        }
+        bounded.cleanUp();
+
+        assertThat(bounded.bytes()).isPositive().isLessThanOrEqualTo(properties.getMaxBytes());
+        assertThat(bounded.conversations()).isLessThan(500);
+    }
+
+    @Test
+    void forgetsClearedConversations() {
+        contextService.storeConversationContext("c1", "Hello there", "Alice");
+        contextService.clearConversationContext("c1");
+
+        assertThat(contextService.getContextSnippets("c1", "hello", 5)).isEmpty();
+        assertThat(contextService.getRelevantContext("other", "hello", 5)).isEmpty();
+    }
+}
@@ -0,0 +1,145 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingAIServiceImplTest {
+
+    private final AIService delegate = mock(AIService.class);
+    private final AIProperties.Cache properties = new AIProperties.Cache();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        when(delegate.generate(anyString(), anyString())).thenReturn(Mono.just("Use a wet brush"));
+        when(delegate.streamResponse(anyString(), anyString())).thenReturn(Flux.just("Use", " a", " wet", " brush "));
+    }
+
+    @Test
+    void answersRepeatedPromptsFromTheLocalTier() {
+        CachingAIServiceImpl cache = createCache(null);
+
+        assertThat(cache.generate("How do I blend?", "").block()).isEqualTo("Use a wet brush");
+        // Case and whitespace do not change the key
+        assertThat(cache.generate("  how do I   BLEND? ", "").block()).isEqualTo("Use a wet brush");
+        assertThat(cache.generate("How do I glaze?", "").block()).isEqualTo("Use a wet brush");
+
+        verify(delegate, times(2)).generate(anyString(), anyString());
+        assertThat(gets("local", "hit")).isEqualTo(1);
+        assertThat(gets("local", "miss")).isEqualTo(2);
+    }
+
+    @Test
+    void expiresLocalEntriesAfterTheirTtl() {
+        properties.getLocal().setTtl(Duration.ofMinutes(5));
+        CachingAIServiceImpl cache = createCache(null);
+
+        cache.generate("How do I blend?", "").block();
+        nanos.addAndGet(Duration.ofMinutes(4).toNanos());
+        cache.generate("How do I blend?", "").block();
+        verify(delegate, times(1)).generate(anyString(), anyString());
+
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        cache.generate("How do I blend?", "").block();
+        verify(delegate, times(2)).generate(anyString(), anyString());
+    }
+
+    @Test
+    void fallsBackToRedisAndPromotesHitsToTheLocalTier() {
+        ReactiveValueOperations<String, String> redis = redisReturning(Mono.just("From another node"));
+        CachingAIServiceImpl cache = createCache(redis);
+
+        assertThat(cache.generate("How do I blend?", "").block()).isEqualTo("From another node");
+        assertThat(cache.generate("How do I blend?", "").block()).isEqualTo("From another node");
+
+        verify(delegate, never()).generate(anyString(), anyString());
+        verify(redis, times(1)).get(anyString());
+        assertThat(gets("redis", "hit")).isEqualTo(1);
+        assertThat(gets("local", "hit")).isEqualTo(1);
+    }
+
+    @Test
+    void generatesWhenRedisFailsAndStoresTheAnswerThere() {
+        ReactiveValueOperations<String, String> redis = redisReturning(Mono.error(new IllegalStateException("down")));
+        when(redis.set(anyString(), anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+        CachingAIServiceImpl cache = createCache(redis);
+
+        assertThat(cache.generate("How do I blend?", "").block()).isEqualTo("Use a wet brush");
+
+        assertThat(gets("redis", "miss")).isEqualTo(1);
+        verify(redis).set(anyString(), eq("Use a wet brush"), eq(properties.getRedis().getTtl()));
+    }
+
+    @Test
+    void replaysCompletedStreamsAsOneChunk() {
+        CachingAIServiceImpl cache = createCache(null);
+
+        StepVerifier.create(cache.streamResponse("How do I blend?", ""))
+                .expectNext("Use", " a", " wet", " brush ")
+                .verifyComplete();
+        StepVerifier.create(cache.streamResponse("How do I blend?", ""))
+                .expectNext("Use a wet brush")
+                .verifyComplete();
+
+        verify(delegate, times(1)).streamResponse(anyString(), anyString());
+    }
+
+    @Test
+    void doesNotCacheFailedStreams() {
+        when(delegate.streamResponse(anyString(), anyString()))
+                .thenReturn(Flux.concat(Flux.just("Use"), Flux.error(new IllegalStateException("reset"))));
+        CachingAIServiceImpl cache = createCache(null);
+
+        StepVerifier.create(cache.streamResponse("How do I blend?", ""))
+                .expectNext("Use")
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(cache.streamResponse("How do I blend?", ""))
+                .expectNext("Use")
+                .verifyError(IllegalStateException.class);
+
+        verify(delegate, times(2)).streamResponse(anyString(), anyString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReactiveValueOperations<String, String> redisReturning(Mono<String> lookup) {
+        properties.getRedis().setEnabled(true);
+        ReactiveValueOperations<String, String> redis = mock(ReactiveValueOperations.class);
+        when(redis.get(anyString())).thenReturn(lookup);
+        return redis;
+    }
+
+    private CachingAIServiceImpl createCache(ReactiveValueOperations<String, String> redis) {
+        ReactiveStringRedisTemplate redisTemplate = null;
+        if (redis != null) {
+            redisTemplate = mock(ReactiveStringRedisTemplate.class);
+            when(redisTemplate.opsForValue()).thenReturn(redis);
+        }
+        return new CachingAIServiceImpl(delegate, "model-a", 0.7, properties, redisTemplate, meterRegistry, nanos::get);
+    }
+
+    private double gets(String tier, String result) {
+        return meterRegistry.get("ai.response.cache.gets").tag("tier", tier).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,163 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.entity.ConversationSummary;
+import com.klakar.artivio.repository.ConversationSummaryRepository;
+import com.klakar.artivio.service.AIService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationSummaryServiceImplTest {
+
+    private final Map<String, ConversationSummary> summaries = new HashMap<>();
+    private final ConversationSummaryRepository repository = mock(ConversationSummaryRepository.class);
+    private StubAIService aiService;
+    private ConversationSummaryServiceImpl summaryService;
+    private FallbackAIContextServiceImpl contextService;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findByConversationId(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(summaries.get(invocation.<String>getArgument(0))));
+        when(repository.save(any(ConversationSummary.class))).thenAnswer(invocation -> {
+            ConversationSummary summary = invocation.getArgument(0);
+            summaries.put(summary.getConversationId(), summary);
+            return summary;
+        });
+
+        AIProperties aiProperties = new AIProperties();
+        aiProperties.getSummary().setRecentTurns(4);
+        aiProperties.getSummary().setThreshold(6);
+
+        aiService = new StubAIService();
+        // Run folds inline so the test sees their effect immediately
+        summaryService = new ConversationSummaryServiceImpl(repository, aiService, Runnable::run, aiProperties);
+        contextService = new FallbackAIContextServiceImpl(summaryService, aiProperties.getSummary(),
+                aiProperties.getContext().getMemory(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void foldsOlderTurnsIntoTheSummaryOncePastTheThreshold() {
+        storeTurns(1, 6);
+        assertThat(aiService.inputs).isEmpty();
+
+        storeTurns(7, 7);
+
+        assertThat(aiService.inputs).hasSize(1);
+        assertThat(aiService.inputs.get(0)).contains("turn 1", "turn 3").doesNotContain("turn 4");
+        assertThat(summaries.get("c1").getSummarizedTurns()).isEqualTo(3);
+
+        String context = contextService.getRelevantContext("c1", "anything", 10);
+        assertThat(context).startsWith("[Summary of earlier conversation]: summary #1");
+        assertThat(context).contains("turn 4", "turn 7").doesNotContain("turn 3");
+    }
+
+    @Test
+    void keepsContextBoundedForLongConversations() {
+        storeTurns(1, 200);
+
+        List<ContextSnippet> snippets = contextService.getContextSnippets("c1", "anything", 20);
+
+        // One summary plus at most `threshold` raw turns, however long the conversation
+        assertThat(snippets).hasSizeLessThanOrEqualTo(7);
+        assertThat(snippets.get(0).text()).startsWith("summary #");
+        assertThat(summaries.get("c1").getSummarizedTurns() + snippets.size() - 1).isEqualTo(200);
+        // Each fold builds on the previous summary rather than starting over
+        assertThat(aiService.inputs.get(aiService.inputs.size() - 1)).startsWith("Current summary:");
+    }
+
+    @Test
+    void retriesTurnsFromAFailedFold() {
+        aiService.failNext = true;
+        storeTurns(1, 7);
+        assertThat(summaries).isEmpty();
+
+        storeTurns(8, 10);
+
+        assertThat(aiService.inputs).hasSize(2);
+        assertThat(aiService.inputs.get(1)).contains("turn 1", "turn 6");
+        assertThat(summaries.get("c1").getSummarizedTurns()).isEqualTo(6);
+    }
+
+    @Test
+    void doesNotSaveTheSummaryOfAConversationClearedDuringTheFold() {
+        aiService.whileGenerating = () -> summaryService.clearSummary("c1");
+
+        storeTurns(1, 7);
+
+        assertThat(aiService.inputs).hasSize(1);
+        verify(repository, never()).save(any(ConversationSummary.class));
+    }
+
+    @Test
+    void dropsTheTurnsOfAFailedFoldOfAClearedConversation() {
+        aiService.failNext = true;
+        aiService.whileGenerating = () -> summaryService.clearSummary("c1");
+        storeTurns(1, 7);
+        aiService.whileGenerating = null;
+
+        storeTurns(8, 10);
+
+        assertThat(aiService.inputs).hasSize(2);
+        assertThat(aiService.inputs.get(1)).contains("turn 4", "turn 6").doesNotContain("turn 3");
+    }
+
+    private void storeTurns(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            contextService.storeConversationContext("c1", "turn " + i, i % 2 == 0 ? "Artivio AI" : "Alice");
+        }
+    }
+
+    private static class StubAIService implements AIService {
+
+        private final List<String> inputs = new ArrayList<>();
+        private boolean failNext;
+        private Runnable whileGenerating;
+
+        @Override
+        public Mono<String> generate(String prompt, String context) {
+            inputs.add(context);
+            if (whileGenerating != null) {
+                whileGenerating.run();
+            }
+            if (failNext) {
+                failNext = false;
+                return Mono.error(new IllegalStateException("provider down"));
+            }
+            return Mono.just("summary #" + inputs.size());
+        }
+
+        @Override
+        public Flux<String> streamResponse(String prompt, String context) {
+            return generate(prompt, context).flux();
+        }
+
+        @Override
+        public boolean isConfigured() {
+            return true;
+        }
+
+        @Override
+        public String getModelName() {
+            return "stub";
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FallbackAIContextServiceImplTest {
+
+    private final AIProperties properties = new AIProperties();
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void keepsTheMostRecentTurnsInOrder() {
+        FallbackAIContextServiceImpl store = store(1024 * 1024);
+        for (int i = 1; i <= 10; i++) {
+            store.storeConversationContext("c1", "turn " + i + " — ✓", i % 2 == 0 ? "Artivio AI" : "Zoë");
+        }
+
+        assertThat(store.getContextSnippets("c1", "anything", 10))
+                .extracting(ContextSnippet::text)
+                .containsExactly("turn 7 — ✓", "turn 8 — ✓", "turn 9 — ✓", "turn 10 — ✓");
+        assertThat(store.getContextSnippets("c1", "anything", 2))
+                .extracting(ContextSnippet::sender)
+                .containsExactly("Zoë", "Artivio AI");
+        assertThat(store.getRelevantContext("c1", "anything", 1)).isEqualTo("[Artivio AI]: turn 10 — ✓");
+    }
+
+    @Test
+    void dropsIdleConversations() {
+        FallbackAIContextServiceImpl store = store(1024 * 1024);
+        store.storeConversationContext("idle", "hello", "Alice");
+        store.storeConversationContext("active", "hello", "Bob");
+
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+        store.getContextSnippets("active", "anything", 5);
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+        store.cleanUp();
+
+        assertThat(store.getContextSnippets("idle", "anything", 5)).isEmpty();
+        assertThat(store.getContextSnippets("active", "anything", 5)).hasSize(1);
+        assertThat(store.conversations()).isEqualTo(1);
+    }
+
+    @Test
+    void staysWithinTheByteBudgetUnderConcurrentWriters() throws Exception {
+        long budget = 2 * 1024 * 1024;
+        FallbackAIContextServiceImpl store = store(budget);
+        String text = "x".repeat(200);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                writers.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom();
+                    for (int i = 0; i < 50_000; i++) {
+                        // One conversation keeps talking while a million others each say a little
+                        String conversationId = i % 50 == 0 ? "hot" : "c" + random.nextInt(1_000_000);
+                        store.storeConversationContext(conversationId, text, "Alice");
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        store.cleanUp();
+
+        assertThat(store.bytes()).isPositive().isLessThanOrEqualTo(budget);
+        assertThat(store.conversations()).isLessThan(budget / 200);
+        assertThat(store.getContextSnippets("hot", "anything", 10)).hasSize(4);
+    }
+
+    private FallbackAIContextServiceImpl store(long maxBytes) {
+        properties.getSummary().setRecentTurns(4);
+        properties.getContext().getMemory().setMaxBytes(maxBytes);
+        properties.getContext().getMemory().setIdleTimeout(Duration.ofMinutes(30));
+        return new FallbackAIContextServiceImpl(null, properties.getSummary(), properties.getContext().getMemory(),
+                new SimpleMeterRegistry(), nanos::get);
+    }
+}
@@ -0,0 +1,349 @@
+package com.klakar.artivio.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.AIPrompt;
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.scheduling.AIRequestContext;
+import com.klakar.artivio.ai.usage.AIUsage;
+import com.klakar.artivio.ai.usage.AIUsageTracker;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.config.GeminiProperties;
+import com.klakar.artivio.support.GeminiStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class GeminiAIServiceImplTest {
+
+    private GeminiStubServer stub;
+    private GeminiProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private AIUsageTracker usageTracker;
+    private GeminiAIServiceImpl aiService;
+
+    @BeforeEach
+    void setUp() {
+        stub = GeminiStubServer.start();
+        properties = new GeminiProperties();
+        properties.setApiKey("test-key");
+        properties.setBaseUrl(stub.baseUrl());
+        aiService = createService();
+    }
+
+    private GeminiAIServiceImpl createService() {
+        meterRegistry = new SimpleMeterRegistry();
+        usageTracker = new AIUsageTracker(new AIProperties.Usage());
+        return new GeminiAIServiceImpl(
+                WebClient.builder().baseUrl(stub.baseUrl()).build(),
+                new ObjectMapper(),
+                properties,
+                new TokenEstimator(4.0),
+                usageTracker,
+                meterRegistry
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    void streamResponseForwardsEachChunkAsItArrives() {
+        stub.respondWith("Hello", " there,", " friend!").chunkDelayMillis(50);
+
+        StepVerifier.create(aiService.streamResponse("hi", "[Alice]: earlier message"))
+                .expectNext("Hello")
+                .expectNext(" there,")
+                .expectNext(" friend!")
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+
+        assertThat(stub.lastRequestUri()).contains(":streamGenerateContent").contains("alt=sse");
+        assertThat(stub.lastRequestBody()).contains("earlier message");
+    }
+
+    @Test
+    void generateResponseReturnsTheWholeText() {
+        stub.respondWith("Hello", " there.");
+
+        assertThat(aiService.generateResponse("hi").join()).isEqualTo("Hello there.");
+        assertThat(stub.lastRequestUri()).contains(":generateContent");
+    }
+
+    @Test
+    void recordsEstimatedAndReportedPromptTokens() {
+        stub.respondWith("Hello", " there,", " friend!");
+
+        StepVerifier.create(aiService.streamResponse("hi", "[Alice]: earlier message"))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        assertThat(meterRegistry.get("ai.prompt.tokens").tag("source", "actual").summary().totalAmount())
+                .isEqualTo(42);
+        assertThat(meterRegistry.get("ai.prompt.tokens").tag("source", "estimated").summary().totalAmount())
+                .isGreaterThan(100);
+        assertThat(meterRegistry.get("ai.prompt.tokens.estimate.ratio").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    void recordsUpstreamTimingUsageAndFinishReason() {
+        stub.respondWith("Hello", " there,", " friend!").chunkDelayMillis(50);
+
+        StepVerifier.create(aiService.streamResponse(new AIPrompt("c1", List.of(), "hi"))
+                        .contextWrite(AIRequestContext.interactive("alice")))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        assertThat(meterRegistry.get("ai.provider.ttfb").tag("mode", "stream").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.provider.duration").tag("mode", "stream").tag("outcome", "success")
+                .timer().totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(100);
+        assertThat(meterRegistry.get("ai.completion.tokens").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("ai.finish.reasons").tag("reason", "stop").counter().count()).isEqualTo(1);
+
+        AIUsage alice = usageTracker.user("alice").orElseThrow();
+        assertThat(alice.requests()).isEqualTo(1);
+        assertThat(alice.promptTokens()).isEqualTo(42);
+        assertThat(alice.completionTokens()).isEqualTo(2);
+        assertThat(alice.avgUpstreamMillis()).isGreaterThanOrEqualTo(100);
+        assertThat(usageTracker.conversation("c1")).get().extracting(AIUsage::totalTokens).isEqualTo(44L);
+    }
+
+    @Test
+    void concurrentIdenticalRequestsShareOneUpstreamCall() {
+        stub.respondWith("Shared answer.").responseDelayMillis(300);
+
+        List<String> responses = Flux.range(0, 5)
+                .flatMap(i -> aiService.generate(i % 2 == 0 ? "What can you do?" : "  what can YOU do? ", null))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(responses).hasSize(5).containsOnly("Shared answer.");
+        assertThat(stub.requestCount()).isEqualTo(1);
+        assertThat(meterRegistry.counter("ai.requests.coalesced", "model", "gemini-1.5-flash").count()).isEqualTo(4);
+
+        // Once the shared call has completed, the next request goes upstream again
+        aiService.generate("What can you do?", null).block(Duration.ofSeconds(10));
+        assertThat(stub.requestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void identicalChatStreamsShareOneUpstreamCallAndReplayMissedChunks() {
+        stub.respondWith("Shared", " streamed", " answer.").chunkDelayMillis(100);
+        AIPrompt prompt = new AIPrompt("c1", List.of(), "What can you do?");
+
+        List<String> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<List<String>> first = aiService.streamResponse(prompt)
+                .doOnNext(received::add)
+                .collectList()
+                .toFuture();
+        await().atMost(Duration.ofSeconds(5)).until(() -> !received.isEmpty());
+        // Joins after the first chunk went out, and still gets every chunk
+        List<String> late = aiService.streamResponse(new AIPrompt("c2", List.of(), " what can YOU do?"))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(first).succeedsWithin(Duration.ofSeconds(10))
+                .isEqualTo(List.of("Shared", " streamed", " answer."));
+        assertThat(late).containsExactly("Shared", " streamed", " answer.");
+        assertThat(stub.requestCount()).isEqualTo(1);
+        assertThat(meterRegistry.counter("ai.requests.coalesced", "model", "gemini-1.5-flash").count()).isEqualTo(1);
+
+        // Once the shared stream has completed, the next request goes upstream again
+        aiService.streamResponse(prompt).blockLast(Duration.ofSeconds(10));
+        assertThat(stub.requestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void cancellingOneWaiterDoesNotCancelTheSharedCall() {
+        stub.respondWith("Still delivered.").responseDelayMillis(300);
+
+        Disposable cancelled = aiService.generate("hello", null).subscribe();
+        CompletableFuture<String> survivor = aiService.generate("hello", null).toFuture();
+        cancelled.dispose();
+
+        assertThat(survivor).succeedsWithin(Duration.ofSeconds(10)).isEqualTo("Still delivered.");
+        assertThat(stub.requestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rateLimitingShrinksTheConcurrencyLimit() {
+        properties.getLimiter().setInitialLimit(20);
+        properties.getCircuitBreaker().setEnabled(false);
+        aiService = createService();
+        stub.respondWithStatus(429);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(aiService.generateResponse("prompt " + i).join())
+                    .isEqualTo("I'm getting too many requests right now. Please wait a moment and try again.");
+        }
+
+        // 20 * 0.7 * 0.7 * 0.7
+        assertThat(meterRegistry.get("ai.limiter.limit").gauge().value()).isEqualTo(6.0);
+    }
+
+    @Test
+    void limiterRejectsRequestsBeyondTheCurrentLimit() {
+        properties.getLimiter().setInitialLimit(1);
+        properties.getLimiter().setMaxLimit(1);
+        aiService = createService();
+        stub.respondWith("slow answer").responseDelayMillis(500);
+
+        CompletableFuture<String> admitted = aiService.generateResponse("first");
+        String rejected = aiService.generateResponse("second").join();
+
+        assertThat(rejected).isEqualTo("I'm getting too many requests right now. Please wait a moment and try again.");
+        assertThat(admitted).succeedsWithin(Duration.ofSeconds(10)).isEqualTo("slow answer");
+        assertThat(meterRegistry.get("ai.limiter.rejections").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingTheProvider() {
+        properties.getCircuitBreaker().setSlidingWindowSize(4);
+        properties.getCircuitBreaker().setMinimumNumberOfCalls(4);
+        aiService = createService();
+        stub.respondWithStatus(503).responseDelayMillis(50);
+
+        for (int i = 0; i < 4; i++) {
+            aiService.generateResponse("prompt " + i).join();
+        }
+        assertThat(stub.requestCount()).isEqualTo(4);
+        assertThat(meterRegistry.get("ai.circuitbreaker.state").gauge().value()).isEqualTo(2.0);
+
+        StepVerifier.create(aiService.streamResponse("one more", null))
+                .expectErrorMessage("The AI service is temporarily unavailable. Please try again in a moment.")
+                .verify(Duration.ofSeconds(5));
+        assertThat(stub.requestCount()).isEqualTo(4);
+    }
+
+    @Test
+    void promptHistoryIsSentAsTurnsUnderASystemInstruction() throws Exception {
+        stub.respondWith("Doing well.");
+
+        aiService.generate(new AIPrompt("c1", List.of(
+                new ContextSnippet("hi", "Alice", 1, 0),
+                new ContextSnippet("Hello Alice!", "Artivio AI", 2, 0)
+        ), "How are you?")).block(Duration.ofSeconds(10));
+
+        JsonNode body = new ObjectMapper().readTree(stub.lastRequestBody());
+        assertThat(body.at("/systemInstruction/parts/0/text").asText()).startsWith("You are Artivio AI");
+        assertThat(body.get("contents")).hasSize(3);
+        assertThat(body.at("/contents/0/parts/0/text").asText()).isEqualTo("[Alice]: hi");
+        assertThat(body.at("/contents/1/role").asText()).isEqualTo("model");
+        assertThat(body.at("/contents/1/parts/0/text").asText()).isEqualTo("Hello Alice!");
+        assertThat(body.at("/contents/2/parts/0/text").asText()).isEqualTo("How are you?");
+    }
+
+    @Test
+    void longConversationsReuseCachedContent() {
+        enableContextCache();
+        List<ContextSnippet> history = new ArrayList<>(List.of(
+                new ContextSnippet("x".repeat(400), "Alice", 1, 0),
+                new ContextSnippet("A long answer.", "Artivio AI", 2, 0)));
+
+        // The first turn past the threshold is sent in full while the cache is created
+        StepVerifier.create(aiService.streamResponse(new AIPrompt("c1", history, "first")))
+                .expectNextCount(1)
+                .verifyComplete();
+        assertThat(stub.lastRequestBody()).doesNotContain("cachedContent").contains("xxxx");
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContents().size() == 1);
+
+        history.add(new ContextSnippet("first", "Alice", 3, 0));
+        history.add(new ContextSnippet("Short reply.", "Artivio AI", 4, 0));
+        StepVerifier.create(aiService.streamResponse(new AIPrompt("c1", history, "second")))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertThat(stub.lastRequestBody())
+                .contains("\"cachedContent\":\"cachedContents/stub-1\"")
+                .doesNotContain("xxxx")
+                .doesNotContain("systemInstruction")
+                .contains("Short reply.");
+        assertThat(meterRegistry.get("ai.gemini.context.cache.lookups").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("ai.prompt.tokens").tag("source", "cached").summary().totalAmount())
+                .isEqualTo(30);
+    }
+
+    @Test
+    void resendsTheFullConversationWhenCachedContentIsGone() {
+        enableContextCache();
+        List<ContextSnippet> history = List.of(
+                new ContextSnippet("x".repeat(400), "Alice", 1, 0),
+                new ContextSnippet("A long answer.", "Artivio AI", 2, 0));
+        aiService.generate(new AIPrompt("c1", history, "first")).block(Duration.ofSeconds(10));
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContents().size() == 1);
+        stub.forgetCachedContents();
+
+        String response = aiService.generate(new AIPrompt("c1", history, "second")).block(Duration.ofSeconds(10));
+
+        assertThat(response).isEqualTo("Hello from the stub.");
+        assertThat(stub.requestCount()).isEqualTo(3);
+        assertThat(stub.lastRequestBody()).doesNotContain("cachedContent").contains("xxxx");
+        assertThat(meterRegistry.get("ai.gemini.context.cache.events").tag("event", "invalidated").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void extendsCachesUsedCloseToExpiryAndDeletesReplacedOnes() {
+        enableContextCache();
+        // The stub's caches live ten minutes, so every use is close to expiry
+        properties.getContextCache().setRefreshBefore(Duration.ofMinutes(20));
+        List<ContextSnippet> history = new ArrayList<>(List.of(
+                new ContextSnippet("x".repeat(400), "Alice", 1, 0),
+                new ContextSnippet("A long answer.", "Artivio AI", 2, 0)));
+        aiService.generate(new AIPrompt("c1", history, "first")).block(Duration.ofSeconds(10));
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContents().size() == 1);
+
+        // Using the cache extends it; the uncached tail is long enough for a longer cache
+        history.add(new ContextSnippet("y".repeat(400), "Alice", 3, 0));
+        history.add(new ContextSnippet("Another answer.", "Artivio AI", 4, 0));
+        aiService.generate(new AIPrompt("c1", history, "second")).block(Duration.ofSeconds(10));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContentsCreated() == 2
+                && stub.cachedContents().equals(Set.of("cachedContents/stub-2")));
+        assertThat(stub.cachedContentsRefreshed()).isEqualTo(1);
+        assertThat(meterRegistry.get("ai.gemini.context.cache.events").tag("event", "refreshed").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void deletesTheCacheOfAForgottenConversation() {
+        enableContextCache();
+        List<ContextSnippet> history = List.of(
+                new ContextSnippet("x".repeat(400), "Alice", 1, 0),
+                new ContextSnippet("A long answer.", "Artivio AI", 2, 0));
+        aiService.generate(new AIPrompt("c1", history, "first")).block(Duration.ofSeconds(10));
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContents().size() == 1);
+
+        aiService.forgetConversation("c1");
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> stub.cachedContents().isEmpty());
+        aiService.generate(new AIPrompt("c1", history, "second")).block(Duration.ofSeconds(10));
+        assertThat(stub.lastRequestBody()).doesNotContain("cachedContent").contains("xxxx");
+    }
+
+    private void enableContextCache() {
+        properties.getContextCache().setEnabled(true);
+        properties.getContextCache().setMinTokens(100);
+        aiService = createService();
+    }
+}
@@ -0,0 +1,110 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.ai.embedding.HashingEmbeddingService;
+import com.klakar.artivio.ai.vector.HnswIndex;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswAIContextServiceImplTest {
+
+    private final HnswAIContextServiceImpl contextService = new HnswAIContextServiceImpl(
+            new HashingEmbeddingService(256), new AIProperties.Context.Hnsw(), new SimpleMeterRegistry());
+
+    @Test
+    void returnsTheMostSimilarTurnsOfTheConversation() {
+        contextService.storeConversationContext("c1", "Which brushes work best for watercolor washes?", "Alice");
+        contextService.storeConversationContext("c1", "I had pasta for lunch today", "Alice");
+        contextService.storeConversationContext("c1", "Try a large round brush for watercolor", "Artivio AI");
+        contextService.storeConversationContext("c2", "Watercolor brushes are on sale", "Bob");
+
+        List<ContextSnippet> snippets = contextService.getContextSnippets("c1", "watercolor brush advice", 2);
+
+        assertThat(snippets).extracting(ContextSnippet::text)
+                .containsExactlyInAnyOrder(
+                        "Which brushes work best for watercolor washes?",
+                        "Try a large round brush for watercolor");
+        assertThat(snippets).allSatisfy(snippet -> assertThat(snippet.score()).isPositive());
+    }
+
+    @Test
+    void searchesTheGraphOnceAConversationOutgrowsTheScanLimit() {
+        AIProperties.Context.Hnsw properties = new AIProperties.Context.Hnsw();
+        properties.setExactScanLimit(2);
+        HnswAIContextServiceImpl graphSearching = new HnswAIContextServiceImpl(
+                new HashingEmbeddingService(256), properties, new SimpleMeterRegistry());
+        for (int i = 0; i < 20; i++) {
+            graphSearching.storeConversationContext("c" + (i % 4), "Unrelated turn number " + i, "Alice");
+        }
+        graphSearching.storeConversationContext("c1", "Cadmium red mixes well with ultramarine", "Alice");
+        graphSearching.storeConversationContext("c2", "Cadmium red is toxic, be careful", "Bob");
+
+        List<ContextSnippet> snippets = graphSearching.getContextSnippets("c1", "cadmium red", 1);
+
+        assertThat(snippets).extracting(ContextSnippet::text)
+                .containsExactly("Cadmium red mixes well with ultramarine");
+    }
+
+    @Test
+    void clearedConversationsDisappearAtOnceAndAreCompactedAway() {
+        AIProperties.Context.Hnsw properties = new AIProperties.Context.Hnsw();
+        properties.setSegmentSize(50);
+        properties.setCompactionInterval(Duration.ZERO);
+        HnswAIContextServiceImpl segmented = new HnswAIContextServiceImpl(
+                new HashingEmbeddingService(64), properties, new SimpleMeterRegistry());
+        for (int i = 0; i < 200; i++) {
+            segmented.storeConversationContext("c" + (i % 4), "Turn " + i + " about glazing oil paint", "Alice");
+        }
+        assertThat(segmented.segmentCount()).isEqualTo(4);
+
+        segmented.clearConversationContext("c1");
+        segmented.clearConversationContext("c2");
+
+        assertThat(segmented.getContextSnippets("c1", "glazing", 5)).isEmpty();
+        assertThat(segmented.tombstones()).isEqualTo(100);
+        assertThat(segmented.tombstoneRatio()).isEqualTo(0.5);
+
+        segmented.compact();
+
+        assertThat(segmented.nodes()).isEqualTo(100);
+        assertThat(segmented.tombstones()).isZero();
+        assertThat(segmented.getContextSnippets("c1", "glazing", 5)).isEmpty();
+        assertThat(segmented.getContextSnippets("c3", "glazing", 100))
+                .hasSize(50)
+                .allSatisfy(snippet -> assertThat(Integer.parseInt(snippet.text().split(" ")[1]) % 4).isEqualTo(3));
+        segmented.close();
+    }
+
+    @Test
+    void keepsOneSlicePerSegmentWhenALateInsertLandsInASealedSegment() {
+        HnswAIContextServiceImpl.Partition partition = new HnswAIContextServiceImpl.Partition();
+        HnswIndex<HnswAIContextServiceImpl.Turn> sealed = new HnswIndex<>(4, 8, 16, 16);
+        HnswIndex<HnswAIContextServiceImpl.Turn> next = new HnswIndex<>(4, 8, 16, 16);
+        HnswIndex<HnswAIContextServiceImpl.Turn> compacted = new HnswIndex<>(4, 8, 16, 16);
+
+        partition.add(sealed, 0);
+        partition.add(next, 0);
+        partition.add(sealed, 1);
+        assertThat(partition.turns(sealed)).isEqualTo(2);
+
+        assertThat(partition.move(sealed, compacted, new int[] {0, 1})).isTrue();
+
+        assertThat(partition.turns(sealed)).isZero();
+        assertThat(partition.turns(compacted)).isEqualTo(2);
+        assertThat(partition.turns(next)).isEqualTo(1);
+    }
+
+    @Test
+    void returnsNothingForUnknownConversations() {
+        contextService.storeConversationContext("c1", "Hello there", "Alice");
+
+        assertThat(contextService.getContextSnippets("other", "hello", 5)).isEmpty();
+        assertThat(contextService.getRelevantContext("other", "hello", 5)).isEmpty();
+    }
+}
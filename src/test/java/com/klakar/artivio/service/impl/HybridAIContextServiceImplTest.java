@@ -0,0 +1,71 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.context.ContextSnippet;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.service.AIContextService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HybridAIContextServiceImplTest {
+
+    private final AIProperties properties = new AIProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void mergesTheRetrieversAndClearsThemAll() {
+        FallbackAIContextServiceImpl recent = new FallbackAIContextServiceImpl(null, properties.getSummary(),
+                properties.getContext().getMemory(), meterRegistry);
+        Bm25AIContextServiceImpl lexical = new Bm25AIContextServiceImpl(properties.getContext().getBm25(), meterRegistry);
+        HybridAIContextServiceImpl hybrid = new HybridAIContextServiceImpl(List.of(
+                new HybridAIContextServiceImpl.Retriever("memory", recent, 1.0),
+                new HybridAIContextServiceImpl.Retriever("bm25", lexical, 1.0)),
+                properties.getContext().getHybrid(), meterRegistry);
+
+        hybrid.storeConversationContext("c1", "My palette is titanium white, ultramarine and burnt sienna", "Alice");
+        for (int i = 0; i < 30; i++) {
+            hybrid.storeConversationContext("c1", "Working on layer " + i + " of the seascape", "Alice");
+        }
+
+        // Enough room for every turn, so the result does not depend on how the turns rank;
+        // the reranker's ordering is covered by ContextRerankerTest
+        List<ContextSnippet> snippets = hybrid.getContextSnippets("c1", "Which colours were on my palette?", 50);
+
+        // The old turn has left the memory window and comes from BM25; the latest one comes from
+        // both retrievers and is returned once
+        assertThat(snippets).extracting(ContextSnippet::text)
+                .containsOnlyOnce("My palette is titanium white, ultramarine and burnt sienna",
+                        "Working on layer 29 of the seascape");
+        assertThat(meterRegistry.get("ai.context.hybrid.retrieve").tag("retriever", "bm25").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("ai.context.hybrid.retrieve").tag("retriever", "memory").timer().count())
+                .isEqualTo(1);
+
+        hybrid.clearConversationContext("c1");
+        assertThat(hybrid.getContextSnippets("c1", "palette", 5)).isEmpty();
+    }
+
+    @Test
+    void answersFromTheStoresThatWork() {
+        AIContextService broken = mock(AIContextService.class);
+        when(broken.getContextSnippets(anyString(), anyString(), anyInt())).thenThrow(new IllegalStateException("down"));
+        Bm25AIContextServiceImpl lexical = new Bm25AIContextServiceImpl(properties.getContext().getBm25(), meterRegistry);
+        HybridAIContextServiceImpl hybrid = new HybridAIContextServiceImpl(List.of(
+                new HybridAIContextServiceImpl.Retriever("hnsw", broken, 1.0),
+                new HybridAIContextServiceImpl.Retriever("bm25", lexical, 1.0)),
+                properties.getContext().getHybrid(), meterRegistry);
+
+        hybrid.storeConversationContext("c1", "Linseed oil yellows over time", "Alice");
+
+        assertThat(hybrid.getContextSnippets("c1", "linseed oil", 5)).extracting(ContextSnippet::text)
+                .containsExactly("Linseed oil yellows over time");
+        assertThat(hybrid.isDurable()).isFalse();
+    }
+}
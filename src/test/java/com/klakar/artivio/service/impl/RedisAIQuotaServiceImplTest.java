@@ -0,0 +1,138 @@
+package com.klakar.artivio.service.impl;
+
+import com.klakar.artivio.ai.quota.QuotaDecision;
+import com.klakar.artivio.ai.quota.QuotaLimit;
+import com.klakar.artivio.config.AIProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the token bucket script against a real Redis server, started in-process for the tests.
+ */
+class RedisAIQuotaServiceImplTest {
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static ReactiveStringRedisTemplate redisTemplate;
+
+    private final AIProperties.Quota properties = new AIProperties.Quota();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> connection.serverCommands().flushAll()).blockLast();
+        properties.setStore(AIProperties.QuotaStore.REDIS);
+        properties.setRedisTimeout(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void limitsRequestsAndReportsWhenTheNextOneIsAllowed() {
+        properties.setRequestsPerMinute(3);
+        RedisAIQuotaServiceImpl quota = createQuota();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(quota.tryAcquire("alice", 10).allowed()).isTrue();
+        }
+        QuotaDecision rejected = quota.tryAcquire("alice", 10);
+
+        assertThat(rejected.exceeded()).isEqualTo(QuotaLimit.REQUESTS);
+        // One request refills every 20 seconds
+        assertThat(rejected.retryAfter()).isBetween(Duration.ofSeconds(19), Duration.ofSeconds(20));
+        assertThat(quota.tryAcquire("bob", 10).allowed()).isTrue();
+        assertThat(redisTemplate.getExpire("artivio:ai:quota:alice").block())
+                .isPositive()
+                .isLessThanOrEqualTo(Duration.ofSeconds(61));
+    }
+
+    @Test
+    void refillsFromTheTimeOfTheLastCheck() {
+        properties.setRequestsPerMinute(3);
+        RedisAIQuotaServiceImpl quota = createQuota();
+        // An empty request bucket, last touched 30 seconds ago: one and a half requests have refilled
+        redisTemplate.opsForHash().putAll("artivio:ai:quota:alice", Map.of(
+                "r", "0",
+                "t", Long.toString(properties.getTokensPerDay()),
+                "ts", Long.toString(System.currentTimeMillis() - 30_000))).block();
+
+        assertThat(quota.tryAcquire("alice", 10).allowed()).isTrue();
+        assertThat(quota.tryAcquire("alice", 10).exceeded()).isEqualTo(QuotaLimit.REQUESTS);
+    }
+
+    @Test
+    void limitsTokensAndClampsLateChargesToOneDayOfDebt() {
+        properties.setTokensPerDay(1000);
+        RedisAIQuotaServiceImpl quota = createQuota();
+
+        assertThat(quota.tryAcquire("alice", 600).allowed()).isTrue();
+        QuotaDecision rejected = quota.tryAcquire("alice", 600);
+        assertThat(rejected.exceeded()).isEqualTo(QuotaLimit.TOKENS);
+        // 200 missing tokens at 1000 a day
+        assertThat(rejected.retryAfter()).isBetween(Duration.ofMinutes(287), Duration.ofMinutes(288));
+
+        // A huge reply is charged, but never leaves more than a day's worth of debt
+        quota.recordUsage("alice", 1_000_000);
+        assertThat(quota.tryAcquire("alice", 1).retryAfter())
+                .isBetween(Duration.ofDays(1), Duration.ofDays(1).plusMinutes(2));
+    }
+
+    @Test
+    void fallsBackToLocalBucketsWhenRedisIsUnreachable() throws IOException {
+        LettuceConnectionFactory unreachable = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("localhost", freePort()));
+        unreachable.afterPropertiesSet();
+        unreachable.start();
+        properties.setRequestsPerMinute(1);
+        properties.setRedisTimeout(Duration.ofMillis(200));
+        RedisAIQuotaServiceImpl quota = new RedisAIQuotaServiceImpl(new ReactiveStringRedisTemplate(unreachable),
+                properties, new LocalAIQuotaServiceImpl(properties, meterRegistry), meterRegistry);
+        try {
+            assertThat(quota.tryAcquire("alice", 10).allowed()).isTrue();
+            assertThat(quota.tryAcquire("alice", 10).exceeded()).isEqualTo(QuotaLimit.REQUESTS);
+            assertThat(meterRegistry.get("ai.quota.redis.errors").counter().count()).isEqualTo(2);
+        } finally {
+            unreachable.destroy();
+        }
+    }
+
+    private RedisAIQuotaServiceImpl createQuota() {
+        return new RedisAIQuotaServiceImpl(redisTemplate, properties,
+                new LocalAIQuotaServiceImpl(properties, meterRegistry), meterRegistry);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
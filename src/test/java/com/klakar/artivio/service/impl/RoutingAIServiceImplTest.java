@@ -0,0 +1,179 @@
+package com.klakar.artivio.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.klakar.artivio.ai.context.TokenEstimator;
+import com.klakar.artivio.ai.usage.AIUsageTracker;
+import com.klakar.artivio.config.AIProperties;
+import com.klakar.artivio.config.GeminiProperties;
+import com.klakar.artivio.service.AIService;
+import com.klakar.artivio.service.AIServiceException;
+import com.klakar.artivio.support.GeminiStubServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoutingAIServiceImplTest {
+
+    private GeminiStubServer primaryStub;
+    private GeminiStubServer secondaryStub;
+    private AIProperties.Routing routing;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        primaryStub = GeminiStubServer.start().respondWith("from primary");
+        secondaryStub = GeminiStubServer.start().respondWith("from secondary");
+        routing = new AIProperties.Routing();
+        routing.setHedgeMinDelay(Duration.ofMillis(50));
+        routing.setHedgeMaxDelay(Duration.ofMillis(200));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        primaryStub.close();
+        secondaryStub.close();
+    }
+
+    @Test
+    void hedgesASlowPrimaryAndKeepsTheFirstAnswer() {
+        primaryStub.responseDelayMillis(2000);
+        RoutingAIServiceImpl router = createRouter(gemini(primaryStub, "model-a"), gemini(secondaryStub, "model-b"));
+
+        long start = System.nanoTime();
+        String answer = router.generate("hello", "").block(Duration.ofSeconds(5));
+
+        assertThat(answer).isEqualTo("from secondary");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+        assertThat(secondaryRequests("secondary", "hedge")).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesStreamsOnTimeToFirstChunk() {
+        primaryStub.responseDelayMillis(2000);
+        secondaryStub.respondWith("fast", " stream");
+        RoutingAIServiceImpl router = createRouter(gemini(primaryStub, "model-a"), gemini(secondaryStub, "model-b"));
+
+        StepVerifier.create(router.streamResponse("hello", ""))
+                .expectNext("fast", " stream")
+                .expectComplete()
+                .verify(Duration.ofMillis(1500));
+    }
+
+    @Test
+    void sendsTrafficToTheFasterBackendOnceLatencyIsKnown() {
+        routing.setHedgingEnabled(false);
+        primaryStub.responseDelayMillis(150);
+        RoutingAIServiceImpl router = createRouter(gemini(primaryStub, "model-a"), gemini(secondaryStub, "model-b"));
+
+        for (int i = 0; i < 6; i++) {
+            router.generate("question " + i, "").block(Duration.ofSeconds(5));
+        }
+
+        // The untried secondary is explored after the first call, then wins on latency
+        assertThat(primaryStub.requestCount()).isEqualTo(1);
+        assertThat(secondaryStub.requestCount()).isEqualTo(5);
+    }
+
+    @Test
+    void failsOverWhenThePrimaryErrors() {
+        routing.setHedgingEnabled(false);
+        primaryStub.respondWithStatus(503);
+        RoutingAIServiceImpl router = createRouter(gemini(primaryStub, "model-a"), gemini(secondaryStub, "model-b"));
+
+        assertThat(router.generate("hello", "").block(Duration.ofSeconds(5))).isEqualTo("from secondary");
+        assertThat(secondaryRequests("secondary", "failover")).isEqualTo(1);
+    }
+
+    @Test
+    void failsOverWhenThePrimaryStreamsNothing() {
+        routing.setHedgingEnabled(false);
+        primaryStub.respondWith();
+        RoutingAIServiceImpl router = createRouter(gemini(primaryStub, "model-a"), gemini(secondaryStub, "model-b"));
+
+        StepVerifier.create(router.streamResponse("hello", ""))
+                .expectNext("from secondary")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertThat(secondaryRequests("secondary", "failover")).isEqualTo(1);
+    }
+
+    @Test
+    void failsOverWhenThePrimaryAnswersEmptyAndErrorsWhenAllDo() {
+        routing.setHedgingEnabled(false);
+        AIService empty = mock(AIService.class);
+        when(empty.isConfigured()).thenReturn(true);
+        when(empty.generate(anyString(), anyString())).thenReturn(Mono.empty());
+        when(empty.streamResponse(anyString(), anyString())).thenReturn(Flux.empty());
+
+        RoutingAIServiceImpl router = createRouter(empty, gemini(secondaryStub, "model-b"));
+        assertThat(router.generate("hello", "").block(Duration.ofSeconds(5))).isEqualTo("from secondary");
+
+        RoutingAIServiceImpl allEmpty = createRouter(empty, empty);
+        StepVerifier.create(allEmpty.generate("hello", ""))
+                .expectError(AIServiceException.class)
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(allEmpty.streamResponse("hello", ""))
+                .expectError(AIServiceException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void talksToOpenAICompatibleBackends() {
+        AIService openAI = new OpenAICompatibleAIServiceImpl(
+                WebClient.builder().baseUrl(secondaryStub.baseUrl()).build(),
+                new ObjectMapper(), "llama3", "", 0.7, 256);
+
+        assertThat(openAI.generate("hello", "[Alice]: hi").block(Duration.ofSeconds(5))).isEqualTo("from secondary");
+        assertThat(secondaryStub.lastRequestUri()).endsWith("/chat/completions");
+        assertThat(secondaryStub.lastRequestBody()).contains("\"model\":\"llama3\"", "[Alice]: hi");
+
+        secondaryStub.respondWith("one", " two");
+        StepVerifier.create(openAI.streamResponse("hello", ""))
+                .expectNext("one", " two")
+                .verifyComplete();
+    }
+
+    private RoutingAIServiceImpl createRouter(AIService primary, AIService secondary) {
+        return new RoutingAIServiceImpl(List.of(
+                new RoutingAIServiceImpl.Backend("primary", primary),
+                new RoutingAIServiceImpl.Backend("secondary", secondary)
+        ), routing, meterRegistry);
+    }
+
+    private GeminiAIServiceImpl gemini(GeminiStubServer stub, String model) {
+        GeminiProperties properties = new GeminiProperties();
+        properties.setApiKey("test-key");
+        properties.setModel(model);
+        properties.setBaseUrl(stub.baseUrl());
+        return new GeminiAIServiceImpl(
+                WebClient.builder().baseUrl(stub.baseUrl()).build(),
+                new ObjectMapper(),
+                properties,
+                new TokenEstimator(4.0),
+                new AIUsageTracker(new AIProperties.Usage()),
+                meterRegistry
+        );
+    }
+
+    private double secondaryRequests(String backend, String reason) {
+        return meterRegistry.get("ai.router.secondary.requests")
+                .tag("backend", backend)
+                .tag("reason", reason)
+                .counter()
+                .count();
+    }
+}
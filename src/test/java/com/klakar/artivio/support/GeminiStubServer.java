@@ -0,0 +1,378 @@
+package com.klakar.artivio.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local stand-in for the Gemini {@code generateContent} and
+ * {@code streamGenerateContent?alt=sse} endpoints and the {@code cachedContents} resource, plus an
+ * OpenAI-compatible {@code /chat/completions}, so AI paths can be exercised offline.
+ * <p>
+ * Besides fixed answers it can imitate a real upstream under load: first-byte and per-chunk
+ * delays drawn from a {@link Latency} distribution, and a share of requests failing with a given
+ * status or never answering at all. Draws come from one seeded {@link Random}, so a run with the
+ * same settings sees the same mix.
+ */
+public class GeminiStubServer implements AutoCloseable {
+
+    /** How long the stub waits; sampled once per request (first byte) or once per chunk. */
+    @FunctionalInterface
+    public interface Latency {
+
+        long sampleMillis(Random random);
+
+        static Latency fixed(long millis) {
+            return random -> millis;
+        }
+
+        static Latency uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * Right-skewed like real model latency: most answers near the median, a long tail
+         * reaching {@code p99Millis} one time in a hundred.
+         */
+        static Latency logNormal(long medianMillis, long p99Millis) {
+            double mu = Math.log(Math.max(1, medianMillis));
+            // 2.326 is the standard normal 99th percentile
+            double sigma = Math.max(0, Math.log((double) Math.max(p99Millis, medianMillis) / Math.max(1, medianMillis)) / 2.326);
+            return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String CACHED_CONTENTS_PATH = "/v1beta/cachedContents";
+    private static final int CACHED_TOKEN_COUNT = 30;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger cachedContentsCreated = new AtomicInteger();
+    private final AtomicInteger cachedContentsRefreshed = new AtomicInteger();
+    private final Set<String> cachedContents = ConcurrentHashMap.newKeySet();
+
+    private volatile List<String> chunks = List.of("Hello from the stub.");
+    private volatile int statusCode = 200;
+    private volatile Latency firstByteLatency = Latency.fixed(0);
+    private volatile Latency chunkLatency = Latency.fixed(0);
+    private volatile Map<Integer, Double> errorRates = Map.of();
+    private volatile double hangRate = 0;
+    private volatile Random random = new Random(0);
+    private volatile String lastRequestUri;
+    private volatile String lastRequestBody;
+
+    private GeminiStubServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static GeminiStubServer start() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            ExecutorService executor = Executors.newCachedThreadPool();
+            GeminiStubServer stub = new GeminiStubServer(server, executor);
+            server.createContext("/", stub::handle);
+            server.setExecutor(executor);
+            server.start();
+            return stub;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start Gemini stub server", e);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta";
+    }
+
+    /** Text returned by the stub; {@code generateContent} joins the chunks, streaming sends one event per chunk. */
+    public GeminiStubServer respondWith(String... chunks) {
+        this.chunks = List.of(chunks);
+        return this;
+    }
+
+    /** Answers every request with this status and an error body instead of content (e.g. 429, 503). */
+    public GeminiStubServer respondWithStatus(int statusCode) {
+        this.statusCode = statusCode;
+        return this;
+    }
+
+    /** Delay before the stub starts answering, to keep requests in flight. */
+    public GeminiStubServer responseDelayMillis(long responseDelayMillis) {
+        return firstByteLatency(Latency.fixed(responseDelayMillis));
+    }
+
+    public GeminiStubServer chunkDelayMillis(long chunkDelayMillis) {
+        return chunkLatency(Latency.fixed(chunkDelayMillis));
+    }
+
+    /** Delay before the stub starts answering, drawn anew for every request. */
+    public GeminiStubServer firstByteLatency(Latency latency) {
+        this.firstByteLatency = latency;
+        return this;
+    }
+
+    /** Delay before each streamed chunk, drawn anew for every chunk. */
+    public GeminiStubServer chunkLatency(Latency latency) {
+        this.chunkLatency = latency;
+        return this;
+    }
+
+    /** Fails this share of model requests (0 to 1) with {@code statusCode}, e.g. 429 or 500; rates add up. */
+    public GeminiStubServer failWith(int statusCode, double rate) {
+        Map<Integer, Double> rates = new LinkedHashMap<>(errorRates);
+        rates.put(statusCode, rate);
+        this.errorRates = Map.copyOf(rates);
+        return this;
+    }
+
+    /** Accepts this share of model requests (0 to 1) and never answers them, so the caller times out. */
+    public GeminiStubServer hangRate(double hangRate) {
+        this.hangRate = hangRate;
+        return this;
+    }
+
+    /** Restarts the latency and failure draws from {@code seed}. */
+    public GeminiStubServer seed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    public String lastRequestUri() {
+        return lastRequestUri;
+    }
+
+    public String lastRequestBody() {
+        return lastRequestBody;
+    }
+
+    /** Names of the cached contents that currently exist. */
+    public Set<String> cachedContents() {
+        return Set.copyOf(cachedContents);
+    }
+
+    public int cachedContentsCreated() {
+        return cachedContentsCreated.get();
+    }
+
+    /** Number of TTL updates on existing cached contents. */
+    public int cachedContentsRefreshed() {
+        return cachedContentsRefreshed.get();
+    }
+
+    /** Drops every cached content, as if they had expired on the server. */
+    public GeminiStubServer forgetCachedContents() {
+        cachedContents.clear();
+        return this;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().startsWith(CACHED_CONTENTS_PATH)) {
+            try (exchange) {
+                cachedContent(exchange);
+            }
+            return;
+        }
+
+        requestCount.incrementAndGet();
+        lastRequestUri = exchange.getRequestURI().toString();
+        lastRequestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        try (exchange) {
+            double draw = random.nextDouble();
+            if (draw < hangRate) {
+                // Held until the client gives up or the stub is closed
+                pause(TimeUnit.HOURS.toMillis(1));
+                return;
+            }
+            pause(firstByteLatency.sampleMillis(random));
+            String path = exchange.getRequestURI().getPath();
+            int cachedTokens = 0;
+            if (path.contains(":") && lastRequestBody.contains("\"cachedContent\"")) {
+                String name = MAPPER.readTree(lastRequestBody).path("cachedContent").asText();
+                if (!cachedContents.contains(name)) {
+                    sendError(exchange, 404);
+                    return;
+                }
+                cachedTokens = CACHED_TOKEN_COUNT;
+            }
+
+            int injectedStatus = injectedStatus(draw - hangRate);
+            if (injectedStatus != 200) {
+                sendError(exchange, injectedStatus);
+            } else if (path.endsWith(":streamGenerateContent")) {
+                stream(exchange, cachedTokens);
+            } else if (path.endsWith(":generateContent")) {
+                byte[] body = responseJson(String.join("", chunks), cachedTokens).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            } else if (path.endsWith("/chat/completions")) {
+                chatCompletion(exchange);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private int injectedStatus(double draw) {
+        if (statusCode != 200) {
+            return statusCode;
+        }
+        double threshold = 0;
+        for (Map.Entry<Integer, Double> rate : errorRates.entrySet()) {
+            threshold += rate.getValue();
+            if (draw < threshold) {
+                return rate.getKey();
+            }
+        }
+        return 200;
+    }
+
+    private void cachedContent(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String name = path.substring("/v1beta/".length());
+        exchange.getRequestBody().readAllBytes();
+
+        if ("POST".equals(method) && path.equals(CACHED_CONTENTS_PATH)) {
+            name = "cachedContents/stub-" + cachedContentsCreated.incrementAndGet();
+            cachedContents.add(name);
+        } else if (!cachedContents.contains(name)) {
+            sendError(exchange, 404);
+            return;
+        } else if ("DELETE".equals(method)) {
+            cachedContents.remove(name);
+            sendJson(exchange, "{}");
+            return;
+        } else if ("PATCH".equals(method)) {
+            cachedContentsRefreshed.incrementAndGet();
+        }
+        sendJson(exchange, MAPPER.writeValueAsString(Map.of(
+                "name", name,
+                "expireTime", Instant.now().plusSeconds(600).toString()
+        )));
+    }
+
+    private void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void sendError(HttpExchange exchange, int status) throws IOException {
+        byte[] body = errorJson(status).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private void stream(HttpExchange exchange, int cachedTokens) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        for (String chunk : chunks) {
+            pause(chunkLatency.sampleMillis(random));
+            out.write(("data: " + responseJson(chunk, cachedTokens) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private void chatCompletion(HttpExchange exchange) throws IOException {
+        if (!lastRequestBody.contains("\"stream\":true")) {
+            byte[] body = MAPPER.writeValueAsBytes(Map.of(
+                    "id", "chatcmpl-stub",
+                    "object", "chat.completion",
+                    "choices", List.of(Map.of(
+                            "index", 0,
+                            "message", Map.of("role", "assistant", "content", String.join("", chunks)),
+                            "finish_reason", "stop"))
+            ));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (String chunk : chunks) {
+            pause(chunkLatency.sampleMillis(random));
+            String event = MAPPER.writeValueAsString(Map.of(
+                    "object", "chat.completion.chunk",
+                    "choices", List.of(Map.of("index", 0, "delta", Map.of("content", chunk)))
+            ));
+            out.write(("data: " + event + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String responseJson(String text, int cachedTokens) throws IOException {
+        return MAPPER.writeValueAsString(Map.of(
+                "candidates", List.of(Map.of(
+                        "content", Map.of("role", "model", "parts", List.of(Map.of("text", text))),
+                        "finishReason", "STOP",
+                        "index", 0,
+                        "safetyRatings", List.of(
+                                Map.of("category", "HARM_CATEGORY_HARASSMENT", "probability", "NEGLIGIBLE"),
+                                Map.of("category", "HARM_CATEGORY_HATE_SPEECH", "probability", "NEGLIGIBLE")
+                        )
+                )),
+                "usageMetadata", Map.of(
+                        "promptTokenCount", 42,
+                        "cachedContentTokenCount", cachedTokens,
+                        "candidatesTokenCount", Math.max(1, text.length() / 4),
+                        "totalTokenCount", 42 + Math.max(1, text.length() / 4)
+                )
+        ));
+    }
+
+    private static String errorJson(int statusCode) throws IOException {
+        return MAPPER.writeValueAsString(Map.of(
+                "error", Map.of("code", statusCode, "message", "Injected by stub", "status", "STUB_ERROR")
+        ));
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        // Wakes handlers still sleeping on injected delays or hangs
+        executor.shutdownNow();
+    }
+}